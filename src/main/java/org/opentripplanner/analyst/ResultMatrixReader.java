@@ -0,0 +1,150 @@
+package org.opentripplanner.analyst;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.opentripplanner.analyst.ResultMatrixWriter.FOOTER_BYTES;
+import static org.opentripplanner.analyst.ResultMatrixWriter.HEADER_BYTES;
+import static org.opentripplanner.analyst.ResultMatrixWriter.INDEX_ENTRY_BYTES;
+import static org.opentripplanner.analyst.ResultMatrixWriter.MAGIC;
+import static org.opentripplanner.analyst.ResultMatrixWriter.VERSION;
+
+/**
+ * Reads the travel times of any origin from a file written by a {@link ResultMatrixWriter}, without reading the rest
+ * of the file. The times of all origins can also be converted to JSON, for tools that do not read the binary format:
+ *
+ * <pre>
+ * java -cp otp.jar org.opentripplanner.analyst.ResultMatrixReader matrix.bin [matrix.json]
+ * </pre>
+ */
+public class ResultMatrixReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final int nOrigins;
+
+    private final int nDestinations;
+
+    private final long[] positions;
+
+    private final int[] lengths;
+
+    public ResultMatrixReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), READ);
+        try {
+            ByteBuffer header = readFully(0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a result matrix file.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported result matrix version " + version + " in " + file);
+            }
+            nOrigins = header.getInt();
+            nDestinations = header.getInt();
+            ByteBuffer footer = readFully(channel.size() - FOOTER_BYTES, FOOTER_BYTES);
+            long indexPosition = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException(file + " is truncated, it was probably not closed after writing.");
+            }
+            ByteBuffer index = readFully(indexPosition, nOrigins * INDEX_ENTRY_BYTES);
+            positions = new long[nOrigins];
+            lengths = new int[nOrigins];
+            for (int origin = 0; origin < nOrigins; origin++) {
+                positions[origin] = index.getLong();
+                lengths[origin] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getOriginCount() {
+        return nOrigins;
+    }
+
+    public int getDestinationCount() {
+        return nDestinations;
+    }
+
+    /** @return whether times were written for the given origin */
+    public boolean contains(int origin) {
+        return positions[origin] != -1;
+    }
+
+    /** @return the times from the given origin to all destinations, or null if none were written for it */
+    public int[] read(int origin) throws IOException {
+        if (!contains(origin)) {
+            return null;
+        }
+        return ResultMatrixWriter.decode(readFully(positions[origin], lengths[origin]), nDestinations);
+    }
+
+    /**
+     * Write the whole matrix as JSON: the number of origins and destinations, and an array with the times from each
+     * origin, or null for origins that were not written.
+     */
+    public void writeJson(OutputStream output) throws IOException {
+        JsonFactory jsonFactory = new JsonFactory();
+        try (JsonGenerator jgen = jsonFactory.createGenerator(output, JsonEncoding.UTF8)) {
+            jgen.writeStartObject();
+            jgen.writeNumberField("origins", nOrigins);
+            jgen.writeNumberField("destinations", nDestinations);
+            jgen.writeArrayFieldStart("times");
+            for (int origin = 0; origin < nOrigins; origin++) {
+                int[] times = read(origin);
+                if (times == null) {
+                    jgen.writeNull();
+                } else {
+                    jgen.writeArray(times, 0, times.length);
+                }
+            }
+            jgen.writeEndArray();
+            jgen.writeEndObject();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of result matrix file.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Convert a result matrix file to JSON, on standard output or in the given file. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ResultMatrixReader matrix-file [json-file]");
+            System.exit(1);
+        }
+        try (ResultMatrixReader reader = new ResultMatrixReader(new File(args[0]));
+             OutputStream out = args.length > 1
+                     ? new BufferedOutputStream(new FileOutputStream(args[1]))
+                     : System.out) {
+            reader.writeJson(out);
+        }
+    }
+
+}
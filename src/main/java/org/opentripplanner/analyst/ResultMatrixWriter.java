@@ -0,0 +1,195 @@
+package org.opentripplanner.analyst;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes the travel times from many origins to the same destinations into a single compact binary file, which can be
+ * read back one origin at a time with a {@link ResultMatrixReader}. For large batch analyses this is much smaller and
+ * faster to produce than one JSON or CSV file per origin.
+ *
+ * The file has one block per origin, holding the times to all destinations in order. Each time is stored as the
+ * difference from the previous one (the first as is), zigzag encoded so small negative differences stay small, in a
+ * variable number of bytes. Times to nearby destinations are similar, so most take one or two bytes. The layout is:
+ *
+ * <pre>
+ * header: magic number, format version, number of origins, number of destinations (4-byte ints)
+ * blocks: the encoded times of each origin that was written, in the order they were written
+ * index:  for each origin, the position (8 bytes) and length (4 bytes) of its block, or -1 and 0 if it has none
+ * footer: the position of the index (8 bytes), then the magic number again
+ * </pre>
+ *
+ * Several threads can write origins at once: each block is encoded by the calling thread, and the space for it in the
+ * file is reserved and written without locking; only claiming the origin and recording its block in the index are
+ * synchronized. The index is written
+ * on close, which must happen after all writes are complete. The number of origins does not need to be known in
+ * advance, the index grows to hold the highest origin written.
+ */
+public class ResultMatrixWriter implements Closeable {
+
+    /** "OTPM" in ASCII */
+    static final int MAGIC = 0x4f54504d;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 16;
+
+    static final int INDEX_ENTRY_BYTES = 12;
+
+    static final int FOOTER_BYTES = 12;
+
+    /** The position in the index of an origin whose block is being written */
+    private static final long WRITING = -2;
+
+    private final FileChannel channel;
+
+    private int nOrigins;
+
+    private final int nDestinations;
+
+    private long[] positions;
+
+    private int[] lengths;
+
+    /** The position just after the last block reserved so far */
+    private final AtomicLong end = new AtomicLong(HEADER_BYTES);
+
+    /**
+     * @param nOrigins the number of origins, or 0 if it is not known. The file holds at least this many origins, and
+     *                 more if higher origins are written.
+     */
+    public ResultMatrixWriter(File file, int nOrigins, int nDestinations) throws IOException {
+        this.nOrigins = nOrigins;
+        this.nDestinations = nDestinations;
+        this.positions = new long[Math.max(nOrigins, 16)];
+        this.lengths = new int[positions.length];
+        Arrays.fill(positions, -1);
+        this.channel = FileChannel.open(file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(nOrigins).putInt(nDestinations).flip();
+        writeFully(header, 0);
+    }
+
+    /**
+     * Write the times from one origin to all destinations. Each origin can be written at most once.
+     * @param times the travel time to each destination, in any unit. Negative values can be used to flag unreachable
+     *              or unlinked destinations.
+     */
+    public void write(int origin, int[] times) throws IOException {
+        if (origin < 0) {
+            throw new IllegalArgumentException("Origin " + origin + " is negative");
+        }
+        if (times.length != nDestinations) {
+            throw new IllegalArgumentException("Expected " + nDestinations + " times, got " + times.length);
+        }
+        // Claim the origin first, so that writing it twice fails without leaving an unused block in the file
+        claim(origin);
+        long position;
+        int length;
+        try {
+            ByteBuffer block = encode(times);
+            length = block.remaining();
+            position = end.getAndAdd(length);
+            writeFully(block, position);
+        } catch (IOException | RuntimeException e) {
+            addToIndex(origin, -1, 0);
+            throw e;
+        }
+        addToIndex(origin, position, length);
+    }
+
+    private synchronized void claim(int origin) {
+        if (origin >= positions.length) {
+            int capacity = Math.max(origin + 1, positions.length * 2);
+            int oldCapacity = positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            Arrays.fill(positions, oldCapacity, capacity, -1);
+        }
+        if (positions[origin] != -1) {
+            throw new IllegalStateException("Origin " + origin + " was already written");
+        }
+        positions[origin] = WRITING;
+        nOrigins = Math.max(nOrigins, origin + 1);
+    }
+
+    private synchronized void addToIndex(int origin, long position, int length) {
+        positions[origin] = position;
+        lengths[origin] = length;
+    }
+
+    /** Write the index and close the file. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeHeader(); // with the final number of origins
+            long indexPosition = end.get();
+            ByteBuffer index = ByteBuffer.allocate(nOrigins * INDEX_ENTRY_BYTES + FOOTER_BYTES);
+            for (int origin = 0; origin < nOrigins; origin++) {
+                index.putLong(positions[origin]).putInt(lengths[origin]);
+            }
+            index.putLong(indexPosition).putInt(MAGIC).flip();
+            writeFully(index, indexPosition);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** @return the delta and varint encoded times, ready to be written */
+    static ByteBuffer encode(int[] times) {
+        ByteBuffer buffer = ByteBuffer.allocate(times.length * 5);
+        int previous = 0;
+        for (int time : times) {
+            int delta = time - previous;
+            previous = time;
+            // zigzag: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+            int value = (delta << 1) ^ (delta >> 31);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** @return n times decoded from the buffer, the reverse of {@link #encode(int[])} */
+    static int[] decode(ByteBuffer buffer, int n) {
+        int[] times = new int[n];
+        int previous = 0;
+        for (int i = 0; i < n; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (value >>> 1) ^ -(value & 1);
+            times[i] = previous;
+        }
+        return times;
+    }
+
+}
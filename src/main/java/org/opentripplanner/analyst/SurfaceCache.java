@@ -2,19 +2,10 @@ package org.opentripplanner.analyst;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
-
-import org.opentripplanner.routing.spt.ShortestPathTree;
-
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 
 /**
  * Caches travel time surfaces, which are derived from shortest path trees.
- * TODO add LRU behavior upon get
+ * Surfaces are evicted least recently used first once their estimated total size exceeds the given number of bytes.
  * TODO extend to store any type by moving the IDs into the cache
  * TODO use a disk-backed MapDB to avoid eating memory
  */
@@ -23,10 +14,13 @@ public class SurfaceCache {
     public static final int NONE = -1;
     public final Cache<Integer, TimeSurface> cache;
 
-    public SurfaceCache (int capacity) {
+    /** @param maxBytes the estimated total size of the surfaces to keep */
+    public SurfaceCache (long maxBytes) {
         this.cache = CacheBuilder.newBuilder()
-        	       		.maximumSize(100)
-        	       		.build();
+                .maximumWeight(maxBytes)
+                .weigher((Integer id, TimeSurface surface) ->
+                        (int) Math.min(Integer.MAX_VALUE, surface.estimateMemorySize()))
+                .build();
     }
 
     public int add(TimeSurface surface) {
@@ -38,4 +32,12 @@ public class SurfaceCache {
         return this.cache.getIfPresent(id);
     }
 
+    /**
+     * Weigh a cached surface again after it has grown, for instance when its sample grid was made after it was added.
+     * A surface that was evicted in the meantime is not added back.
+     */
+    public void reweigh(TimeSurface surface) {
+        this.cache.asMap().replace(surface.id, surface, surface);
+    }
+
 }
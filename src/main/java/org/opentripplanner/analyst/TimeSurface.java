@@ -1,9 +1,6 @@
 package org.opentripplanner.analyst;
 
 import org.locationtech.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -18,6 +15,7 @@ import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.profile.RoundBasedProfileRouter;
 import org.opentripplanner.profile.TimeRange;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
@@ -26,12 +24,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Map;
 
 import static org.apache.commons.math3.util.FastMath.toRadians;
 
 /**
  * A travel time surface. Timing information from the leaves of a ShortestPathTree.
+ *
+ * Times are kept in an array indexed by vertex index rather than in a map keyed on vertices, so a surface costs four
+ * bytes per vertex of the graph and looking up a time when rendering tiles is a single array access.
  */
 public class TimeSurface implements Serializable {
 
@@ -41,7 +43,10 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+    /** The travel time to each vertex in seconds, by vertex index, or UNREACHABLE. */
+    private int[] times = newTimes(Vertex.getMaxIndex());
+    /** The graph whose vertices the times are indexed on, to find the vertices again when making a sample grid. */
+    private final transient Graph graph;
     public final double lat, lon;
     public int cutoffMinutes = 90; // this should really be copied from the data source but the new repeated raptor does not do so
     public long dateTime;
@@ -68,14 +73,15 @@ public class TimeSurface implements Serializable {
         // Here we use the key "default" unlike the graphservice which substitutes in the default ID.
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
+        this.graph = spt.getOptions().rctx == null ? null : spt.getOptions().rctx.graph;
         long t0 = System.currentTimeMillis();
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
             if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
-                int existing = times.get(vertex);
+                int existing = getTime(vertex);
                 int t = (int) state.getActiveTime();
                 if (existing == UNREACHABLE || existing > t) {
-                    times.put(vertex, t);
+                    setTime(vertex, t);
                 }
             }
         }
@@ -100,6 +106,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -114,6 +121,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -126,6 +134,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
     }
 
     public TimeSurface(RepeatedRaptorProfileRouter profileRouter) {
@@ -135,6 +144,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = 120; // FIXME is there any well-defined cutoff? This is needed for generating isochrone curves.
     }
 
@@ -145,9 +155,9 @@ public class TimeSurface implements Serializable {
         for (Map.Entry<Vertex, TimeRange> vtr : profileRouter.propagatedTimes.entrySet()) {
             Vertex v = vtr.getKey();
             TimeRange tr = vtr.getValue();
-            minSurface.times.put(v, tr.min);
-            avgSurface.times.put(v, tr.avg);
-            maxSurface.times.put(v, tr.max);
+            minSurface.setTime(v, tr.min);
+            avgSurface.setTime(v, tr.avg);
+            maxSurface.setTime(v, tr.max);
         }
         RangeSet result = new RangeSet();
         minSurface.description = "Travel times assuming best luck (never waiting for a transfer).";
@@ -166,8 +176,50 @@ public class TimeSurface implements Serializable {
         public TimeSurface max;
     }
 
+    private static int[] newTimes(int nVertices) {
+        int[] times = new int[nVertices];
+        Arrays.fill(times, UNREACHABLE);
+        return times;
+    }
+
     public int getTime(Vertex v) {
-        return times.get(v);
+        return getTime(v.getIndex());
+    }
+
+    /** @return the travel time to the vertex with the given index, or UNREACHABLE */
+    public int getTime(int vertexIndex) {
+        return vertexIndex < times.length ? times[vertexIndex] : UNREACHABLE;
+    }
+
+    public void setTime(Vertex v, int time) {
+        int index = v.getIndex();
+        if (index >= times.length) {
+            // The vertex was made after this surface, e.g. a temporary vertex at the origin of the search
+            int oldLength = times.length;
+            times = Arrays.copyOf(times, Math.max(index + 1, Vertex.getMaxIndex()));
+            Arrays.fill(times, oldLength, times.length, UNREACHABLE);
+        }
+        times[index] = time;
+    }
+
+    /** @return one more than the highest vertex index this surface can hold a time for */
+    public int getVertexCapacity() {
+        return times.length;
+    }
+
+    /** @return the number of vertices that are reached */
+    public int countReached() {
+        int n = 0;
+        for (int time : times) {
+            if (time != UNREACHABLE) n++;
+        }
+        return n;
+    }
+
+    /** @return the approximate size of this surface in bytes, including its sample grid */
+    public long estimateMemorySize() {
+        // A sample grid point is a node object holding a WTWD and links to its neighbors
+        return 4L * times.length + (sampleGrid == null ? 0 : 128L * sampleGrid.size());
     }
 
     private synchronized int makeUniqueId() {
@@ -210,15 +262,16 @@ public class TimeSurface implements Serializable {
         final double cosLat = FastMath.cos(toRadians(coordinateOrigin.y));
         double dY = Math.toDegrees(gridSizeMeters / SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M);
         double dX = dY / cosLat;
-        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
+        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, countReached(), dX, dY, coordinateOrigin);
         AccumulativeGridSampler.AccumulativeMetric<WTWD> metric = new SampleGridRenderer.WTWDAccumulativeMetric(cosLat, D0, V0, gridSizeMeters);
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        for (int v = 0; v < times.length; v++) {
+            int time = times[v];
+            if (time == UNREACHABLE) continue;
+            Vertex vertex = graph.getVertexById(v);
+            if (vertex == null) continue;
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
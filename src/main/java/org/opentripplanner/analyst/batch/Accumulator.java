@@ -2,6 +2,11 @@ package org.opentripplanner.analyst.batch;
 
 public interface Accumulator {
 
+    /**
+     * Add the contribution of one origin with the given amount to the accumulated results. This is called
+     * concurrently with a separate accumulated result set for each thread, which are summed at the end, so it must
+     * only add to the accumulated results.
+     */
     public void accumulate(double amount, ResultSet current, ResultSet accumulated);
     
     public void finish();
@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +25,12 @@ public class BasicPopulation implements Population {
     public List<IndividualFilter> filterChain = null; 
 
     private boolean[] skip = null;
+
+    /** While streaming, the consumer that individuals are passed to instead of being added to the list. */
+    private Consumer<Individual> streamConsumer = null;
+
+    /** While streaming, the index of the next individual created, counting those rejected by the filter chain. */
+    private int nextStreamIndex = 0;
     
     public BasicPopulation() {  }
 
@@ -37,7 +44,13 @@ public class BasicPopulation implements Population {
 
     @Override 
     public void addIndividual(Individual individual) {
-        this.individuals.add(individual);
+        if (streamConsumer != null) {
+            individual.index = nextStreamIndex++;
+            if (accept(individual))
+                streamConsumer.accept(individual);
+        } else {
+            this.individuals.add(individual);
+        }
     }
 
     @Override 
@@ -125,10 +138,44 @@ public class BasicPopulation implements Population {
         
     }
 
+    /** @return whether the individual passes all filters of the filter chain. Used when streaming. */
+    private boolean accept(Individual individual) {
+        if (filterChain == null)
+            return true;
+        for (IndividualFilter filter : filterChain) {
+            if ( ! filter.filter(individual))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void stream(Consumer<Individual> consumer) {
+        // individuals that were added directly rather than created by the subclass
+        int index = 0;
+        for (Individual individual : this.individuals) {
+            individual.index = index++;
+            if (accept(individual))
+                consumer.accept(individual);
+        }
+        // subclasses add each individual they create, which will now be passed on to the consumer
+        this.nextStreamIndex = index;
+        this.streamConsumer = consumer;
+        try {
+            this.createIndividuals();
+        } finally {
+            this.streamConsumer = null;
+        }
+    }
+
     @Override
     public void setup() {
         // call the subclass-specific file loading method
         this.createIndividuals();
+        // number the individuals as they will be numbered when streaming, rejected ones included
+        for (int i = 0; i < individuals.size(); i++) {
+            individuals.get(i).index = i;
+        }
         // call the shared filter chain method
         this.applyFilterChain();
     }
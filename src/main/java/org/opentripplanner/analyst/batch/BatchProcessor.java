@@ -1,12 +1,17 @@
 package org.opentripplanner.analyst.batch;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
 import java.util.TimeZone;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.opentripplanner.analyst.ResultMatrixWriter;
 import org.opentripplanner.analyst.batch.aggregator.Aggregator;
 import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.request.SampleFactory;
@@ -23,6 +28,12 @@ public class BatchProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BatchProcessor.class);
     private static final String EXAMPLE_CONTEXT = "batch-context.xml";
+
+    /**
+     * How many tasks per thread may be waiting or running at once. Origins are not read or submitted any faster than
+     * this, so that the queue of tasks does not grow with the number of origins.
+     */
+    private static final int PENDING_TASKS_PER_THREAD = 4;
     
     private GraphService graphService;
     private SampleFactory sampleFactory;
@@ -50,19 +61,111 @@ public class BatchProcessor {
     private TimeZone timeZone = TimeZone.getDefault();
     private String outputPath = "/tmp/analystOutput";
     private float checkpointIntervalMinutes = -1;
+
+    /**
+     * Without an aggregator or accumulator, write the travel times from all origins into the single binary file at
+     * outputPath (see ResultMatrixWriter) rather than one file per origin. ResultMatrixReader can convert it to JSON.
+     * Origins are numbered by their position in the origin population, counting those rejected by its filters, which
+     * have no times in the file like the origins that could not be linked to the graph.
+     */
+    private boolean matrixOutput = false;
+
+    /**
+     * Read the origins one by one as they are routed rather than loading them all first, so that large origin
+     * populations never need to fit in memory. This is not possible with an aggregator, whose output is shaped like
+     * the origins.
+     */
+    private boolean streamOrigins = false;
     
-    enum Mode { BASIC, AGGREGATE, ACCUMULATE };
+    enum Mode { BASIC, AGGREGATE, ACCUMULATE, MATRIX };
     private Mode mode;
     private long startTime = -1;
     private long lastLogTime = 0;
     private long lastCheckpointTime = 0;
     private ResultSet aggregateResultSet = null;
+    private ResultMatrixWriter matrixWriter = null;
+
+    private CompletionService<Void> ecs;
+    private int nTasks = 0;
+    private int nCompleted = 0;
+    private boolean interrupted = false;
+
+    /**
+     * Each thread accumulates into its own result set, which saves locking the shared one for every origin. They are
+     * summed when the results are written, which relies on accumulators only adding to the accumulated results.
+     */
+    private final Queue<ResultSet> partialResultSets = new ConcurrentLinkedQueue<ResultSet>();
+    private final ThreadLocal<ResultSet> partialResultSet = ThreadLocal.withInitial(() -> {
+        ResultSet partial = new ResultSet(destinations); // results shaped like destinations
+        partialResultSets.add(partial);
+        return partial;
+    });
     
     /** Cut off the search instead of building a full path tree. Can greatly improve run times. */
     public void setSearchCutoffMinutes(int minutes) {
         this.searchCutoffSeconds = minutes * 60;
     }
 
+    public void setGraphService(GraphService graphService) {
+        this.graphService = graphService;
+    }
+
+    /** The sample factory that links the destinations into the graph. */
+    public void setSampleFactory(SampleFactory sampleFactory) {
+        this.sampleFactory = sampleFactory;
+    }
+
+    public void setOrigins(Population origins) {
+        this.origins = origins;
+    }
+
+    public void setDestinations(Population destinations) {
+        this.destinations = destinations;
+    }
+
+    /** The request cloned for each origin, which also selects the router. */
+    public void setPrototypeRoutingRequest(RoutingRequest prototypeRoutingRequest) {
+        this.prototypeRoutingRequest = prototypeRoutingRequest;
+    }
+
+    public void setAggregator(Aggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    public void setAccumulator(Accumulator accumulator) {
+        this.accumulator = accumulator;
+    }
+
+    public void setNThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /** The departure (or arrival) date and time of all searches, e.g. "2011-02-04" and "08:00 AM". */
+    public void setDateTime(String date, String time, TimeZone timeZone) {
+        this.date = date;
+        this.time = time;
+        this.timeZone = timeZone;
+    }
+
+    /** The output file, or the pattern of the output files with a {} placeholder for the origin. */
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    public void setCheckpointIntervalMinutes(float checkpointIntervalMinutes) {
+        this.checkpointIntervalMinutes = checkpointIntervalMinutes;
+    }
+
+    /** Write the times from all origins into one binary matrix file rather than one file per origin. */
+    public void setMatrixOutput(boolean matrixOutput) {
+        this.matrixOutput = matrixOutput;
+    }
+
+    /** Read the origins one by one as they are routed rather than loading them all first. */
+    public void setStreamOrigins(boolean streamOrigins) {
+        this.streamOrigins = streamOrigins;
+    }
+
     /*
     public static void main(String[] args) throws IOException {
         org.springframework.core.io.Resource appContextResource;
@@ -86,15 +189,22 @@ public class BatchProcessor {
     }
     */
 
-    private void run() {
-        origins.setup();
+    /** Route from every origin and write the results once all origins are done. Set up the processor first. */
+    public void run() {
+        if (streamOrigins && aggregator != null) {
+            LOG.warn("origins cannot be streamed when aggregating, loading them all.");
+            streamOrigins = false;
+        }
+        if (!streamOrigins) {
+            origins.setup();
+        }
         destinations.setup();
         linkIntoGraph(destinations);
         // Set up a thread pool to execute searches in parallel
         LOG.info("Number of threads: {}", nThreads);
         ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
         // ECS enqueues results in the order they complete (unlike invokeAll, which blocks)
-        CompletionService<Void> ecs = new ExecutorCompletionService<Void>(threadPool);
+        ecs = new ExecutorCompletionService<Void>(threadPool);
         if (aggregator != null) {
             /* aggregate over destinations and save one value per origin */
             mode = Mode.AGGREGATE;
@@ -102,7 +212,19 @@ public class BatchProcessor {
         } else if (accumulator != null) { 
             /* accumulate data for each origin into all destinations */
             mode = Mode.ACCUMULATE;
-            aggregateResultSet = new ResultSet(destinations); // results shaped like destinations
+            aggregateResultSet = null; // summed from the partial results of each thread at the end
+        } else if (matrixOutput) {
+            /* save the results of all origins in one compact file */
+            mode = Mode.MATRIX;
+            aggregateResultSet = null;
+            try {
+                // the number of streamed origins is not known in advance, the writer grows to hold them
+                int nOrigins = streamOrigins ? 0 : origins.size();
+                matrixWriter = new ResultMatrixWriter(new File(outputPath), nOrigins, destinations.size());
+            } catch (IOException e) {
+                LOG.error("cannot create output file {}: {}", outputPath, e);
+                System.exit(-1);
+            }
         } else { 
             /* neither aggregator nor accumulator, save a bunch of results */
             mode = Mode.BASIC;
@@ -113,38 +235,79 @@ public class BatchProcessor {
             }
         }
         startTime = System.currentTimeMillis();
-        int nTasks = 0;
-        for (Individual oi : origins) { // using filtered iterator
-            ecs.submit(new BatchAnalystTask(nTasks, oi), null);
-            ++nTasks;
+        if (streamOrigins) {
+            origins.stream(this::submit);
+        } else {
+            for (Individual oi : origins) { // using filtered iterator
+                submit(oi);
+            }
         }
         LOG.info("created {} tasks.", nTasks);
-        int nCompleted = 0;
-        try { // pull Futures off the queue as tasks are finished
-            while (nCompleted < nTasks) {
-                try {
-                    ecs.take().get(); // call get to check for exceptions in the completed task
-                    LOG.debug("got result {}/{}", nCompleted, nTasks);
-                    if (checkpoint()) {
-                        LOG.info("checkpoint written.");
-                    }
-                } catch (ExecutionException e) {
-                    LOG.error("exception in thread task: {}", e);
-                }
-                ++nCompleted;
-                projectRunTime(nCompleted, nTasks);
-            }
-        } catch (InterruptedException e) {
-            LOG.warn("run was interrupted after {} tasks", nCompleted);
+        while (nCompleted < nTasks && !interrupted) {
+            awaitTask();
         }
         threadPool.shutdown();
+        if (mode == Mode.ACCUMULATE)
+            aggregateResultSet = sumPartialResults();
         if (accumulator != null)
             accumulator.finish();
         if (aggregateResultSet != null)
             aggregateResultSet.writeAppropriateFormat(outputPath);
+        if (matrixWriter != null) {
+            try {
+                matrixWriter.close();
+            } catch (IOException e) {
+                LOG.error("cannot write output file {}: {}", outputPath, e);
+            }
+        }
         LOG.info("DONE.");
     }
 
+    /**
+     * Submit a task for one origin, then wait for tasks to complete until few enough are pending. This keeps the
+     * controller thread from reading origins much faster than they are routed.
+     */
+    private void submit(Individual oi) {
+        if (interrupted)
+            return;
+        ecs.submit(new BatchAnalystTask(nTasks, oi), null);
+        ++nTasks;
+        while (nTasks - nCompleted >= nThreads * PENDING_TASKS_PER_THREAD && !interrupted) {
+            awaitTask();
+        }
+    }
+
+    /** Pull the Future of the next task off the queue when it is finished. */
+    private void awaitTask() {
+        try {
+            ecs.take().get(); // call get to check for exceptions in the completed task
+            LOG.debug("got result {}/{}", nCompleted, nTasks);
+            if (checkpoint()) {
+                LOG.info("checkpoint written.");
+            }
+        } catch (ExecutionException e) {
+            LOG.error("exception in thread task: {}", e);
+        } catch (InterruptedException e) {
+            LOG.warn("run was interrupted after {} tasks", nCompleted);
+            interrupted = true;
+            return;
+        }
+        ++nCompleted;
+        // the total is not known until all streamed origins have been read
+        projectRunTime(nCompleted, streamOrigins ? -1 : origins.size());
+    }
+
+    /** @return the sum of the results accumulated by each thread so far */
+    private ResultSet sumPartialResults() {
+        ResultSet sum = new ResultSet(destinations);
+        for (ResultSet partial : partialResultSets) {
+            for (int i = 0; i < sum.results.length; i++) {
+                sum.results[i] += partial.results[i];
+            }
+        }
+        return sum;
+    }
+
     private void projectRunTime(int current, int total) {
         long currentTime = System.currentTimeMillis();
         // not threadsafe, but the worst thing that will happen is a double log message 
@@ -152,6 +315,10 @@ public class BatchProcessor {
         if (currentTime > lastLogTime + logThrottleSeconds * 1000) {
             lastLogTime = currentTime;
             double runTimeMin = (currentTime - startTime) / 1000.0 / 60.0;
+            if (total < 0) {
+                LOG.info("received {} results, running {} min", current, (int)runTimeMin);
+                return;
+            }
             double projectedMin = (total - current) * (runTimeMin / current);
             LOG.info("received {} results out of {}", current, total);
             LOG.info("running {} min, {} min remaining (projected)", (int)runTimeMin, (int)projectedMin);
@@ -159,14 +326,16 @@ public class BatchProcessor {
     }
     
     private boolean checkpoint() {
-        if (checkpointIntervalMinutes < 0 || aggregateResultSet == null)
+        if (checkpointIntervalMinutes < 0 || (aggregateResultSet == null && mode != Mode.ACCUMULATE))
             return false;
         long currentTime = System.currentTimeMillis();
         // not threadsafe, but the worst thing that will happen is a double checkpoint
         // anyway, this is being called in the controller thread now
         if (currentTime > lastCheckpointTime + checkpointIntervalMinutes * 60 * 1000) {
             lastCheckpointTime = currentTime;
-            aggregateResultSet.writeAppropriateFormat(outputPath);
+            // partial results are read while other threads add to them, the checkpoint is only approximate
+            ResultSet results = mode == Mode.ACCUMULATE ? sumPartialResults() : aggregateResultSet;
+            results.writeAppropriateFormat(outputPath);
             return true;
         }
         return false;
@@ -238,13 +407,22 @@ public class BatchProcessor {
                 req.cleanup();
                 switch (mode) {
                 case ACCUMULATE:
-                    synchronized (aggregateResultSet) {
-                        accumulator.accumulate(oi.input, results, aggregateResultSet);
-                    }
+                    accumulator.accumulate(oi.input, results, partialResultSet.get());
                     break;
                 case AGGREGATE:
                     aggregateResultSet.results[i] = aggregator.computeAggregate(results);
                     break;
+                case MATRIX:
+                    int[] times = new int[results.results.length];
+                    for (int d = 0; d < times.length; d++) {
+                        times[d] = (int) results.results[d];
+                    }
+                    try {
+                        matrixWriter.write(oi.index, times);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    break;
                 default:
                     String subName = outputPath.replace("{}", String.format("%d_%s", i, oi.label));
                     results.writeAppropriateFormat(subName);
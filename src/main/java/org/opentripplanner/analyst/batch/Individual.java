@@ -10,6 +10,7 @@ public class Individual {
     public double lat;
     public double input;  // not final to allow clamping and scaling by filters
     public Sample sample= null; // not final, allowing sampling to occur after filterings
+    public int index = -1; // position in the population, counting rejected individuals; set by setup or streaming
     
     public Individual(String label, double lon, double lat, double input) {
         this.label = label;
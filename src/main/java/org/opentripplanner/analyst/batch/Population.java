@@ -1,6 +1,7 @@
 package org.opentripplanner.analyst.batch;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * A collection of individual locations that will be used as either the origin set or the 
@@ -34,6 +35,14 @@ public interface Population extends Iterable<Individual> {
      */
     public void createIndividuals();
 
+    /**
+     * Create the individuals one at a time and pass each one accepted by the filter chain to the given consumer,
+     * instead of keeping them in this population. This allows working through populations too large to hold in
+     * memory, in the same order as an iterator would return them after setup. The consumer is called in the calling
+     * thread, and can block it to slow down reading.
+     */
+    public void stream(Consumer<Individual> consumer);
+
     /**
      * Save the output data in this population to a file, using a format that is appropriate for the 
      * specific class of population. For example, a population loaded from an image file or 
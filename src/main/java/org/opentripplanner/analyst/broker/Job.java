@@ -1,23 +1,22 @@
 package org.opentripplanner.analyst.broker;
 
-import gnu.trove.iterator.TIntLongIterator;
-import gnu.trove.map.TIntLongMap;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntLongHashMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
 import org.opentripplanner.analyst.cluster.AnalystClusterRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * FIXME delivered tasks map is oblivious to multiple tasks having the same ID.
  * In fact we just generate numeric queue task IDs. Origin point IDs will be handled at the application layer.
+ *
+ * All the collections of a job are concurrent, so that tasks can be enqueued, delivered, redelivered and completed
+ * from several request threads at once without locking the job.
  */
 public class Job {
 
@@ -34,20 +33,20 @@ public class Job {
 
     /* Tasks in this job that have yet to be delivered, or that will be re-delivered due to completion timeout. */
     // maybe this should only be a list of IDs.
-    Queue<AnalystClusterRequest> tasksAwaitingDelivery = new ArrayDeque<>();
+    Queue<AnalystClusterRequest> tasksAwaitingDelivery = new ConcurrentLinkedQueue<>();
 
     /* The tasks in this job keyed on their task ID. */
-    TIntObjectMap<AnalystClusterRequest> tasksById = new TIntObjectHashMap<>();
+    Map<Integer, AnalystClusterRequest> tasksById = new ConcurrentHashMap<>();
 
     /*
      * Completion timeouts for tasks that have been delivered.
      * A task whose ID is in this map has been delivered, has not been reported completed,
      * and is not awaiting re-delivery.
      */
-    TIntLongMap invisibleUntil = new TIntLongHashMap();
+    Map<Integer, Long> invisibleUntil = new ConcurrentHashMap<>();
 
     /* The IDs of all tasks that have been marked completed. */
-    TIntSet completedTasks = new TIntHashSet();
+    Set<Integer> completedTasks = ConcurrentHashMap.newKeySet();
 
     public Job (String jobId) {
         this.jobId = jobId;
@@ -61,7 +60,8 @@ public class Job {
 
     public void markTasksDelivered(List<AnalystClusterRequest> tasks) {
         long deliveryTime = System.currentTimeMillis();
-        long visibleAt = deliveryTime + INVISIBLE_DURATION_SEC * 1000;
+        // The tasks delivered together may be computed one after another, so they get that much more time.
+        long visibleAt = deliveryTime + INVISIBLE_DURATION_SEC * 1000L * Math.max(1, tasks.size());
         for (AnalystClusterRequest task : tasks) {
             invisibleUntil.put(task.taskId, visibleAt);
         }
@@ -74,14 +74,12 @@ public class Job {
      */
     public int redeliver () {
         long now = System.currentTimeMillis();
-        TIntLongIterator invisibleIterator = invisibleUntil.iterator();
         int nRedelivered = 0;
-        while (invisibleIterator.hasNext()) {
-            invisibleIterator.advance();
-            int taskId = invisibleIterator.key();
-            long timeout = invisibleIterator.value();
-            if (now > timeout) {
-                invisibleIterator.remove();
+        for (Map.Entry<Integer, Long> entry : invisibleUntil.entrySet()) {
+            int taskId = entry.getKey();
+            long timeout = entry.getValue();
+            // Only requeue the task if it was not completed or delivered again in the meantime
+            if (now > timeout && invisibleUntil.remove(taskId, timeout)) {
                 tasksAwaitingDelivery.add(tasksById.get(taskId));
                 LOG.warn("Task {} of job {} was not completed in time, queueing it for re-delivery.", taskId, jobId);
                 nRedelivered += 1;
@@ -95,7 +93,7 @@ public class Job {
             LOG.error("Tried to mark task {} completed, but it was not in job {}.", taskId, jobId);
             return;
         }
-        if (invisibleUntil.remove(taskId) != 0) {
+        if (invisibleUntil.remove(taskId) != null) {
             // If the taskId was found in the invisibleUntil map, the task was delivered and has not been slated for
             // re-delivery.
             completedTasks.add(taskId);
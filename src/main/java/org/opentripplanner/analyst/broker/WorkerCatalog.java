@@ -1,53 +1,62 @@
 package org.opentripplanner.analyst.broker;
 
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
+ * Keeps track of the workers that have been seen recently and the graph each of them has loaded.
  *
+ * The catalog is consulted and updated on every worker poll, so it uses concurrent maps rather than locking. A worker
+ * that changes graphs may briefly be listed under both graphs, which only affects the approximate worker counts.
+ * Workers that have not loaded a graph yet report a null graph affinity, and are listed under {@link #NO_GRAPH}.
  */
 public class WorkerCatalog {
 
-    Map<String, WorkerObservation> observationsByWorkerId = new HashMap<>();
-    Multimap<String, String> workersByGraph = HashMultimap.create();
+    /** The key under which workers without a graph are listed, since concurrent maps do not accept null keys. */
+    static final String NO_GRAPH = "";
+
+    Map<String, WorkerObservation> observationsByWorkerId = new ConcurrentHashMap<>();
+    Map<String, Set<String>> workersByGraph = new ConcurrentHashMap<>();
 
     // How many workers we would ideally like to have given the number of jobs and tasks
     int targetWorkerCount;
 
     // We want to store integral target worker counts rather than fractional proportions to avoid "hunting" behavior.
     // The target quantities will all be integers so it is clear when they are reached.
-    TObjectIntMap<String> targetWorkerCountPerGraph = new TObjectIntHashMap<>();
+    Map<String, Integer> targetWorkerCountPerGraph = new ConcurrentHashMap<>();
 
     // and function to update target counts based on jobs queue.
 
-    public synchronized void catalog (String workerId, String graphAffinity) {
+    public void catalog (String workerId, String graphAffinity) {
         WorkerObservation observation = new WorkerObservation(workerId, graphAffinity);
         WorkerObservation oldObservation = observationsByWorkerId.put(workerId, observation);
-        if (oldObservation != null) {
-            workersByGraph.remove(oldObservation.graphAffinity, workerId);
+        if (oldObservation != null && !Objects.equals(oldObservation.graphAffinity, graphAffinity)) {
+            workersOn(oldObservation.graphAffinity).remove(workerId);
         }
-        workersByGraph.put(graphAffinity, workerId);
+        workersByGraph.computeIfAbsent(graphKey(graphAffinity), g -> ConcurrentHashMap.newKeySet()).add(workerId);
     }
 
-    public synchronized void purgeDeadWorkers () {
+    public void purgeDeadWorkers () {
         long now = System.currentTimeMillis();
         long oldestAcceptable = now - 2 * 60 * 1000;
         List<WorkerObservation> ancientObservations = observationsByWorkerId.values().stream()
                 .filter(o -> o.lastSeen < oldestAcceptable).collect(Collectors.toList());
         ancientObservations.forEach(o -> {
-            observationsByWorkerId.remove(o.workerId);
-            workersByGraph.remove(o.graphAffinity, o.workerId);
+            // Only purge the worker if it was not seen again since the observations were scanned
+            if (observationsByWorkerId.remove(o.workerId, o)) {
+                workersOn(o.graphAffinity).remove(o.workerId);
+            }
         });
     }
 
-    public synchronized void updateTargetWorkerCounts (Multimap<String, String> activeJobsPerGraph) {
+    public void updateTargetWorkerCounts (Multimap<String, String> activeJobsPerGraph) {
 
         final int activeWorkerCount = observationsByWorkerId.size(); // (plus outstanding instance requests)
         final int activeJobsCount = activeJobsPerGraph.size();
@@ -59,14 +68,23 @@ public class WorkerCatalog {
 
     }
 
+    /** @return the IDs of the workers that have the given graph loaded */
+    Set<String> workersOn (String graphId) {
+        return workersByGraph.getOrDefault(graphKey(graphId), Collections.emptySet());
+    }
+
+    private static String graphKey (String graphId) {
+        return graphId == null ? NO_GRAPH : graphId;
+    }
+
     /** Returns true if it is OK to steal a worker toward this graphId. */
     boolean notEnoughWorkers (String graphId) {
-        return targetWorkerCountPerGraph.get(graphId) > workersByGraph.get(graphId).size();
+        return targetWorkerCountPerGraph.getOrDefault(graphKey(graphId), 0) > workersOn(graphId).size();
     }
 
     /** Returns true if it is OK to steal a worker _away_ from this graphId. */
     boolean tooManyWorkers (String graphId) {
-        return targetWorkerCountPerGraph.get(graphId) < workersByGraph.get(graphId).size();
+        return targetWorkerCountPerGraph.getOrDefault(graphKey(graphId), 0) < workersOn(graphId).size();
     }
 
     /**
@@ -78,7 +96,7 @@ public class WorkerCatalog {
     }
 
     public int size () {
-        return workersByGraph.size();
+        return observationsByWorkerId.size();
     }
 
 }
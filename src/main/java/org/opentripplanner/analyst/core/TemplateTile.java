@@ -11,6 +11,12 @@ import org.opentripplanner.routing.graph.Graph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.stream.IntStream;
+
+/**
+ * A tile whose samples are found once, when it is made, and reused for every surface rendered on it. The rows of the
+ * tile are sampled in parallel, as finding the street vertices near each pixel dominates the time to show a tile.
+ */
 public class TemplateTile extends Tile {
 
     private static final Logger LOG = LoggerFactory.getLogger(TemplateTile.class);
@@ -20,34 +26,46 @@ public class TemplateTile extends Tile {
         super(req);
         this.samples = new Sample[width * height];
         CoordinateReferenceSystem crs = gg.getCoordinateReferenceSystem2D(); 
-        int i = 0;
+        long t0 = System.currentTimeMillis();
         try {
             MathTransform tr = CRS.findMathTransform(crs, DefaultGeographicCRS.WGS84);
-            // grid coordinate object to be reused for examining each cell 
-            GridCoordinates2D coord = new GridCoordinates2D();
-            for (int gy = 0; gy < height; gy++) {
-                if (gy % 100 == 0)
-                    LOG.trace("raster line {} / {}", gy, height);
-                for (int gx = 0; gx < width; gx++) {
-                    coord.x = gx;
-                    coord.y = gy;
-                    // find coordinates for current raster cell in tile CRS
-                    DirectPosition sourcePos = gg.gridToWorld(coord);
-                    // convert coordinates in tile CRS to WGS84
-                    //LOG.debug("world : {}", sourcePos);
-                    tr.transform(sourcePos, sourcePos);
-                    //LOG.debug("wgs84 : {}", sourcePos);
-                    // axis order can vary
-                    double lon = sourcePos.getOrdinate(0);
-                    double lat = sourcePos.getOrdinate(1);
-                    // TODO: axes are reversed in the default mathtransform
-                    Sample s = graph.getSampleFactory().getSample(lon, lat);
-                    samples[i++] = s;
-                }
-            }
+            IntStream.range(0, height).parallel().forEach(gy -> sampleRow(graph, tr, gy));
         } catch (Exception e) {
             LOG.error("Could not create template tile", e);
         }
+        LOG.debug("sampled tile in {}msec", System.currentTimeMillis() - t0);
+    }
+
+    /** Make a tile from samples found before, e.g. read back from disk. */
+    public TemplateTile(TileRequest req, Sample[] samples) {
+        super(req);
+        if (samples.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " samples, got " + samples.length);
+        }
+        this.samples = samples;
+    }
+
+    private void sampleRow(Graph graph, MathTransform tr, int gy) {
+        // grid coordinate object to be reused for examining each cell of this row
+        GridCoordinates2D coord = new GridCoordinates2D();
+        coord.y = gy;
+        int i = gy * width;
+        try {
+            for (int gx = 0; gx < width; gx++) {
+                coord.x = gx;
+                // find coordinates for current raster cell in tile CRS
+                DirectPosition sourcePos = gg.gridToWorld(coord);
+                // convert coordinates in tile CRS to WGS84
+                tr.transform(sourcePos, sourcePos);
+                // axis order can vary
+                double lon = sourcePos.getOrdinate(0);
+                double lat = sourcePos.getOrdinate(1);
+                // TODO: axes are reversed in the default mathtransform
+                samples[i++] = graph.getSampleFactory().getSample(lon, lat);
+            }
+        } catch (Exception e) {
+            LOG.error("Could not sample raster line {} of template tile", gy, e);
+        }
     }
     
     public Sample[] getSamples() {
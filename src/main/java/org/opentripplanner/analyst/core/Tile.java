@@ -9,6 +9,7 @@ import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
@@ -255,35 +256,41 @@ public abstract class Tile {
     
     final byte UNREACHABLE = Byte.MIN_VALUE;
 
+    /**
+     * Render the travel times from the given surface at the samples of this tile. The rows of the image are filled in
+     * in parallel, each by its own thread.
+     */
     public BufferedImage generateImage(TimeSurface surf, RenderRequest renderRequest) {
         long t0 = System.currentTimeMillis();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
-            byte pixel;
-            if (s != null) {
-                if (renderRequest.style == Style.BOARDINGS) {
-                    pixel = 0; // FIXME s.evalBoardings(surf);
-                } else {
-                    long t = s.eval(surf); // renderRequest.style
-                    if (t == Long.MAX_VALUE)
-                        pixel = UNREACHABLE;
-                    else {
-                        t /= 60;
-                        if (t < -120)
-                            t = -120;
-                        else if (t > 120)
-                            t = 120;
-                        pixel = (byte) t;
+        Sample[] samples = getSamples();
+        IntStream.range(0, height).parallel().forEach(row -> {
+            for (int i = row * width; i < (row + 1) * width; i++) {
+                Sample s = samples[i];
+                byte pixel;
+                if (s != null) {
+                    if (renderRequest.style == Style.BOARDINGS) {
+                        pixel = 0; // FIXME s.evalBoardings(surf);
+                    } else {
+                        long t = s.eval(surf); // renderRequest.style
+                        if (t == Long.MAX_VALUE)
+                            pixel = UNREACHABLE;
+                        else {
+                            t /= 60;
+                            if (t < -120)
+                                t = -120;
+                            else if (t > 120)
+                                t = 120;
+                            pixel = (byte) t;
+                        }
                     }
+                } else {
+                    pixel = UNREACHABLE;
                 }
-            } else {
-                pixel = UNREACHABLE;
+                imagePixelData[i] = pixel;
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
@@ -296,24 +303,26 @@ public abstract class Tile {
         long t0 = System.currentTimeMillis();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
-            byte pixel = UNREACHABLE;
-            if (s != null) {
-                long t1 = s.eval(surfA);
-                long t2 = s.eval(surfB);
-                if (t1 != Long.MAX_VALUE && t2 != Long.MAX_VALUE) {
-                    double t = (k1 * t1 + k2 * t2) / 60 + intercept; 
-                    if (t < -120)
-                        t = -120;
-                    else if (t > 120)
-                        t = 120;
-                    pixel = (byte) t;
+        Sample[] samples = getSamples();
+        IntStream.range(0, height).parallel().forEach(row -> {
+            for (int i = row * width; i < (row + 1) * width; i++) {
+                Sample s = samples[i];
+                byte pixel = UNREACHABLE;
+                if (s != null) {
+                    long t1 = s.eval(surfA);
+                    long t2 = s.eval(surfB);
+                    if (t1 != Long.MAX_VALUE && t2 != Long.MAX_VALUE) {
+                        double t = (k1 * t1 + k2 * t2) / 60 + intercept;
+                        if (t < -120)
+                            t = -120;
+                        else if (t > 120)
+                            t = 120;
+                        pixel = (byte) t;
+                    }
                 }
+                imagePixelData[i] = pixel;
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
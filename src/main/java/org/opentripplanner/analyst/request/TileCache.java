@@ -1,8 +1,11 @@
 package org.opentripplanner.analyst.request;
 
+import org.geotools.referencing.CRS;
+import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.core.TemplateTile;
 import org.opentripplanner.analyst.core.Tile;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,16 +13,63 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the samples of analyst tiles, which do not depend on the surface rendered and are expensive to find.
+ *
+ * If a sample directory is given, the samples of each tile are also saved there as compact arrays of vertex indices
+ * and distances, and read back instead of found again when the tile is requested after it was evicted or after a
+ * restart. The files of each graph are kept in their own subdirectory named after its router ID and build time, since
+ * vertex indices are only meaningful for the graph they were saved with. The directories of earlier builds of the graph
+ * are deleted on startup, and every file also records the graph it was saved for, so that it is never read for another.
+ */
+public class TileCache extends CacheLoader<TileRequest, Tile>
+    implements  Weigher<TileRequest, Tile> {
 
-public class TileCache extends CacheLoader<TileRequest, Tile> 
-    implements  Weigher<TileRequest, Tile> { 
-    
     private static final Logger LOG = LoggerFactory.getLogger(TileCache.class);
 
+    /** Stands for a missing vertex or sample in the saved files. */
+    private static final int NONE = -1;
+
     private Graph graph;
 
+    /** The router ID of the graph, which together with its build time identifies the graph samples were saved for. */
+    private final String routerId;
+
+    /** The directory in which the samples of the tiles of this graph are saved, or null if they are not saved. */
+    private final File sampleDirectory;
+
     public TileCache(Graph graph) {
+        this(graph, null);
+    }
+
+    /** @param sampleDirectory the directory in which to save the samples of tiles, or null not to save them */
+    public TileCache(Graph graph, File sampleDirectory) {
         this.graph = graph;
+        this.routerId = graph.routerId == null || graph.routerId.isEmpty() ? "default" : graph.routerId;
+        if (sampleDirectory != null) {
+            this.sampleDirectory = new File(sampleDirectory, routerId + "-" + graph.buildTime.getTime());
+            deleteStaleSampleDirectories(sampleDirectory);
+            if (!this.sampleDirectory.isDirectory() && !this.sampleDirectory.mkdirs()) {
+                LOG.warn("Could not create tile sample directory {}", this.sampleDirectory);
+            }
+        } else {
+            this.sampleDirectory = null;
+        }
         this.tileCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(concurrency)
                 .maximumSize(size)
@@ -34,7 +84,19 @@ public class TileCache extends CacheLoader<TileRequest, Tile>
     /** completes the abstract CacheLoader superclass */
     public Tile load(TileRequest req) throws Exception {
         LOG.debug("tile cache miss; cache size is {}", this.tileCache.size());
-        return new TemplateTile(req, graph);
+        File file = sampleFile(req);
+        if (file != null && file.exists()) {
+            try {
+                return new TemplateTile(req, readSamples(file));
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warn("Could not read tile samples from {}, finding them again", file, e);
+            }
+        }
+        TemplateTile tile = new TemplateTile(req, graph);
+        if (file != null) {
+            writeSamples(file, tile.getSamples());
+        }
+        return tile;
         //return new TemplateTile(req, hashSampler);
         //return new DynamicTile(req, hashSampler);
         //return new DynamicTile(req, sampleFactory);
@@ -44,10 +106,108 @@ public class TileCache extends CacheLoader<TileRequest, Tile>
     public Tile get(TileRequest req) throws Exception {
         return tileCache.get(req);
     }
-    
+
     @Override
     public int weigh(TileRequest req, Tile tile) {
         return tile.getSamples().length;
     }
-    
+
+    /**
+     * Delete the sample directories saved for other builds of this router's graph. Their vertex indices are not valid
+     * for the current graph, so they would never be read again.
+     */
+    private void deleteStaleSampleDirectories(File parent) {
+        Pattern stale = Pattern.compile(Pattern.quote(routerId) + "-\\d+");
+        File[] directories = parent.listFiles(file -> file.isDirectory() && !file.equals(sampleDirectory)
+                && stale.matcher(file.getName()).matches());
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            if (directory.delete()) {
+                LOG.info("Deleted tile samples of an earlier graph in {}", directory);
+            } else {
+                LOG.warn("Could not delete tile samples of an earlier graph in {}", directory);
+            }
+        }
+    }
+
+    /** @return the file the samples of the requested tile are saved in, or null if samples are not saved */
+    private File sampleFile(TileRequest req) {
+        if (sampleDirectory == null) {
+            return null;
+        }
+        String key = String.format("%s %f %f %f %f %d %d", CRS.toSRS(req.bbox.getCoordinateReferenceSystem()),
+                req.bbox.getMinX(), req.bbox.getMinY(), req.bbox.getMaxX(), req.bbox.getMaxY(),
+                req.width, req.height);
+        return new File(sampleDirectory, Hashing.sha1().hashString(key, StandardCharsets.UTF_8) + ".samples.gz");
+    }
+
+    /** Read samples saved by {@link #writeSamples(File, Sample[])}, resolving vertex indices in the graph. */
+    Sample[] readSamples(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (!routerId.equals(in.readUTF()) || graph.buildTime.getTime() != in.readLong()) {
+                throw new IOException("The tile samples in " + file + " were saved for another graph.");
+            }
+            Sample[] samples = new Sample[in.readInt()];
+            for (int i = 0; i < samples.length; i++) {
+                int v0 = in.readInt();
+                if (v0 == NONE) continue;
+                int d0 = in.readInt();
+                int v1 = in.readInt();
+                int d1 = in.readInt();
+                samples[i] = new Sample(vertex(v0), d0, v1 == NONE ? null : vertex(v1), d1);
+            }
+            return samples;
+        }
+    }
+
+    private Vertex vertex(int index) throws IOException {
+        Vertex vertex = graph.getVertexById(index);
+        if (vertex == null) {
+            throw new IOException("No vertex with index " + index + " in the graph.");
+        }
+        return vertex;
+    }
+
+    /**
+     * Save samples after the router ID and build time of the graph, as their number followed by the index of the first
+     * vertex, or NONE for a missing sample, then the distance to it, the index of the second vertex or NONE and the
+     * distance to it. Files are written under another name and then renamed, so that a tile being saved is never read
+     * by another thread or process.
+     */
+    void writeSamples(File file, Sample[] samples) {
+        File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            out.writeUTF(routerId);
+            out.writeLong(graph.buildTime.getTime());
+            out.writeInt(samples.length);
+            for (Sample s : samples) {
+                if (s == null || s.v0 == null) {
+                    out.writeInt(NONE);
+                    continue;
+                }
+                out.writeInt(s.v0.getIndex());
+                out.writeInt(s.d0);
+                out.writeInt(s.v1 == null ? NONE : s.v1.getIndex());
+                out.writeInt(s.d1);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not save tile samples to {}", file, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
 }
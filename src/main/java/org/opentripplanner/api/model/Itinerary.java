@@ -86,6 +86,12 @@ public class Itinerary {
      */
     public boolean tooSloped = false;
 
+    /**
+     * In a summary plan, an opaque handle with which the full details of this itinerary can be fetched from
+     * /plan/itineraries/{handle} for a while. Null in full plans.
+     */
+    public String handle = null;
+
     /** 
      * adds leg to array list
      * @param leg
@@ -0,0 +1,239 @@
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.api.common.ParameterException;
+import org.opentripplanner.api.common.RoutingResource;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.algorithm.strategies.MultiTargetTerminationStrategy;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.error.VertexNotFoundException;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.standalone.Router;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes travel times from many origins to many destinations in a single request, for clients that need a travel
+ * time matrix and would otherwise make one /plan call per pair.
+ *
+ * Instead of one point-to-point search per pair, there is one batch (one-to-many) search per origin and departure
+ * time, which stops as soon as all destinations are reached. The origin is linked into the street network and the
+ * search is set up once per origin, and each destination is linked once for the whole request. Results are streamed
+ * to the client one origin at a time as the searches complete.
+ *
+ * Routing options (modes, walk speed etc.) are given as query parameters, like for /plan. The origins, destinations
+ * and departure times are POSTed as a JSON {@link BatchPlanRequest}.
+ */
+@Path("routers/{routerId}/plan/batch")
+public class BatchPlannerResource extends RoutingResource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchPlannerResource.class);
+
+    /** Maximum number of searches (origins times departure times) in one request. */
+    private static final int MAX_SEARCHES = 1000;
+
+    /** Maximum number of destinations in one request. */
+    private static final int MAX_DESTINATIONS = 10000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void plan(BatchPlanRequest batch, @Suspended AsyncResponse asyncResponse) {
+        if (batch == null || batch.origins == null || batch.destinations == null) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST)
+                    .entity("The request must contain origins and destinations.").build());
+            return;
+        }
+        int nTimes = batch.departureTimes == null || batch.departureTimes.isEmpty() ? 1 : batch.departureTimes.size();
+        if ((long) batch.origins.size() * nTimes > MAX_SEARCHES || batch.destinations.size() > MAX_DESTINATIONS) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST).entity(String.format(
+                    "At most %d origins times departure times and %d destinations are allowed.", MAX_SEARCHES,
+                    MAX_DESTINATIONS)).build());
+            return;
+        }
+        otpServer.getRoutingExecutor().execute(asyncResponse, routerId, () -> {
+            RoutingRequest template;
+            try {
+                template = super.buildRequest();
+            } catch (ParameterException e) {
+                return Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build();
+            }
+            Router router = otpServer.getRouter(routerId);
+            // The response is written on this routing thread, when the AsyncResponse is resumed
+            StreamingOutput output = out -> writeResults(out, router.graph, template, batch);
+            return Response.ok(output, MediaType.APPLICATION_JSON).build();
+        });
+    }
+
+    /**
+     * Write the results of all searches as a JSON array, one object per origin and departure time. A search that fails
+     * is reported in its own object, so the array is always complete.
+     */
+    static void writeResults(OutputStream out, Graph graph, RoutingRequest template, BatchPlanRequest batch)
+            throws IOException {
+        // Link each destination to the street network once for all searches
+        SampleFactory sampleFactory = graph.getSampleFactory();
+        List<Sample> samples = new ArrayList<>(batch.destinations.size());
+        Set<Vertex> targets = new HashSet<>();
+        for (BatchPlace destination : batch.destinations) {
+            Sample sample = sampleFactory.getSample(destination.lon, destination.lat);
+            samples.add(sample);
+            if (sample != null) {
+                if (sample.v0 != null) targets.add(sample.v0);
+                if (sample.v1 != null) targets.add(sample.v1);
+            }
+        }
+        List<Long> departureTimes = batch.departureTimes == null || batch.departureTimes.isEmpty()
+                ? Collections.singletonList(template.dateTime) : batch.departureTimes;
+
+        JsonGenerator json = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartArray();
+        for (BatchPlace origin : batch.origins) {
+            for (long departureTime : departureTimes) {
+                json.writeStartObject();
+                json.writeStringField("origin", origin.id);
+                json.writeNumberField("departureTime", departureTime);
+                RoutingRequest request = template.clone();
+                try {
+                    // Evaluate everything before writing, so that a failure cannot leave a partial object behind
+                    DestinationResult[] results = search(graph, request, origin, departureTime, batch.maxTravelTime,
+                            targets, samples);
+                    if (results == null) {
+                        json.writeStringField("error", "Origin is not near the street network.");
+                    } else {
+                        writeDestinations(json, batch.destinations, results);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Batch search from origin {} failed.", origin.id, e);
+                    json.writeStringField("error", "The search failed.");
+                } finally {
+                    if (request.rctx != null) {
+                        request.cleanup();
+                    }
+                }
+                json.writeEndObject();
+                // Let the client process this origin while the next one is computed
+                json.flush();
+            }
+        }
+        json.writeEndArray();
+        json.close();
+    }
+
+    /**
+     * @param request a copy of the template, which is set up for this search. Its routing context must be cleaned up
+     *                by the caller.
+     * @return the result for each destination, or null if the origin could not be linked.
+     */
+    private static DestinationResult[] search(Graph graph, RoutingRequest request, BatchPlace origin,
+            long departureTime, int maxTravelTime, Set<Vertex> targets, List<Sample> samples) {
+        request.batch = true;
+        request.arriveBy = false;
+        request.from = new GenericLocation(origin.lat, origin.lon);
+        request.dateTime = departureTime;
+        request.worstTime = departureTime + maxTravelTime;
+        try {
+            request.setRoutingContext(graph);
+        } catch (VertexNotFoundException e) {
+            LOG.debug("Batch origin {} could not be linked.", origin.id);
+            return null;
+        }
+        ShortestPathTree spt = new AStar().getShortestPathTree(request, -1,
+                new MultiTargetTerminationStrategy(targets));
+        DestinationResult[] results = new DestinationResult[samples.size()];
+        for (int i = 0; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            long duration = sample == null ? Long.MAX_VALUE : sample.eval(spt);
+            if (duration != Long.MAX_VALUE) {
+                results[i] = new DestinationResult(duration, Math.round(sample.evalWalkDistance(spt)),
+                        sample.evalBoardings(spt));
+            }
+        }
+        return results;
+    }
+
+    private static void writeDestinations(JsonGenerator json, List<BatchPlace> destinations,
+            DestinationResult[] results) throws IOException {
+        json.writeArrayFieldStart("destinations");
+        for (int i = 0; i < destinations.size(); i++) {
+            json.writeStartObject();
+            json.writeStringField("id", destinations.get(i).id);
+            DestinationResult result = results[i];
+            if (result != null) {
+                json.writeNumberField("duration", result.duration);
+                json.writeNumberField("walkDistance", result.walkDistance);
+                json.writeNumberField("boardings", result.boardings);
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    /** The travel to one reached destination. */
+    private static class DestinationResult {
+        final long duration;
+        final long walkDistance;
+        final int boardings;
+
+        DestinationResult(long duration, long walkDistance, int boardings) {
+            this.duration = duration;
+            this.walkDistance = walkDistance;
+            this.boardings = boardings;
+        }
+    }
+
+    /** The body of a batch plan request. */
+    public static class BatchPlanRequest {
+
+        public List<BatchPlace> origins;
+
+        public List<BatchPlace> destinations;
+
+        /**
+         * Departure times in seconds since the epoch. A search is made from each origin at each of these times.
+         * Defaults to the date and time query parameters.
+         */
+        public List<Long> departureTimes;
+
+        /** Destinations not reached within this many seconds are reported as unreachable. */
+        public int maxTravelTime = 2 * 60 * 60;
+    }
+
+    /** An origin or destination of a batch plan request. */
+    public static class BatchPlace {
+
+        /** An identifier chosen by the client, repeated in the results. */
+        public String id;
+
+        public double lat;
+
+        public double lon;
+    }
+}
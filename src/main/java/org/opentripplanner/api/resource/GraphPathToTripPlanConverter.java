@@ -5,7 +5,6 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.opentripplanner.api.model.*;
 import org.opentripplanner.common.geometry.DirectionUtils;
-import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.model.Agency;
@@ -15,6 +14,7 @@ import org.opentripplanner.model.Trip;
 import org.opentripplanner.profile.BikeRentalStationInfo;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchIndex;
 import org.opentripplanner.routing.core.*;
 import org.opentripplanner.routing.edgetype.*;
 import org.opentripplanner.routing.edgetype.flex.PartialPatternHop;
@@ -29,6 +29,7 @@ import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.*;
 import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +49,16 @@ public abstract class GraphPathToTripPlanConverter {
      * Generates a TripPlan from a set of paths
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
+        return generatePlan(paths, request, null);
+    }
+
+    /**
+     * Generates a TripPlan from a set of paths. If a details cache is given, only summary itineraries are generated:
+     * without walk steps, intermediate stops, alerts or fares. Each of them gets a handle with which the full
+     * itinerary can be generated later from the cached path.
+     */
+    public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request,
+            ItineraryDetailsCache detailsCache) {
 
         Locale requestedLocale = request.locale;
 
@@ -76,8 +87,7 @@ public abstract class GraphPathToTripPlanConverter {
         long bestNonTransitTime = Long.MAX_VALUE;
         List<Itinerary> itineraries = new LinkedList<>();
         for (GraphPath path : paths) {
-            Itinerary itinerary = generateItinerary(path, request.showIntermediateStops, request.disableAlertFiltering, requestedLocale);
-            itinerary = adjustItinerary(request, itinerary);
+            Itinerary itinerary = generateItinerary(path, request, detailsCache != null);
             if(itinerary.transitTime == 0 && itinerary.walkTime < bestNonTransitTime) {
                 bestNonTransitTime = itinerary.walkTime;
             }
@@ -85,46 +95,62 @@ public abstract class GraphPathToTripPlanConverter {
         }
 
         // Filter and add itineraries to plan
+        Iterator<GraphPath> pathIterator = paths.iterator();
         for (Itinerary itinerary : itineraries) {
+            GraphPath path = pathIterator.next();
             // If this is a transit option whose walk/bike time is greater than that of the walk/bike-only option,
             // do not include in plan
             if(itinerary.transitTime > 0 && itinerary.walkTime > bestNonTransitTime) continue;
 
+            if (detailsCache != null) {
+                itinerary.handle = detailsCache.put(path, request);
+            }
             plan.addItinerary(itinerary);
         }
 
-        if (plan != null) {
-            for (Itinerary i : plan.itinerary) {
-                /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
-                i.tooSloped = request.rctx.slopeRestrictionRemoved;
-                /* fix up from/to on first/last legs */
-                if (i.legs.size() == 0) {
-                    LOG.warn("itinerary has no legs");
-                    continue;
-                }
-                Leg firstLeg = i.legs.get(0);
-                firstLeg.from.orig = plan.from.orig;
-                Leg lastLeg = i.legs.get(i.legs.size() - 1);
-                lastLeg.to.orig = plan.to.orig;
-            }
-        }
         request.rctx.debugOutput.finishedRendering();
         return plan;
     }
 
     /**
-     * Check whether itinerary needs adjustments based on the request.
+     * Generate an itinerary of a trip plan from a {@link GraphPath}, including the adjustments that depend on the
+     * request.
+     *
+     * @param summaryOnly Whether to leave out the walk steps, intermediate stops, alerts and fare
+     */
+    static Itinerary generateItinerary(GraphPath path, RoutingRequest request, boolean summaryOnly) {
+        Itinerary itinerary = generateItinerary(path, request.showIntermediateStops && !summaryOnly,
+                request.disableAlertFiltering, request.locale, summaryOnly);
+        adjustItinerary(itinerary, request.maxWalkDistance, request.rctx.slopeRestrictionRemoved, request.from.name,
+                request.to.name);
+        return itinerary;
+    }
+
+    /**
+     * Apply the adjustments that depend on the request to an itinerary.
      * @param itinerary is the itinerary
-     * @param request is the request containing the original trip planning options
-     * @return the (adjusted) itinerary
+     * @param maxWalkDistance is the maximum walk distance of the request
+     * @param tooSloped whether a slope limit had to be removed to find the itinerary
+     * @param fromName is the name of the origin given in the request
+     * @param toName is the name of the destination given in the request
      */
-    private static Itinerary adjustItinerary(RoutingRequest request, Itinerary itinerary) {
+    static void adjustItinerary(Itinerary itinerary, double maxWalkDistance, boolean tooSloped, String fromName,
+            String toName) {
         // Check walk limit distance
-        if (itinerary.walkDistance > request.maxWalkDistance) {
+        if (itinerary.walkDistance > maxWalkDistance) {
             itinerary.walkLimitExceeded = true;
         }
-        // Return itinerary
-        return itinerary;
+        /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
+        itinerary.tooSloped = tooSloped;
+        /* fix up from/to on first/last legs */
+        if (itinerary.legs.size() == 0) {
+            LOG.warn("itinerary has no legs");
+        } else {
+            Leg firstLeg = itinerary.legs.get(0);
+            firstLeg.from.orig = fromName;
+            Leg lastLeg = itinerary.legs.get(itinerary.legs.size() - 1);
+            lastLeg.to.orig = toName;
+        }
     }
 
     /**
@@ -137,6 +163,10 @@ public abstract class GraphPathToTripPlanConverter {
      * @return The generated itinerary
      */
     public static Itinerary generateItinerary(GraphPath path, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale) {
+        return generateItinerary(path, showIntermediateStops, disableAlertFiltering, requestedLocale, false);
+    }
+
+    private static Itinerary generateItinerary(GraphPath path, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale, boolean summaryOnly) {
         Itinerary itinerary = new Itinerary();
 
         State[] states = new State[path.states.size()];
@@ -152,15 +182,19 @@ public abstract class GraphPathToTripPlanConverter {
 
         State[][] legsStates = sliceStates(states);
 
-        if (fareService != null) {
+        if (summaryOnly) {
+            itinerary.fare = null;
+        } else if (fareService != null) {
             itinerary.fare = fareService.getCost(path);
         }
 
         for (State[] legStates : legsStates) {
-            itinerary.addLeg(generateLeg(graph, legStates, showIntermediateStops, disableAlertFiltering, requestedLocale));
+            itinerary.addLeg(generateLeg(graph, legStates, showIntermediateStops, disableAlertFiltering, requestedLocale, summaryOnly));
         }
 
-        addWalkSteps(graph, itinerary.legs, legsStates, requestedLocale);
+        if (!summaryOnly) {
+            addWalkSteps(graph, itinerary.legs, legsStates, requestedLocale);
+        }
 
         fixupLegs(itinerary.legs, legsStates);
 
@@ -218,6 +252,28 @@ public abstract class GraphPathToTripPlanConverter {
         return coordinates;
     }
 
+    /**
+     * Encode the geometry of an {@link Edge} array as a polyline, with the same points as {@link #makeCoordinates}
+     * but reading them straight from the edge geometries, without copying them into a coordinate list first.
+     *
+     * @param edges The array of input edges
+     * @return The encoded polyline of the points on the edges
+     */
+    public static EncodedPolylineBean encodeGeometry(Edge[] edges) {
+        PolylineEncoder.Encoder encoder = new PolylineEncoder.Encoder();
+
+        for (Edge edge : edges) {
+            LineString geometry = edge.getDisplayGeometry();
+
+            if (geometry != null) {
+                // Avoid duplications
+                encoder.add(geometry.getCoordinateSequence(), encoder.size() == 0 ? 0 : 1);
+            }
+        }
+
+        return encoder.getEncoding();
+    }
+
     /**
      * Slice a {@link State} array at the leg boundaries. Leg switches occur when:
      * 1. A LEG_SWITCH mode (which itself isn't part of any leg) is seen
@@ -296,9 +352,10 @@ public abstract class GraphPathToTripPlanConverter {
      *
      * @param states The array of states to base the leg on
      * @param showIntermediateStops Whether to include intermediate stops in the leg or not
+     * @param summaryOnly Whether to leave out the alerts
      * @return The generated leg
      */
-    private static Leg generateLeg(Graph graph, State[] states, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale) {
+    private static Leg generateLeg(Graph graph, State[] states, boolean showIntermediateStops, boolean disableAlertFiltering, Locale requestedLocale, boolean summaryOnly) {
         Leg leg = new Leg();
 
         Edge[] edges = new Edge[states.length - 1];
@@ -320,10 +377,7 @@ public abstract class GraphPathToTripPlanConverter {
 
         addPlaces(leg, states, edges, showIntermediateStops, requestedLocale);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        leg.legGeometry = encodeGeometry(edges);
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
@@ -331,7 +385,7 @@ public abstract class GraphPathToTripPlanConverter {
 
         leg.rentedBike = states[0].isBikeRenting() && states[states.length - 1].isBikeRenting();
 
-        addModeAndAlerts(graph, leg, states, disableAlertFiltering, requestedLocale);
+        addModeAndAlerts(graph, leg, states, !summaryOnly, disableAlertFiltering, requestedLocale);
         if (leg.isTransitLeg()) addRealTimeData(leg, states);
 
         return leg;
@@ -527,24 +581,30 @@ public abstract class GraphPathToTripPlanConverter {
      *
      * @param leg The leg to add the mode and alerts to
      * @param states The states that go with the leg
+     * @param addAlerts Whether to add the alerts or only the mode
      */
-    private static void addModeAndAlerts(Graph graph, Leg leg, State[] states, boolean disableAlertFiltering, Locale requestedLocale) {
+    private static void addModeAndAlerts(Graph graph, Leg leg, State[] states, boolean addAlerts, boolean disableAlertFiltering, Locale requestedLocale) {
+        // Use a single version of the alert index for the whole leg.
+        AlertPatchIndex alertPatchIndex = graph.getAlertPatchIndex();
         for (State state : states) {
             TraverseMode mode = state.getBackMode();
-            Set<Alert> alerts = graph.streetNotesService.getNotes(state);
-            Edge edge = state.getBackEdge();
 
             if (mode != null) {
                 leg.mode = mode.toString();
             }
 
+            if (!addAlerts) continue;
+
+            Set<Alert> alerts = graph.streetNotesService.getNotes(state);
+            Edge edge = state.getBackEdge();
+
             if (alerts != null) {
                 for (Alert alert : alerts) {
                     leg.addAlert(alert, requestedLocale);
                 }
             }
 
-            for (AlertPatch alertPatch : graph.getAlertPatches(edge)) {
+            for (AlertPatch alertPatch : alertPatchIndex.getEdgePatches(edge)) {
                 if (disableAlertFiltering || alertPatch.displayDuring(state)) {
                     if (alertPatch.hasTrip()) {
                         // If the alert patch contains a trip and that trip match this leg only add the alert for
@@ -0,0 +1,108 @@
+package org.opentripplanner.api.resource;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+
+/**
+ * Keeps the paths behind the itineraries of summary plans for a while, so that the full details of an itinerary
+ * (walk steps, elevation profiles, intermediate stops, alerts and fare) are only generated for the itineraries a
+ * client actually looks at.
+ *
+ * Each path is stored under a random handle, which is returned in the summary itinerary. Handles are dropped after a
+ * fixed time or when the cache is full, least recently used first; the client then has to plan again. Apart from the
+ * path, only the few request parameters needed to complete the itinerary are kept.
+ */
+public class ItineraryDetailsCache {
+
+    private final Cache<String, Entry> cache;
+
+    public ItineraryDetailsCache(long maxSize, long ttlSeconds) {
+        this(maxSize, ttlSeconds, Ticker.systemTicker());
+    }
+
+    /** @param ticker the time source for expiring handles, which tests can control */
+    ItineraryDetailsCache(long maxSize, long ttlSeconds, Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(ttlSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * @param path the path of a summary itinerary
+     * @param request the request the path was found for
+     * @return the handle with which the full itinerary can be generated
+     */
+    public String put(GraphPath path, RoutingRequest request) {
+        // Handles must not be guessable, as itineraries say where people are going
+        String handle = UUID.randomUUID().toString();
+        cache.put(handle, new Entry(path, request));
+        return handle;
+    }
+
+    /** @return the full itinerary for the given handle, or null if it is unknown or expired. */
+    public Itinerary getItinerary(String handle) {
+        Entry entry = cache.getIfPresent(handle);
+        if (entry == null) {
+            return null;
+        }
+        Itinerary itinerary = GraphPathToTripPlanConverter.generateItinerary(entry.path, entry.showIntermediateStops,
+                entry.disableAlertFiltering, entry.locale);
+        GraphPathToTripPlanConverter.adjustItinerary(itinerary, entry.maxWalkDistance, entry.tooSloped,
+                entry.fromName, entry.toName);
+        itinerary.handle = handle;
+        return itinerary;
+    }
+
+    /**
+     * Check that the details of all itineraries of a summary plan can still be fetched, and keep them for another
+     * full period. A summary plan that is answered again, for instance from a plan cache, must not hand out handles
+     * that have already been dropped.
+     *
+     * @return whether the handles of all itineraries of the plan are still known
+     */
+    public boolean hasDetails(TripPlan plan) {
+        for (Itinerary itinerary : plan.itinerary) {
+            if (itinerary.handle == null || cache.getIfPresent(itinerary.handle) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    private static class Entry {
+        final GraphPath path;
+        final Locale locale;
+        final boolean showIntermediateStops;
+        final boolean disableAlertFiltering;
+        final double maxWalkDistance;
+        final boolean tooSloped;
+        final String fromName;
+        final String toName;
+
+        Entry(GraphPath path, RoutingRequest request) {
+            this.path = path;
+            this.locale = request.locale;
+            this.showIntermediateStops = request.showIntermediateStops;
+            this.disableAlertFiltering = request.disableAlertFiltering;
+            this.maxWalkDistance = request.maxWalkDistance;
+            this.tooSloped = request.rctx.slopeRestrictionRemoved;
+            this.fromName = request.from.name;
+            this.toName = request.to.name;
+        }
+    }
+}
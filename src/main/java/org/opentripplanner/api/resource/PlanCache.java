@@ -0,0 +1,179 @@
+package org.opentripplanner.api.resource;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+
+/**
+ * An optional cache of trip plans, so that repeated identical /plan requests (kiosks, prefetching clients, retries)
+ * are answered without searching the graph or converting paths to itineraries again.
+ *
+ * Requests are keyed on their query parameters, with the origin and destination rounded to about a meter and the
+ * departure or arrival time bucketed to the minute. On every lookup the cache compares the version of the realtime data
+ * a plan depends on (the timetable snapshot, the bike rental availability and the alert patches) with the one its
+ * entries were computed against; as soon as a new version of any of them is published, the whole cache is emptied.
+ * Plans computed against an older version are never stored.
+ */
+public class PlanCache implements PlanCacheMXBean {
+
+    /** Parameters that are replaced in the cache key by their canonical form, taken from the routing request. */
+    private static final String[] CANONICAL_PARAMETERS = { "fromPlace", "toPlace", "date", "time" };
+
+    private final Graph graph;
+
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The version of the realtime data the entries in the cache were computed against. */
+    private volatile long generation = 0;
+
+    private long invalidationCount = 0;
+
+    public PlanCache(Graph graph, long maxSize, long ttlSeconds) {
+        this.graph = graph;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return a number identifying the realtime data currently published. Call this before planning and pass the
+     *         result to {@link #put}, so that plans computed while the data changed are not cached.
+     */
+    public long currentGeneration() {
+        long version = graph.getRealtimeDataVersion();
+        if (version != generation) {
+            invalidate(version);
+        }
+        return version;
+    }
+
+    private synchronized void invalidate(long version) {
+        // Versions only increase, a thread that read an older one must not bring it back
+        if (version > generation) {
+            generation = version;
+            if (cache.size() > 0) {
+                cache.invalidateAll();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the cached plan for the given key, or null if there is none for the current realtime data.
+     *         The caller can change the copy and its list of itineraries, but the itineraries themselves are shared
+     *         with the cache and must not be modified.
+     */
+    public TripPlan get(String key) {
+        long generation = currentGeneration();
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null || entry.generation != generation) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return copy(entry.plan);
+    }
+
+    /**
+     * Cache a copy of a plan, unless the realtime data changed since it was computed. The itineraries of the plan must
+     * not be modified afterwards.
+     *
+     * @param generation the value returned by {@link #currentGeneration()} before the plan was computed
+     */
+    public void put(String key, TripPlan plan, long generation) {
+        if (generation == currentGeneration()) {
+            cache.put(key, new Entry(copy(plan), generation));
+        }
+    }
+
+    /** @return a new plan with the same places, a copy of the date and a new list of the same itineraries */
+    private static TripPlan copy(TripPlan plan) {
+        TripPlan copy = new TripPlan(plan.from, plan.to, plan.date == null ? null : new Date(plan.date.getTime()));
+        copy.itinerary.addAll(plan.itinerary);
+        return copy;
+    }
+
+    /**
+     * @param request the routing request built from the parameters, giving the canonical places and time
+     * @param parameters the query parameters of the request
+     * @return the cache key for a plan request
+     */
+    public static String key(RoutingRequest request, Map<String, String> parameters) {
+        Map<String, String> canonical = new TreeMap<>(parameters);
+        for (String parameter : CANONICAL_PARAMETERS) {
+            canonical.remove(parameter);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.routerId);
+        sb.append('|').append(canonicalPlace(request.from));
+        sb.append('|').append(canonicalPlace(request.to));
+        sb.append('|').append(request.dateTime / 60);
+        for (Map.Entry<String, String> entry : canonical.entrySet()) {
+            sb.append('|').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static String canonicalPlace(GenericLocation location) {
+        if (location == null) {
+            return "";
+        }
+        if (location.hasCoordinate()) {
+            // Five decimals is about a meter, closer than any two street vertices
+            return String.format(Locale.ROOT, "%.5f,%.5f", location.lat, location.lng);
+        }
+        return location.place;
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    private static class Entry {
+        final TripPlan plan;
+        final long generation;
+
+        Entry(TripPlan plan, long generation) {
+            this.plan = plan;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.opentripplanner.api.resource;
+
+/**
+ * The JMX view of the {@link PlanCache} of a router. Registered by the Router under the name
+ * org.opentripplanner:type=PlanCache,router=...
+ */
+public interface PlanCacheMXBean {
+
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /** @return the fraction of lookups answered from the cache, or 1 if there were none. */
+    double getHitRatio();
+
+    /** @return the number of times the whole cache was emptied because realtime data changed. */
+    long getInvalidationCount();
+}
@@ -2,6 +2,8 @@ package org.opentripplanner.api.resource;
 
 import org.glassfish.grizzly.http.server.Request;
 import org.opentripplanner.api.common.RoutingResource;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
 import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -13,9 +15,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -37,12 +45,73 @@ public class PlannerResource extends RoutingResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(PlannerResource.class);
 
+    /**
+     * Whether to return summary itineraries only, without walk steps, intermediate stops, alerts or fares. Each of
+     * them has a handle with which its full details can be fetched from /plan/itineraries/{handle}.
+     */
+    @QueryParam("summary")
+    protected boolean summary;
+
     // We inject info about the incoming request so we can include the incoming query
     // parameters in the outgoing response. This is a TriMet requirement.
     // Jersey uses @Context to inject internal types and @InjectParam or @Resource for DI objects.
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
-    public Response plan(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
+    public void plan(@Context UriInfo uriInfo, @Context HttpHeaders headers, @Context Request grizzlyRequest,
+            @Suspended AsyncResponse asyncResponse) {
+        // Read what we need from the request context before leaving the HTTP handler thread.
+        // Create response object, containing a copy of all request parameters. Maybe they should be in the debug section of the response.
+        Response response = new Response(uriInfo);
+        String clientIpAddress = grizzlyRequest.getRemoteAddr();
+        boolean json = prefersJson(headers);
+        otpServer.getRoutingExecutor().execute(asyncResponse, routerId, () -> {
+            plan(response, clientIpAddress);
+            if (json && otpServer.getRouter(routerId).streamPlanJson) {
+                // Write the plan ourselves rather than through the reflective Jackson provider
+                return javax.ws.rs.core.Response.ok(new TripPlanJsonWriter(response), MediaType.APPLICATION_JSON)
+                        .build();
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Generate the full details of an itinerary from a summary plan.
+     *
+     * @param handle the handle of the itinerary, from the summary plan
+     */
+    @GET
+    @Path("itineraries/{handle}")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
+    public void itinerary(@PathParam("handle") String handle, @Suspended AsyncResponse asyncResponse) {
+        otpServer.getRoutingExecutor().execute(asyncResponse, routerId,
+                () -> itinerary(otpServer.getRouter(routerId).itineraryDetailsCache, handle));
+    }
+
+    /** @return the full itinerary with the given handle, or a 404 response if the handle is unknown or expired */
+    static Object itinerary(ItineraryDetailsCache detailsCache, String handle) {
+        Itinerary itinerary = detailsCache.getItinerary(handle);
+        if (itinerary == null) {
+            return javax.ws.rs.core.Response.status(Status.NOT_FOUND).type(MediaType.TEXT_PLAIN)
+                    .entity("Unknown or expired itinerary handle, please plan the trip again.").build();
+        }
+        return itinerary;
+    }
+
+    /** @return whether the client would rather have JSON than XML, JSON being the default. */
+    private static boolean prefersJson(HttpHeaders headers) {
+        for (MediaType type : headers.getAcceptableMediaTypes()) {
+            if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return true;
+            }
+            if (type.isCompatible(MediaType.APPLICATION_XML_TYPE) || type.isCompatible(MediaType.TEXT_XML_TYPE)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private Response plan(Response response, String clientIpAddress) {
 
         /*
          * TODO: add Lang / Locale parameter, and thus get localized content (Messages & more...)
@@ -52,24 +121,44 @@ public class PlannerResource extends RoutingResource {
          *       out so it's used here too...
          */
 
-        // Create response object, containing a copy of all request parameters. Maybe they should be in the debug section of the response.
-        Response response = new Response(uriInfo);
         RoutingRequest request = null;
         Router router = null;
         List<GraphPath> paths = null;
+        TripPlan cachedPlan = null;
         try {
 
             /* Fill in request fields from query parameters via shared superclass method, catching any errors. */
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
 
-            /* Find some good GraphPaths through the OTP Graph. */
-            GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
-            paths = gpFinder.graphPathFinderEntryPoint(request);
+            /* Answer identical requests from the cache if it is enabled, skipping both the search and conversion. */
+            PlanCache planCache = router.planCache;
+            String cacheKey = null;
+            long cacheGeneration = 0;
+            if (planCache != null) {
+                cacheKey = PlanCache.key(request, response.requestParameters);
+                cacheGeneration = planCache.currentGeneration();
+                cachedPlan = planCache.get(cacheKey);
+                if (cachedPlan != null && summary && !router.itineraryDetailsCache.hasDetails(cachedPlan)) {
+                    // The details of a summary plan can be dropped before the plan, plan again to get new handles
+                    cachedPlan = null;
+                }
+            }
+            if (cachedPlan != null) {
+                response.setPlan(cachedPlan);
+            } else {
+                /* Find some good GraphPaths through the OTP Graph. */
+                GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+                paths = gpFinder.graphPathFinderEntryPoint(request);
 
-            /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
-            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
-            response.setPlan(plan);
+                /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+                TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request,
+                        summary ? router.itineraryDetailsCache : null);
+                response.setPlan(plan);
+                if (planCache != null) {
+                    planCache.put(cacheKey, plan, cacheGeneration);
+                }
+            }
 
         } catch (Exception e) {
             PlannerError error = new PlannerError(e);
@@ -93,7 +182,6 @@ public class PlannerResource extends RoutingResource {
         /* Log this request if such logging is enabled. */
         if (request != null && router != null && router.requestLogger != null) {
             StringBuilder sb = new StringBuilder();
-            String clientIpAddress = grizzlyRequest.getRemoteAddr();
             //sb.append(LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
             sb.append(clientIpAddress);
             sb.append(' ');
@@ -118,6 +206,13 @@ public class PlannerResource extends RoutingResource {
                     sb.append(path.getTrips().size());
                     sb.append(' ');
                 }
+            } else if (cachedPlan != null) {
+                for (Itinerary itinerary : cachedPlan.itinerary) {
+                    sb.append(itinerary.duration);
+                    sb.append(' ');
+                    sb.append(itinerary.legs.stream().filter(Leg::isTransitLeg).count());
+                    sb.append(' ');
+                }
             }
             router.requestLogger.info(sb.toString());
         }
@@ -12,11 +12,14 @@ import org.opentripplanner.profile.Option;
 import org.opentripplanner.profile.ProfileRequest;
 import org.opentripplanner.profile.ProfileResponse;
 import org.opentripplanner.profile.ProfileRouter;
+import org.opentripplanner.profile.RaptorJourney;
+import org.opentripplanner.profile.RaptorWorkerDataCache;
 import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
+import org.opentripplanner.standalone.RoutingExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,10 +29,13 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,16 +48,24 @@ public class ProfileResource {
     private static final Logger LOG = LoggerFactory.getLogger(ProfileResource.class);
     private Graph graph;
     private SurfaceCache surfaceCache;
+    private RaptorWorkerDataCache raptorWorkerDataCache;
+    private RoutingExecutor routingExecutor;
+    private String routerId;
+    private int raptorChunks;
 
     public ProfileResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
         graph = router.graph;
         surfaceCache = otpServer.surfaceCache;
+        raptorWorkerDataCache = otpServer.raptorWorkerDataCache;
+        routingExecutor = otpServer.getRoutingExecutor();
+        this.routerId = routerId;
+        raptorChunks = router.raptorChunks;
     }
 
     @GET
     @Produces({ MediaType.APPLICATION_JSON })
-    public Response profileRoute (
+    public void profileRoute (
             @QueryParam("from")  LatLon from,
             @QueryParam("to")    LatLon to,
             @QueryParam("analyst")      @DefaultValue("false") boolean analyst,
@@ -77,7 +91,9 @@ public class ProfileResource {
             @QueryParam("egressModes")  @DefaultValue("WALK")         QualifiedModeSet egressModes,
             @QueryParam("directModes")  @DefaultValue("WALK,BICYCLE") QualifiedModeSet directModes,
             @QueryParam("transitModes") @DefaultValue("TRANSIT")      TraverseModeSet transitModes,
-            @QueryParam("banAgency") String banAgency)
+            @QueryParam("banAgency") String banAgency,
+            @QueryParam("engine")       @DefaultValue("profile") String engine, // "raptor" for RAPTOR journeys
+            @Suspended AsyncResponse asyncResponse)
             throws Exception {
 
         QueryParameter.checkRangeInclusive(limit, 0, Integer.MAX_VALUE);
@@ -127,6 +143,10 @@ public class ProfileResource {
         req.bikeTime     = bikeTime;
         req.suboptimalMinutes = suboptimalMinutes;
 
+        routingExecutor.execute(asyncResponse, routerId, () -> route(req, banAgency, engine));
+    }
+
+    private Response route (ProfileRequest req, String banAgency, String engine) {
         if (req.analyst) {
             if (surfaceCache == null) {
                 LOG.error ("You must run OTP with the --analyst option to enable spatial analysis features.");
@@ -136,6 +156,8 @@ public class ProfileResource {
             /* There are rarely frequency-only graphs. Use the Raptor profile router for both freqs and schedules. */
             RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
             router.banAgency = banAgency;
+            router.raptorWorkerDataCache = raptorWorkerDataCache;
+            router.raptorChunks = raptorChunks;
             router.route();
             result = router.timeSurfaceRangeSet;
             Map<String, Integer> idForSurface = Maps.newHashMap();
@@ -143,6 +165,19 @@ public class ProfileResource {
             idForSurface.put("avg", surfaceCache.add(result.avg));
             idForSurface.put("max", surfaceCache.add(result.max));
             return Response.status(Status.OK).entity(idForSurface).build();
+        } else if ("raptor".equals(engine)) {
+            /* Point to point journeys with paths, from a RAPTOR search on the tables used for analysis. */
+            RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
+            router.raptorWorkerDataCache = raptorWorkerDataCache;
+            try {
+                List<RaptorJourney> journeys = router.routeJourneys();
+                return Response.status(Status.OK).entity(journeys).build();
+            } catch (Throwable throwable) {
+                LOG.error("Exception caught in raptor profile routing", throwable);
+                return Response.status(Status.INTERNAL_SERVER_ERROR).entity(throwable.toString()).build();
+            } finally {
+                router.cleanup(); // destroy routing contexts even when an exception happens
+            }
         } else {
             ProfileRouter router = new ProfileRouter(graph, req);
             try {
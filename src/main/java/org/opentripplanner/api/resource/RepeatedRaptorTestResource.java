@@ -8,6 +8,7 @@ import org.opentripplanner.analyst.TimeSurface;
 import org.opentripplanner.api.param.LatLon;
 import org.opentripplanner.api.parameter.QualifiedModeSet;
 import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorkerDataCache;
 import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.error.VertexNotFoundException;
@@ -38,6 +39,7 @@ public class RepeatedRaptorTestResource {
     private static final Logger LOG = LoggerFactory.getLogger(ProfileResource.class);
     private Graph graph;
     private SurfaceCache surfaceCache;
+    private RaptorWorkerDataCache raptorWorkerDataCache;
 
     private int n_increase = 0;
     private int n_decrease= 0;
@@ -48,6 +50,7 @@ public class RepeatedRaptorTestResource {
         Router router = otpServer.getRouter(routerId);
         graph = router.graph;
         surfaceCache = otpServer.surfaceCache;
+        raptorWorkerDataCache = otpServer.raptorWorkerDataCache;
     }
 
     @GET
@@ -102,6 +105,8 @@ public class RepeatedRaptorTestResource {
 
         final RepeatedRaptorProfileRouter router_a = new RepeatedRaptorProfileRouter(graph, req);
         final RepeatedRaptorProfileRouter router_b = new RepeatedRaptorProfileRouter(graph, req);
+        router_a.raptorWorkerDataCache = raptorWorkerDataCache;
+        router_b.raptorWorkerDataCache = raptorWorkerDataCache;
         router_b.banAgency = banAgency;
 
         try {
@@ -119,7 +124,10 @@ public class RepeatedRaptorTestResource {
         decreased = false;
         TimeSurface.RangeSet timeSurfaces_a = router_a.timeSurfaceRangeSet;
         TimeSurface.RangeSet timeSurfaces_b = router_b.timeSurfaceRangeSet;
-        for (Vertex destVertex : timeSurfaces_a.min.times.keySet()) {
+        for (int v = 0; v < timeSurfaces_a.min.getVertexCapacity(); v++) {
+            if (timeSurfaces_a.min.getTime(v) == TimeSurface.UNREACHABLE) continue;
+            Vertex destVertex = graph.getVertexById(v);
+            if (destVertex == null) continue;
             int min_a = timeSurfaces_a.min.getTime(destVertex);
             int max_a = timeSurfaces_a.max.getTime(destVertex);
             int avg_a = timeSurfaces_a.avg.getTime(destVertex);
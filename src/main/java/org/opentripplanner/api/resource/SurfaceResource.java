@@ -155,7 +155,12 @@ public class SurfaceResource extends RoutingResource {
         final TimeSurface surf = otpServer.surfaceCache.get(surfaceId);
         if (surf == null) return badRequest("Invalid TimeSurface ID.");
         if (spacing < 1) spacing = 30;
+        boolean madeSampleGrid = surf.sampleGrid == null;
         List<IsochroneData> isochrones = getIsochronesAccumulative(surf, spacing, nMax);
+        if (madeSampleGrid) {
+            // The sample grid is kept with the surface and takes much more memory than its times
+            otpServer.surfaceCache.reweigh(surf);
+        }
         // NOTE that cutoffMinutes in the surface must be properly set for the following call to work
         final FeatureCollection fc = LIsochrone.makeContourFeatures(isochrones);
         return Response.ok().entity(new StreamingOutput() {
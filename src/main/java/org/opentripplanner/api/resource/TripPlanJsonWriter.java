@@ -0,0 +1,270 @@
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Writes a trip planner {@link Response} as JSON, producing the same document as the Jackson provider but without
+ * going through reflective bean serialization for the bulk of it. Itineraries, legs, places, walk steps and leg
+ * geometries are written field by field straight to the output stream; only the rare or small nested values (fares,
+ * alerts, errors, debug output, identifiers) are handed to the shared ObjectMapper. Null fields are left out, as
+ * the Jackson provider is configured to do.
+ *
+ * This is enabled per router with "streamPlanJson" in the router config. Long bicycle itineraries have hundreds of
+ * walk steps, and writing them this way saves much of the serialization time and garbage.
+ */
+public class TripPlanJsonWriter implements StreamingOutput {
+
+    private static final ObjectMapper MAPPER = new JSONObjectMapperProvider().getContext(Response.class);
+
+    private final Response response;
+
+    public TripPlanJsonWriter(Response response) {
+        this.response = response;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        JsonGenerator json = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartObject();
+        if (response.requestParameters != null) {
+            json.writeObjectFieldStart("requestParameters");
+            for (Map.Entry<String, String> entry : response.requestParameters.entrySet()) {
+                json.writeStringField(entry.getKey(), entry.getValue());
+            }
+            json.writeEndObject();
+        }
+        writeObject(json, "debugOutput", response.debugOutput);
+        writeObject(json, "elevationMetadata", response.elevationMetadata);
+        if (response.getPlan() != null) {
+            json.writeFieldName("plan");
+            writeTripPlan(json, response.getPlan());
+        }
+        writeObject(json, "error", response.getError());
+        json.writeEndObject();
+        json.close();
+    }
+
+    private static void writeTripPlan(JsonGenerator json, TripPlan plan) throws IOException {
+        json.writeStartObject();
+        if (plan.date != null) {
+            json.writeNumberField("date", plan.date.getTime());
+        }
+        writePlace(json, "from", plan.from);
+        writePlace(json, "to", plan.to);
+        if (plan.itinerary != null) {
+            json.writeArrayFieldStart("itineraries");
+            for (Itinerary itinerary : plan.itinerary) {
+                writeItinerary(json, itinerary);
+            }
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeItinerary(JsonGenerator json, Itinerary itinerary) throws IOException {
+        json.writeStartObject();
+        writeNumber(json, "duration", itinerary.duration);
+        writeTime(json, "startTime", itinerary.startTime);
+        writeTime(json, "endTime", itinerary.endTime);
+        json.writeNumberField("walkTime", itinerary.walkTime);
+        json.writeNumberField("transitTime", itinerary.transitTime);
+        json.writeNumberField("waitingTime", itinerary.waitingTime);
+        writeNumber(json, "walkDistance", itinerary.walkDistance);
+        json.writeBooleanField("walkLimitExceeded", itinerary.walkLimitExceeded);
+        writeNumber(json, "elevationLost", itinerary.elevationLost);
+        writeNumber(json, "elevationGained", itinerary.elevationGained);
+        writeNumber(json, "transfers", itinerary.transfers);
+        writeObject(json, "fare", itinerary.fare);
+        if (itinerary.legs != null) {
+            json.writeArrayFieldStart("legs");
+            for (Leg leg : itinerary.legs) {
+                writeLeg(json, leg);
+            }
+            json.writeEndArray();
+        }
+        json.writeBooleanField("tooSloped", itinerary.tooSloped);
+        writeString(json, "handle", itinerary.handle);
+        json.writeEndObject();
+    }
+
+    private static void writeLeg(JsonGenerator json, Leg leg) throws IOException {
+        json.writeStartObject();
+        writeTime(json, "startTime", leg.startTime);
+        writeTime(json, "endTime", leg.endTime);
+        json.writeNumberField("departureDelay", leg.departureDelay);
+        json.writeNumberField("arrivalDelay", leg.arrivalDelay);
+        writeBoolean(json, "realTime", leg.realTime);
+        writeBoolean(json, "isNonExactFrequency", leg.isNonExactFrequency);
+        writeNumber(json, "headway", leg.headway);
+        writeNumber(json, "distance", leg.distance);
+        writeBoolean(json, "pathway", leg.pathway);
+        writeString(json, "mode", leg.mode);
+        writeString(json, "route", leg.route);
+        writeString(json, "agencyName", leg.agencyName);
+        writeString(json, "agencyUrl", leg.agencyUrl);
+        writeString(json, "agencyBrandingUrl", leg.agencyBrandingUrl);
+        json.writeNumberField("agencyTimeZoneOffset", leg.agencyTimeZoneOffset);
+        writeString(json, "routeColor", leg.routeColor);
+        writeNumber(json, "routeType", leg.routeType);
+        writeObject(json, "routeId", leg.routeId);
+        writeString(json, "routeTextColor", leg.routeTextColor);
+        writeBoolean(json, "interlineWithPreviousLeg", leg.interlineWithPreviousLeg);
+        writeString(json, "tripShortName", leg.tripShortName);
+        writeString(json, "tripBlockId", leg.tripBlockId);
+        writeString(json, "headsign", leg.headsign);
+        writeString(json, "agencyId", leg.agencyId);
+        writeObject(json, "tripId", leg.tripId);
+        writeString(json, "serviceDate", leg.serviceDate);
+        writeString(json, "routeBrandingUrl", leg.routeBrandingUrl);
+        writePlace(json, "from", leg.from);
+        writePlace(json, "to", leg.to);
+        if (leg.stop != null) {
+            json.writeArrayFieldStart("intermediateStops");
+            for (Place place : leg.stop) {
+                writePlace(json, place);
+            }
+            json.writeEndArray();
+        }
+        writePolyline(json, "legGeometry", leg.legGeometry);
+        if (leg.walkSteps != null) {
+            json.writeArrayFieldStart("steps");
+            for (WalkStep step : leg.walkSteps) {
+                writeWalkStep(json, step);
+            }
+            json.writeEndArray();
+        }
+        writeObject(json, "alerts", leg.alerts);
+        writeString(json, "routeShortName", leg.routeShortName);
+        writeString(json, "routeLongName", leg.routeLongName);
+        writeString(json, "boardRule", leg.boardRule);
+        writeString(json, "alightRule", leg.alightRule);
+        writeBoolean(json, "rentedBike", leg.rentedBike);
+        writeBoolean(json, "callAndRide", leg.callAndRide);
+        writeTime(json, "flexCallAndRideMaxStartTime", leg.flexCallAndRideMaxStartTime);
+        writeTime(json, "flexCallAndRideMinEndTime", leg.flexCallAndRideMinEndTime);
+        json.writeNumberField("flexDrtAdvanceBookMin", leg.flexDrtAdvanceBookMin);
+        writeString(json, "flexDrtPickupMessage", leg.flexDrtPickupMessage);
+        writeString(json, "flexDrtDropOffMessage", leg.flexDrtDropOffMessage);
+        writeString(json, "flexFlagStopPickupMessage", leg.flexFlagStopPickupMessage);
+        writeString(json, "flexFlagStopDropOffMessage", leg.flexFlagStopDropOffMessage);
+        writeBoolean(json, "transitLeg", leg.isTransitLeg());
+        json.writeNumberField("duration", leg.getDuration());
+        json.writeEndObject();
+    }
+
+    private static void writePlace(JsonGenerator json, String name, Place place) throws IOException {
+        if (place != null) {
+            json.writeFieldName(name);
+            writePlace(json, place);
+        }
+    }
+
+    private static void writePlace(JsonGenerator json, Place place) throws IOException {
+        json.writeStartObject();
+        writeString(json, "name", place.name);
+        writeObject(json, "stopId", place.stopId);
+        writeString(json, "stopCode", place.stopCode);
+        writeString(json, "platformCode", place.platformCode);
+        writeNumber(json, "lon", place.lon);
+        writeNumber(json, "lat", place.lat);
+        writeTime(json, "arrival", place.arrival);
+        writeTime(json, "departure", place.departure);
+        writeString(json, "orig", place.orig);
+        writeString(json, "zoneId", place.zoneId);
+        writeNumber(json, "stopIndex", place.stopIndex);
+        writeNumber(json, "stopSequence", place.stopSequence);
+        writeObject(json, "vertexType", place.vertexType);
+        writeString(json, "bikeShareId", place.bikeShareId);
+        writeObject(json, "boardAlightType", place.boardAlightType);
+        writePolyline(json, "flagStopArea", place.flagStopArea);
+        json.writeEndObject();
+    }
+
+    private static void writeWalkStep(JsonGenerator json, WalkStep step) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("distance", step.distance);
+        writeObject(json, "relativeDirection", step.relativeDirection);
+        writeString(json, "streetName", step.streetName);
+        writeObject(json, "absoluteDirection", step.absoluteDirection);
+        writeString(json, "exit", step.exit);
+        writeBoolean(json, "stayOn", step.stayOn);
+        writeBoolean(json, "area", step.area);
+        writeBoolean(json, "bogusName", step.bogusName);
+        json.writeNumberField("lon", step.lon);
+        json.writeNumberField("lat", step.lat);
+        writeObject(json, "elevation", step.getElevation());
+        writeObject(json, "alerts", step.alerts);
+        json.writeEndObject();
+    }
+
+    private static void writePolyline(JsonGenerator json, String name, EncodedPolylineBean polyline)
+            throws IOException {
+        if (polyline != null) {
+            json.writeObjectFieldStart(name);
+            writeString(json, "points", polyline.getPoints());
+            writeString(json, "levels", polyline.getLevels());
+            json.writeNumberField("length", polyline.getLength());
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeString(JsonGenerator json, String name, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
+        }
+    }
+
+    private static void writeBoolean(JsonGenerator json, String name, Boolean value) throws IOException {
+        if (value != null) {
+            json.writeBooleanField(name, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator json, String name, Integer value) throws IOException {
+        if (value != null) {
+            json.writeNumberField(name, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator json, String name, Long value) throws IOException {
+        if (value != null) {
+            json.writeNumberField(name, value);
+        }
+    }
+
+    private static void writeNumber(JsonGenerator json, String name, Double value) throws IOException {
+        if (value != null) {
+            json.writeNumberField(name, value);
+        }
+    }
+
+    /** Calendars are written as milliseconds since the epoch, like Jackson does by default. */
+    private static void writeTime(JsonGenerator json, String name, Calendar value) throws IOException {
+        if (value != null) {
+            json.writeNumberField(name, value.getTimeInMillis());
+        }
+    }
+
+    /** Write any other value with the shared ObjectMapper, so that it comes out exactly as it would otherwise. */
+    private static void writeObject(JsonGenerator json, String name, Object value) throws IOException {
+        if (value != null) {
+            json.writeFieldName(name);
+            json.writeObject(value);
+        }
+    }
+}
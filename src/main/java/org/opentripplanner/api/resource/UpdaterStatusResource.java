@@ -4,6 +4,8 @@ import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.opentripplanner.updater.GraphUpdater;
 import org.opentripplanner.updater.GraphUpdaterManager;
+import org.opentripplanner.updater.stoptime.RealtimeFeedMetrics;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,6 +13,8 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Report the status of the graph updaters via a web service.
@@ -40,6 +44,40 @@ public class UpdaterStatusResource {
         return Response.status(Response.Status.OK).entity(updaterManager.getUpdaterDescriptions()).build();
     }
 
+    /** Return the queue depth and per-writer latency of the graph writer scheduler shared by all updaters. */
+    @GET
+    @Path("/writers")
+    public Response getWriterStatus () {
+        GraphUpdaterManager updaterManager = router.graph.updaterManager;
+        if (updaterManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No updaters running.").build();
+        }
+        return Response.status(Response.Status.OK).entity(updaterManager.getWriterStatus()).build();
+    }
+
+    /**
+     * Return the state of the realtime timetable snapshot source, if any, including latency histograms for every stage
+     * of the realtime pipeline of each feed. The same feed metrics are available over JMX.
+     */
+    @GET
+    @Path("/realtime")
+    public Response getRealtimeStatus () {
+        TimetableSnapshotSource snapshotSource = router.graph.timetableSnapshotSource;
+        if (snapshotSource == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No realtime timetable updates.").build();
+        }
+        Map<String, Object> status = new TreeMap<>();
+        status.put("tripPatternCacheSize", snapshotSource.getTripPatternCacheSize());
+        status.put("tripPatternCacheEvictedCount", snapshotSource.getTripPatternCacheEvictedCount());
+        status.put("snapshotAgeMsec", snapshotSource.getSnapshotAgeMsec());
+        Map<String, RealtimeFeedMetrics> feeds = new TreeMap<>();
+        for (RealtimeFeedMetrics metrics : snapshotSource.getAllFeedMetrics()) {
+            feeds.put(metrics.getFeedId(), metrics);
+        }
+        status.put("feeds", feeds);
+        return Response.status(Response.Status.OK).entity(status).build();
+    }
+
     /** Return status for a specific updater. */
     @GET
     @Path("/{updaterId}")
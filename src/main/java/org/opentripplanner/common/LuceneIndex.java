@@ -17,7 +17,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.profile.StopCluster;
@@ -27,7 +27,6 @@ import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +37,9 @@ import java.util.regex.Pattern;
  * Lucene based index of streets, stops, etc.
  * For reference see:
  * https://svn.apache.org/repos/asf/lucene/dev/trunk/lucene/demo/src/java/org/apache/lucene/demo/IndexFiles.java
+ *
+ * Both indexes are kept in memory: the Lucene index, used for fuzzy and phrase searches, and a {@link PrefixIndex}
+ * that answers autocomplete queries without going through Lucene at all. Nothing is written to disk.
  */
 public class LuceneIndex {
 
@@ -46,17 +48,15 @@ public class LuceneIndex {
     private Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_47);
     private QueryParser parser = new QueryParser(Version.LUCENE_47, "name", analyzer);
     private GraphIndex graphIndex;
-    private File basePath;
     private Directory directory; // the Lucene Directory, not to be confused with a filesystem directory
     private IndexSearcher searcher; // Will be null until index is built.
+    private volatile PrefixIndex<Entry> prefixIndex; // Will be null until index is built.
 
     /**
-     * @param basePath the filesystem location under which to save indexes
      * @param background if true, perform the initial indexing in a background thread, if false block to index
      */
-    public LuceneIndex(final GraphIndex graphIndex, File basePath, boolean background) {
+    public LuceneIndex(final GraphIndex graphIndex, boolean background) {
         this.graphIndex = graphIndex;
-        this.basePath = basePath;
         if (background) {
             new BackgroundIndexer().start();
         } else {
@@ -70,25 +70,25 @@ public class LuceneIndex {
     private void index() {
         try {
             long startTime = System.currentTimeMillis();
-            /* Create or re-open a disk-backed Lucene Directory under the OTP server base filesystem directory. */
-            directory = FSDirectory.open(new File(basePath, "lucene"));
-            // TODO reuse the index if it exists?
-            //directory = new RAMDirectory(); // only a little faster
+            /* The index is rebuilt at each startup anyway, so there is no point in writing it to disk. */
+            directory = new RAMDirectory();
             IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_47, analyzer).setOpenMode(OpenMode.CREATE);
             final IndexWriter writer = new IndexWriter(directory, config);
+            PrefixIndex.Builder<Entry> prefixes = new PrefixIndex.Builder<>();
             for (Stop stop : graphIndex.stopForId.values()) {
-                addStop(writer, stop);
+                addStop(writer, prefixes, stop);
             }
             graphIndex.clusterStopsAsNeeded();
             for (StopCluster stopCluster : graphIndex.stopClusterForId.values()) {
-                addCluster(writer, stopCluster);
+                addCluster(writer, prefixes, stopCluster);
             }
             for (StreetVertex sv : Iterables.filter(graphIndex.vertexForId.values(), StreetVertex.class)) {
-                addCorner(writer, sv);
+                addCorner(writer, prefixes, sv);
             }
             writer.close();
+            prefixIndex = prefixes.build();
             long elapsedTime = System.currentTimeMillis() - startTime;
-            LOG.info("Built Lucene index in {} msec", elapsedTime);
+            LOG.info("Built Lucene index of {} names in {} msec", prefixIndex.size(), elapsedTime);
             // Make the IndexSearcher necessary for querying.
             searcher = new IndexSearcher(DirectoryReader.open(directory));
         } catch (Exception ex) {
@@ -96,7 +96,7 @@ public class LuceneIndex {
         }
     }
 
-    private void addStop(IndexWriter iwriter, Stop stop) throws IOException {
+    private void addStop(IndexWriter iwriter, PrefixIndex.Builder<Entry> prefixes, Stop stop) throws IOException {
         Document doc = new Document();
         doc.add(new TextField("name", stop.getName(), Field.Store.YES));
         if (stop.getCode() != null) {
@@ -107,9 +107,11 @@ public class LuceneIndex {
         doc.add(new StringField("id", stop.getId().toString(), Field.Store.YES));
         doc.add(new StringField("category", Category.STOP.name(), Field.Store.YES));
         iwriter.addDocument(doc);
+        prefixes.add(stop.getName(), new Entry(Category.STOP, makeResult(doc)));
     }
 
-    private void addCluster(IndexWriter iwriter, StopCluster stopCluster) throws IOException {
+    private void addCluster(IndexWriter iwriter, PrefixIndex.Builder<Entry> prefixes, StopCluster stopCluster)
+            throws IOException {
         Document doc = new Document();
         doc.add(new TextField("name", stopCluster.name, Field.Store.YES));
         doc.add(new DoubleField("lat", stopCluster.lat, Field.Store.YES));
@@ -117,9 +119,11 @@ public class LuceneIndex {
         doc.add(new StringField("id", stopCluster.id, Field.Store.YES));
         doc.add(new StringField("category", Category.CLUSTER.name(), Field.Store.YES));
         iwriter.addDocument(doc);
+        prefixes.add(stopCluster.name, new Entry(Category.CLUSTER, makeResult(doc)));
     }
 
-    private void addCorner(IndexWriter iwriter, StreetVertex sv) throws IOException {
+    private void addCorner(IndexWriter iwriter, PrefixIndex.Builder<Entry> prefixes, StreetVertex sv)
+            throws IOException {
         String mainStreet = null;
         String crossStreet = null;
         // TODO score based on OSM street type, using intersection nodes instead of vertices.
@@ -135,6 +139,7 @@ public class LuceneIndex {
         doc.add(new DoubleField("lon", sv.getLon(), Field.Store.YES));
         doc.add(new StringField("category", Category.CORNER.name(), Field.Store.YES));
         iwriter.addDocument(doc);
+        prefixes.add(mainStreet + " & " + crossStreet, new Entry(Category.CORNER, makeResult(doc)));
     }
 
     private class BackgroundIndexer extends Thread {
@@ -156,31 +161,43 @@ public class LuceneIndex {
      */
     public List<LuceneResult> query (String queryString, boolean autocomplete,
                                      boolean stops, boolean clusters, boolean corners) {
+        if (autocomplete) {
+            /* Prefix matches are answered from memory, without building a Lucene query. */
+            List<LuceneResult> result = Lists.newArrayList();
+            if (prefixIndex == null) {
+                return result;
+            }
+            boolean anyCategory = !(stops || clusters || corners);
+            for (Entry entry : prefixIndex.query(queryString, e -> anyCategory ||
+                    (stops && e.category == Category.STOP) ||
+                    (clusters && e.category == Category.CLUSTER) ||
+                    (corners && e.category == Category.CORNER), 10)) {
+                result.add(entry.result);
+            }
+            return result;
+        }
+
         /* Turn the query string into a Lucene query.*/
         BooleanQuery query = new BooleanQuery();
         BooleanQuery termQuery = new BooleanQuery();
 
-        if (autocomplete) {
-            termQuery.add(new PrefixQuery(new Term("name", queryString)), BooleanClause.Occur.SHOULD);
-        } else {
-            List<String> list = new ArrayList<String>();
-            Matcher m = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(queryString);
-            while (m.find()) {
-                String token = m.group(1);
-
-                // if token is a quoted search phrase
-                if (token.startsWith("\"") && token.endsWith("\"")) {
-                    PhraseQuery phraseQuery = new PhraseQuery();
-                    for (String phraseToken : token.substring(1, token.length() - 1).split(" ")) {
-                        phraseQuery.add(new Term("name", phraseToken.toLowerCase()));
-                    }
-                    termQuery.add(phraseQuery, BooleanClause.Occur.SHOULD);
-                } else { // a regular unquoted search term
-                    termQuery.add(new FuzzyQuery(new Term("name", token)), BooleanClause.Occur.SHOULD);
-
-                    // This makes it possible to search for a stop code
-                    termQuery.add(new TermQuery(new Term("code", token)), BooleanClause.Occur.SHOULD);
+        List<String> list = new ArrayList<String>();
+        Matcher m = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(queryString);
+        while (m.find()) {
+            String token = m.group(1);
+
+            // if token is a quoted search phrase
+            if (token.startsWith("\"") && token.endsWith("\"")) {
+                PhraseQuery phraseQuery = new PhraseQuery();
+                for (String phraseToken : token.substring(1, token.length() - 1).split(" ")) {
+                    phraseQuery.add(new Term("name", phraseToken.toLowerCase()));
                 }
+                termQuery.add(phraseQuery, BooleanClause.Occur.SHOULD);
+            } else { // a regular unquoted search term
+                termQuery.add(new FuzzyQuery(new Term("name", token)), BooleanClause.Occur.SHOULD);
+
+                // This makes it possible to search for a stop code
+                termQuery.add(new TermQuery(new Term("code", token)), BooleanClause.Occur.SHOULD);
             }
         }
 
@@ -205,24 +222,7 @@ public class LuceneIndex {
             searcher.search(query, collector);
             ScoreDoc[] docs = collector.topDocs().scoreDocs;
             for (int i = 0; i < docs.length; i++) {
-                LuceneResult lr = new LuceneResult();
-                Document doc = searcher.doc(docs[i].doc);
-                lr.lat = doc.getField("lat").numericValue().doubleValue();
-                lr.lng = doc.getField("lon").numericValue().doubleValue();
-                String category = doc.getField("category").stringValue().toLowerCase();
-                String code;
-                if (doc.getField("code") != null){
-                    code = "(" + doc.getField("code").stringValue() + ")";
-                } else {
-                    code = "";
-                }
-                if (doc.getField("category").stringValue().equals(Category.STOP.name()) ||
-                        doc.getField("category").stringValue().equals(Category.CLUSTER.name())) {
-                    lr.id = doc.getField("id").stringValue();
-                }
-                String name = doc.getField("name").stringValue();
-                lr.description = category + " " + name + " " + code;
-                result.add(lr);
+                result.add(makeResult(searcher.doc(docs[i].doc)));
             }
         } catch (Exception ex) {
             LOG.error("Error during Lucene search", ex);
@@ -231,6 +231,37 @@ public class LuceneIndex {
         }
     }
 
+    private static LuceneResult makeResult(Document doc) {
+        LuceneResult lr = new LuceneResult();
+        lr.lat = doc.getField("lat").numericValue().doubleValue();
+        lr.lng = doc.getField("lon").numericValue().doubleValue();
+        String category = doc.getField("category").stringValue().toLowerCase();
+        String code;
+        if (doc.getField("code") != null){
+            code = "(" + doc.getField("code").stringValue() + ")";
+        } else {
+            code = "";
+        }
+        if (doc.getField("category").stringValue().equals(Category.STOP.name()) ||
+                doc.getField("category").stringValue().equals(Category.CLUSTER.name())) {
+            lr.id = doc.getField("id").stringValue();
+        }
+        String name = doc.getField("name").stringValue();
+        lr.description = category + " " + name + " " + code;
+        return lr;
+    }
+
+    /** A name in the prefix index, with its category for filtering and its precomputed geocoder result. */
+    private static class Entry {
+        final Category category;
+        final LuceneResult result;
+
+        Entry(Category category, LuceneResult result) {
+            this.category = category;
+            this.result = result;
+        }
+    }
+
     /** This class matches the structure of the Geocoder responses expected by the OTP client. */
     public static class LuceneResult {
         public double lat;
@@ -0,0 +1,158 @@
+package org.opentripplanner.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable in-memory index of named items for autocompletion: finds the items of which each word of the query is
+ * the beginning of a word of the name. The words of all names are kept in one sorted array, so that a query is a
+ * binary search followed by a scan of the matching words, without any I/O.
+ *
+ * @param <T> the type of the items
+ */
+public class PrefixIndex<T> {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Object[] items;
+
+    private final String[] names;
+
+    /** The words of all names, sorted. */
+    private final String[] words;
+
+    /** For each word, the index of the item whose name it is part of. */
+    private final int[] itemForWord;
+
+    private PrefixIndex(Builder<T> builder) {
+        items = builder.items.toArray();
+        names = builder.names.toArray(new String[0]);
+        List<WordEntry> entries = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            for (String word : new HashSet<>(tokenize(names[i]))) {
+                entries.add(new WordEntry(word, i));
+            }
+        }
+        Collections.sort(entries);
+        words = new String[entries.size()];
+        itemForWord = new int[entries.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = entries.get(i).word;
+            itemForWord[i] = entries.get(i).item;
+        }
+    }
+
+    /**
+     * @param query one or more words, the last of which may be incomplete
+     * @param filter only items accepted by this filter are returned
+     * @param limit the maximum number of items to return
+     * @return the matching items, in the alphabetical order of their word matching the longest word of the query
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> query(String query, Predicate<? super T> filter, int limit) {
+        List<String> queryWords = query == null ? Collections.emptyList() : tokenize(query);
+        if (queryWords.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Scan the words matching the most selective query word, and check the others on each candidate
+        String longest = queryWords.get(0);
+        for (String word : queryWords) {
+            if (word.length() > longest.length()) longest = word;
+        }
+        List<T> result = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = firstWordNotBefore(longest);
+                i < words.length && words[i].startsWith(longest) && result.size() < limit; i++) {
+            int item = itemForWord[i];
+            if (!seen.add(item)) continue;
+            T t = (T) items[item];
+            if (!filter.test(t)) continue;
+            if (queryWords.size() > 1 && !matchesAll(tokenize(names[item]), queryWords)) continue;
+            result.add(t);
+        }
+        return result;
+    }
+
+    /** @return the index of the first word that is not before the given one, found by binary search. */
+    private int firstWordNotBefore(String word) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    private static boolean matchesAll(List<String> nameWords, List<String> queryWords) {
+        for (String queryWord : queryWords) {
+            boolean found = false;
+            for (String nameWord : nameWords) {
+                if (nameWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /** Split a string into lower case words, dropping punctuation. */
+    static List<String> tokenize(String s) {
+        List<String> result = new ArrayList<>();
+        for (String word : WORD_SEPARATOR.split(s.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    private static class WordEntry implements Comparable<WordEntry> {
+        final String word;
+        final int item;
+
+        WordEntry(String word, int item) {
+            this.word = word;
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo(WordEntry other) {
+            int c = word.compareTo(other.word);
+            return c != 0 ? c : Integer.compare(item, other.item);
+        }
+    }
+
+    public static class Builder<T> {
+
+        private final List<T> items = new ArrayList<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        public Builder<T> add(String name, T item) {
+            names.add(name);
+            items.add(item);
+            return this;
+        }
+
+        public PrefixIndex<T> build() {
+            return new PrefixIndex<>(this);
+        }
+    }
+}
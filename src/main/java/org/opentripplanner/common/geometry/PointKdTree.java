@@ -0,0 +1,196 @@
+package org.opentripplanner.common.geometry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * An immutable 2D tree of points given in longitude and latitude, for finding the points nearest to a location or
+ * within a radius of it, sorted by distance.
+ *
+ * The tree is packed into arrays: the points are reordered so that the median of each range is its root, alternately
+ * splitting on longitude and latitude, and no node objects are allocated. Distances are the equirectangular
+ * approximation of {@link SphericalDistanceLibrary#fastDistance(org.locationtech.jts.geom.Coordinate,
+ * org.locationtech.jts.geom.Coordinate, double)} around the query location, which the tree is searched with exactly.
+ *
+ * @param <T> the type of the points
+ */
+public class PointKdTree<T> {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M;
+
+    private final Object[] items;
+
+    private final double[] lons;
+
+    private final double[] lats;
+
+    /**
+     * @param points the points to index
+     * @param lon gives the longitude of a point
+     * @param lat gives the latitude of a point
+     */
+    public PointKdTree(Collection<? extends T> points, ToDoubleFunction<? super T> lon,
+            ToDoubleFunction<? super T> lat) {
+        items = points.toArray();
+        lons = new double[items.length];
+        lats = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) items[i];
+            lons[i] = lon.applyAsDouble(item);
+            lats[i] = lat.applyAsDouble(item);
+        }
+        build(0, items.length, 0);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * @return the k points nearest to the given location that are no further than maxDistance and accepted by the
+     *         filter, nearest first
+     */
+    public List<Neighbor<T>> nearest(double lat, double lon, int k, double maxDistance, Predicate<? super T> filter) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        Search search = new Search(lat, lon, maxDistance, k, filter);
+        search.search(0, items.length, 0);
+        return search.result();
+    }
+
+    /** @return the points within the given distance of the given location, nearest first */
+    public List<Neighbor<T>> withinRadius(double lat, double lon, double radius) {
+        Search search = new Search(lat, lon, radius, Integer.MAX_VALUE, item -> true);
+        search.search(0, items.length, 0);
+        return search.result();
+    }
+
+    /** Reorder the points in [from, to) so that the median on the given axis is in the middle, recursively. */
+    private void build(int from, int to, int axis) {
+        if (to - from <= 1) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(from, to - 1, median, axis == 0 ? lons : lats);
+        build(from, median, 1 - axis);
+        build(median + 1, to, 1 - axis);
+    }
+
+    /** Quickselect: put the element of rank k in [left, right] by the given coordinate at index k. */
+    private void select(int left, int right, int k, double[] coordinates) {
+        while (right > left) {
+            double pivot = coordinates[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinates[i] < pivot) i++;
+                while (coordinates[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        double lon = lons[i];
+        lons[i] = lons[j];
+        lons[j] = lon;
+        double lat = lats[i];
+        lats[i] = lats[j];
+        lats[j] = lat;
+    }
+
+    /** A point found by a query, with its distance in meters from the query location. */
+    public static class Neighbor<T> {
+
+        public final T item;
+
+        public final double distance;
+
+        Neighbor(T item, double distance) {
+            this.item = item;
+            this.distance = distance;
+        }
+    }
+
+    /** The state of one query. Found points are kept in a max-heap so that the furthest one can be dropped. */
+    private class Search {
+
+        private final double lat;
+        private final double lon;
+        private final double cosLat;
+        private final int k;
+        private final Predicate<? super T> filter;
+        private final PriorityQueue<Neighbor<T>> found;
+
+        /** The distance a point must be within to be found, shrinking as the k nearest are found. */
+        private double maxDistance;
+
+        Search(double lat, double lon, double maxDistance, int k, Predicate<? super T> filter) {
+            this.lat = lat;
+            this.lon = lon;
+            this.cosLat = FastMath.cos(Math.toRadians(lat));
+            this.maxDistance = maxDistance;
+            this.k = k;
+            this.filter = filter;
+            this.found = new PriorityQueue<>(Math.min(k, 64),
+                    Comparator.comparingDouble((Neighbor<T> n) -> n.distance).reversed());
+        }
+
+        @SuppressWarnings("unchecked")
+        void search(int from, int to, int axis) {
+            if (from >= to) {
+                return;
+            }
+            int median = (from + to) >>> 1;
+            double dLon = (lons[median] - lon) * cosLat;
+            double dLat = lats[median] - lat;
+            double distance = Math.sqrt(dLon * dLon + dLat * dLat) * METERS_PER_DEGREE;
+            if (distance <= maxDistance && filter.test((T) items[median])) {
+                found.add(new Neighbor<>((T) items[median], distance));
+                if (found.size() > k) {
+                    found.poll();
+                }
+                if (found.size() == k) {
+                    maxDistance = found.peek().distance;
+                }
+            }
+            // Search the side of the query location first, then the other side if it may still be close enough
+            double offset = (axis == 0 ? dLon : dLat) * METERS_PER_DEGREE;
+            if (offset > 0) {
+                search(from, median, 1 - axis);
+                if (offset <= maxDistance) search(median + 1, to, 1 - axis);
+            } else {
+                search(median + 1, to, 1 - axis);
+                if (-offset <= maxDistance) search(from, median, 1 - axis);
+            }
+        }
+
+        List<Neighbor<T>> result() {
+            List<Neighbor<T>> result = new ArrayList<>(found);
+            result.sort(Comparator.comparingDouble(n -> n.distance));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+
+/**
+ * A graph builder module that computes the distances from every transit stop to the street vertices near it and saves
+ * them in the graph. Otherwise they are computed when the first analyst request arrives after every graph load, which
+ * takes minutes on large graphs. This must run after the stops are linked to the streets.
+ */
+public class StopTreeCacheModule implements GraphBuilderModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StopTreeCacheModule.class);
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        /* Initialize graph index which is needed to find the transit stops. */
+        if (graph.index == null) {
+            graph.index = new GraphIndex(graph);
+        }
+        long start = System.currentTimeMillis();
+        graph.stopTreeCache = new StopTreeCache(graph, GraphIndex.MAX_WALK_METERS);
+        LOG.info("Computed the stop trees of {} stops in {} seconds, {} MB.", graph.stopTreeCache.getStopCount(),
+                (System.currentTimeMillis() - start) / 1000, graph.stopTreeCache.estimateMemorySize() / 1024 / 1024);
+    }
+
+    @Override
+    public void checkInputs() {
+        // no inputs
+    }
+}
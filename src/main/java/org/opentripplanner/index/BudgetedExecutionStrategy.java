@@ -0,0 +1,45 @@
+package org.opentripplanner.index;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import graphql.ExceptionWhileDataFetching;
+import graphql.ExecutionResult;
+import graphql.GraphQLException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutorServiceExecutionStrategy;
+import graphql.language.Field;
+import graphql.schema.GraphQLObjectType;
+
+/**
+ * Executes GraphQL queries like the ExecutorServiceExecutionStrategy, but stops resolving fields once the time budget
+ * in the {@link GraphQLRequestContext} of the query is exhausted. Fields that are not resolved are returned as null and
+ * a single error is added to the result, so the client receives whatever was computed before the deadline instead of
+ * the query holding a request thread for as long as it takes.
+ *
+ * Data fetchers themselves are not interrupted, so a query can overrun its budget by the time of the slowest single
+ * field. This is why the costliest fields are also limited up front by the {@link GraphQLCostAnalyzer}.
+ */
+public class BudgetedExecutionStrategy extends ExecutorServiceExecutionStrategy {
+
+    public BudgetedExecutionStrategy(ExecutorService executorService) {
+        super(executorService);
+    }
+
+    @Override
+    protected ExecutionResult resolveField(ExecutionContext executionContext, GraphQLObjectType parentType,
+            Object source, List<Field> fields) {
+        Object root = executionContext.getRoot();
+        if (root instanceof GraphQLRequestContext) {
+            GraphQLRequestContext context = (GraphQLRequestContext) root;
+            if (!context.withinTimeBudget()) {
+                if (context.reportTimeout()) {
+                    executionContext.addError(new ExceptionWhileDataFetching(
+                            new GraphQLException("Query exceeded its time budget, the result is incomplete.")));
+                }
+                return null;
+            }
+        }
+        return super.resolveField(executionContext, parentType, source, fields);
+    }
+}
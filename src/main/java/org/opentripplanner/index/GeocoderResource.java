@@ -31,7 +31,7 @@ public class GeocoderResource {
         synchronized (graphIndex) {
             if (graphIndex.luceneIndex == null) {
                 // Synchronously lazy-initialize the Lucene index
-                graphIndex.luceneIndex = new LuceneIndex(graphIndex, otpServer.basePath, false);
+                graphIndex.luceneIndex = new LuceneIndex(graphIndex, false);
             }
             index = graphIndex.luceneIndex;
         }
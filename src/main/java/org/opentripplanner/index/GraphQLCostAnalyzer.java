@@ -0,0 +1,229 @@
+package org.opentripplanner.index;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import graphql.language.ArrayValue;
+import graphql.language.Argument;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.IntValue;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.Value;
+import graphql.language.VariableReference;
+import graphql.parser.Parser;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLFieldsContainer;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNonNull;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+
+/**
+ * Estimates the cost of a GraphQL query before executing it, from the shape of the query alone.
+ *
+ * Every object returned costs one unit, plus the weight of the field that returned it. Fields returning lists multiply
+ * the cost of their selection by the expected length of the list: the number of IDs (or, for some fields, of
+ * departures) requested when the query says so, otherwise a size configured for that field (typically an average taken from the graph index), and
+ * otherwise a default. Scalar fields are free unless they are given a weight. The estimate is therefore roughly the
+ * number of objects the query will materialize, scaled up for fields whose resolvers are known to be expensive.
+ *
+ * Fields and sizes are keyed on "TypeName.fieldName", e.g. "Stop.stoptimesForPatterns".
+ */
+public class GraphQLCostAnalyzer {
+
+    /** An argument which, on any field, gives the length of the list it returns. */
+    private static final String IDS_ARGUMENT = "ids";
+
+    private final GraphQLSchema schema;
+
+    private final Map<String, Integer> fieldWeights = new HashMap<>();
+
+    private final Map<String, Integer> listSizes = new HashMap<>();
+
+    private final Map<String, String> listSizeArguments = new HashMap<>();
+
+    public int defaultListSize = 10;
+
+    public GraphQLCostAnalyzer(GraphQLSchema schema) {
+        this.schema = schema;
+    }
+
+    public GraphQLCostAnalyzer setFieldWeight(String typeAndField, int weight) {
+        fieldWeights.put(typeAndField, weight);
+        return this;
+    }
+
+    public GraphQLCostAnalyzer setListSize(String typeAndField, int size) {
+        listSizes.put(typeAndField, size);
+        return this;
+    }
+
+    /** Declare that the given integer argument of a field, when present, is the length of the list it returns. */
+    public GraphQLCostAnalyzer setListSizeArgument(String typeAndField, String argumentName) {
+        listSizeArguments.put(typeAndField, argumentName);
+        return this;
+    }
+
+    /**
+     * @return the estimated cost of executing the given operation of the query, or -1 if the query cannot be parsed.
+     *         Invalid queries are left for graphql-java to report.
+     */
+    public long estimate(String query, String operationName, Map<String, Object> variables) {
+        Document document;
+        try {
+            document = new Parser().parseDocument(query);
+        } catch (Exception e) {
+            return -1;
+        }
+        Map<String, FragmentDefinition> fragments = new HashMap<>();
+        OperationDefinition operation = null;
+        for (Definition definition : document.getDefinitions()) {
+            if (definition instanceof FragmentDefinition) {
+                FragmentDefinition fragment = (FragmentDefinition) definition;
+                fragments.put(fragment.getName(), fragment);
+            } else if (definition instanceof OperationDefinition) {
+                OperationDefinition candidate = (OperationDefinition) definition;
+                if (operation == null && (operationName == null || operationName.equals(candidate.getName()))) {
+                    operation = candidate;
+                }
+            }
+        }
+        if (operation == null || operation.getOperation() != OperationDefinition.Operation.QUERY) {
+            return 0;
+        }
+        Estimation estimation = new Estimation(fragments, variables == null ? new HashMap<>() : variables);
+        return estimation.selectionCost(schema.getQueryType(), operation.getSelectionSet());
+    }
+
+    private class Estimation {
+
+        final Map<String, FragmentDefinition> fragments;
+
+        final Map<String, Object> variables;
+
+        /** Fragments being expanded, to stop on (invalid) cyclic fragment spreads. */
+        final Set<String> expanding = new HashSet<>();
+
+        Estimation(Map<String, FragmentDefinition> fragments, Map<String, Object> variables) {
+            this.fragments = fragments;
+            this.variables = variables;
+        }
+
+        long selectionCost(GraphQLFieldsContainer type, SelectionSet selectionSet) {
+            if (selectionSet == null) {
+                return 0;
+            }
+            long cost = 0;
+            for (Selection selection : selectionSet.getSelections()) {
+                if (selection instanceof Field) {
+                    cost = saturatedAdd(cost, fieldCost(type, (Field) selection));
+                } else if (selection instanceof InlineFragment) {
+                    InlineFragment fragment = (InlineFragment) selection;
+                    GraphQLFieldsContainer fragmentType = fragment.getTypeCondition() == null ? type
+                            : containerOrDefault(schema.getType(fragment.getTypeCondition().getName()), type);
+                    cost = saturatedAdd(cost, selectionCost(fragmentType, fragment.getSelectionSet()));
+                } else if (selection instanceof FragmentSpread) {
+                    String name = ((FragmentSpread) selection).getName();
+                    FragmentDefinition fragment = fragments.get(name);
+                    if (fragment == null || !expanding.add(name)) {
+                        continue;
+                    }
+                    GraphQLFieldsContainer fragmentType =
+                            containerOrDefault(schema.getType(fragment.getTypeCondition().getName()), type);
+                    cost = saturatedAdd(cost, selectionCost(fragmentType, fragment.getSelectionSet()));
+                    expanding.remove(name);
+                }
+            }
+            return cost;
+        }
+
+        long fieldCost(GraphQLFieldsContainer parentType, Field field) {
+            if (field.getName().startsWith("__")) {
+                // Introspection, served from the schema without touching the graph
+                return 1;
+            }
+            GraphQLFieldDefinition definition = parentType.getFieldDefinition(field.getName());
+            if (definition == null) {
+                // Will fail validation
+                return 0;
+            }
+            String key = parentType.getName() + "." + field.getName();
+            long weight = fieldWeights.getOrDefault(key, 0);
+            GraphQLType type = unwrapNonNull(definition.getType());
+            long multiplier = 1;
+            if (type instanceof GraphQLList) {
+                multiplier = listSize(key, field.getArguments());
+                type = unwrapNonNull(((GraphQLList) type).getWrappedType());
+            }
+            if (!(type instanceof GraphQLFieldsContainer)) {
+                return saturatedMultiply(weight, multiplier);
+            }
+            long objectCost = saturatedAdd(1, selectionCost((GraphQLFieldsContainer) type, field.getSelectionSet()));
+            return saturatedAdd(weight, saturatedMultiply(multiplier, objectCost));
+        }
+
+        long listSize(String key, List<Argument> arguments) {
+            String sizeArgument = listSizeArguments.get(key);
+            for (Argument argument : arguments) {
+                if (argument.getName().equals(IDS_ARGUMENT) || argument.getName().equals(sizeArgument)) {
+                    long size = valueSize(argument.getValue());
+                    if (size >= 0) {
+                        return size;
+                    }
+                }
+            }
+            return listSizes.getOrDefault(key, defaultListSize);
+        }
+
+        /** @return the number given by an argument value, the length of a list value, or -1 if neither. */
+        long valueSize(Value value) {
+            if (value instanceof IntValue) {
+                return Math.max(0, ((IntValue) value).getValue().longValue());
+            }
+            if (value instanceof ArrayValue) {
+                return ((ArrayValue) value).getValues().size();
+            }
+            if (value instanceof VariableReference) {
+                Object variable = variables.get(((VariableReference) value).getName());
+                if (variable instanceof Number) {
+                    return Math.max(0, ((Number) variable).longValue());
+                }
+                if (variable instanceof List) {
+                    return ((List) variable).size();
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static GraphQLType unwrapNonNull(GraphQLType type) {
+        while (type instanceof GraphQLNonNull) {
+            type = ((GraphQLNonNull) type).getWrappedType();
+        }
+        return type;
+    }
+
+    private static GraphQLFieldsContainer containerOrDefault(GraphQLType type, GraphQLFieldsContainer defaultType) {
+        return type instanceof GraphQLFieldsContainer ? (GraphQLFieldsContainer) type : defaultType;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        if (a == 0 || b == 0) return 0;
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+}
@@ -0,0 +1,148 @@
+package org.opentripplanner.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import graphql.schema.DataFetchingEnvironment;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+/**
+ * State shared by all data fetchers while executing one GraphQL query.
+ *
+ * The realtime TimetableSnapshot and the current time are captured once when the query starts, so every field of the
+ * response reflects the same data no matter how long the query takes or how many stops it touches. Results of the more
+ * expensive lookups are memoized for the duration of the query, so that fields which are reached many times through
+ * different paths (e.g. the departures of a stop that appears under several routes) are computed once. Fields may be
+ * executed concurrently by the ExecutorServiceExecutionStrategy, so everything here is thread safe.
+ *
+ * The context also carries the time budget of the query, which the {@link BudgetedExecutionStrategy} checks before
+ * resolving each field.
+ */
+public class GraphQLRequestContext {
+
+    /** Stands in for null results, which cannot be stored in a ConcurrentHashMap. */
+    private static final Object NULL = new Object();
+
+    private final GraphIndex index;
+
+    /** The realtime snapshot seen by the whole query, or null if there are no realtime updates. */
+    public final TimetableSnapshot timetableSnapshot;
+
+    /** The time at which the query started, in seconds since the epoch. Used where a field defaults to "now". */
+    public final long startTime;
+
+    private final Map<List<Object>, Object> memo = new ConcurrentHashMap<>();
+
+    /** System.nanoTime() after which no more fields are resolved. */
+    private final long deadline;
+
+    private final AtomicBoolean timedOut = new AtomicBoolean(false);
+
+    private final AtomicBoolean timeoutReported = new AtomicBoolean(false);
+
+    public GraphQLRequestContext(GraphIndex index) {
+        this(index, 0);
+    }
+
+    /**
+     * @param timeoutMillis the time budget of the query in milliseconds, 0 or less for none
+     */
+    public GraphQLRequestContext(GraphIndex index, long timeoutMillis) {
+        this.index = index;
+        this.timetableSnapshot = index.graph.timetableSnapshotSource == null ? null
+                : index.graph.timetableSnapshotSource.getTimetableSnapshot();
+        this.startTime = System.currentTimeMillis() / 1000;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the query may go on resolving fields. Once the time budget is exceeded this returns false for
+     *         all remaining fields.
+     */
+    public boolean withinTimeBudget() {
+        if (timedOut.get()) {
+            return false;
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+            timedOut.set(true);
+            return false;
+        }
+        return true;
+    }
+
+    /** @return true the first time it is called after the time budget was exceeded, so it is reported only once. */
+    boolean reportTimeout() {
+        return timedOut.get() && !timeoutReported.getAndSet(true);
+    }
+
+    public boolean isTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return the context of the query being executed. Queries executed without one, for instance directly through
+     *         GraphIndex.graphQL, get a fresh context for each field, which behaves like the old unmemoized fetchers.
+     */
+    public static GraphQLRequestContext get(DataFetchingEnvironment environment, GraphIndex index) {
+        Object context = environment.getContext();
+        if (context instanceof GraphQLRequestContext) {
+            return (GraphQLRequestContext) context;
+        }
+        return new GraphQLRequestContext(index);
+    }
+
+    /** Return the value memoized for the given key, computing it with the supplier the first time it is asked for. */
+    @SuppressWarnings("unchecked")
+    public <T> T memoize(Supplier<T> supplier, Object... key) {
+        List<Object> memoKey = Arrays.asList(key);
+        Object value = memo.get(memoKey);
+        if (value == null) {
+            // Not computeIfAbsent: the supplier may itself use memoized values, and two threads computing the same
+            // value concurrently is harmless.
+            value = supplier.get();
+            if (value == null) {
+                value = NULL;
+            }
+            Object existing = memo.putIfAbsent(memoKey, value);
+            if (existing != null) {
+                value = existing;
+            }
+        }
+        return value == NULL ? null : (T) value;
+    }
+
+    /** @return the timetable of the pattern on the given date, as seen in the snapshot pinned for this query. */
+    public Timetable resolve(TripPattern pattern, ServiceDate serviceDate) {
+        if (timetableSnapshot == null) {
+            return pattern.scheduledTimetable;
+        }
+        return timetableSnapshot.resolve(pattern, serviceDate);
+    }
+
+    /**
+     * The next departures from a stop, see {@link GraphIndex#stopTimesForStop(Stop, long, int, int, boolean)}. A start
+     * time of 0 means the time at which the query started.
+     */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures,
+            boolean omitNonPickups) {
+        long time = startTime == 0 ? this.startTime : startTime;
+        return memoize(() -> index.stopTimesForStop(stop, time, timeRange, numberOfDepartures, omitNonPickups,
+                timetableSnapshot), "stopTimesForStop", stop, time, timeRange, numberOfDepartures, omitNonPickups);
+    }
+
+    /** All departures from a stop on a service date, see {@link GraphIndex#getStopTimesForStop}. */
+    public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate, boolean omitNonPickups) {
+        return memoize(() -> index.getStopTimesForStop(stop, serviceDate, omitNonPickups, timetableSnapshot),
+                "getStopTimesForStop", stop, serviceDate, omitNonPickups);
+    }
+}
@@ -16,7 +16,7 @@ import org.opentripplanner.model.Route;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
-import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.geometry.PointKdTree.Neighbor;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.index.model.AreaShort;
 import org.opentripplanner.index.model.PatternDetail;
@@ -37,6 +37,7 @@ import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
+import org.opentripplanner.standalone.RoutingExecutor;
 import org.opentripplanner.util.PolylineEncoder;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
@@ -50,6 +51,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -86,10 +89,16 @@ public class IndexAPI {
     private final StreetVertexIndexService streetIndex;
     private final ObjectMapper deserializer = new ObjectMapper();
 
+    /** The more expensive queries are computed on the routing threads, like trip plans. */
+    private final RoutingExecutor routingExecutor;
+    private final String routerId;
+
     public IndexAPI (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
         index = router.graph.index;
         streetIndex = router.graph.streetIndex;
+        routingExecutor = otpServer.getRoutingExecutor();
+        this.routerId = routerId;
     }
 
     /* Needed to check whether query parameter map is empty, rather than chaining " && x == null"s */
@@ -167,7 +176,10 @@ public class IndexAPI {
        }
    }
    
-   /** Return a list of all stops within a circle around the given coordinate. */
+   /**
+    * Return a list of all stops within a circle around the given coordinate, nearest first, or only the nearest
+    * maxResults of them.
+    */
    @GET
    @Path("/stops")
    public Response getStopsInRadius (
@@ -177,7 +189,8 @@ public class IndexAPI {
            @QueryParam("maxLon") Double maxLon,
            @QueryParam("lat")    Double lat,
            @QueryParam("lon")    Double lon,
-           @QueryParam("radius") Double radius) {
+           @QueryParam("radius") Double radius,
+           @QueryParam("maxResults") Integer maxResults) {
 
        /* When no parameters are supplied, return all stops. */
        if (uriInfo.getQueryParameters().isEmpty()) {
@@ -193,14 +206,15 @@ public class IndexAPI {
            if (radius > MAX_STOP_SEARCH_RADIUS){
                radius = MAX_STOP_SEARCH_RADIUS;
            }
-           List<StopShort> stops = Lists.newArrayList(); 
-           Coordinate coord = new Coordinate(lon, lat);
-           for (TransitStop stopVertex : streetIndex.getNearbyTransitStops(
-                    new Coordinate(lon, lat), radius)) {
-               double distance = SphericalDistanceLibrary.fastDistance(stopVertex.getCoordinate(), coord);
-               if (distance < radius) {
-                   stops.add(new StopShort(stopVertex.getStop(), (int) distance));
-               }
+           if (maxResults != null && maxResults < 0) {
+               return Response.status(Status.BAD_REQUEST).entity(MSG_400).build();
+           }
+           List<StopShort> stops = Lists.newArrayList();
+           List<Neighbor<TransitStop>> nearby = maxResults == null
+                   ? index.stopKdTree.withinRadius(lat, lon, radius)
+                   : index.stopKdTree.nearest(lat, lon, maxResults, radius, stopVertex -> true);
+           for (Neighbor<TransitStop> neighbor : nearby) {
+               stops.add(new StopShort(neighbor.item.getStop(), (int) neighbor.distance));
            }
            return Response.status(Status.OK).entity(stops).build();
        } else {
@@ -251,14 +265,19 @@ public class IndexAPI {
      */
     @GET
     @Path("/stops/{stopId}/stoptimes")
-    public Response getStoptimesForStop (@PathParam("stopId") String stopIdString,
-                                         @QueryParam("startTime") long startTime,
-                                         @QueryParam("timeRange") @DefaultValue("86400") int timeRange,
-                                         @QueryParam("numberOfDepartures") @DefaultValue("2") int numberOfDepartures,
-                                         @QueryParam("omitNonPickups") boolean omitNonPickups) {
+    public void getStoptimesForStop (@PathParam("stopId") String stopIdString,
+                                     @QueryParam("startTime") long startTime,
+                                     @QueryParam("timeRange") @DefaultValue("86400") int timeRange,
+                                     @QueryParam("numberOfDepartures") @DefaultValue("2") int numberOfDepartures,
+                                     @QueryParam("omitNonPickups") boolean omitNonPickups,
+                                     @Suspended AsyncResponse asyncResponse) {
         Stop stop = index.stopForId.get(GtfsLibrary.convertIdFromString(stopIdString));
-        if (stop == null) return Response.status(Status.NOT_FOUND).entity(MSG_404).build();
-        return Response.status(Status.OK).entity(index.stopTimesForStop(stop, startTime, timeRange, numberOfDepartures, omitNonPickups )).build();
+        if (stop == null) {
+            asyncResponse.resume(Response.status(Status.NOT_FOUND).entity(MSG_404).build());
+            return;
+        }
+        routingExecutor.execute(asyncResponse, routerId, () -> Response.status(Status.OK)
+                .entity(index.stopTimesForStop(stop, startTime, timeRange, numberOfDepartures, omitNonPickups)).build());
     }
 
     /**
@@ -267,21 +286,28 @@ public class IndexAPI {
      */
     @GET
     @Path("/stops/{stopId}/stoptimes/{date}")
-    public Response getStoptimesForStopAndDate (@PathParam("stopId") String stopIdString,
-                                                @PathParam("date") String date,
-                                                @QueryParam("omitNonPickups") boolean omitNonPickups) {
+    public void getStoptimesForStopAndDate (@PathParam("stopId") String stopIdString,
+                                            @PathParam("date") String date,
+                                            @QueryParam("omitNonPickups") boolean omitNonPickups,
+                                            @Suspended AsyncResponse asyncResponse) {
         Stop stop = index.stopForId.get(GtfsLibrary.convertIdFromString(stopIdString));
-        if (stop == null) return Response.status(Status.NOT_FOUND).entity(MSG_404).build();
+        if (stop == null) {
+            asyncResponse.resume(Response.status(Status.NOT_FOUND).entity(MSG_404).build());
+            return;
+        }
         ServiceDate sd;
         try {
             sd = ServiceDate.parseString(date);
         }
         catch (ParseException e){
-            return Response.status(Status.BAD_REQUEST).entity(MSG_400).build();
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST).entity(MSG_400).build());
+            return;
         }
 
-        List<StopTimesInPattern> ret = index.getStopTimesForStop(stop, sd, omitNonPickups);
-        return Response.status(Status.OK).entity(ret).build();
+        routingExecutor.execute(asyncResponse, routerId, () -> {
+            List<StopTimesInPattern> ret = index.getStopTimesForStop(stop, sd, omitNonPickups);
+            return Response.status(Status.OK).entity(ret).build();
+        });
     }
     
     /**
@@ -627,7 +653,7 @@ public class IndexAPI {
     @POST
     @Path("/graphql")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response getGraphQL (HashMap<String, Object> queryParameters) {
+    public void getGraphQL (HashMap<String, Object> queryParameters, @Suspended AsyncResponse asyncResponse) {
         String query = (String) queryParameters.get("query");
         Object queryVariables = queryParameters.getOrDefault("variables", null);
         String operationName = (String) queryParameters.getOrDefault("operationName", null);
@@ -639,19 +665,22 @@ public class IndexAPI {
                 variables = deserializer.readValue((String) queryVariables, Map.class);
             } catch (IOException e) {
                 LOG.error("Variables must be a valid json object");
-                return Response.status(Status.BAD_REQUEST).entity(MSG_400).build();
+                asyncResponse.resume(Response.status(Status.BAD_REQUEST).entity(MSG_400).build());
+                return;
             }
         } else {
             variables = new HashMap<>();
         }
-        return index.getGraphQLResponse(query, variables, operationName);
+        routingExecutor.execute(asyncResponse, routerId,
+                () -> index.getGraphQLResponse(query, variables, operationName));
     }
 
     @POST
     @Path("/graphql")
     @Consumes("application/graphql")
-    public Response getGraphQL (String query) {
-        return index.getGraphQLResponse(query, new HashMap<>(), null);
+    public void getGraphQL (String query, @Suspended AsyncResponse asyncResponse) {
+        routingExecutor.execute(asyncResponse, routerId,
+                () -> index.getGraphQLResponse(query, new HashMap<>(), null));
     }
 
     /** Represents a transfer from a stop */
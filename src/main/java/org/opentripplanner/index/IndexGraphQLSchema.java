@@ -285,12 +285,14 @@ public class IndexGraphQLSchema {
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("routes")
                 .type(new GraphQLList(new GraphQLNonNull(routeType)))
-                .dataFetcher(environment -> index.patternsForStop
-                    .get((Stop) environment.getSource())
-                    .stream()
-                    .map(pattern -> pattern.route)
-                    .distinct()
-                    .collect(Collectors.toList()))
+                .dataFetcher(environment -> GraphQLRequestContext.get(environment, index).memoize(
+                    () -> index.patternsForStop
+                        .get((Stop) environment.getSource())
+                        .stream()
+                        .map(pattern -> pattern.route)
+                        .distinct()
+                        .collect(Collectors.toList()),
+                    "routesForStop", environment.getSource()))
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("patterns")
@@ -321,10 +323,10 @@ public class IndexGraphQLSchema {
                     .build())
                 .dataFetcher(environment -> {
                     try {  // TODO: Add our own scalar types for at least serviceDate and FeedId
-                        return index.getStopTimesForStop(
+                        return GraphQLRequestContext.get(environment, index).getStopTimesForStop(
                             (Stop) environment.getSource(),
                             ServiceDate.parseString(environment.getArgument("date")),
-                            environment.getArgument("omitNonPickups"));
+                            Boolean.TRUE.equals(environment.getArgument("omitNonPickups")));
                     } catch (ParseException e) {
                         return null;
                     }
@@ -354,7 +356,7 @@ public class IndexGraphQLSchema {
             		.defaultValue(false)
             		.build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop((Stop) environment.getSource(),
+                    GraphQLRequestContext.get(environment, index).stopTimesForStop((Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
                         (int) environment.getArgument("numberOfDepartures"),
@@ -384,7 +386,7 @@ public class IndexGraphQLSchema {
             		.defaultValue(false)
             		.build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop(
+                    GraphQLRequestContext.get(environment, index).stopTimesForStop(
                         (Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
@@ -571,7 +573,7 @@ public class IndexGraphQLSchema {
                     try {
                         Trip trip = (Trip) environment.getSource();
                         return TripTimeShort.fromTripTimes(
-                            index.graph.timetableSnapshotSource.getTimetableSnapshot()
+                            GraphQLRequestContext.get(environment, index)
                                 .resolve(index.patternForTrip.get(trip),
                                     ServiceDate.parseString(environment.getArgument("serviceDay")))
                                 , trip);
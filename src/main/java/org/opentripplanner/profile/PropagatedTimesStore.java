@@ -248,9 +248,9 @@ public class PropagatedTimesStore {
             if (avg == Integer.MAX_VALUE)
                 continue;
             // Count is positive, extrema and sum must also be present
-            rangeSet.min.times.put(vertex, min);
-            rangeSet.max.times.put(vertex, max);
-            rangeSet.avg.times.put(vertex, avg);
+            rangeSet.min.setTime(vertex, min);
+            rangeSet.max.setTime(vertex, max);
+            rangeSet.avg.setTime(vertex, avg);
         }
         return rangeSet;
     }
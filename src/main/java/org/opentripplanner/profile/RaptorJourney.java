@@ -0,0 +1,45 @@
+package org.opentripplanner.profile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A journey found by a {@link RaptorPathWorker}: an access walk, one or more rides with walking transfers between
+ * them, and an egress walk. Times are in seconds since midnight, like the times of a ProfileRequest.
+ */
+public class RaptorJourney {
+
+    public int departureTime;
+
+    public int arrivalTime;
+
+    /** The number of vehicles ridden, one more than the number of transfers. */
+    public int rides;
+
+    /** The time spent walking, in seconds, not counting waiting. */
+    public int walkTime;
+
+    public List<Leg> legs = new ArrayList<>();
+
+    public static class Leg {
+
+        /** WALK or TRANSIT */
+        public String mode;
+
+        /** The stop this leg starts at, or null for the access walk from the origin. */
+        public String fromStopId;
+        public String fromStopName;
+
+        /** The stop this leg ends at, or null for the egress walk to the destination. */
+        public String toStopId;
+        public String toStopName;
+
+        /** For transit legs, the route and the pattern ridden. */
+        public String routeId;
+        public String patternId;
+
+        public int startTime;
+
+        public int endTime;
+    }
+}
@@ -0,0 +1,289 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.TIntIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A RAPTOR search from one origin at one departure time that keeps the state of every round, with parent pointers in
+ * primitive arrays, so that the journeys it finds can be reconstructed. This makes the compacted tables used by the
+ * RaptorWorker usable for point-to-point journey planning, not only for accessibility.
+ *
+ * Round k holds the stops reached with k rides (round 0 being the access walk), so the journeys found are the
+ * Pareto-optimal ones in arrival time and number of transfers: for each number of rides, the earliest arriving journey,
+ * if it arrives earlier than all journeys with fewer rides. Walk time is a third criterion: when two ways of reaching a
+ * stop arrive at the same time, the one with less walking is kept, also across rounds, so a journey with more rides
+ * and as early an arrival is also found if it walks less.
+ *
+ * Only scheduled trips are used. Frequency-based trips have no fixed departures and would need a boarding assumption;
+ * the RaptorWorker handles them for accessibility.
+ */
+public class RaptorPathWorker {
+
+    private static final int UNREACHED = RaptorWorker.UNREACHED;
+
+    /** The largest number of vehicles a journey may ride. */
+    public static final int MAX_RIDES = 8;
+
+    private final RaptorWorkerData data;
+
+    private final float walkSpeed;
+
+    /*
+     * The state of each round, indexed by round then stop. The arrival at a stop is either by riding a vehicle in the
+     * same round, or by a transfer from a stop where a vehicle was alighted in the same round (or the access walk in
+     * round 0). The rides are kept separately as well, because transfers start from where a vehicle was alighted.
+     */
+
+    /** The earliest arrival at each stop, by any means. */
+    private final int[][] arrival;
+
+    /** The time walked until the arrival at each stop. */
+    private final int[][] arrivalWalk;
+
+    /** The stop transferred from to make the arrival at each stop, or -1 if it was made by riding or by the access. */
+    private final int[][] transferFrom;
+
+    /** The earliest arrival at each stop on board a vehicle. */
+    private final int[][] rideArrival;
+
+    /** The time walked until the arrival on board at each stop. */
+    private final int[][] rideWalk;
+
+    /** The pattern, trip, boarding stop and positions in the pattern of the ride arriving at each stop. */
+    private final int[][] ridePattern;
+    private final int[][] rideTrip;
+    private final int[][] boardStop;
+    private final int[][] boardPosition;
+    private final int[][] alightPosition;
+
+    /** The best arrival at each stop in any round so far, and the time walked for it, to prune dominated labels. */
+    private final int[] bestArrival;
+    private final int[] bestWalk;
+
+    private int maxTime;
+
+    public RaptorPathWorker (RaptorWorkerData data, float walkSpeed) {
+        this.data = data;
+        this.walkSpeed = walkSpeed;
+        int rounds = MAX_RIDES + 1;
+        arrival = new int[rounds][data.nStops];
+        arrivalWalk = new int[rounds][data.nStops];
+        transferFrom = new int[rounds][data.nStops];
+        rideArrival = new int[rounds][data.nStops];
+        rideWalk = new int[rounds][data.nStops];
+        ridePattern = new int[rounds][data.nStops];
+        rideTrip = new int[rounds][data.nStops];
+        boardStop = new int[rounds][data.nStops];
+        boardPosition = new int[rounds][data.nStops];
+        alightPosition = new int[rounds][data.nStops];
+        bestArrival = new int[data.nStops];
+        bestWalk = new int[data.nStops];
+    }
+
+    /**
+     * @param accessTimes the time to walk from the origin to each stop near it, in seconds
+     * @param egressTimes the time to walk from each stop near the destination to it, in seconds
+     * @param departureTime the departure time from the origin, in seconds since midnight
+     * @return the Pareto-optimal journeys, with the fewest rides (and latest arrival) first
+     */
+    public List<RaptorJourney> route (TIntIntMap accessTimes, TIntIntMap egressTimes, int departureTime) {
+        for (int[][] times : new int[][][] { arrival, rideArrival }) {
+            for (int[] round : times) Arrays.fill(round, UNREACHED);
+        }
+        Arrays.fill(bestArrival, UNREACHED);
+        Arrays.fill(bestWalk, UNREACHED);
+        maxTime = departureTime + RaptorWorker.MAX_DURATION;
+
+        BitSet stopsReached = new BitSet(data.nStops);
+        TIntIntIterator it = accessTimes.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            int stop = it.key();
+            int walk = it.value();
+            arrival[0][stop] = bestArrival[stop] = departureTime + walk;
+            arrivalWalk[0][stop] = bestWalk[stop] = walk;
+            transferFrom[0][stop] = -1;
+            stopsReached.set(stop);
+        }
+
+        List<RaptorJourney> journeys = new ArrayList<>();
+        int bestDestinationArrival = UNREACHED;
+        int bestDestinationWalk = UNREACHED;
+        for (int round = 1; round <= MAX_RIDES && !stopsReached.isEmpty(); round++) {
+            BitSet stopsAlighted = ride(round, stopsReached);
+            stopsReached = transfer(round, stopsAlighted);
+
+            // The best journey with this many rides, if it is better than those with fewer
+            int bestStop = -1;
+            int bestTime = UNREACHED;
+            int bestTimeWalk = UNREACHED;
+            TIntIntIterator egress = egressTimes.iterator();
+            while (egress.hasNext()) {
+                egress.advance();
+                int stop = egress.key();
+                if (arrival[round][stop] == UNREACHED) continue;
+                int time = arrival[round][stop] + egress.value();
+                int walk = arrivalWalk[round][stop] + egress.value();
+                if (better(time, walk, bestTime, bestTimeWalk)) {
+                    bestStop = stop;
+                    bestTime = time;
+                    bestTimeWalk = walk;
+                }
+            }
+            if (bestStop != -1 && better(bestTime, bestTimeWalk, bestDestinationArrival, bestDestinationWalk)) {
+                bestDestinationArrival = bestTime;
+                bestDestinationWalk = bestTimeWalk;
+                journeys.add(reconstruct(round, bestStop, egressTimes.get(bestStop), departureTime));
+            }
+        }
+        return journeys;
+    }
+
+    /** @return the stops where a vehicle was alighted earlier than they were reached before */
+    private BitSet ride (int round, BitSet stopsReached) {
+        BitSet patternsTouched = new BitSet(data.nPatterns);
+        for (int stop = stopsReached.nextSetBit(0); stop >= 0; stop = stopsReached.nextSetBit(stop + 1)) {
+            for (int pattern : data.patternsForStop.get(stop)) {
+                patternsTouched.set(pattern);
+            }
+        }
+
+        int[] previousArrival = arrival[round - 1];
+        int[] previousWalk = arrivalWalk[round - 1];
+        BitSet stopsAlighted = new BitSet(data.nStops);
+        for (int p = patternsTouched.nextSetBit(0); p >= 0; p = patternsTouched.nextSetBit(p + 1)) {
+            RaptorWorkerTimetable timetable = data.timetablesForPattern.get(p);
+            if (!timetable.hasScheduledTrips()) continue;
+
+            int onTrip = -1;
+            int boardedAt = -1;
+            int boardedPosition = -1;
+            int walk = 0;
+            for (int position = 0; position < timetable.stopIndices.length; position++) {
+                int stop = timetable.stopIndices[position];
+                if (onTrip != -1) {
+                    int time = timetable.getArrival(onTrip, position);
+                    if (time < maxTime && better(time, walk, bestArrival[stop], bestWalk[stop])
+                            && better(time, walk, rideArrival[round][stop], rideWalk[round][stop])) {
+                        rideArrival[round][stop] = bestArrival[stop] = time;
+                        rideWalk[round][stop] = bestWalk[stop] = walk;
+                        ridePattern[round][stop] = p;
+                        rideTrip[round][stop] = onTrip;
+                        boardStop[round][stop] = boardedAt;
+                        boardPosition[round][stop] = boardedPosition;
+                        alightPosition[round][stop] = position;
+                        stopsAlighted.set(stop);
+                    }
+                }
+                // Board here if this catches an earlier trip, or the same one with less walking
+                if (previousArrival[stop] != UNREACHED) {
+                    int trip = timetable.findDepartureAfter(position, previousArrival[stop]);
+                    if (trip != -1 && (onTrip == -1 || trip < onTrip
+                            || (trip == onTrip && previousWalk[stop] < walk))) {
+                        onTrip = trip;
+                        boardedAt = stop;
+                        boardedPosition = position;
+                        walk = previousWalk[stop];
+                    }
+                }
+            }
+        }
+        return stopsAlighted;
+    }
+
+    /** @return the stops reached in this round, by alighting there or transferring from where a vehicle was alighted */
+    private BitSet transfer (int round, BitSet stopsAlighted) {
+        BitSet stopsReached = new BitSet(data.nStops);
+        for (int stop = stopsAlighted.nextSetBit(0); stop >= 0; stop = stopsAlighted.nextSetBit(stop + 1)) {
+            arrival[round][stop] = rideArrival[round][stop];
+            arrivalWalk[round][stop] = rideWalk[round][stop];
+            transferFrom[round][stop] = -1;
+            stopsReached.set(stop);
+        }
+        for (int stop = stopsAlighted.nextSetBit(0); stop >= 0; stop = stopsAlighted.nextSetBit(stop + 1)) {
+            int[] transfers = data.transfersForStop.get(stop);
+            for (int i = 0; i < transfers.length; i += 2) {
+                int toStop = transfers[i];
+                int walkTime = (int) (transfers[i + 1] / walkSpeed);
+                int time = rideArrival[round][stop] + walkTime;
+                int walk = rideWalk[round][stop] + walkTime;
+                if (time < maxTime && better(time, walk, bestArrival[toStop], bestWalk[toStop])
+                        && better(time, walk, arrival[round][toStop], arrivalWalk[round][toStop])) {
+                    arrival[round][toStop] = bestArrival[toStop] = time;
+                    arrivalWalk[round][toStop] = bestWalk[toStop] = walk;
+                    transferFrom[round][toStop] = stop;
+                    stopsReached.set(toStop);
+                }
+            }
+        }
+        return stopsReached;
+    }
+
+    /** Follow the parent pointers back from the arrival at the given stop in the given round. */
+    private RaptorJourney reconstruct (int round, int stop, int egressTime, int departureTime) {
+        List<RaptorJourney.Leg> legs = new ArrayList<>();
+        legs.add(walkLeg(stop, -1, arrival[round][stop], arrival[round][stop] + egressTime));
+
+        RaptorJourney journey = new RaptorJourney();
+        journey.departureTime = departureTime;
+        journey.arrivalTime = arrival[round][stop] + egressTime;
+        journey.rides = round;
+        journey.walkTime = arrivalWalk[round][stop] + egressTime;
+
+        for (int r = round; r > 0; r--) {
+            int from = transferFrom[r][stop];
+            if (from != -1) {
+                legs.add(walkLeg(from, stop, rideArrival[r][from], arrival[r][stop]));
+                stop = from;
+            }
+            RaptorWorkerTimetable timetable = data.timetablesForPattern.get(ridePattern[r][stop]);
+            int trip = rideTrip[r][stop];
+            RaptorJourney.Leg ride = new RaptorJourney.Leg();
+            ride.mode = "TRANSIT";
+            setStops(ride, boardStop[r][stop], stop);
+            ride.routeId = timetable.routeId;
+            ride.patternId = data.patternNames.get(ridePattern[r][stop]);
+            ride.startTime = timetable.getDeparture(trip, boardPosition[r][stop]);
+            ride.endTime = timetable.getArrival(trip, alightPosition[r][stop]);
+            legs.add(ride);
+
+            stop = boardStop[r][stop];
+        }
+        legs.add(walkLeg(-1, stop, departureTime, arrival[0][stop]));
+
+        for (int i = legs.size() - 1; i >= 0; i--) {
+            journey.legs.add(legs.get(i));
+        }
+        return journey;
+    }
+
+    private RaptorJourney.Leg walkLeg (int fromStop, int toStop, int startTime, int endTime) {
+        RaptorJourney.Leg leg = new RaptorJourney.Leg();
+        leg.mode = "WALK";
+        setStops(leg, fromStop, toStop);
+        leg.startTime = startTime;
+        leg.endTime = endTime;
+        return leg;
+    }
+
+    private void setStops (RaptorJourney.Leg leg, int fromStop, int toStop) {
+        if (fromStop != -1) {
+            leg.fromStopId = data.stopIds.get(fromStop);
+            leg.fromStopName = data.stopNames.get(fromStop);
+        }
+        if (toStop != -1) {
+            leg.toStopId = data.stopIds.get(toStop);
+            leg.toStopName = data.stopNames.get(toStop);
+        }
+    }
+
+    /** @return whether the first arrival is earlier than the second, or as early with less walking */
+    private static boolean better (int time, int walk, int otherTime, int otherWalk) {
+        return time < otherTime || (time == otherTime && walk < otherWalk);
+    }
+}
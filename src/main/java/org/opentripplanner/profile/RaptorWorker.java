@@ -1,5 +1,6 @@
 package org.opentripplanner.profile;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.map.TIntIntMap;
@@ -12,10 +13,14 @@ import org.slf4j.LoggerFactory;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A RaptorWorker carries out RAPTOR searches on a pre-filtered, compacted representation of all the trips running
@@ -62,6 +67,28 @@ public class RaptorWorker {
     /** If there are no schedules, the number of Monte Carlo draws to take */
     public static final int TOTAL_MONTE_CARLO_COUNT = 99;
 
+    /**
+     * The smallest number of departure minutes searched by one worker when the time window is split up between
+     * threads. The first minute of each chunk is a search from scratch that does not benefit from range-raptor, so
+     * chunks should not be too short.
+     */
+    static final int MIN_MINUTES_PER_CHUNK = 15;
+
+    /**
+     * The threads searching all chunks but the first one, which is searched on the calling thread. These are kept
+     * apart from the common fork-join pool so that chunked searches do not compete with other users of that pool.
+     */
+    private static final ExecutorService chunkExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("RaptorChunk-%d").setDaemon(true).build());
+
+    /**
+     * The largest number of chunks the time window is split into, each searched on its own thread. Set this field
+     * before routing. The travel times do not depend on the number of chunks, except for the Monte Carlo draws of
+     * frequency searches, which each worker takes from its own random offsets.
+     */
+    public int maxChunks = 1;
+
     int max_time = 0;
     int round = 0;
     List<int[]> timesPerStopPerRound;
@@ -90,7 +117,7 @@ public class RaptorWorker {
      *
      * All of that said, we could reconstruct paths simply by storing one more parallel array with
      * the index of the stop that you boarded a particular pattern at. Then we can do the typical
-     * reverse-optimization step.
+     * reverse-optimization step. RaptorPathWorker keeps such pointers for every round, for point-to-point searches.
      */
     int[] previousPatterns;
 
@@ -111,6 +138,11 @@ public class RaptorWorker {
 
     private long totalPropagationTime = 0;
 
+    private long totalSearchTime = 0;
+
+    /** The boarding assumption for frequency trips in the current search, which is varied to find the extrema. */
+    private RaptorWorkerTimetable.BoardingAssumption boardingAssumption;
+
     private FrequencyRandomOffsets offsets;
 
     public RaptorWorker(RaptorWorkerData data, ProfileRequest req) {
@@ -124,6 +156,7 @@ public class RaptorWorker {
         stopsTouched = new BitSet(data.nStops);
         patternsTouched = new BitSet(data.nPatterns);
         this.req = req; 
+        this.boardingAssumption = req.boardingAssumption;
         Arrays.fill(bestTimes, UNREACHED); // initialize once here and reuse on subsequent iterations.
         Arrays.fill(bestNonTransferTimes, UNREACHED);
         offsets = new FrequencyRandomOffsets(data);
@@ -164,21 +197,19 @@ public class RaptorWorker {
             monteCarloDraws = TOTAL_MONTE_CARLO_COUNT;
         }
 
-        // if no frequencies, don't run Monte Carlo
-        int iterations = (req.toTime - fromTime - 60) / 60 + 1;
+        int minutes = (req.toTime - fromTime - 60) / 60 + 1;
 
         // if we do Monte Carlo, we do more iterations. But we only do monte carlo when we have frequencies.
-        // So only update the number of iterations when we're actually going to use all of them, to
+        // So only multiply the number of iterations when we're actually going to use all of them, to
         // avoid uninitialized arrays.
-        // if we multiply when we're not doing monte carlo, we'll end up with too many iterations.
-        if (data.hasFrequencies)
-            // we add 2 because we do two "fake" draws where we do min or max instead of a monte carlo draw
-            iterations *= (monteCarloDraws + 2);
+        // we add 2 because we do two "fake" draws where we do min or max instead of a monte carlo draw
+        int iterationsPerMinute = data.hasFrequencies ? monteCarloDraws + 2 : 1;
+        int iterations = minutes * iterationsPerMinute;
 
         ts.searchCount = iterations;
 
         // Iterate backward through minutes (range-raptor) taking a snapshot of router state after each call
-        int[][] timesAtTargetsEachIteration = new int[iterations][data.nTargets];
+        int[][] timesAtTargetsEachIteration = new int[iterations][];
 
         // for each iteration, whether it is the result of a schedule or Monte Carlo search, or whether it is an extrema.
         // extrema are not included in averages.
@@ -188,15 +219,98 @@ public class RaptorWorker {
         // TODO don't hardwire timestep below
         ts.timeStep = 60;
 
+        int chunks = Math.max(1, Math.min(maxChunks, minutes / MIN_MINUTES_PER_CHUNK));
+        RaptorWorker[] workers = runChunks(chunks, initialStops, nonTransitTimes, fromTime, minutes, monteCarloDraws,
+                timesAtTargetsEachIteration, includeIterationInAverages);
+
+        // The propagation and search times are summed over all workers, so they may add up to more than the calc time.
+        long calcTime = System.currentTimeMillis() - beginCalcTime;
+        long propagationTime = 0;
+        long searchTime = 0;
+        for (RaptorWorker worker : workers) {
+            propagationTime += worker.totalPropagationTime;
+            searchTime += worker.totalSearchTime - worker.totalPropagationTime;
+        }
+        LOG.info("calc time {}sec in {} chunks", calcTime / 1000.0, chunks);
+        LOG.info("  propagation {}sec", propagationTime / 1000.0);
+        LOG.info("  raptor {}sec", searchTime / 1000.0);
+        ts.propagation = (int) propagationTime;
+        ts.transitSearch = (int) searchTime;
+        //dumpVariableByte(timesAtTargetsEachMinute);
+        // we can use min_max here as we've also run it once with best case and worst case board,
+        // so the best and worst cases are meaningful.
+        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
+                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
+        return propagatedTimesStore;
+    }
+
+    /**
+     * Split the time window into contiguous chunks of minutes, each searched by its own worker with its own state.
+     * This worker searches the first chunk on the calling thread, the others are searched on the chunk executor.
+     * Every chunk writes to its own range of iterations, so the results are in the same order as if the minutes had
+     * been searched one after another.
+     *
+     * @return the workers that searched the chunks, in order
+     */
+    RaptorWorker[] runChunks (int chunks, TIntIntMap initialStops, int[] nonTransitTimes, int fromTime, int minutes,
+                              int monteCarloDraws, int[][] timesAtTargetsEachIteration,
+                              boolean[] includeIterationInAverages) {
+        RaptorWorker[] workers = new RaptorWorker[chunks];
+        workers[0] = this;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 1; c < chunks; c++) {
+            RaptorWorker worker = new RaptorWorker(data, req);
+            int fromMinute = c * minutes / chunks;
+            int toMinute = (c + 1) * minutes / chunks;
+            workers[c] = worker;
+            futures.add(chunkExecutor.submit(() -> worker.runMinutes(initialStops, nonTransitTimes, fromTime,
+                    fromMinute, toMinute, monteCarloDraws, timesAtTargetsEachIteration, includeIterationInAverages)));
+        }
+        try {
+            runMinutes(initialStops, nonTransitTimes, fromTime, 0, minutes / chunks, monteCarloDraws,
+                    timesAtTargetsEachIteration, includeIterationInAverages);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while searching chunks of the time window", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error searching a chunk of the time window", e.getCause());
+        } finally {
+            // Do not leave chunks running after a failed search
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * Search the departure minutes in [fromMinute, toMinute), counted backward from the end of the time window,
+     * starting from the latest one with an empty state and reusing the state for each earlier minute (range-raptor).
+     * The travel times to the targets for each iteration are stored in the rows of timesAtTargetsEachIteration that
+     * belong to these minutes.
+     *
+     * The state carried over from later minutes only differs from the state of a fresh search by arrivals that are at
+     * least MAX_DURATION after the departure time. Those are reported as unreached, so the scheduled travel times do
+     * not depend on the minute the search starts from, nor on where the time window is split into chunks.
+     */
+    void runMinutes (TIntIntMap initialStops, int[] nonTransitTimes, int fromTime, int fromMinute, int toMinute,
+                     int monteCarloDraws, int[][] timesAtTargetsEachIteration, boolean[] includeIterationInAverages) {
+        long beginSearchTime = System.currentTimeMillis();
+        int iterationsPerMinute = data.hasFrequencies ? monteCarloDraws + 2 : 1;
+
         // times at targets from scheduled search
         int[] scheduledTimesAtTargets = new int[data.nTargets];
         Arrays.fill(scheduledTimesAtTargets, UNREACHED);
 
         // current iteration
-        int iteration = 0;
+        int iteration = fromMinute * iterationsPerMinute;
 
         // FIXME this should be changed to tolerate a zero-width time range
-        for (int departureTime = req.toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+        for (int n = fromMinute, departureTime = req.toTime - 60 - 60 * n; n < toMinute && departureTime >= fromTime;
+             departureTime -= 60, n++) {
             if (n % 15 == 0) {
                 LOG.info("minute {}", n);
             }
@@ -226,19 +340,18 @@ public class RaptorWorker {
                     // special cases: calculate the best and the worst cases as well
                     // Note that this (intentionally) does not affect searches where the user has requested
                     // an assumption other than RANDOM, or stops with transfer rules.
-                    RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
-
+                    // The request is shared between the workers, so the assumption is changed on this worker only.
                     if (i == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
                     else if (i == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
-                    else if (requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
+                    else if (req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM)
                         // use a new Monte Carlo draw each time
                         // included in averages by default
                         offsets.randomize();
@@ -246,49 +359,40 @@ public class RaptorWorker {
                     this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
                             previousPatternsCopy);
 
-                    req.boardingAssumption = requestedBoardingAssumption;
+                    boardingAssumption = req.boardingAssumption;
 
                     // do propagation
-                    int[] frequencyTimesAtTargets = timesAtTargetsEachIteration[iteration++];
-                    System.arraycopy(scheduledTimesAtTargets, 0, frequencyTimesAtTargets, 0,
-                            scheduledTimesAtTargets.length);
-                    // updates timesAtTargetsEachIteration directly because it has a reference into the array.
-                    this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets,
-                            departureTime);
-
-                    // convert to elapsed time
-                    for (int t = 0; t < frequencyTimesAtTargets.length; t++) {
-                        if (frequencyTimesAtTargets[t] != UNREACHED)
-                            frequencyTimesAtTargets[t] -= departureTime;
-                    }
+                    int[] frequencyTimesAtTargets = Arrays.copyOf(scheduledTimesAtTargets, scheduledTimesAtTargets.length);
+                    this.doPropagation(bestNonTransferTimesCopy, frequencyTimesAtTargets, departureTime);
+                    timesAtTargetsEachIteration[iteration++] = toElapsedTimes(frequencyTimesAtTargets, departureTime);
                 }
             } else {
-                final int dt = departureTime;
-                timesAtTargetsEachIteration[iteration++] = IntStream.of(scheduledTimesAtTargets)
-                        .map(i -> i != UNREACHED ? i - dt : i)
-                        .toArray();
+                timesAtTargetsEachIteration[iteration++] = toElapsedTimes(
+                        Arrays.copyOf(scheduledTimesAtTargets, scheduledTimesAtTargets.length), departureTime);
             }
         }
 
-        // make sure we filled the array, otherwise results are garbage.
+        // make sure we filled our part of the array, otherwise results are garbage.
         // This implies a bug in OTP, but it has happened in the past when we did
         // not set the number of iterations correctly.
-        // iteration should be incremented past end of array by ++ in assignment above
-        if (iteration != iterations)
+        // iteration should be incremented past the end of our part by ++ in assignment above
+        if (iteration != toMinute * iterationsPerMinute)
             throw new IllegalStateException("Iterations did not completely fill output array");
 
-        long calcTime = System.currentTimeMillis() - beginCalcTime;
-        LOG.info("calc time {}sec", calcTime / 1000.0);
-        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
-        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
-        ts.propagation = (int) totalPropagationTime;
-        ts.transitSearch = (int) (calcTime - totalPropagationTime);
-        //dumpVariableByte(timesAtTargetsEachMinute);
-        // we can use min_max here as we've also run it once with best case and worst case board,
-        // so the best and worst cases are meaningful.
-        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
-                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
-        return propagatedTimesStore;
+        totalSearchTime += System.currentTimeMillis() - beginSearchTime;
+    }
+
+    /** Convert arrival times to travel times in place. Targets reached in MAX_DURATION or more are unreached. */
+    private static int[] toElapsedTimes (int[] timesAtTargets, int departureTime) {
+        for (int t = 0; t < timesAtTargets.length; t++) {
+            if (timesAtTargets[t] != UNREACHED) {
+                timesAtTargets[t] -= departureTime;
+                if (timesAtTargets[t] >= MAX_DURATION) {
+                    timesAtTargets[t] = UNREACHED;
+                }
+            }
+        }
+        return timesAtTargets;
     }
 
     public void dumpVariableByte(int[][] array) {
@@ -347,8 +451,11 @@ public class RaptorWorker {
         // we need to mark every reachable stop here, because the network is changing randomly.
         // It is entirely possible that the first trip in an itinerary does not change, but trips
         // further down do.
-        IntStream.range(0, bestTimes.length).filter(i -> bestTimes[i] != UNREACHED).forEach(
-                this::markPatternsForStop);
+        for (int stopIndex = 0; stopIndex < bestTimes.length; stopIndex++) {
+            if (bestTimes[stopIndex] != UNREACHED) {
+                markPatternsForStop(stopIndex);
+            }
+        }
 
         // Anytime a round updates some stops, move on to another round
         while (doOneRound(bestTimes, bestNonTransferTimes, previousPatterns, true)) {
@@ -391,7 +498,7 @@ public class RaptorWorker {
                         for (int trip = 0; trip < timetable.getFrequencyTripCount(); trip++) {
                             int boardTime = timetable
                                     .getFrequencyDeparture(trip, stopPositionInPattern,
-                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, req.boardingAssumption);
+                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, boardingAssumption);
 
                             if (boardTime != -1 && boardTime < remainOnBoardTime) {
                                 // make sure we board the best frequency entry at a stop
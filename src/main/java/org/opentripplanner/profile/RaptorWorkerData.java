@@ -101,6 +101,8 @@ public class RaptorWorkerData implements Serializable {
     public transient final TIntIntMap indexForStop;
      /** Optional debug data: the name of each stop. */
     public transient final List<String> stopNames = new ArrayList<>();
+    /** The ID of each stop, parallel to stopNames, or null for stops added by a scenario. */
+    public transient final List<String> stopIds = new ArrayList<>();
     public transient final List<String> patternNames = new ArrayList<>();
 
     /** Create RaptorWorkerData for the given window and graph */
@@ -244,6 +246,7 @@ public class RaptorWorkerData implements Serializable {
                         indexForStop.put(vidx, stopIndex);
                         stopForIndex.add(vidx);
                         stopNames.add(stop.getName());
+                        stopIds.add(stop.getId().toString());
                     }
                     stopIndexesForPattern.add(stopIndex);
                 }
@@ -280,6 +283,8 @@ public class RaptorWorkerData implements Serializable {
                     addedStops.put(t, stopIndex);
                     indexForStop.put(t.index, stopIndex);
                     stopForIndex.add(t.index);
+                    stopNames.add(t.toString());
+                    stopIds.add(null);
                 }
 
                 timetable.stopIndices = Arrays.asList(atp.temporaryStops).stream()
@@ -458,10 +463,21 @@ public class RaptorWorkerData implements Serializable {
                 Vertex tstop = graph.getVertexById(stop);
                 boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
                 // convert distance to time
-                int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
+                int[] distancesForStop;
+                int start, end;
+                if (isPermanentStop) {
+                    int stopIndex = stc.stopIndex((TransitStop) tstop);
+                    distancesForStop = stc.getVertexDistances();
+                    start = stc.start(stopIndex);
+                    end = stc.end(stopIndex);
+                } else {
+                    distancesForStop = temporaryStopTreeCache.get(stop);
+                    start = 0;
+                    end = distancesForStop.length;
+                }
                 TIntList timesForStop = new TIntArrayList();
 
-                for (int i = 0; i < distancesForStop.length; i += 2) {
+                for (int i = start; i < end; i += 2) {
                     int vidx = distancesForStop[i];
                     int dist = distancesForStop[i + 1];
 
@@ -538,16 +554,23 @@ public class RaptorWorkerData implements Serializable {
                 int stop = stopIt.next();
 
                 int[] distancesForStop;
-                
+                int start, end;
+
                 Vertex tstop = graph.getVertexById(stop);
-                if (tstop != null && TransitStop.class.isInstance(tstop))
+                if (tstop != null && TransitStop.class.isInstance(tstop)) {
                     // permanent stop
-                    distancesForStop = stc.distancesForStop.get(tstop);
-                else
+                    int stopIndex = stc.stopIndex((TransitStop) tstop);
+                    distancesForStop = stc.getVertexDistances();
+                    start = stc.start(stopIndex);
+                    end = stc.end(stopIndex);
+                } else {
                     // temporary stop
                     distancesForStop = temporaryStopTreeCache.get(stop);
+                    start = 0;
+                    end = distancesForStop.length;
+                }
 
-                STREET: for (int i = 0; i < distancesForStop.length; i++) {
+                STREET: for (int i = start; i < end; i++) {
                     int v = distancesForStop[i++];
                     int d = distancesForStop[i];
 
@@ -613,6 +636,20 @@ public class RaptorWorkerData implements Serializable {
         ts.targetCount = nTargets;
     }
 
+    /** @return a rough estimate of the memory taken by the tables, in bytes, for bounding caches of them */
+    public long estimateMemorySize () {
+        long size = 0;
+        for (List<int[]> arrays : Arrays.asList(transfersForStop, patternsForStop, targetsForStop)) {
+            for (int[] array : arrays) {
+                if (array != null) size += 16 + 4L * array.length;
+            }
+        }
+        for (RaptorWorkerTimetable timetable : timetablesForPattern) {
+            size += timetable.estimateMemorySize();
+        }
+        return size;
+    }
+
     /** find stops from a given SPT, including temporary stops. If useTimes is true, use times from the SPT, otherwise use distances */
     public TIntIntMap findStopsNear (ShortestPathTree spt, Graph graph, boolean useTimes, float walkSpeed) {
         TIntIntMap accessTimes = new TIntIntHashMap();
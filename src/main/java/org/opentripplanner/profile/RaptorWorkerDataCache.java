@@ -0,0 +1,126 @@
+package org.opentripplanner.profile;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.analyst.scenario.Modification;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache of the RAPTOR data tables built for profile requests, so that successive requests for the same graph, day,
+ * time window and scenario (typically one per origin in an analysis job) share one table instead of each filtering
+ * all the patterns again. RaptorWorkerData is not modified by the searches, so it can be used by many at once.
+ *
+ * Tables are evicted least recently used first once their estimated total size exceeds the given number of bytes.
+ * When several threads ask for the same table at once, it is only built once and the others wait for it.
+ *
+ * Tables are not written to disk: the index from graph vertices to stops needed to find the stops at the origin is
+ * transient, so a table read back could not be used for routing anyway. Rebuilding a table from the graph is much
+ * faster than the searches it is used for.
+ */
+public class RaptorWorkerDataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerDataCache.class);
+
+    /** Serializes scenarios for the cache key, leaving out the warnings that are added when they are applied. */
+    private static final ObjectMapper SCENARIO_MAPPER = new ObjectMapper()
+            .addMixIn(Modification.class, ModificationKeyMixin.class);
+
+    private final Cache<String, RaptorWorkerData> cache;
+
+    /** @param maxBytes the estimated total size of the tables to keep */
+    public RaptorWorkerDataCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, RaptorWorkerData data) ->
+                        (int) Math.min(Integer.MAX_VALUE, data.estimateMemorySize()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the table for the given request, graph and sample set (which may be null), building it if it is not
+     *         already cached
+     */
+    public RaptorWorkerData get(ProfileRequest request, Graph graph, SampleSet sampleSet, TaskStatistics ts) {
+        String key = key(request, graph, sampleSet);
+        if (key == null) {
+            return RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, ts);
+        }
+        try {
+            return cache.get(key, () -> {
+                LOG.info("Building RAPTOR data for {}", key);
+                return RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, ts);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the cache key for the table of a request: everything the table is built from. The graph is identified
+     *         by its router ID and build time, so that a reloaded graph does not get the tables of the previous one.
+     *         Null if the table cannot be shared, because its point set or scenario cannot be identified.
+     */
+    static String key(ProfileRequest request, Graph graph, SampleSet sampleSet) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(graph.routerId).append('@').append(graph.buildTime.getTime());
+        sb.append('|').append(request.date);
+        sb.append('|').append(request.fromTime).append('-').append(request.toTime);
+        sb.append('|').append(request.transitModes);
+        sb.append('|').append(request.boardingAssumption);
+        sb.append('|').append(request.walkSpeed).append('|').append(request.maxWalkTime);
+        sb.append('|');
+        if (sampleSet != null) {
+            if (sampleSet.pset.id == null) return null;
+            sb.append(sampleSet.pset.id);
+        }
+        sb.append('|');
+        if (request.scenario != null) {
+            String scenarioHash = scenarioHash(request);
+            if (scenarioHash == null) return null;
+            sb.append(scenarioHash);
+        }
+        return sb.toString();
+    }
+
+    private static String scenarioHash(ProfileRequest request) {
+        try {
+            byte[] json = SCENARIO_MAPPER.writeValueAsBytes(request.scenario.modifications);
+            return Hashing.sha256().hashBytes(json).toString();
+        } catch (JsonProcessingException e) {
+            // Not expected, scenarios are deserialized from JSON in the first place.
+            LOG.warn("Could not serialize scenario {} for the RAPTOR data cache key", request.scenario.id, e);
+            return null;
+        }
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @JsonIgnoreProperties("warnings")
+    private static abstract class ModificationKeyMixin { }
+}
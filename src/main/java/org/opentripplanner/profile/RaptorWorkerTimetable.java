@@ -42,12 +42,25 @@ public class RaptorWorkerTimetable implements Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(RaptorWorkerTimetable.class);
 
-    /* Times for schedule-based trips/patterns are stored in a 2D array. */
+    /*
+     * Times for schedule-based trips/patterns are stored in flat stop-major arrays: the times of all the trips at the
+     * first stop, then of all the trips at the second stop, and so on. Finding the first trip leaving a stop after a
+     * given time is then a binary search of one contiguous column rather than a scan touching one array per trip.
+     */
 
     int nTrips, nStops;
 
-    /* For each trip on this pattern, an packed array of (arrival, departure) time pairs. */
-    public int[][] timesPerTrip;
+    /** Departure times of scheduled trips; the departure of trip t from stop s is at s * nTrips + t. */
+    int[] departures;
+
+    /** Arrival times of scheduled trips, parallel to departures. */
+    int[] arrivals;
+
+    /**
+     * Whether the departures from each stop are in trip order, so that they can be binary searched. This is only
+     * false when trips overtake each other, in which case the departures are scanned as they always were.
+     */
+    boolean departuresSorted = true;
 
     /* Times for frequency-based trips are stored in parallel arrays (a column store). */
 
@@ -84,7 +97,38 @@ public class RaptorWorkerTimetable implements Serializable {
     public RaptorWorkerTimetable(int nTrips, int nStops) {
         this.nTrips = nTrips;
         this.nStops = nStops;
-        timesPerTrip = new int[nTrips][];
+        departures = new int[nTrips * nStops];
+        arrivals = new int[nTrips * nStops];
+    }
+
+    /**
+     * Set the times of a scheduled trip. Trips must be set in the order of their first arrival.
+     * @param times a packed array of (arrival, departure) time pairs at each stop
+     */
+    void setTripTimes (int trip, int[] times) {
+        for (int stop = 0; stop < nStops; stop++) {
+            int i = stop * nTrips + trip;
+            arrivals[i] = times[stop * 2];
+            departures[i] = times[stop * 2 + 1];
+            if (trip > 0 && departures[i - 1] > departures[i]) {
+                departuresSorted = false;
+            }
+        }
+    }
+
+    /** @return a rough estimate of the memory taken by this timetable, in bytes */
+    public long estimateMemorySize () {
+        long size = 64 + estimateMemorySize(departures) + estimateMemorySize(arrivals)
+                + estimateMemorySize(stopIndices) + estimateMemorySize(headwaySecs)
+                + estimateMemorySize(startTimes) + estimateMemorySize(endTimes);
+        if (frequencyTrips != null) {
+            for (int[] trip : frequencyTrips) size += estimateMemorySize(trip);
+        }
+        return size;
+    }
+
+    private static long estimateMemorySize (int[] array) {
+        return array == null ? 0 : 16 + 4L * array.length;
     }
 
     /**
@@ -92,20 +136,37 @@ public class RaptorWorkerTimetable implements Serializable {
      * MIN_BOARD_TIME_SECONDS seconds of slack. 
      */
     public int findDepartureAfter(int stop, int time) {
-        for (int trip = 0; trip < timesPerTrip.length; trip++) {
-            if (getDeparture(trip, stop) > time + MIN_BOARD_TIME_SECONDS) {
-                return trip;
+        int earliest = time + MIN_BOARD_TIME_SECONDS;
+        int from = stop * nTrips;
+        int to = from + nTrips;
+        if (!departuresSorted) {
+            for (int i = from; i < to; i++) {
+                if (departures[i] > earliest) {
+                    return i - from;
+                }
+            }
+            return -1;
+        }
+        // Find the first departure after the earliest time
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departures[mid] > earliest) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-        return -1;
+        return low == to ? -1 : low - from;
     }
 
     public int getArrival (int trip, int stop) {
-        return timesPerTrip[trip][stop * 2];
+        return arrivals[stop * nTrips + trip];
     }
 
     public int getDeparture (int trip, int stop) {
-        return timesPerTrip[trip][stop * 2 + 1];
+        return departures[stop * nTrips + trip];
     }
 
     public int getFrequencyDeparture (int trip, int stop, int time, int previousPattern, FrequencyRandomOffsets offsets) {
@@ -242,7 +303,7 @@ public class RaptorWorkerTimetable implements Serializable {
 
     /** does this timetable have any scheduled trips? */
     public boolean hasScheduledTrips () {
-        return this.timesPerTrip != null && this.timesPerTrip.length > 0;
+        return nTrips > 0;
     }
 
     /**
@@ -326,10 +387,10 @@ public class RaptorWorkerTimetable implements Serializable {
                 times[s * 2] = arrival;
                 times[s * 2 + 1] = departure;
             }
-            rwtt.timesPerTrip[t++] = times;
+            rwtt.setTripTimes(t++, times);
         }
 
-        ts.scheduledTripCount += rwtt.timesPerTrip.length;
+        ts.scheduledTripCount += rwtt.nTrips;
 
         // save frequency times
         rwtt.frequencyTrips = new int[freqs.size()][pattern.getStops().size() * 2];
@@ -365,6 +426,7 @@ public class RaptorWorkerTimetable implements Serializable {
         ts.frequencyEntryCount += rwtt.getFrequencyTripCount();
 
         rwtt.mode = pattern.route.getType();
+        rwtt.routeId = pattern.route.getId().toString();
 
         return rwtt;
     }
@@ -398,10 +460,10 @@ public class RaptorWorkerTimetable implements Serializable {
         // create timetabled trips
         int t = 0;
         for (AddTripPattern.PatternTimetable pt : timetables) {
-            rwtt.timesPerTrip[t++] = timesForPatternTimetable(atp, pt);
+            rwtt.setTripTimes(t++, timesForPatternTimetable(atp, pt));
         }
 
-        ts.scheduledTripCount += rwtt.timesPerTrip.length;
+        ts.scheduledTripCount += rwtt.nTrips;
 
         // create frequency trips
         rwtt.frequencyTrips = new int[frequencies.size()][atp.temporaryStops.length * 2];
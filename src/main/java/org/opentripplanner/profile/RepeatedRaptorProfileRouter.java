@@ -29,7 +29,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.DayOfWeek;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Perform one-to-many profile routing using repeated RAPTOR searches. In this context, profile routing means finding
@@ -64,14 +66,19 @@ public class RepeatedRaptorProfileRouter {
     public String banAgency = null;
 
     /**
-     * If this is null we will generate a throw-away raptor data table. If it is set, the provided table will be used
-     * for routing. Ideally we'd handle the cacheing of reusable raptor tables inside this class, but this class is
-     * a throw-away calculator instance and doesn't have access to the job IDs which would be the cache keys.
+     * If this is set, the provided table will be used for routing. Otherwise the table is taken from the
+     * raptorWorkerDataCache if there is one, or a throw-away table is generated.
      */
     public RaptorWorkerData raptorWorkerData;
 
+    /** If not null, raptor data tables are shared through this cache with other requests for the same tables. */
+    public RaptorWorkerDataCache raptorWorkerDataCache;
+
     private ShortestPathTree preTransitSpt;
 
+    /** The requests of the street searches around the origin and destination, whose routing contexts need cleanup. */
+    private List<RoutingRequest> streetRequests = new ArrayList<>();
+
     /** The sum of all earliest-arrival travel times to a given transit stop. Will be divided to create an average. */
     TObjectLongMap<TransitStop> accumulator = new TObjectLongHashMap<TransitStop>();
 
@@ -89,6 +96,9 @@ public class RepeatedRaptorProfileRouter {
     // Set this field to true before routing if you want the full travel times included in your response.
     public boolean includeTimes = false;
 
+    // Set this field before routing to split the time window into up to this many chunks searched in parallel.
+    public int raptorChunks = 1;
+
     /**
      * Make a router to use for making time surfaces only.
      *
@@ -128,6 +138,14 @@ public class RepeatedRaptorProfileRouter {
     }
 
     public ResultEnvelope route () {
+        try {
+            return routeWithoutCleanup();
+        } finally {
+            cleanup(); // destroy routing contexts even when an exception happens
+        }
+    }
+
+    private ResultEnvelope routeWithoutCleanup () {
 
         boolean isochrone = (sampleSet == null); // When no sample set is provided, we're making isochrones.
         boolean transit = (request.transitModes != null && request.transitModes.isTransit()); // Does the search involve transit at all?
@@ -135,11 +153,15 @@ public class RepeatedRaptorProfileRouter {
         long computationStartTime = System.currentTimeMillis();
         LOG.info("Begin profile request");
 
-        // Data tables may have been supplied by the caller (if they are cached). Otherwise generate a throw away one.
+        // Data tables may have been supplied by the caller or be cached. Otherwise generate a throw away one.
         // We only create data tables if transit is in use, otherwise they wouldn't serve any purpose.
         if (raptorWorkerData == null && transit) {
             long dataStart = System.currentTimeMillis();
-            raptorWorkerData = getRaptorWorkerData(request, graph, sampleSet, ts);
+            if (raptorWorkerDataCache != null) {
+                raptorWorkerData = raptorWorkerDataCache.get(request, graph, sampleSet, ts);
+            } else {
+                raptorWorkerData = getRaptorWorkerData(request, graph, sampleSet, ts);
+            }
             ts.raptorData = (int) (System.currentTimeMillis() - dataStart);
         }
 
@@ -177,6 +199,7 @@ public class RepeatedRaptorProfileRouter {
 
         if (transit) {
             RaptorWorker worker = new RaptorWorker(raptorWorkerData, request);
+            worker.maxChunks = raptorChunks;
             propagatedTimesStore = worker.runRaptor(graph, transitStopAccessTimes, nonTransitTimes, ts);
             ts.initialStopCount = transitStopAccessTimes.size();
         } else {
@@ -211,6 +234,42 @@ public class RepeatedRaptorProfileRouter {
         return envelope;
     }
 
+    /**
+     * Find the journeys from the origin to the destination of the request that leave at its start time, keeping the
+     * paths. This is an alternative to the ProfileRouter for point-to-point requests, using the same tables as the
+     * repeated RAPTOR searches.
+     */
+    public List<RaptorJourney> routeJourneys () {
+        if (raptorWorkerData == null) {
+            if (raptorWorkerDataCache != null) {
+                raptorWorkerData = raptorWorkerDataCache.get(request, graph, null, ts);
+            } else {
+                raptorWorkerData = getRaptorWorkerData(request, graph, null, ts);
+            }
+        }
+        try {
+            TIntIntMap accessTimes = findInitialStops(false, raptorWorkerData);
+            TIntIntMap egressTimes = findInitialStops(true, raptorWorkerData);
+            return new RaptorPathWorker(raptorWorkerData, request.walkSpeed).route(accessTimes, egressTimes,
+                    request.fromTime);
+        } finally {
+            cleanup();
+        }
+    }
+
+    /**
+     * Destroy the routing contexts of the street searches made so far, removing their temporary vertices and edges
+     * from the graph. Routing does this itself, callers of findInitialStops need to do it once they are done.
+     */
+    public void cleanup () {
+        for (RoutingRequest rr : streetRequests) {
+            if (rr.rctx != null) {
+                rr.cleanup();
+            }
+        }
+        streetRequests.clear();
+    }
+
     /**
      * Find all transit stops accessible by streets around the origin, leaving behind a shortest path tree of the
      * reachable area in the field preTransitSpt.
@@ -230,6 +289,7 @@ public class RepeatedRaptorProfileRouter {
         rr.from = new GenericLocation(lat, lon);
         //rr.walkSpeed = request.walkSpeed;
         rr.to = rr.from;
+        streetRequests.add(rr);
         rr.setRoutingContext(graph);
         rr.dateTime = request.date.toDateMidnight(DateTimeZone.forTimeZone(graph.getTimeZone())).getMillis() / 1000 +
                 request.fromTime;
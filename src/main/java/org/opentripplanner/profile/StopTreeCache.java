@@ -1,7 +1,5 @@
 package org.opentripplanner.profile;
 
-import com.beust.jcommander.internal.Maps;
-
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -14,63 +12,175 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Keeps travel distances from all transit stops in a particular Graph to their nearby street nodes.
  * This allows us to propagate travel times out from transit to streets much faster in one-to-many analyst queries.
  * The StopTreeCache has a fixed distance cutoff, so will be unable to provide distance information for vertices beyond
  * that cutoff distance.
+ *
+ * The trees of all stops are packed into a few arrays in compressed sparse row form, so the cache holds no per-stop
+ * objects. It can be built by the graph builder (see StopTreeCacheModule) and saved with the graph, so that it does not
+ * need to be rebuilt every time the graph is loaded.
  */
-public class StopTreeCache {
+public class StopTreeCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(StopTreeCache.class);
-    final int maxWalkMeters;
-    // Flattened 2D array of (streetVertexIndex, distanceFromStop) for each TransitStop
-    public final Map<TransitStop, int[]> distancesForStop = Maps.newHashMap();
+
+    public final int maxWalkMeters;
+
+    /**
+     * The number of vertices of the graph that have edges when the cache is built. These are the vertices that are
+     * saved with the graph, so a cache built for a different street network can be told apart after loading.
+     */
+    private final int vertexCount;
+
+    /** The vertex indices of the transit stops, sorted. The position of a stop in this array is its stop index. */
+    private final int[] stopVertexIndices;
+
+    /**
+     * The position in vertexDistances at which the tree of each stop begins, by stop index. There is one more entry
+     * than there are stops, so the tree of stop s ends where the tree of stop s + 1 begins.
+     */
+    private final int[] offsets;
+
+    /** Flattened 2D array of (streetVertexIndex, distanceFromStop) for all stops, one after another. */
+    private final int[] vertexDistances;
 
     public StopTreeCache (Graph graph, int maxWalkMeters) {
         this.maxWalkMeters = maxWalkMeters;
+        this.vertexCount = countConnectedVertices(graph);
         LOG.info("Caching distances to nearby street intersections from each transit stop...");
-        graph.index.stopVertexForStop.values().parallelStream().forEach(tstop -> {
-            RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
-            rr.batch = (true);
-            rr.setRoutingContext(graph, tstop, tstop);
-            AStar astar = new AStar();
-            rr.longDistance = true;
-            rr.setNumItineraries(1);
-
-            // since we're storing distances and later using them to optimize
-            // (in the profile propagation code we optimize on distance / walkSpeed
-            //  not the actual time including turn costs etc.),
-            // we need to optimize on distance here as well.
-            rr.maxWalkDistance = maxWalkMeters;
-            rr.softWalkLimiting = false;
-            rr.dominanceFunction = new DominanceFunction.LeastWalk();
-
-            ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
-            // Copy vertex indices and distances into a flattened 2D array
-            int[] distances = new int[spt.getVertexCount() * 2];
-            int i = 0;
-            for (Vertex vertex : spt.getVertices()) {
-                State state = spt.getState(vertex);
-                
-                if (state == null)
-                    continue;
-                
-                distances[i++] = vertex.getIndex();
-                distances[i++] = (int) state.getWalkDistance();
-            }
-
-            rr.cleanup();
+        TransitStop[] stops = graph.index.stopVertexForStop.values().stream()
+                .sorted((s0, s1) -> Integer.compare(s0.getIndex(), s1.getIndex()))
+                .toArray(TransitStop[]::new);
+        stopVertexIndices = new int[stops.length];
+        for (int s = 0; s < stops.length; s++) {
+            stopVertexIndices[s] = stops[s].getIndex();
+        }
+        int[][] trees = new int[stops.length][];
+        IntStream.range(0, stops.length).parallel().forEach(s -> trees[s] = stopTree(graph, stops[s], maxWalkMeters));
 
-            synchronized (distancesForStop) {
-                distancesForStop.put(tstop, distances);
-            }
-        });
+        offsets = new int[stops.length + 1];
+        for (int s = 0; s < stops.length; s++) {
+            offsets[s + 1] = offsets[s] + trees[s].length;
+        }
+        vertexDistances = new int[offsets[stops.length]];
+        for (int s = 0; s < stops.length; s++) {
+            System.arraycopy(trees[s], 0, vertexDistances, offsets[s], trees[s].length);
+        }
         LOG.info("Done caching distances to nearby street intersections from each transit stop.");
     }
 
+    private static int countConnectedVertices (Graph graph) {
+        int count = 0;
+        for (Vertex vertex : graph.getVertices()) {
+            if (vertex.getDegreeOut() + vertex.getDegreeIn() > 0) count++;
+        }
+        return count;
+    }
+
+    /** @return the flattened (streetVertexIndex, distance) pairs of the street vertices near the given stop */
+    private static int[] stopTree (Graph graph, TransitStop tstop, int maxWalkMeters) {
+        RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
+        rr.batch = (true);
+        rr.setRoutingContext(graph, tstop, tstop);
+        AStar astar = new AStar();
+        rr.longDistance = true;
+        rr.setNumItineraries(1);
+
+        // since we're storing distances and later using them to optimize
+        // (in the profile propagation code we optimize on distance / walkSpeed
+        //  not the actual time including turn costs etc.),
+        // we need to optimize on distance here as well.
+        rr.maxWalkDistance = maxWalkMeters;
+        rr.softWalkLimiting = false;
+        rr.dominanceFunction = new DominanceFunction.LeastWalk();
+
+        ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
+        // Copy vertex indices and distances into a flattened 2D array
+        int[] distances = new int[spt.getVertexCount() * 2];
+        int i = 0;
+        for (Vertex vertex : spt.getVertices()) {
+            State state = spt.getState(vertex);
+
+            if (state == null)
+                continue;
+
+            distances[i++] = vertex.getIndex();
+            distances[i++] = (int) state.getWalkDistance();
+        }
+
+        rr.cleanup();
+        return i == distances.length ? distances : Arrays.copyOf(distances, i);
+    }
+
+    /** @return the stop index of the given stop, or -1 if it is not in this cache */
+    public int stopIndex (TransitStop transitStop) {
+        int s = Arrays.binarySearch(stopVertexIndices, transitStop.getIndex());
+        return s < 0 ? -1 : s;
+    }
+
+    /** @return the number of stops in this cache */
+    public int getStopCount () {
+        return stopVertexIndices.length;
+    }
+
+    /**
+     * @return the flattened (streetVertexIndex, distance) pairs of all stops. The pairs of the stop with a given stop
+     *         index are between {@link #start(int)} inclusive and {@link #end(int)} exclusive. Do not modify.
+     */
+    public int[] getVertexDistances () {
+        return vertexDistances;
+    }
+
+    /** @return the position in {@link #getVertexDistances()} of the first pair of the given stop */
+    public int start (int stopIndex) {
+        return offsets[stopIndex];
+    }
+
+    /** @return the position in {@link #getVertexDistances()} just after the last pair of the given stop */
+    public int end (int stopIndex) {
+        return offsets[stopIndex + 1];
+    }
+
+    /**
+     * @return a copy of the flattened (streetVertexIndex, distance) pairs of the given stop, or null if it is not in
+     *         this cache. Loops over many stops should use {@link #start(int)} and {@link #end(int)} instead.
+     */
+    public int[] distancesForStop (TransitStop transitStop) {
+        int s = stopIndex(transitStop);
+        return s < 0 ? null : Arrays.copyOfRange(vertexDistances, offsets[s], offsets[s + 1]);
+    }
+
+    /**
+     * @return whether this cache was built with the given distance for a graph with the same vertices, and has a tree
+     *         for every transit stop of the given graph and for nothing else, so that a cache saved with a graph can be
+     *         checked before it is used.
+     */
+    public boolean matches (Graph graph, int maxWalkMeters) {
+        if (this.maxWalkMeters != maxWalkMeters || graph.index.stopVertexForStop.size() != stopVertexIndices.length) {
+            return false;
+        }
+        if (countConnectedVertices(graph) != vertexCount) {
+            return false;
+        }
+        for (TransitStop tstop : graph.index.stopVertexForStop.values()) {
+            if (stopIndex(tstop) < 0) return false;
+        }
+        return true;
+    }
+
+    /** @return the approximate size of this cache in bytes */
+    public long estimateMemorySize () {
+        return 4L * (stopVertexIndices.length + offsets.length + vertexDistances.length);
+    }
+
     /**
      * Given a travel time to a transit stop, fill in the array with minimum travel times to all nearby street vertices.
      * This function is meant to be called repeatedly on multiple transit stops, accumulating minima
@@ -79,12 +189,14 @@ public class StopTreeCache {
     public void propagateStop(TransitStop transitStop, int baseTimeSeconds, double walkSpeed, int[] targetArray) {
         // Iterate over street intersections in the vicinity of this particular transit stop.
         // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
-        int[] distances = distancesForStop.get(transitStop);
-        int v = 0;
-        while (v < distances.length) {
+        int s = stopIndex(transitStop);
+        if (s < 0) return;
+        int v = offsets[s];
+        int end = offsets[s + 1];
+        while (v < end) {
             // Unravel flattened 2D array
-            int vertexIndex = distances[v++];
-            int distance = distances[v++];
+            int vertexIndex = vertexDistances[v++];
+            int distance = vertexDistances[v++];
             // distance in meters over walkspeed in meters per second --> seconds
             int egressWalkTimeSeconds = (int) (distance / walkSpeed);
             int propagated_time = baseTimeSeconds + egressWalkTimeSeconds;
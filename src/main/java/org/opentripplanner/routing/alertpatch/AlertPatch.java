@@ -84,68 +84,36 @@ public class AlertPatch implements Serializable {
         this.id = id;
     }
 
+    /**
+     * Attach this patch to all the edges it affects in the given graph, publishing a new alert patch index.
+     */
     public void apply(Graph graph) {
-        Agency agency = null;
-        if (feedId != null) {
-            Map<String, Agency> agencies = graph.index.agenciesForFeedId.get(feedId);
-            agency = this.agency != null ? agencies.get(this.agency) : null;
-        }
-        Route route = this.route != null ? graph.index.routeForId.get(this.route) : null;
-        Stop stop = this.stop != null ? graph.index.stopForId.get(this.stop) : null;
-        Trip trip = this.trip != null ? graph.index.tripForId.get(this.trip) : null;
-
-        if (route != null || trip != null || agency != null) {
-            Collection<TripPattern> tripPatterns = null;
-
-            if (trip != null) {
-                tripPatterns = new LinkedList<>();
-                TripPattern tripPattern = graph.index.patternForTrip.get(trip);
-                if (tripPattern != null) {
-                    tripPatterns.add(tripPattern);
-                }
-            } else if (route != null) {
-               tripPatterns = graph.index.patternsForRoute.get(route);
-            } else {
-                // Find patterns for the feed.
-                tripPatterns = graph.index.patternsForFeedId.get(feedId);
-            }
-
-            if (tripPatterns != null) {
-                for (TripPattern tripPattern : tripPatterns) {
-                    if (direction != null && !direction.equals(tripPattern.getDirection())) {
-                        continue;
-                    }
-                    if (directionId != -1 && directionId == tripPattern.directionId) {
-                        continue;
-                    }
-                    for (int i = 0; i < tripPattern.stopPattern.stops.length; i++) {
-                        if (stop == null || stop.equals(tripPattern.stopPattern.stops[i])) {
-                            graph.addAlertPatch(tripPattern.boardEdges[i], this);
-                            graph.addAlertPatch(tripPattern.alightEdges[i], this);
-                        }
-                    }
-                }
-            }
-        } else if (stop != null) {
-            TransitStop transitStop = graph.index.stopVertexForStop.get(stop);
-
-            for (Edge edge : transitStop.getOutgoing()) {
-                if (edge instanceof PreBoardEdge) {
-                    graph.addAlertPatch(edge, this);
-                    break;
-                }
+        Collection<Edge> edges = getAffectedEdges(graph);
+        graph.updateAlertPatchIndex(builder -> {
+            for (Edge edge : edges) {
+                builder.addEdgePatch(edge, this);
             }
+        });
+    }
 
-            for (Edge edge : transitStop.getIncoming()) {
-                if (edge instanceof PreAlightEdge) {
-                    graph.addAlertPatch(edge, this);
-                    break;
-                }
+    /**
+     * Detach this patch from all the edges it affects in the given graph, publishing a new alert patch index.
+     */
+    public void remove(Graph graph) {
+        Collection<Edge> edges = getAffectedEdges(graph);
+        graph.updateAlertPatchIndex(builder -> {
+            for (Edge edge : edges) {
+                builder.removeEdgePatch(edge, this);
             }
-        }
+        });
     }
 
-    public void remove(Graph graph) {
+    /**
+     * @return the board and alight edges of the matching trip patterns, or the pre-board and pre-alight edges of the
+     * stop if this patch only concerns a stop.
+     */
+    public Collection<Edge> getAffectedEdges(Graph graph) {
+        List<Edge> edges = new ArrayList<>();
         Agency agency = null;
         if (feedId != null) {
             Map<String, Agency> agencies = graph.index.agenciesForFeedId.get(feedId);
@@ -158,10 +126,10 @@ public class AlertPatch implements Serializable {
         if (route != null || trip != null || agency != null) {
             Collection<TripPattern> tripPatterns = null;
 
-            if(trip != null) {
-                tripPatterns = new LinkedList<TripPattern>();
+            if (trip != null) {
+                tripPatterns = new LinkedList<>();
                 TripPattern tripPattern = graph.index.patternForTrip.get(trip);
-                if(tripPattern != null) {
+                if (tripPattern != null) {
                     tripPatterns.add(tripPattern);
                 }
             } else if (route != null) {
@@ -181,29 +149,35 @@ public class AlertPatch implements Serializable {
                     }
                     for (int i = 0; i < tripPattern.stopPattern.stops.length; i++) {
                         if (stop == null || stop.equals(tripPattern.stopPattern.stops[i])) {
-                            graph.removeAlertPatch(tripPattern.boardEdges[i], this);
-                            graph.removeAlertPatch(tripPattern.alightEdges[i], this);
+                            edges.add(tripPattern.boardEdges[i]);
+                            edges.add(tripPattern.alightEdges[i]);
                         }
                     }
                 }
             }
         } else if (stop != null) {
             TransitStop transitStop = graph.index.stopVertexForStop.get(stop);
+            if (transitStop == null) {
+                return edges;
+            }
 
             for (Edge edge : transitStop.getOutgoing()) {
                 if (edge instanceof PreBoardEdge) {
-                    graph.removeAlertPatch(edge, this);
+                    edges.add(edge);
                     break;
                 }
             }
 
             for (Edge edge : transitStop.getIncoming()) {
                 if (edge instanceof PreAlightEdge) {
-                    graph.removeAlertPatch(edge, this);
+                    edges.add(edge);
                     break;
                 }
             }
         }
+        // Patterns do not have board or alight edges at their first and last stops respectively.
+        edges.removeIf(Objects::isNull);
+        return edges;
     }
 
     public void setAlert(Alert alert) {
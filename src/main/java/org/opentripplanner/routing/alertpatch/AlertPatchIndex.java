@@ -0,0 +1,259 @@
+package org.opentripplanner.routing.alertpatch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.graph.Edge;
+
+/**
+ * An immutable index of all active alert patches, keyed on the edges, stops, routes and trips they affect.
+ *
+ * Routing and itinerary-building threads read the current index from the Graph without any locking, and only ever pay
+ * for the patches that actually match what they look up. Writers (the alert updaters and the alert patcher API) produce
+ * a new index with a {@link Builder} and publish it atomically through
+ * {@link org.opentripplanner.routing.graph.Graph#updateAlertPatchIndex}, so readers always see either all or none of
+ * the patches from one update.
+ *
+ * The arrays returned by this class are shared between all readers and must never be modified.
+ */
+public class AlertPatchIndex {
+
+    private static final AlertPatch[] NO_PATCHES = new AlertPatch[0];
+
+    private static final Edge[] NO_EDGES = new Edge[0];
+
+    public static final AlertPatchIndex EMPTY = new AlertPatchIndex(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+            new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    private final Map<String, AlertPatch> patchesById;
+
+    private final Map<Edge, AlertPatch[]> patchesByEdge;
+
+    /** The edges each patch was attached to, so that expiring a patch does not need to search the graph again. */
+    private final Map<AlertPatch, Edge[]> edgesByPatch;
+
+    private final Map<FeedScopedId, AlertPatch[]> patchesByStop;
+
+    private final Map<FeedScopedId, AlertPatch[]> patchesByRoute;
+
+    private final Map<FeedScopedId, AlertPatch[]> patchesByTrip;
+
+    private AlertPatchIndex(Map<String, AlertPatch> patchesById, Map<Edge, AlertPatch[]> patchesByEdge,
+            Map<AlertPatch, Edge[]> edgesByPatch, Map<FeedScopedId, AlertPatch[]> patchesByStop,
+            Map<FeedScopedId, AlertPatch[]> patchesByRoute, Map<FeedScopedId, AlertPatch[]> patchesByTrip) {
+        this.patchesById = patchesById;
+        this.patchesByEdge = patchesByEdge;
+        this.edgesByPatch = edgesByPatch;
+        this.patchesByStop = patchesByStop;
+        this.patchesByRoute = patchesByRoute;
+        this.patchesByTrip = patchesByTrip;
+    }
+
+    public Collection<AlertPatch> getAllPatches() {
+        return Collections.unmodifiableCollection(patchesById.values());
+    }
+
+    public AlertPatch getPatch(String id) {
+        return patchesById.get(id);
+    }
+
+    /** @return the patches attached to the given edge. The array is shared and must not be modified. */
+    public AlertPatch[] getEdgePatches(Edge edge) {
+        AlertPatch[] patches = patchesByEdge.get(edge);
+        return patches == null ? NO_PATCHES : patches;
+    }
+
+    public boolean hasEdgePatches(Edge edge) {
+        return patchesByEdge.containsKey(edge);
+    }
+
+    public Collection<AlertPatch> getStopPatches(FeedScopedId stop) {
+        return asList(patchesByStop.get(stop));
+    }
+
+    public Collection<AlertPatch> getRoutePatches(FeedScopedId route) {
+        return asList(patchesByRoute.get(route));
+    }
+
+    public Collection<AlertPatch> getTripPatches(FeedScopedId trip) {
+        return asList(patchesByTrip.get(trip));
+    }
+
+    public int size() {
+        return patchesById.size();
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private static Collection<AlertPatch> asList(AlertPatch[] patches) {
+        return patches == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(patches));
+    }
+
+    /**
+     * Produces a new index from an existing one. The maps are copied shallowly and the per-key arrays are replaced
+     * rather than modified, so building the next index costs time proportional to the number of keys plus the number
+     * of changes, and never disturbs the index it was created from. A builder must not be used after build() is called.
+     */
+    public static class Builder {
+
+        private Map<String, AlertPatch> patchesById;
+        private Map<Edge, AlertPatch[]> patchesByEdge;
+        private Map<AlertPatch, Edge[]> edgesByPatch;
+        private Map<FeedScopedId, AlertPatch[]> patchesByStop;
+        private Map<FeedScopedId, AlertPatch[]> patchesByRoute;
+        private Map<FeedScopedId, AlertPatch[]> patchesByTrip;
+
+        private Builder(AlertPatchIndex index) {
+            patchesById = new HashMap<>(index.patchesById);
+            patchesByEdge = new HashMap<>(index.patchesByEdge);
+            edgesByPatch = new HashMap<>(index.edgesByPatch);
+            patchesByStop = new HashMap<>(index.patchesByStop);
+            patchesByRoute = new HashMap<>(index.patchesByRoute);
+            patchesByTrip = new HashMap<>(index.patchesByTrip);
+        }
+
+        /**
+         * Add a patch affecting the given edges, replacing any patch with the same ID.
+         */
+        public Builder addPatch(AlertPatch patch, Collection<Edge> edges) {
+            removePatch(patch.getId());
+            patchesById.put(patch.getId(), patch);
+            if (patch.getStop() != null) {
+                add(patchesByStop, patch.getStop(), patch);
+            }
+            if (patch.getRoute() != null) {
+                add(patchesByRoute, patch.getRoute(), patch);
+            }
+            if (patch.getTrip() != null) {
+                add(patchesByTrip, patch.getTrip(), patch);
+            }
+            for (Edge edge : edges) {
+                addEdgePatch(edge, patch);
+            }
+            return this;
+        }
+
+        /** Remove the patch with the given ID, if any, from all keys and edges it is attached to. */
+        public Builder removePatch(String id) {
+            AlertPatch patch = patchesById.remove(id);
+            if (patch == null) {
+                return this;
+            }
+            if (patch.getStop() != null) {
+                remove(patchesByStop, patch.getStop(), patch);
+            }
+            if (patch.getRoute() != null) {
+                remove(patchesByRoute, patch.getRoute(), patch);
+            }
+            if (patch.getTrip() != null) {
+                remove(patchesByTrip, patch.getTrip(), patch);
+            }
+            Edge[] edges = edgesByPatch.remove(patch);
+            if (edges != null) {
+                for (Edge edge : edges) {
+                    remove(patchesByEdge, edge, patch);
+                }
+            }
+            return this;
+        }
+
+        /** Attach a patch to a single edge. */
+        public Builder addEdgePatch(Edge edge, AlertPatch patch) {
+            if (add(patchesByEdge, edge, patch)) {
+                Edge[] edges = edgesByPatch.get(patch);
+                if (edges == null) {
+                    edges = NO_EDGES;
+                }
+                edges = Arrays.copyOf(edges, edges.length + 1);
+                edges[edges.length - 1] = edge;
+                edgesByPatch.put(patch, edges);
+            }
+            return this;
+        }
+
+        /** Detach a patch from a single edge. */
+        public Builder removeEdgePatch(Edge edge, AlertPatch patch) {
+            if (remove(patchesByEdge, edge, patch)) {
+                removeEdgeFromPatch(patch, edge);
+            }
+            return this;
+        }
+
+        /** Detach all patches from an edge that is being removed from the graph. */
+        public Builder removeEdge(Edge edge) {
+            AlertPatch[] patches = patchesByEdge.remove(edge);
+            if (patches != null) {
+                for (AlertPatch patch : patches) {
+                    removeEdgeFromPatch(patch, edge);
+                }
+            }
+            return this;
+        }
+
+        private void removeEdgeFromPatch(AlertPatch patch, Edge edge) {
+            Edge[] edges = edgesByPatch.get(patch);
+            if (edges == null) return;
+            int i = Arrays.asList(edges).indexOf(edge);
+            if (i < 0) return;
+            if (edges.length == 1) {
+                edgesByPatch.remove(patch);
+                return;
+            }
+            Edge[] newEdges = new Edge[edges.length - 1];
+            System.arraycopy(edges, 0, newEdges, 0, i);
+            System.arraycopy(edges, i + 1, newEdges, i, edges.length - i - 1);
+            edgesByPatch.put(patch, newEdges);
+        }
+
+        public AlertPatchIndex build() {
+            AlertPatchIndex index = new AlertPatchIndex(patchesById, patchesByEdge, edgesByPatch, patchesByStop,
+                    patchesByRoute, patchesByTrip);
+            patchesById = null;
+            patchesByEdge = null;
+            edgesByPatch = null;
+            patchesByStop = null;
+            patchesByRoute = null;
+            patchesByTrip = null;
+            return index;
+        }
+
+        /** Copy-on-write insertion with set semantics. @return true if the patch was not already present. */
+        private static <K> boolean add(Map<K, AlertPatch[]> map, K key, AlertPatch patch) {
+            AlertPatch[] patches = map.get(key);
+            if (patches == null) {
+                map.put(key, new AlertPatch[] { patch });
+                return true;
+            }
+            for (AlertPatch existing : patches) {
+                if (existing.equals(patch)) return false;
+            }
+            AlertPatch[] newPatches = Arrays.copyOf(patches, patches.length + 1);
+            newPatches[patches.length] = patch;
+            map.put(key, newPatches);
+            return true;
+        }
+
+        /** Copy-on-write removal. @return true if the patch was present. */
+        private static <K> boolean remove(Map<K, AlertPatch[]> map, K key, AlertPatch patch) {
+            AlertPatch[] patches = map.get(key);
+            if (patches == null) return false;
+            int i = Arrays.asList(patches).indexOf(patch);
+            if (i < 0) return false;
+            if (patches.length == 1) {
+                map.remove(key);
+                return true;
+            }
+            AlertPatch[] newPatches = new AlertPatch[patches.length - 1];
+            System.arraycopy(patches, 0, newPatches, 0, i);
+            System.arraycopy(patches, i + 1, newPatches, i, patches.length - i - 1);
+            map.put(key, newPatches);
+            return true;
+        }
+    }
+}
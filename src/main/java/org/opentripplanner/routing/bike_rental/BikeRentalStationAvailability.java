@@ -0,0 +1,131 @@
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.Arrays;
+
+/**
+ * An immutable table of the number of bikes and free spaces at every bike rental station known to the realtime
+ * updaters, indexed by the station index assigned in {@link BikeRentalStationService#getStationIndex(String)}.
+ *
+ * This plays the same role for bike rental as the TimetableSnapshot plays for transit: updaters build a new table
+ * off to the side and publish it atomically through the BikeRentalStationService, while each routing request grabs a
+ * reference to the current table when its RoutingContext is created and sees a coherent view of availability
+ * throughout the search, no matter how many updates are published in the meantime.
+ *
+ * Stations that have disappeared from a feed are kept in the table as "out of service" rather than being removed from
+ * the graph, so that realtime updates never need to touch the graph topology for stations that have already been
+ * linked. Floating bikes are the exception: their slots are released when they disappear and are reused for new ones,
+ * so the table does not grow with every bike ever seen.
+ */
+public class BikeRentalStationAvailability {
+
+    /** Marker for stations that were present in a feed at some point, but are absent from the latest update. */
+    public static final int OUT_OF_SERVICE = -1;
+
+    /** An empty table containing no information at all, to be used before any realtime update has been received. */
+    public static final BikeRentalStationAvailability EMPTY = new BikeRentalStationAvailability(0, new int[0], new int[0]);
+
+    /** Increases by one every time a table is published, allowing readers to detect changes cheaply. */
+    public final long version;
+
+    private final int[] bikesAvailable;
+
+    private final int[] spacesAvailable;
+
+    private BikeRentalStationAvailability(long version, int[] bikesAvailable, int[] spacesAvailable) {
+        this.version = version;
+        this.bikesAvailable = bikesAvailable;
+        this.spacesAvailable = spacesAvailable;
+    }
+
+    /**
+     * @return whether this table contains any information about the station with the given index. When it does not,
+     * the station was never seen by a realtime updater (e.g. it was loaded from OSM at graph build time) and callers
+     * should fall back on the static values stored in the graph.
+     */
+    public boolean hasStation(int stationIndex) {
+        return stationIndex >= 0 && stationIndex < bikesAvailable.length;
+    }
+
+    /** @return true if the station was seen by a realtime updater but is absent from the latest update. */
+    public boolean isOutOfService(int stationIndex) {
+        return hasStation(stationIndex) && bikesAvailable[stationIndex] == OUT_OF_SERVICE;
+    }
+
+    public int getBikesAvailable(int stationIndex) {
+        return bikesAvailable[stationIndex];
+    }
+
+    public int getSpacesAvailable(int stationIndex) {
+        return spacesAvailable[stationIndex];
+    }
+
+    /** @return a builder initialized with the contents of this table, to produce the next version. */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BikeRentalStationAvailability(version %d, %d stations)", version, bikesAvailable.length);
+    }
+
+    /**
+     * Mutable, single-threaded builder for the next version of an availability table. Builders are only ever touched
+     * by the graph writer thread, so they need no synchronization.
+     *
+     * The arrays are copied on the first change rather than up front, and are handed over to the table as they are when
+     * it is built, so an update costs a single copy. A change made after building copies them again, leaving the table
+     * untouched.
+     */
+    public static class Builder {
+
+        private final long version;
+
+        private int[] bikesAvailable;
+
+        private int[] spacesAvailable;
+
+        /** True while the arrays are also referenced by a table, and must be copied before they are changed. */
+        private boolean shared;
+
+        private Builder(BikeRentalStationAvailability previous) {
+            this.version = previous.version + 1;
+            this.bikesAvailable = previous.bikesAvailable;
+            this.spacesAvailable = previous.spacesAvailable;
+            this.shared = true;
+        }
+
+        public Builder setAvailability(int stationIndex, int bikes, int spaces) {
+            ensureCapacity(stationIndex);
+            if (shared) {
+                bikesAvailable = bikesAvailable.clone();
+                spacesAvailable = spacesAvailable.clone();
+                shared = false;
+            }
+            bikesAvailable[stationIndex] = bikes;
+            spacesAvailable[stationIndex] = spaces;
+            return this;
+        }
+
+        public Builder setOutOfService(int stationIndex) {
+            return setAvailability(stationIndex, OUT_OF_SERVICE, OUT_OF_SERVICE);
+        }
+
+        private void ensureCapacity(int stationIndex) {
+            if (stationIndex < bikesAvailable.length) return;
+            int oldLength = bikesAvailable.length;
+            int newLength = Math.max(stationIndex + 1, oldLength * 2);
+            bikesAvailable = Arrays.copyOf(bikesAvailable, newLength);
+            spacesAvailable = Arrays.copyOf(spacesAvailable, newLength);
+            shared = false;
+            // Slots for station indexes that have been assigned but not yet reported on are not in service.
+            Arrays.fill(bikesAvailable, oldLength, newLength, OUT_OF_SERVICE);
+            Arrays.fill(spacesAvailable, oldLength, newLength, OUT_OF_SERVICE);
+        }
+
+        public BikeRentalStationAvailability build() {
+            shared = true;
+            return new BikeRentalStationAvailability(version, bikesAvailable, spacesAvailable);
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package org.opentripplanner.routing.bike_rental;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.opentripplanner.routing.bike_park.BikePark;
@@ -14,6 +18,24 @@ public class BikeRentalStationService implements Serializable {
 
     private Set<BikePark> bikeParks = new HashSet<>();
 
+    /**
+     * Dense indexes into the realtime availability table, assigned to station IDs the first time a realtime updater
+     * sees them. Only modified by the graph writer thread. Like the table itself, these only exist at runtime and are
+     * not saved with the graph.
+     */
+    private transient Map<String, Integer> stationIndexForId;
+
+    /** Indexes released by stations that are gone for good, to be handed out again before any new one. */
+    private transient Deque<Integer> freeStationIndexes;
+
+    private transient int nextStationIndex;
+
+    /**
+     * The latest published realtime availability of bike rental stations. Routing requests grab a reference to this
+     * when they begin, see {@link org.opentripplanner.routing.core.RoutingContext}.
+     */
+    private transient volatile BikeRentalStationAvailability availability;
+
     public Collection<BikeRentalStation> getBikeRentalStations() {
         return bikeRentalStations;
     }
@@ -41,4 +63,51 @@ public class BikeRentalStationService implements Serializable {
     public void removeBikePark(BikePark bikePark) {
         bikeParks.remove(bikePark);
     }
+
+    /**
+     * @return the index of the given station in the {@link BikeRentalStationAvailability} table, assigning a new one
+     * if this station has never been seen before. Should only be called from a graph writer runnable.
+     */
+    public int getStationIndex(String stationId) {
+        if (stationIndexForId == null) {
+            stationIndexForId = new HashMap<>();
+            freeStationIndexes = new ArrayDeque<>();
+        }
+        Integer index = stationIndexForId.get(stationId);
+        if (index == null) {
+            index = freeStationIndexes.isEmpty() ? nextStationIndex++ : freeStationIndexes.pop();
+            stationIndexForId.put(stationId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Release the index of a station that will not come back, such as a floating bike that has been rented, so that
+     * it can be given to another station. The caller must mark the station out of service in the availability table
+     * it is about to publish, and must no longer use the index for this station. Should only be called from a graph
+     * writer runnable.
+     */
+    public void releaseStationIndex(String stationId) {
+        if (stationIndexForId == null) {
+            return;
+        }
+        Integer index = stationIndexForId.remove(stationId);
+        if (index != null) {
+            freeStationIndexes.push(index);
+        }
+    }
+
+    /** @return the latest published availability table, never null. */
+    public BikeRentalStationAvailability getAvailability() {
+        BikeRentalStationAvailability current = availability;
+        return current == null ? BikeRentalStationAvailability.EMPTY : current;
+    }
+
+    /**
+     * Atomically replace the availability table seen by new routing requests. Requests already in progress keep the
+     * table they started with.
+     */
+    public void publishAvailability(BikeRentalStationAvailability newAvailability) {
+        this.availability = newAvailability;
+    }
 }
@@ -12,6 +12,8 @@ import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationAvailability;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TemporaryPartialStreetEdge;
 import org.opentripplanner.routing.edgetype.TimetableSnapshot;
@@ -87,6 +89,12 @@ public class RoutingContext implements Cloneable {
     /** The timetableSnapshot is a {@link TimetableSnapshot} for looking up real-time updates. */
     public final TimetableSnapshot timetableSnapshot;
 
+    /**
+     * The realtime availability of bike rental stations, captured at the beginning of the search like the
+     * timetableSnapshot so the whole search sees a single coherent version. Null if no realtime information is used.
+     */
+    public final BikeRentalStationAvailability bikeRentalAvailability;
+
     /**
      * Cache lists of which transit services run on which midnight-to-midnight periods. This ties a TraverseOptions to a particular start time for the
      * duration of a search so the same options cannot be used for multiple searches concurrently. To do so this cache would need to be moved into
@@ -240,6 +248,14 @@ public class RoutingContext implements Cloneable {
             calendarService = null;
         }
 
+        // Like the timetable snapshot, bike rental availability may be republished by the updaters at any moment.
+        BikeRentalStationService bikeRentalStationService = graph.getService(BikeRentalStationService.class);
+        if (routingRequest.ignoreRealtimeUpdates || bikeRentalStationService == null) {
+            bikeRentalAvailability = null;
+        } else {
+            bikeRentalAvailability = bikeRentalStationService.getAvailability();
+        }
+
         Edge fromBackEdge = null;
         Edge toBackEdge = null;
         if (findPlaces) {
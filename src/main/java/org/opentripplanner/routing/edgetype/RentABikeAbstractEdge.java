@@ -3,6 +3,8 @@ package org.opentripplanner.routing.edgetype;
 import java.util.Set;
 
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationAvailability;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
@@ -46,7 +48,17 @@ public abstract class RentABikeAbstractEdge extends Edge {
             return null;
 
         BikeRentalStationVertex dropoff = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && dropoff.getBikesAvailable() == 0) {
+        BikeRentalStationAvailability availability = getAvailability(s0, dropoff);
+        if (availability != null) {
+            if (availability.isOutOfService(dropoff.getAvailabilityIndex())) {
+                return null;
+            }
+            if (options.useBikeRentalAvailabilityInformation
+                    && availability.getBikesAvailable(dropoff.getAvailabilityIndex()) == 0) {
+                return null;
+            }
+        } else if (options.useBikeRentalAvailabilityInformation && hasStaticAvailability(dropoff)
+                && dropoff.getBikesAvailable() == 0) {
             return null;
         }
 
@@ -68,7 +80,17 @@ public abstract class RentABikeAbstractEdge extends Edge {
         if (!s0.isBikeRenting() || !hasCompatibleNetworks(networks, s0.getBikeRentalNetworks()))
             return null;
         BikeRentalStationVertex pickup = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && pickup.getSpacesAvailable() == 0) {
+        BikeRentalStationAvailability availability = getAvailability(s0, pickup);
+        if (availability != null) {
+            if (availability.isOutOfService(pickup.getAvailabilityIndex())) {
+                return null;
+            }
+            if (options.useBikeRentalAvailabilityInformation
+                    && availability.getSpacesAvailable(pickup.getAvailabilityIndex()) == 0) {
+                return null;
+            }
+        } else if (options.useBikeRentalAvailabilityInformation && hasStaticAvailability(pickup)
+                && pickup.getSpacesAvailable() == 0) {
             return null;
         }
 
@@ -106,6 +128,28 @@ public abstract class RentABikeAbstractEdge extends Edge {
         return false;
     }
 
+    /**
+     * @return the realtime availability table captured by the routing context if it has information about the given
+     * station, or null if there is none. Realtime is ignored, or no table with this station has been published yet.
+     */
+    private static BikeRentalStationAvailability getAvailability(State s0, BikeRentalStationVertex station) {
+        RoutingContext rctx = s0.getContext();
+        if (rctx == null || rctx.bikeRentalAvailability == null) {
+            return null;
+        }
+        BikeRentalStationAvailability availability = rctx.bikeRentalAvailability;
+        return availability.hasStation(station.getAvailabilityIndex()) ? availability : null;
+    }
+
+    /**
+     * @return whether the counts stored on the vertex describe the station. This is only the case for stations that no
+     * realtime updater covers. The counts of stations created by an updater are those of the update that created them,
+     * and are never updated since availability is published in tables. Without a table, nothing is known about them.
+     */
+    private static boolean hasStaticAvailability(BikeRentalStationVertex station) {
+        return station.getAvailabilityIndex() < 0;
+    }
+
     /**
      * @param stationNetworks The station where we want to drop the bike off.
      * @param rentedNetworks The set of networks of the station we rented the bike from.
@@ -332,6 +332,14 @@ public class TimetableSnapshot {
         return modified;
     }
 
+    /**
+     * @return true if this snapshot holds a timetable for the given pattern or remembers it as the pattern of a
+     * previously added trip, in which case the pattern must not be removed from the graph.
+     */
+    public boolean references(TripPattern pattern) {
+        return timetables.containsKey(pattern) || lastAddedTripPattern.containsValue(pattern);
+    }
+
     public boolean isDirty() {
         if (readOnly) return false;
         return dirty;
@@ -0,0 +1,241 @@
+package org.opentripplanner.routing.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.model.CalendarService;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+/**
+ * A lazily built index of the departures from each stop on each service date, used to answer "next departures"
+ * queries for departure boards without scanning every trip of every pattern through the stop.
+ *
+ * For every pattern visiting a stop, and every position at which it visits that stop, the trips running on the service
+ * date are kept sorted by their (realtime) departure time, so that the next departures after a given time are found
+ * with a binary search. The departures of a stop on a service date are computed the first time they are requested and
+ * remembered together with the timetable of each pattern they were computed from. On every request the timetables are
+ * resolved again in the requested snapshot, and only the patterns whose timetable was replaced by a realtime update are
+ * sorted again; committed timetables are never modified, so all other patterns keep their existing arrays.
+ *
+ * Entries do not refer to the snapshot itself, so they never keep a superseded snapshot in memory. They do keep the
+ * timetables they were built from until they are next requested, so entries not requested for a while are dropped, as
+ * are the least recently used entries when there are too many. Entries are immutable and replaced as a whole, so
+ * concurrent readers need no locking.
+ */
+public class DepartureBoardIndex {
+
+    private static final int MAX_CACHED_STOP_DAYS = 10000;
+
+    private static final int EXPIRE_AFTER_ACCESS_MINUTES = 10;
+
+    private final Graph graph;
+
+    private final CalendarService calendarService;
+
+    private final Cache<StopAndDate, StopDepartures> cache =
+            CacheBuilder.newBuilder().maximumSize(MAX_CACHED_STOP_DAYS)
+                    .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES).build();
+
+    public DepartureBoardIndex(Graph graph, CalendarService calendarService) {
+        this.graph = graph;
+        this.calendarService = calendarService;
+    }
+
+    /**
+     * Get the departures from the given stop on the given service date, as seen in the given snapshot.
+     *
+     * @param patterns the patterns visiting the stop, the result has one entry per pattern in the same order
+     * @param snapshot the realtime snapshot to resolve timetables in, or null for the scheduled timetables
+     */
+    public PatternDepartures[] getDepartures(Stop stop, ServiceDate serviceDate, Collection<TripPattern> patterns,
+            TimetableSnapshot snapshot) {
+        StopAndDate key = new StopAndDate(stop, serviceDate);
+        StopDepartures cached = cache.getIfPresent(key);
+        if (cached != null && samePatterns(cached.patterns, patterns)
+                && sameTimetables(cached.departures, serviceDate, snapshot)) {
+            return cached.departures;
+        }
+        StopDepartures departures = build(stop, serviceDate, patterns, snapshot, cached);
+        cache.put(key, departures);
+        return departures.departures;
+    }
+
+    private static boolean samePatterns(List<TripPattern> cached, Collection<TripPattern> patterns) {
+        if (cached.size() != patterns.size()) return false;
+        int i = 0;
+        for (TripPattern pattern : patterns) {
+            if (cached.get(i++) != pattern) return false;
+        }
+        return true;
+    }
+
+    /** @return true if the departures were built from the timetables the given snapshot has for the service date. */
+    private static boolean sameTimetables(PatternDepartures[] departures, ServiceDate serviceDate,
+            TimetableSnapshot snapshot) {
+        for (PatternDepartures patternDepartures : departures) {
+            if (patternDepartures.timetable != resolve(patternDepartures.pattern, serviceDate, snapshot)) return false;
+        }
+        return true;
+    }
+
+    private static Timetable resolve(TripPattern pattern, ServiceDate serviceDate, TimetableSnapshot snapshot) {
+        return snapshot == null ? pattern.scheduledTimetable : snapshot.resolve(pattern, serviceDate);
+    }
+
+    /** Drop all cached departures, for instance after the graph index has been rebuilt. */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private StopDepartures build(Stop stop, ServiceDate serviceDate, Collection<TripPattern> patterns,
+            TimetableSnapshot snapshot, StopDepartures previous) {
+        // Reuse the departures of patterns whose timetable did not change since the previous snapshot
+        Map<TripPattern, PatternDepartures> reusable = new HashMap<>();
+        if (previous != null) {
+            for (PatternDepartures departures : previous.departures) {
+                reusable.put(departures.pattern, departures);
+            }
+        }
+        Map<String, ServiceDay> serviceDayForAgency = new HashMap<>();
+        List<TripPattern> patternList = new ArrayList<>(patterns);
+        PatternDepartures[] result = new PatternDepartures[patternList.size()];
+        for (int i = 0; i < result.length; i++) {
+            TripPattern pattern = patternList.get(i);
+            Timetable timetable = resolve(pattern, serviceDate, snapshot);
+            PatternDepartures departures = reusable.get(pattern);
+            if (departures == null || departures.timetable != timetable) {
+                String agencyId = pattern.route.getAgency().getId();
+                ServiceDay serviceDay = serviceDayForAgency.computeIfAbsent(agencyId,
+                        id -> new ServiceDay(graph, serviceDate, calendarService, id));
+                departures = new PatternDepartures(pattern, timetable, serviceDay, stop);
+            }
+            result[i] = departures;
+        }
+        return new StopDepartures(patternList, result);
+    }
+
+    /**
+     * The departures of the trips of one pattern that run on a given service day, for each position at which the
+     * pattern visits a given stop.
+     */
+    public static class PatternDepartures {
+
+        public final TripPattern pattern;
+
+        public final Timetable timetable;
+
+        public final ServiceDay serviceDay;
+
+        /** The positions in the pattern at which the stop is visited. */
+        public final int[] stopIndexes;
+
+        /** For each stop position, the departure times in seconds after midnight, in ascending order. */
+        private final int[][] departureTimes;
+
+        /** For each stop position, the index in the timetable of the trip of each departure time. */
+        private final int[][] tripIndexes;
+
+        PatternDepartures(TripPattern pattern, Timetable timetable, ServiceDay serviceDay, Stop stop) {
+            this.pattern = pattern;
+            this.timetable = timetable;
+            this.serviceDay = serviceDay;
+            int[] stopIndexes = new int[0];
+            Stop[] stops = pattern.stopPattern.stops;
+            for (int sidx = 0; sidx < stops.length; sidx++) {
+                if (stops[sidx] == stop) {
+                    stopIndexes = Arrays.copyOf(stopIndexes, stopIndexes.length + 1);
+                    stopIndexes[stopIndexes.length - 1] = sidx;
+                }
+            }
+            this.stopIndexes = stopIndexes;
+            departureTimes = new int[stopIndexes.length][];
+            tripIndexes = new int[stopIndexes.length][];
+            // Departure times are not necessarily in trip order once realtime updates are applied, so sort each column
+            for (int s = 0; s < stopIndexes.length; s++) {
+                int sidx = stopIndexes[s];
+                List<Integer> running = new ArrayList<>();
+                for (int t = 0; t < timetable.tripTimes.size(); t++) {
+                    TripTimes tripTimes = timetable.tripTimes.get(t);
+                    if (serviceDay.serviceRunning(tripTimes.serviceCode) && tripTimes.getDepartureTime(sidx) != -1) {
+                        running.add(t);
+                    }
+                }
+                running.sort((t1, t2) -> Integer.compare(timetable.tripTimes.get(t1).getDepartureTime(sidx),
+                        timetable.tripTimes.get(t2).getDepartureTime(sidx)));
+                departureTimes[s] = new int[running.size()];
+                tripIndexes[s] = new int[running.size()];
+                for (int j = 0; j < running.size(); j++) {
+                    tripIndexes[s][j] = running.get(j);
+                    departureTimes[s][j] = timetable.tripTimes.get(running.get(j)).getDepartureTime(sidx);
+                }
+            }
+        }
+
+        /**
+         * @return the trip times of at most n trips departing from the stop at the given stop position (an index into
+         *         {@link #stopIndexes}) at or after the given number of seconds since midnight, earliest first.
+         */
+        public List<TripTimes> nextDepartures(int s, int secondsSinceMidnight, int n) {
+            int[] times = departureTimes[s];
+            int first = Arrays.binarySearch(times, secondsSinceMidnight);
+            if (first < 0) {
+                first = -first - 1;
+            } else {
+                // binarySearch returns any of several equal elements, include all of them
+                while (first > 0 && times[first - 1] == secondsSinceMidnight) first--;
+            }
+            int end = Math.min(times.length, first + n);
+            List<TripTimes> result = new ArrayList<>(Math.max(0, end - first));
+            for (int j = first; j < end; j++) {
+                result.add(timetable.tripTimes.get(tripIndexes[s][j]));
+            }
+            return result;
+        }
+    }
+
+    private static class StopDepartures {
+        final List<TripPattern> patterns;
+        final PatternDepartures[] departures;
+
+        StopDepartures(List<TripPattern> patterns, PatternDepartures[] departures) {
+            this.patterns = patterns;
+            this.departures = departures;
+        }
+    }
+
+    private static class StopAndDate {
+        final Stop stop;
+        final ServiceDate serviceDate;
+
+        StopAndDate(Stop stop, ServiceDate serviceDate) {
+            this.stop = stop;
+            this.serviceDate = serviceDate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stop, serviceDate);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StopAndDate)) return false;
+            StopAndDate other = (StopAndDate) obj;
+            return stop.equals(other.stop) && serviceDate.equals(other.serviceDate);
+        }
+    }
+}
@@ -40,7 +40,9 @@ import org.opentripplanner.graph_builder.annotation.NoFutureDates;
 import org.opentripplanner.kryo.HashBiMapSerializer;
 import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.profile.StopClusterMode;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchIndex;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -65,6 +67,8 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.prefs.Preferences;
 /**
  * A graph is really just one or more indexes into a set of vertexes. It used to keep edgelists for each vertex, but those are in the vertex now.
@@ -80,7 +84,21 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    /**
+     * Alert patches keyed on edges, stops, routes and trips. This index is immutable and replaced as a whole on every
+     * update so that readers never need to lock. Null until the first patch is added.
+     *
+     * The index is not saved with the graph. Patches only come from the alert updaters and the alert patcher API, which
+     * run against a loaded graph and keep track of the IDs of their own patches. A patch saved with the graph would be
+     * unknown to them after loading, so it could never be expired.
+     */
+    private transient volatile AlertPatchIndex alertPatchIndex;
+
+    /**
+     * Incremented each time realtime data seen by routing requests is published: a timetable snapshot, an alert patch
+     * index or a bike rental availability table.
+     */
+    private final transient AtomicLong realtimeDataVersion = new AtomicLong();
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
 
@@ -179,6 +197,12 @@ public class Graph implements Serializable {
 
     public final Date buildTime = new Date();
 
+    /**
+     * Distances from each transit stop to nearby street vertices, if they were computed when the graph was built.
+     * Otherwise they are computed on first use, see {@link GraphIndex#getStopTreeCache()}.
+     */
+    public StopTreeCache stopTreeCache = null;
+
     /** True if OSM data was loaded into this Graph. */
     public boolean hasStreets = false;
 
@@ -260,8 +284,8 @@ public class Graph implements Serializable {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
+            if (getAlertPatchIndex().hasEdgePatches(e)) {
+                updateAlertPatchIndex(builder -> builder.removeEdge(e));
             }
 
             turnRestrictions.remove(e);
@@ -345,24 +369,13 @@ public class Graph implements Serializable {
 
     /**
      * Add an {@link AlertPatch} to the {@link AlertPatch} {@link Set} belonging to an {@link Edge}.
+     * This publishes a whole new index, so bulk changes should go through {@link #updateAlertPatchIndex} instead.
      * @param edge
      * @param alertPatch
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
-            }
-        }
+        updateAlertPatchIndex(builder -> builder.addEdgePatch(edge, alertPatch));
     }
 
     /**
@@ -373,33 +386,49 @@ public class Graph implements Serializable {
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
-                } else {
-                    alertPatches.remove(alertPatch);
-                }
-            }
-        }
+        updateAlertPatchIndex(builder -> builder.removeEdgePatch(edge, alertPatch));
     }
 
     /**
-     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge}. This does not lock or allocate.
      * @param edge
-     * @return The {@link AlertPatch} array that belongs to the {@link Edge}
+     * @return The {@link AlertPatch} array that belongs to the {@link Edge}. It is shared and must not be modified.
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
-        if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
-            }
-        }
-        return new AlertPatch[0];
+        return getAlertPatchIndex().getEdgePatches(edge);
+    }
+
+    /**
+     * @return the current immutable index of alert patches. Hold on to the returned reference to get a consistent view
+     * across several lookups.
+     */
+    public AlertPatchIndex getAlertPatchIndex() {
+        AlertPatchIndex index = alertPatchIndex;
+        return index == null ? AlertPatchIndex.EMPTY : index;
+    }
+
+    /**
+     * Build a new alert patch index from the current one and publish it atomically. Concurrent writers are serialized,
+     * while readers keep using the previous index until the new one is published.
+     */
+    public synchronized void updateAlertPatchIndex(Consumer<AlertPatchIndex.Builder> update) {
+        AlertPatchIndex.Builder builder = getAlertPatchIndex().toBuilder();
+        update.accept(builder);
+        alertPatchIndex = builder.build();
+        realtimeDataPublished();
+    }
+
+    /**
+     * @return a number that changes each time new realtime data is published, so that results derived from the
+     *         realtime data can be invalidated without comparing the data itself. Cheap enough to call on every request.
+     */
+    public long getRealtimeDataVersion() {
+        return realtimeDataVersion.get();
+    }
+
+    /** Signal that a new version of some realtime data has been made visible to routing requests. */
+    public void realtimeDataPublished() {
+        realtimeDataVersion.incrementAndGet();
     }
 
     /**
@@ -5,11 +5,15 @@ import com.google.common.collect.ArrayListMultimap;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Calendar;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -21,7 +25,7 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
-import graphql.execution.ExecutorServiceExecutionStrategy;
+import graphql.schema.GraphQLSchema;
 import org.apache.lucene.util.PriorityQueue;
 import org.joda.time.LocalDate;
 import org.opentripplanner.model.Agency;
@@ -34,9 +38,13 @@ import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.model.CalendarService;
 import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
+import org.opentripplanner.common.geometry.PointKdTree;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
+import org.opentripplanner.index.GraphQLRequestContext;
+import org.opentripplanner.index.BudgetedExecutionStrategy;
+import org.opentripplanner.index.GraphQLCostAnalyzer;
 import org.opentripplanner.index.IndexGraphQLSchema;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
@@ -47,6 +55,7 @@ import org.opentripplanner.profile.StopNameNormalizer;
 import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.algorithm.TraverseVisitor;
+import org.opentripplanner.routing.algorithm.strategies.MultiTargetTerminationStrategy;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.core.State;
@@ -67,6 +76,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class contains all the transient indexes of graph elements -- those that are not
@@ -97,6 +107,8 @@ public class GraphIndex {
     public final Multimap<Stop, TripPattern> patternsForStop = ArrayListMultimap.create();
     public final Multimap<String, Stop> stopsForParentStation = ArrayListMultimap.create();
     final HashGridSpatialIndex<TransitStop> stopSpatialIndex = new HashGridSpatialIndex<TransitStop>();
+    /** Stop vertices by location, for finding the nearest stops with their distances. */
+    public final PointKdTree<TransitStop> stopKdTree;
     public final Map<Stop, StopCluster> stopClusterForStop = Maps.newHashMap();
     public final Map<String, StopCluster> stopClusterForId = Maps.newHashMap();
     public final Map<FeedScopedId, Geometry> flexAreasById = Maps.newHashMap();
@@ -120,9 +132,26 @@ public class GraphIndex {
 
     public GraphQL graphQL;
 
+    /** Queries whose estimated cost exceeds this are rejected without being executed. 0, the default, disables it. */
+    public long graphQLMaxQueryCost = 0;
+
+    /** Queries stop resolving fields after running this many milliseconds. 0, the default, disables the limit. */
+    public long graphQLTimeoutMillis = 0;
+
+    private final GraphQLCostAnalyzer graphQLCostAnalyzer;
+
     /** Store distances from each stop to all nearby street intersections. Useful in speeding up analyst requests. */
     private transient StopTreeCache stopTreeCache = null;
 
+    /** Sorted departures per stop and service date, for departure board queries. */
+    private final DepartureBoardIndex departureBoardIndex;
+
+    /** Stops found by walking from recently queried locations, which do not change with realtime data. */
+    private final Cache<String, List<StopAndDistance>> closestStopsByWalkingCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
     public GraphIndex (Graph graph) {
         LOG.info("Indexing graph...");
 
@@ -162,6 +191,7 @@ public class GraphIndex {
             Envelope envelope = new Envelope(stopVertex.getCoordinate());
             stopSpatialIndex.insert(envelope, stopVertex);
         }
+        stopKdTree = new PointKdTree<>(stopVertexForStop.values(), TransitStop::getLon, TransitStop::getLat);
 
         for (TripPattern pattern : patternForId.values()) {
             patternsForFeedId.put(pattern.getFeedId(), pattern);
@@ -183,11 +213,14 @@ public class GraphIndex {
         calendarService = graph.getCalendarService();
         serviceCodes = graph.serviceCodes;
         this.graph = graph;
+        departureBoardIndex = new DepartureBoardIndex(graph, calendarService);
+        GraphQLSchema indexSchema = new IndexGraphQLSchema(this).indexSchema;
         graphQL = new GraphQL(
-                new IndexGraphQLSchema(this).indexSchema,
-                new ExecutorServiceExecutionStrategy(Executors.newCachedThreadPool(
+                indexSchema,
+                new BudgetedExecutionStrategy(Executors.newCachedThreadPool(
                         new ThreadFactoryBuilder().setNameFormat("GraphQLExecutor-" + graph.routerId + "-%d").build()
                 )));
+        graphQLCostAnalyzer = createGraphQLCostAnalyzer(indexSchema);
 
         LOG.info("Initializing areas....");
         if (graph.flexAreasById != null) {
@@ -319,6 +352,31 @@ public class GraphIndex {
     /* TODO: an almost similar function exists in ProfileRouter, combine these.
     *  Should these live in a separate class? */
     public List<StopAndDistance> findClosestStopsByWalking(double lat, double lon, int radius) {
+        // Repeated queries from the same place (to about a meter) are answered from the cache
+        String key = String.format(Locale.ROOT, "%.5f,%.5f,%d", lat, lon, radius);
+        List<StopAndDistance> stops = closestStopsByWalkingCache.getIfPresent(key);
+        if (stops == null) {
+            StopFinderTraverseVisitor visitor = searchClosestStopsByWalking(lat, lon, radius);
+            stops = Collections.unmodifiableList(visitor.stopsFound);
+            // A search cut off by its timeout may have missed some stops, so only complete results are kept
+            if (!visitor.timedOut) {
+                closestStopsByWalkingCache.put(key, stops);
+            }
+        }
+        return stops;
+    }
+
+    private StopFinderTraverseVisitor searchClosestStopsByWalking(double lat, double lon, int radius) {
+        // Walking to a stop is never shorter than the straight line, so only the stops within the radius can be
+        // reached (with a margin for the distance approximations), and the search can stop once all are reached.
+        Set<Vertex> candidates = new HashSet<>();
+        for (PointKdTree.Neighbor<TransitStop> neighbor : stopKdTree.withinRadius(lat, lon, radius * 1.01)) {
+            candidates.add(neighbor.item);
+        }
+        StopFinderTraverseVisitor visitor = new StopFinderTraverseVisitor();
+        if (candidates.isEmpty()) {
+            return visitor;
+        }
         // Make a normal OTP routing request so we can traverse edges and use GenericAStar
         // TODO make a function that builds normal routing requests from profile requests
         RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
@@ -334,12 +392,12 @@ public class GraphIndex {
         rr.worstTime = (rr.dateTime + radius);
         AStar astar = new AStar();
         rr.setNumItineraries(1);
-        StopFinderTraverseVisitor visitor = new StopFinderTraverseVisitor();
         astar.setTraverseVisitor(visitor);
-        astar.getShortestPathTree(rr, 1); // timeout in seconds
+        astar.getShortestPathTree(rr, 1, new MultiTargetTerminationStrategy(candidates)); // timeout in seconds
+        visitor.timedOut = rr.rctx.debugOutput.timedOut;
         // Destroy the routing context, to clean up the temporary edges & vertices
         rr.rctx.destroy();
-        return visitor.stopsFound;
+        return visitor;
     }
 
     public static class StopAndDistance {
@@ -354,6 +412,7 @@ public class GraphIndex {
 
     static private class StopFinderTraverseVisitor implements TraverseVisitor {
         List<StopAndDistance> stopsFound = new ArrayList<>();
+        boolean timedOut = false;
         @Override public void visitEdge(Edge edge, State state) { }
         @Override public void visitEnqueue(State state) { }
         // Accumulate stops into ret as the search runs.
@@ -409,6 +468,8 @@ public class GraphIndex {
      * It uses a priority queue to keep track of the next departures. The queue is shared between all dates, as services
      * from the previous service date can visit the stop later than the current service date's services. This happens
      * eg. with sleeper trains.
+     * The departures of each pattern on each date are looked up in the {@link DepartureBoardIndex}, so only the first
+     * numberOfDepartures trips after the start time are considered for each of them.
      *
      * TODO: Add frequency based trips
      * @param stop Stop object to perform the search for
@@ -419,19 +480,34 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures, boolean omitNonPickups) {
+        return stopTimesForStop(stop, startTime, timeRange, numberOfDepartures, omitNonPickups, currentTimetableSnapshot());
+    }
+
+    /**
+     * Fetch upcoming vehicle departures from a stop as seen in the given realtime snapshot, which allows callers
+     * answering several related questions (like a GraphQL query) to see the same realtime data in all answers.
+     *
+     * @param snapshot the realtime snapshot to use, or null to use the scheduled timetables
+     */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures,
+            boolean omitNonPickups, TimetableSnapshot snapshot) {
 
         if (startTime == 0) {
             startTime = System.currentTimeMillis() / 1000;
         }
         List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
         Date date = new Date(startTime * 1000);
         ServiceDate[] serviceDates = {new ServiceDate(date).previous(), new ServiceDate(date), new ServiceDate(date).next()};
 
-        for (TripPattern pattern : patternsForStop.get(stop)) {
+        Collection<TripPattern> patterns = patternsForStop.get(stop);
+        DepartureBoardIndex.PatternDepartures[][] departuresForDate =
+                new DepartureBoardIndex.PatternDepartures[serviceDates.length][];
+        for (int d = 0; d < serviceDates.length; d++) {
+            departuresForDate[d] = departureBoardIndex.getDepartures(stop, serviceDates[d], patterns, snapshot);
+        }
+
+        int p = 0;
+        for (TripPattern pattern : patterns) {
 
             // Use the Lucene PriorityQueue, which has a fixed size
             PriorityQueue<TripTimeShort> pq = new PriorityQueue<TripTimeShort>(numberOfDepartures) {
@@ -444,48 +520,38 @@ public class GraphIndex {
             };
 
             // Loop through all possible days
-            for (ServiceDate serviceDate : serviceDates) {
-                ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
-                Timetable tt;
-                if (snapshot != null){
-                    tt = snapshot.resolve(pattern, serviceDate);
-                } else {
-                    tt = pattern.scheduledTimetable;
-                }
+            for (DepartureBoardIndex.PatternDepartures[] departuresForPattern : departuresForDate) {
+                DepartureBoardIndex.PatternDepartures departures = departuresForPattern[p];
+                ServiceDay sd = departures.serviceDay;
+                Timetable tt = departures.timetable;
 
                 if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
 
                 int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
-                int sidx = 0;
-                for (Stop currStop : pattern.stopPattern.stops) {
-                    if (currStop == stop) {
-                        if(omitNonPickups && pattern.stopPattern.pickups[sidx] == pattern.stopPattern.PICKDROP_NONE) continue;
-                        for (TripTimes t : tt.tripTimes) {
-                            if (!sd.serviceRunning(t.serviceCode)) continue;
-                            if (t.getDepartureTime(sidx) != -1 &&
-                                    t.getDepartureTime(sidx) >= secondsSinceMidnight) {
-                                pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
-                            }
-                        }
+                for (int s = 0; s < departures.stopIndexes.length; s++) {
+                    int sidx = departures.stopIndexes[s];
+                    if(omitNonPickups && pattern.stopPattern.pickups[sidx] == pattern.stopPattern.PICKDROP_NONE) continue;
+                    for (TripTimes t : departures.nextDepartures(s, secondsSinceMidnight, numberOfDepartures)) {
+                        pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
+                    }
 
-                        // TODO: This needs to be adapted after #1647 is merged
-                        for (FrequencyEntry freq : tt.frequencyEntries) {
-                            if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
-                            int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
-                            if (departureTime == -1) continue;
-                            int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
-                                    freq.tripTimes.getDepartureTime(0);
-                            int i = 0;
-                            while (departureTime <= lastDeparture && i < numberOfDepartures) {
-                                pq.insertWithOverflow(new TripTimeShort(freq.materialize(sidx, departureTime, true), sidx, stop, sd));
-                                departureTime += freq.headway;
-                                i++;
-                            }
+                    // TODO: This needs to be adapted after #1647 is merged
+                    for (FrequencyEntry freq : tt.frequencyEntries) {
+                        if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
+                        int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
+                        if (departureTime == -1) continue;
+                        int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
+                                freq.tripTimes.getDepartureTime(0);
+                        int i = 0;
+                        while (departureTime <= lastDeparture && i < numberOfDepartures) {
+                            pq.insertWithOverflow(new TripTimeShort(freq.materialize(sidx, departureTime, true), sidx, stop, sd));
+                            departureTime += freq.headway;
+                            i++;
                         }
                     }
-                    sidx++;
                 }
             }
+            p++;
 
             if (pq.size() != 0) {
                 StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
@@ -507,11 +573,16 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate, boolean omitNonPickups) {
+        return getStopTimesForStop(stop, serviceDate, omitNonPickups, currentTimetableSnapshot());
+    }
+
+    /**
+     * Get a list of all trips that pass through a stop during a single ServiceDate, as seen in the given realtime
+     * snapshot (or the scheduled timetables if it is null).
+     */
+    public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate, boolean omitNonPickups,
+            TimetableSnapshot snapshot) {
         List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
         Collection<TripPattern> patterns = patternsForStop.get(stop);
         for (TripPattern pattern : patterns) {
             StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
@@ -538,12 +609,30 @@ public class GraphIndex {
         return ret;
     }
 
-    /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
+    /** @return the latest realtime snapshot, or null if no realtime updates are applied to this graph. */
+    private TimetableSnapshot currentTimetableSnapshot() {
+        if (graph.timetableSnapshotSource == null) {
+            return null;
+        }
+        return graph.timetableSnapshotSource.getTimetableSnapshot();
+    }
+
+    /**
+     * Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed.
+     * The cache saved with the graph is used if the graph builder computed one.
+     */
     public StopTreeCache getStopTreeCache() {
         if (stopTreeCache == null) {
             synchronized (this) {
                 if (stopTreeCache == null) {
-                    stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    if (graph.stopTreeCache != null && graph.stopTreeCache.matches(graph, MAX_WALK_METERS)) {
+                        stopTreeCache = graph.stopTreeCache;
+                    } else {
+                        if (graph.stopTreeCache != null) {
+                            LOG.warn("The stop trees saved with the graph do not match its stops, rebuilding them.");
+                        }
+                        stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    }
                 }
             }
         }
@@ -655,12 +744,107 @@ public class GraphIndex {
     	}
     }
     
+    /**
+     * Sizes and weights for estimating the cost of GraphQL queries. List sizes are the averages found in this graph,
+     * weights reflect fields whose resolvers do much more work than materializing the objects they return.
+     */
+    private GraphQLCostAnalyzer createGraphQLCostAnalyzer(GraphQLSchema schema) {
+        int patternsPerStop = average(patternsForStop.size(), patternsForStop.keySet().size());
+        int patternsPerRoute = average(patternsForRoute.size(), patternsForRoute.keySet().size());
+        int stopsPerPattern = 1;
+        int tripsPerPattern = 1;
+        if (!patternForId.isEmpty()) {
+            long stops = 0;
+            long trips = 0;
+            for (TripPattern pattern : patternForId.values()) {
+                stops += pattern.getStops().size();
+                trips += pattern.getTrips().size();
+            }
+            stopsPerPattern = average(stops, patternForId.size());
+            tripsPerPattern = average(trips, patternForId.size());
+        }
+        int agencies = 0;
+        for (Map<String, Agency> agencyForId : agenciesForFeedId.values()) {
+            agencies += agencyForId.size();
+        }
+        return new GraphQLCostAnalyzer(schema)
+                .setListSize("QueryType.agencies", Math.max(1, agencies))
+                .setListSize("QueryType.stops", Math.max(1, stopForId.size()))
+                .setListSize("QueryType.routes", Math.max(1, routeForId.size()))
+                .setListSize("QueryType.trips", Math.max(1, tripForId.size()))
+                .setListSize("QueryType.patterns", Math.max(1, patternForId.size()))
+                .setListSize("QueryType.clusters", Math.max(1, stopForId.size()))
+                .setListSize("Agency.routes", average(routeForId.size(), agencies))
+                .setListSize("Route.patterns", patternsPerRoute)
+                .setListSize("Route.trips", patternsPerRoute * tripsPerPattern)
+                .setListSize("Route.stops", stopsPerPattern)
+                .setListSize("Pattern.trips", tripsPerPattern)
+                .setListSize("Pattern.stops", stopsPerPattern)
+                .setListSize("Trip.stops", stopsPerPattern)
+                .setListSize("Trip.stoptimes", stopsPerPattern)
+                .setListSize("Trip.stoptimesForDate", stopsPerPattern)
+                .setListSize("Stop.routes", patternsPerStop)
+                .setListSize("Stop.patterns", patternsPerStop)
+                .setListSize("Stop.stoptimesForPatterns", patternsPerStop)
+                .setListSize("Stop.stoptimesForServiceDate", patternsPerStop)
+                .setListSize("StoptimesInPattern.stoptimes", 5)
+                .setListSize("Stop.stoptimesWithoutPatterns", 5)
+                .setListSizeArgument("Stop.stoptimesWithoutPatterns", "numberOfDepartures")
+                // Departure lookups scan the trips of every pattern through the stop
+                .setFieldWeight("Stop.stoptimesForPatterns", 10)
+                .setFieldWeight("Stop.stoptimesWithoutPatterns", 10)
+                .setFieldWeight("Stop.stoptimesForServiceDate", Math.max(10, patternsPerStop * tripsPerPattern))
+                .setFieldWeight("Stop.transfers", 5)
+                .setFieldWeight("Trip.stoptimesForDate", 2)
+                .setFieldWeight("Trip.semanticHash", 2)
+                .setFieldWeight("Pattern.semanticHash", 2)
+                .setFieldWeight("QueryType.stopsByBbox", 5)
+                .setFieldWeight("QueryType.stopsByRadius", 20)
+                .setFieldWeight("QueryType.fuzzyTrip", 5);
+    }
+
+    private static int average(long total, long count) {
+        if (count == 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (total + count - 1) / count));
+    }
+
     public Response getGraphQLResponse(String query, Map<String, Object> variables, String operationName) {
-        ExecutionResult executionResult = graphQL.execute(query, operationName, null, variables);
-        Response.ResponseBuilder res = Response.status(Response.Status.OK);
+        return getGraphQLResponse(query, variables, operationName,
+                new GraphQLRequestContext(this, graphQLTimeoutMillis));
+    }
+
+    /**
+     * Execute a GraphQL query with the given context, whose time budget starts when the context is created. A query
+     * that runs out of time still returns 200 with the fields resolved before the deadline and an error saying the
+     * result is incomplete, other errors return 500.
+     */
+    public Response getGraphQLResponse(String query, Map<String, Object> variables, String operationName,
+            GraphQLRequestContext context) {
         HashMap<String, Object> content = new HashMap<>();
+        HashMap<String, Object> cost = new HashMap<>();
+        long estimatedCost = graphQLCostAnalyzer.estimate(query, operationName, variables);
+        cost.put("estimated", estimatedCost);
+        cost.put("maxQueryCost", graphQLMaxQueryCost);
+        content.put("extensions", Collections.singletonMap("cost", cost));
+        if (graphQLMaxQueryCost > 0 && estimatedCost > graphQLMaxQueryCost) {
+            content.put("errors", Collections.singletonList(Collections.singletonMap("message", String.format(
+                    "Query is too expensive: estimated cost %d exceeds the maximum of %d.", estimatedCost,
+                    graphQLMaxQueryCost))));
+            return Response.status(Response.Status.BAD_REQUEST).entity(content).build();
+        }
+        // The context pins one realtime snapshot for the whole query, memoizes lookups shared between fields and
+        // carries the time budget checked by the execution strategy.
+        long startTime = System.currentTimeMillis();
+        ExecutionResult executionResult = graphQL.execute(query, operationName, context, variables);
+        cost.put("elapsedMsec", System.currentTimeMillis() - startTime);
+        cost.put("timedOut", context.isTimedOut());
+        Response.ResponseBuilder res = Response.status(Response.Status.OK);
         if (!executionResult.getErrors().isEmpty()) {
-            res = Response.status(Response.Status.INTERNAL_SERVER_ERROR);
+            if (!context.isTimedOut()) {
+                res = Response.status(Response.Status.INTERNAL_SERVER_ERROR);
+            }
             content.put("errors", executionResult.getErrors());
         }
         if (executionResult.getData() != null) {
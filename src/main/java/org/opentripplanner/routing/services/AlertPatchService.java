@@ -15,6 +15,12 @@ public interface AlertPatchService {
 
     void apply(AlertPatch alertPatch);
 
+    /**
+     * Expire the patches with the given IDs and apply the given new patches as one atomic change, so that readers
+     * see either the old or the new set of patches but never a mix of the two.
+     */
+    void update(Set<String> expire, Collection<AlertPatch> apply);
+
     void expire(Set<String> ids);
 
     void expireAll();
@@ -25,6 +25,12 @@ public class BikeRentalStationVertex extends Vertex {
 
     private String id;
 
+    /**
+     * Index of this station in the realtime BikeRentalStationAvailability table, or -1 if this station is not
+     * covered by any realtime updater.
+     */
+    private int availabilityIndex = -1;
+
     /** Some car rental systems and flex transit systems work exactly like bike rental, but with cars. */
     private boolean isCarStation;
 
@@ -61,6 +67,14 @@ public class BikeRentalStationVertex extends Vertex {
         this.id = id;
     }
 
+    public int getAvailabilityIndex() {
+        return availabilityIndex;
+    }
+
+    public void setAvailabilityIndex(int availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+    }
+
     /**
      * Tell the routing algorithm what kind of vehicle is being rented or dropped off here.
      * Some car rental systems and flex transit systems work exactly like bike rental, but with cars.
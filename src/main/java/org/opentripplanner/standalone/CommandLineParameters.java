@@ -93,9 +93,17 @@ public class CommandLineParameters implements Cloneable {
             description = "Server port for plain HTTP.")
     public Integer port;
 
-    @Parameter(names = {"--maxThreads"}, description = "The maximum number of HTTP handler threads in the pool.")
+    @Parameter(names = {"--maxThreads"}, description = "The maximum number of HTTP handler threads and of routing threads.")
     public Integer maxThreads;
 
+    @Parameter(names = {"--maxQueuedRequests"},
+            description = "The maximum number of routing requests waiting for a thread before new ones are rejected.")
+    public Integer maxQueuedRequests;
+
+    @Parameter(names = {"--maxRouterRequests"},
+            description = "The maximum number of routing requests queued or running at once for each router.")
+    public Integer maxRouterRequests;
+
     @Parameter(names = {"--graphs"}, validateWith = ReadableDirectory.class,
             description = "Path to directory containing graphs. Defaults to BASE_PATH/graphs.")
     public File graphDirectory;
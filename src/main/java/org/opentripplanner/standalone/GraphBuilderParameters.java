@@ -184,6 +184,12 @@ public class GraphBuilderParameters {
      */
     public final Boolean extraEdgesStopPlatformLink;
 
+    /**
+     * Compute the distances from each transit stop to the nearby streets used by analyst requests when building the
+     * graph, and save them in it, rather than computing them at the first analyst request after each graph load.
+     */
+    public final boolean precomputeStopTrees;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -220,6 +226,7 @@ public class GraphBuilderParameters {
         banDiscouragedBiking = config.path("banDiscouragedBiking").asBoolean(false);
         maxTransferDistance = config.path("maxTransferDistance").asDouble(2000);
         extraEdgesStopPlatformLink = config.path("extraEdgesStopPlatformLink").asBoolean(false);
+        precomputeStopTrees = config.path("precomputeStopTrees").asBoolean(false);
     }
 
 
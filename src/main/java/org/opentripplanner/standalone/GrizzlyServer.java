@@ -14,6 +14,7 @@ import org.glassfish.grizzly.ssl.SSLContextConfigurator;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.server.ContainerFactory;
+import org.opentripplanner.util.monitoring.JmxUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
@@ -44,7 +45,7 @@ public class GrizzlyServer {
     }
 
     /**
-     * OTP is CPU-bound, so we want roughly as many worker threads as we have cores, subject to some constraints.
+     * OTP is CPU-bound, so we want roughly as many routing threads as we have cores, subject to some constraints.
      */
     private int getMaxThreads() {
         int maxThreads = Runtime.getRuntime().availableProcessors();
@@ -59,7 +60,7 @@ public class GrizzlyServer {
             // Some machines apparently report 1 processor even when they have 8.
             maxThreads = MIN_THREADS;
         }
-        LOG.info("Maximum HTTP handler thread pool size will be {} threads.", maxThreads);
+        LOG.info("Maximum HTTP handler and routing thread pool sizes will be {} threads.", maxThreads);
         return maxThreads;
     }
 
@@ -82,13 +83,21 @@ public class GrizzlyServer {
         // Set up a pool of threads to handle incoming HTTP requests.
         // According to the Grizzly docs, setting the core and max pool size equal with no queue limit
         // will use a more efficient fixed-size thread pool implementation.
-        // TODO we should probably use Grizzly async processing rather than tying up the HTTP handler threads.
+        // Routing requests are suspended and computed on the bounded RoutingExecutor, which rejects them when it is
+        // saturated, so the handler threads are not tied up and their queue does not grow without limit.
         int nHandlerThreads = getMaxThreads();
         ThreadPoolConfig threadPoolConfig = ThreadPoolConfig.defaultConfig()
             .setCorePoolSize(nHandlerThreads)
             .setMaxPoolSize(nHandlerThreads)
             .setQueueLimit(-1);
 
+        int queueLimit = params.maxQueuedRequests != null ? params.maxQueuedRequests
+                : nHandlerThreads * RoutingExecutor.DEFAULT_QUEUE_PER_THREAD;
+        int maxRouterRequests = params.maxRouterRequests != null ? params.maxRouterRequests : 0;
+        RoutingExecutor routingExecutor = new RoutingExecutor(nHandlerThreads, queueLimit, maxRouterRequests);
+        server.setRoutingExecutor(routingExecutor);
+        JmxUtils.register("org.opentripplanner:type=RoutingExecutor", routingExecutor);
+
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
         httpListener.setSecure(false);
@@ -163,5 +172,6 @@ public class GrizzlyServer {
         // Clean up graceful shutdown hook before shutting down Grizzly.
         Runtime.getRuntime().removeShutdownHook(shutdownThread);
         httpServer.shutdown();
+        routingExecutor.shutdown();
     }
 }
@@ -70,6 +70,7 @@ public class OTPApplication extends Application {
         classes.addAll(Arrays.asList(
             /* Jersey resource classes: define web services, i.e. an HTTP API. */
             PlannerResource.class,
+            BatchPlannerResource.class,
             IndexAPI.class,
             ExternalGeocoderResource.class,
             GeocoderResource.class,
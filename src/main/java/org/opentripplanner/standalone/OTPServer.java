@@ -7,6 +7,7 @@ import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.opentripplanner.analyst.DiskBackedPointSetCache;
 import org.opentripplanner.analyst.PointSetCache;
 import org.opentripplanner.analyst.SurfaceCache;
+import org.opentripplanner.profile.RaptorWorkerDataCache;
 import org.opentripplanner.routing.error.GraphNotFoundException;
 import org.opentripplanner.routing.services.GraphService;
 import org.opentripplanner.scripting.impl.ScriptingService;
@@ -31,10 +32,14 @@ public class OTPServer {
     // Optional Analyst global modules (caches)
     public SurfaceCache surfaceCache;
     public PointSetCache pointSetCache;
+    public RaptorWorkerDataCache raptorWorkerDataCache;
     public ScriptingService scriptingService;
 
     public CommandLineParameters params;
 
+    /** Computes routing requests off the HTTP handler threads, see {@link #getRoutingExecutor()}. */
+    private RoutingExecutor routingExecutor;
+
     public OTPServer (CommandLineParameters params, GraphService gs) {
         LOG.info("Wiring up and configuring server.");
 
@@ -45,8 +50,9 @@ public class OTPServer {
 
         // Optional Analyst Modules.
         if (params.analyst) {
-            surfaceCache = new SurfaceCache(30);
+            surfaceCache = new SurfaceCache(Runtime.getRuntime().maxMemory() / 8);
             pointSetCache = new DiskBackedPointSetCache(100, params.pointSetDirectory);
+            raptorWorkerDataCache = new RaptorWorkerDataCache(Runtime.getRuntime().maxMemory() / 4);
         }
 
         scriptingService = new ScriptingService(this);
@@ -75,6 +81,23 @@ public class OTPServer {
         return graphService.getRouter(routerId);
     }
 
+    /**
+     * @return the executor on which web resources compute routing requests. The GrizzlyServer sets one up according
+     *         to the command line parameters, otherwise (e.g. when resources are used in tests) a default one is
+     *         created on first use.
+     */
+    public synchronized RoutingExecutor getRoutingExecutor() {
+        if (routingExecutor == null) {
+            int nThreads = Runtime.getRuntime().availableProcessors();
+            routingExecutor = new RoutingExecutor(nThreads, nThreads * RoutingExecutor.DEFAULT_QUEUE_PER_THREAD, 0);
+        }
+        return routingExecutor;
+    }
+
+    public synchronized void setRoutingExecutor(RoutingExecutor routingExecutor) {
+        this.routingExecutor = routingExecutor;
+    }
+
     /**
      * Return an HK2 Binder that injects this specific OTPServer instance into Jersey web resources.
      * This should be registered in the ResourceConfig (Jersey) or Application (JAX-RS) as a singleton.
@@ -9,6 +9,8 @@ import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.api.resource.ItineraryDetailsCache;
+import org.opentripplanner.api.resource.PlanCache;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -17,9 +19,12 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.util.ElevationUtils;
 import org.opentripplanner.util.WorldEnvelope;
+import org.opentripplanner.util.monitoring.JmxUtils;
 import org.opentripplanner.visualizer.GraphVisualizer;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.io.File;
 import java.util.EnumMap;
 
 /**
@@ -62,6 +67,18 @@ public class Router {
     /** Storage for non-destructive alternatives analysis scenarios. */
     public ScenarioStore scenarioStore = new ScenarioStore();
 
+    /** Cache of trip plans for repeated identical requests, or null if disabled in the router config. */
+    public PlanCache planCache = null;
+
+    /** The paths behind the itineraries of summary plans, for generating their details on demand. */
+    public ItineraryDetailsCache itineraryDetailsCache = new ItineraryDetailsCache(1000, 600);
+
+    /** Whether JSON trip plans are written by the TripPlanJsonWriter rather than by the Jackson provider. */
+    public boolean streamPlanJson = false;
+
+    /** The largest number of chunks the time window of a profile analysis search is split into and searched in parallel. */
+    public int raptorChunks = 1;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -84,7 +101,9 @@ public class Router {
 
         // Analyst Modules FIXME make these optional based on JSON?
         {
-            this.tileCache = new TileCache(this.graph);
+            JsonNode tileSampleDirectory = config.get("tileSampleDirectory");
+            this.tileCache = new TileCache(this.graph,
+                    tileSampleDirectory == null ? null : new File(tileSampleDirectory.asText()));
             this.renderer = new Renderer(this.tileCache);
             this.sampleGridRenderer = new SampleGridRenderer(this.graph);
             this.isoChroneSPTRenderer = new IsoChroneSPTRendererAccSampling(this.sampleGridRenderer);
@@ -134,6 +153,42 @@ public class Router {
             LOG.info("Incoming requests will not be logged.");
         }
 
+        /* Optionally cache trip plans. */
+        JsonNode planCacheConfig = config.get("planCache");
+        if (planCacheConfig != null) {
+            long maxSize = planCacheConfig.path("maxSize").asLong(1000);
+            long ttlSeconds = planCacheConfig.path("ttlSeconds").asLong(60);
+            if (maxSize > 0 && ttlSeconds > 0) {
+                planCache = new PlanCache(graph, maxSize, ttlSeconds);
+                JmxUtils.register(planCacheObjectName(), planCache);
+                LOG.info("Caching up to {} trip plans for {} seconds.", maxSize, ttlSeconds);
+            }
+        }
+
+        /* How long the paths of summary plans are kept for generating their details. */
+        JsonNode itineraryDetailsConfig = config.get("itineraryDetailsCache");
+        if (itineraryDetailsConfig != null) {
+            itineraryDetailsCache = new ItineraryDetailsCache(itineraryDetailsConfig.path("maxSize").asLong(1000),
+                    itineraryDetailsConfig.path("ttlSeconds").asLong(600));
+        }
+
+        streamPlanJson = config.path("streamPlanJson").asBoolean(false);
+
+        raptorChunks = Math.max(1, config.path("raptorChunks").asInt(1));
+
+        /* Limits on the cost and running time of GraphQL index queries. */
+        JsonNode graphQL = config.get("graphQL");
+        if (graphQL != null && graph.index != null) {
+            if (graphQL.has("maxQueryCost")) {
+                graph.index.graphQLMaxQueryCost = graphQL.get("maxQueryCost").asLong();
+            }
+            if (graphQL.has("timeout")) {
+                graph.index.graphQLTimeoutMillis = (long) (graphQL.get("timeout").asDouble() * 1000);
+            }
+            LOG.info("GraphQL limits for router '{}': max query cost {}, timeout {} msec", new Object[] { this.id,
+                    graph.index.graphQLMaxQueryCost, graph.index.graphQLTimeoutMillis });
+        }
+
         JsonNode boardTimes = config.get("boardTimes");
         if (boardTimes != null && boardTimes.isObject()) {
             graph.boardTimes = new EnumMap<>(TraverseMode.class);
@@ -178,6 +233,13 @@ public class Router {
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (planCache != null) {
+            JmxUtils.unregister(planCacheObjectName());
+        }
+    }
+
+    private String planCacheObjectName() {
+        return "org.opentripplanner:type=PlanCache,router=" + ObjectName.quote(id);
     }
 
     /**
@@ -0,0 +1,194 @@
+package org.opentripplanner.standalone;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.opentripplanner.updater.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the CPU-heavy web service requests (trip planning, profile routing, departure and GraphQL queries) on a
+ * dedicated, bounded pool of routing threads, separate from the HTTP handler threads.
+ *
+ * Resources suspend the request with a JAX-RS AsyncResponse and hand the computation over to this executor, which
+ * resumes the response once it is done. Rather than letting requests pile up during traffic spikes until they all time
+ * out, requests are admitted only while there is room in the queue and their router has fewer than the configured
+ * number of requests in flight. Other requests are answered immediately with 503 Service Unavailable, so that clients
+ * and load balancers can retry elsewhere. The time requests spend waiting for a routing thread is recorded.
+ */
+public class RoutingExecutor implements RoutingExecutorMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingExecutor.class);
+
+    /** The default queue limit, as a number of requests per routing thread. */
+    public static final int DEFAULT_QUEUE_PER_THREAD = 8;
+
+    /** Seconds after which clients are invited to retry a rejected request. */
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int threadCount;
+
+    private final int queueLimit;
+
+    private final int maxConcurrentRequestsPerRouter;
+
+    /** Requests queued or running for each router. */
+    private final ConcurrentMap<String, AtomicInteger> inFlightByRouter = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+
+    private final AtomicLong rejectedQueueFullCount = new AtomicLong();
+
+    private final AtomicLong rejectedRouterLimitCount = new AtomicLong();
+
+    private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+
+    /**
+     * @param threadCount the number of routing threads
+     * @param queueLimit the number of requests that may wait for a routing thread, 0 to reject requests as soon as all
+     *        threads are busy
+     * @param maxConcurrentRequestsPerRouter the number of requests each router may have queued or running, 0 for no
+     *        limit other than the queue
+     */
+    public RoutingExecutor(int threadCount, int queueLimit, int maxConcurrentRequestsPerRouter) {
+        this.threadCount = threadCount;
+        this.queueLimit = queueLimit;
+        this.maxConcurrentRequestsPerRouter = maxConcurrentRequestsPerRouter;
+        BlockingQueue<Runnable> queue = queueLimit > 0 ? new ArrayBlockingQueue<>(queueLimit) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, queue,
+                new ThreadFactoryBuilder().setNameFormat("Routing-%d").setDaemon(true).build());
+        LOG.info("Routing requests will be computed on {} threads with a queue of {} requests.", threadCount,
+                queueLimit);
+    }
+
+    /**
+     * Compute the response to a request on a routing thread and resume the given AsyncResponse with it, or resume it
+     * right away with 503 Service Unavailable if the server or the router is saturated. Exceptions thrown by the task
+     * are passed on to the AsyncResponse, and are mapped to responses like those of synchronous resource methods.
+     *
+     * @param task computes the entity or javax.ws.rs.core.Response to return
+     */
+    public void execute(AsyncResponse asyncResponse, String routerId, Callable<?> task) {
+        AtomicInteger inFlight = inFlightByRouter.computeIfAbsent(routerId, id -> new AtomicInteger());
+        if (inFlight.incrementAndGet() > maxConcurrentRequestsPerRouter && maxConcurrentRequestsPerRouter > 0) {
+            inFlight.decrementAndGet();
+            rejectedRouterLimitCount.incrementAndGet();
+            asyncResponse.resume(serviceUnavailable("Too many concurrent requests for router " + routerId + "."));
+            return;
+        }
+        final long submitTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                queueWaitTime.recordNanos(startTime - submitTime);
+                try {
+                    // Skip requests whose client went away or timed out while they were queued
+                    if (!asyncResponse.isDone()) {
+                        asyncResponse.resume(task.call());
+                    }
+                } catch (Throwable t) {
+                    asyncResponse.resume(t);
+                } finally {
+                    executionTime.recordNanos(System.nanoTime() - startTime);
+                    completedCount.incrementAndGet();
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejectedQueueFullCount.incrementAndGet();
+            asyncResponse.resume(serviceUnavailable("The server is busy, please try again later."));
+        }
+    }
+
+    private static Response serviceUnavailable(String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(message)
+                .build();
+    }
+
+    /** Stop accepting requests. Requests already queued are still computed. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    @Override
+    public int getMaxConcurrentRequestsPerRouter() {
+        return maxConcurrentRequestsPerRouter;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public Map<String, Integer> getInFlightByRouter() {
+        Map<String, Integer> result = new TreeMap<>();
+        inFlightByRouter.forEach((routerId, inFlight) -> result.put(routerId, inFlight.get()));
+        return result;
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public long getRejectedQueueFullCount() {
+        return rejectedQueueFullCount.get();
+    }
+
+    @Override
+    public long getRejectedRouterLimitCount() {
+        return rejectedRouterLimitCount.get();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getQueueWaitTime() {
+        return queueWaitTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getExecutionTime() {
+        return executionTime.getSummary();
+    }
+}
@@ -0,0 +1,45 @@
+package org.opentripplanner.standalone;
+
+import java.util.Map;
+
+import org.opentripplanner.updater.LatencyHistogram;
+
+/**
+ * The JMX view of the {@link RoutingExecutor}. Registered by the {@link GrizzlyServer} under the name
+ * org.opentripplanner:type=RoutingExecutor
+ */
+public interface RoutingExecutorMXBean {
+
+    /** @return the number of routing threads. */
+    int getThreadCount();
+
+    /** @return the number of requests that may wait for a routing thread before new ones are rejected. */
+    int getQueueLimit();
+
+    /** @return the number of requests each router may have queued or running at once, or 0 for no limit. */
+    int getMaxConcurrentRequestsPerRouter();
+
+    /** @return the number of requests currently being computed. */
+    int getActiveCount();
+
+    /** @return the number of requests currently waiting for a routing thread. */
+    int getQueuedCount();
+
+    /** @return the number of requests queued or running for each router. */
+    Map<String, Integer> getInFlightByRouter();
+
+    /** @return the number of requests that completed, successfully or not. */
+    long getCompletedCount();
+
+    /** @return the number of requests rejected because the queue was full. */
+    long getRejectedQueueFullCount();
+
+    /** @return the number of requests rejected because their router had too many requests in flight. */
+    long getRejectedRouterLimitCount();
+
+    /** @return time requests spent waiting for a routing thread. */
+    LatencyHistogram.Summary getQueueWaitTime();
+
+    /** @return time spent computing requests on the routing threads. */
+    LatencyHistogram.Summary getExecutionTime();
+}
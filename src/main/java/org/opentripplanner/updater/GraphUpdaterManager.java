@@ -10,7 +10,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -48,10 +47,10 @@ public class GraphUpdaterManager {
      * OTP's multi-version concurrency control model for graph updating allows simultaneous reads,
      * but never simultaneous writes. We ensure this policy is respected by having a single writer
      * thread, which sequentially executes all graph updater tasks. Each task is a runnable that is
-     * scheduled with the ExecutorService to run at regular intervals.
-     * FIXME in reality we're not using scheduleAtFixedInterval. We're scheduling for immediate execution from separate threads that sleep in a loop.
+     * submitted to the scheduler for execution as soon as possible, superseding any pending
+     * runnable from the same source that it makes redundant.
      */
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private GraphWriterScheduler scheduler;
 
     /**
      * A pool of threads on which the updaters will run.
@@ -82,7 +81,7 @@ public class GraphUpdaterManager {
             routerId = DEFAULT_ROUTER_ID;
         
         threadFactory = new ThreadFactoryBuilder().setNameFormat("GraphUpdater-" + routerId + "-%d").build();
-        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler = new GraphWriterScheduler(graph, threadFactory);
         updaterPool = Executors.newCachedThreadPool(threadFactory);
     }
 
@@ -108,16 +107,7 @@ public class GraphUpdaterManager {
         updaterList.clear();
 
         // Shutdown scheduler
-        scheduler.shutdownNow();
-        try {
-            boolean ok = scheduler.awaitTermination(30, TimeUnit.SECONDS);
-            if (!ok) {
-                LOG.warn("Timeout waiting for scheduled task to finish.");
-            }
-        } catch (InterruptedException e) {
-            // This should not happen
-            LOG.warn("Interrupted while waiting for scheduled task to finish.");
-        }
+        scheduler.stop();
     }
 
     /**
@@ -132,18 +122,20 @@ public class GraphUpdaterManager {
     /**
      * This is the method to use to modify the graph from the updaters. The runnables will be
      * scheduled after each other, guaranteeing that only one of these runnables will be active at
-     * any time.
+     * any time. A runnable that is still waiting may be skipped if a newer one with the same
+     * coalescing key is submitted, see {@link GraphWriterRunnable#getCoalescingKey()}.
      * 
      * @param runnable is a graph writer runnable
      */
     public void execute(GraphWriterRunnable runnable) {
-        scheduler.submit(() -> {
-            try {
-                runnable.run(graph);
-            } catch (Exception e) {
-                LOG.error("Error while running graph writer {}:", runnable.getClass().getName(), e);
-            }
-        });
+        scheduler.submit(runnable);
+    }
+
+    /**
+     * @return queue depth and per-writer timings of the graph writer scheduler.
+     */
+    public GraphWriterScheduler.SchedulerStatus getWriterStatus() {
+        return scheduler.getStatus();
     }
 
     public int size() {
@@ -19,4 +19,16 @@ public interface GraphWriterRunnable {
      * This function is executed to modify the graph.
      */
     public void run(Graph graph);
+
+    /**
+     * Writers that replace all the state previously written by the same source (for example a full dataset of bike
+     * rental stations from one updater) can return a key identifying that source. When a writer is submitted while an
+     * earlier writer with an equal key is still waiting to run, the earlier one is superseded and will never run.
+     * Writers that apply incremental changes must return null, which is the default.
+     *
+     * @see GraphWriterScheduler
+     */
+    public default Object getCoalescingKey() {
+        return null;
+    }
 }
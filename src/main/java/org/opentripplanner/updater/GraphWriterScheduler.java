@@ -0,0 +1,244 @@
+package org.opentripplanner.updater;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs GraphWriterRunnables one at a time on a single writer thread, in the order they were submitted.
+ *
+ * Instead of handing each writer to the executor separately, submitted writers are placed in a pending queue which the
+ * writer thread drains in batches: every writer that has piled up while the previous batch was running is executed
+ * back-to-back in the next pass. While a writer is waiting in the queue it can be superseded by a newer writer with an
+ * equal {@link GraphWriterRunnable#getCoalescingKey()}, in which case only the newer one runs. This prevents redundant
+ * full-dataset writes from accumulating when several updaters fire at once or a feed backs up.
+ *
+ * Queue depth and per-writer timings are recorded so they can be reported by the UpdaterStatusResource.
+ */
+public class GraphWriterScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphWriterScheduler.class);
+
+    private final Graph graph;
+
+    /** The single thread on which all graph writes happen. */
+    private final ExecutorService writerThread;
+
+    /** Writers waiting to be run, in submission order. Guarded by itself. */
+    private final LinkedList<PendingWriter> queue = new LinkedList<>();
+
+    /** True if a drain task has been handed to the writer thread and has not yet emptied the queue. */
+    private boolean drainScheduled = false;
+
+    /** Statistics keyed on writer class name. Guarded by itself. */
+    private final Map<String, WriterStatistics> statistics = new TreeMap<>();
+
+    private long batchCount = 0;
+
+    private int maxBatchSize = 0;
+
+    public GraphWriterScheduler(Graph graph, ThreadFactory threadFactory) {
+        this.graph = graph;
+        this.writerThread = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Enqueue a writer to be run on the writer thread. If an earlier writer with the same coalescing key is still
+     * waiting, it is dropped in favor of this one. The new writer always goes to the back of the queue, so that it
+     * still runs after any incremental writers that were submitted before it.
+     */
+    public void submit(GraphWriterRunnable runnable) {
+        PendingWriter pending = new PendingWriter(runnable);
+        Object key = runnable.getCoalescingKey();
+        synchronized (queue) {
+            if (key != null) {
+                Iterator<PendingWriter> it = queue.iterator();
+                while (it.hasNext()) {
+                    PendingWriter queued = it.next();
+                    if (key.equals(queued.runnable.getCoalescingKey())) {
+                        it.remove();
+                        statisticsFor(queued.name()).recordCoalesced();
+                    }
+                }
+            }
+            queue.add(pending);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                writerThread.execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Runs on the writer thread, executing batches of pending writers until the queue is empty. A writer that throws
+     * anything, errors included, is logged and skipped. If the drain still ends early, a new one is scheduled for the
+     * writers left in the queue so that they are not stranded.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                List<PendingWriter> batch;
+                synchronized (queue) {
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                }
+                synchronized (statistics) {
+                    batchCount++;
+                    maxBatchSize = Math.max(maxBatchSize, batch.size());
+                }
+                for (PendingWriter pending : batch) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    long startTime = System.nanoTime();
+                    try {
+                        pending.runnable.run(graph);
+                    } catch (Throwable t) {
+                        LOG.error("Error while running graph writer {}:", pending.name(), t);
+                    }
+                    long endTime = System.nanoTime();
+                    statisticsFor(pending.name()).recordRun(startTime - pending.submitTime, endTime - startTime);
+                }
+            }
+        } finally {
+            synchronized (queue) {
+                drainScheduled = false;
+                if (!queue.isEmpty() && !writerThread.isShutdown()) {
+                    drainScheduled = true;
+                    writerThread.execute(this::drain);
+                }
+            }
+        }
+    }
+
+    /** @return the number of writers waiting to be run. */
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /** @return a snapshot of the scheduler statistics, suitable for serialization. */
+    public SchedulerStatus getStatus() {
+        SchedulerStatus status = new SchedulerStatus();
+        status.queueDepth = getQueueDepth();
+        synchronized (statistics) {
+            status.batchCount = batchCount;
+            status.maxBatchSize = maxBatchSize;
+            for (Map.Entry<String, WriterStatistics> entry : statistics.entrySet()) {
+                status.writers.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+        return status;
+    }
+
+    private WriterStatistics statisticsFor(String name) {
+        synchronized (statistics) {
+            WriterStatistics stats = statistics.get(name);
+            if (stats == null) {
+                stats = new WriterStatistics();
+                statistics.put(name, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Stop the writer thread, waiting for the writer currently running (if any) to finish. Pending writers are
+     * discarded.
+     */
+    public void stop() {
+        synchronized (queue) {
+            queue.clear();
+        }
+        writerThread.shutdownNow();
+        try {
+            boolean ok = writerThread.awaitTermination(30, TimeUnit.SECONDS);
+            if (!ok) {
+                LOG.warn("Timeout waiting for scheduled task to finish.");
+            }
+        } catch (InterruptedException e) {
+            // This should not happen
+            LOG.warn("Interrupted while waiting for scheduled task to finish.");
+        }
+    }
+
+    private static class PendingWriter {
+        final GraphWriterRunnable runnable;
+        final long submitTime = System.nanoTime();
+
+        PendingWriter(GraphWriterRunnable runnable) {
+            this.runnable = runnable;
+        }
+
+        String name() {
+            return runnable.getClass().getName();
+        }
+    }
+
+    /** Overall state of the writer queue, as reported through the web API. */
+    public static class SchedulerStatus {
+        public int queueDepth;
+        public long batchCount;
+        public int maxBatchSize;
+        public Map<String, WriterStatistics> writers = new TreeMap<>();
+    }
+
+    /**
+     * Counters and timings for one kind of graph writer. Latency is measured from submission to completion, so it
+     * includes the time spent waiting in the queue behind other writers.
+     */
+    public static class WriterStatistics {
+        public long runCount;
+        public long coalescedCount;
+        public double meanLatencyMsec;
+        public double maxLatencyMsec;
+        public double lastLatencyMsec;
+        public double meanRunTimeMsec;
+        public double maxRunTimeMsec;
+
+        private long totalLatencyNanos;
+        private long totalRunTimeNanos;
+
+        synchronized void recordRun(long latencyNanos, long runTimeNanos) {
+            runCount++;
+            totalLatencyNanos += latencyNanos;
+            totalRunTimeNanos += runTimeNanos;
+            lastLatencyMsec = latencyNanos / 1e6;
+            maxLatencyMsec = Math.max(maxLatencyMsec, lastLatencyMsec);
+            maxRunTimeMsec = Math.max(maxRunTimeMsec, runTimeNanos / 1e6);
+            meanLatencyMsec = totalLatencyNanos / 1e6 / runCount;
+            meanRunTimeMsec = totalRunTimeNanos / 1e6 / runCount;
+        }
+
+        synchronized void recordCoalesced() {
+            coalescedCount++;
+        }
+
+        synchronized WriterStatistics copy() {
+            WriterStatistics copy = new WriterStatistics();
+            copy.runCount = runCount;
+            copy.coalescedCount = coalescedCount;
+            copy.meanLatencyMsec = meanLatencyMsec;
+            copy.maxLatencyMsec = maxLatencyMsec;
+            copy.lastLatencyMsec = lastLatencyMsec;
+            copy.meanRunTimeMsec = meanRunTimeMsec;
+            copy.maxRunTimeMsec = maxRunTimeMsec;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.opentripplanner.updater;
+
+/**
+ * A thread-safe histogram of durations with fixed, roughly logarithmic buckets from one millisecond to ten minutes.
+ * Recording a value is constant time and the memory use does not depend on the number of values recorded, so it can
+ * be kept for the whole lifetime of an updater. Percentiles are approximated by the upper bound of the bucket they fall
+ * in, which is precise enough to check latency targets of the 1-2-5 kind.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds (inclusive) of the buckets in milliseconds. The last bucket holds everything above. */
+    private static final double[] BUCKET_BOUNDS_MSEC = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000, 600000
+    };
+
+    private final long[] counts = new long[BUCKET_BOUNDS_MSEC.length + 1];
+
+    private long count = 0;
+
+    private double sumMsec = 0;
+
+    private double maxMsec = 0;
+
+    private double lastMsec = 0;
+
+    public synchronized void record(double msec) {
+        if (msec < 0) {
+            // Clock skew between a feed producer and this server, count it as no delay at all.
+            msec = 0;
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MSEC.length && msec > BUCKET_BOUNDS_MSEC[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sumMsec += msec;
+        maxMsec = Math.max(maxMsec, msec);
+        lastMsec = msec;
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1e6);
+    }
+
+    /** @return a consistent copy of the current state of this histogram. */
+    public synchronized Summary getSummary() {
+        Summary summary = new Summary();
+        summary.count = count;
+        summary.meanMsec = count == 0 ? 0 : sumMsec / count;
+        summary.maxMsec = maxMsec;
+        summary.lastMsec = lastMsec;
+        summary.p50Msec = percentile(0.50);
+        summary.p95Msec = percentile(0.95);
+        summary.p99Msec = percentile(0.99);
+        return summary;
+    }
+
+    private double percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_BOUNDS_MSEC.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MSEC[bucket], maxMsec);
+            }
+        }
+        return maxMsec;
+    }
+
+    /**
+     * An immutable view of a histogram. It only has getters so that it maps to a composite type when exposed over JMX,
+     * and is serialized the same way by Jackson.
+     */
+    public static class Summary {
+        private long count;
+        private double meanMsec;
+        private double p50Msec;
+        private double p95Msec;
+        private double p99Msec;
+        private double maxMsec;
+        private double lastMsec;
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMsec() {
+            return meanMsec;
+        }
+
+        public double getP50Msec() {
+            return p50Msec;
+        }
+
+        public double getP95Msec() {
+            return p95Msec;
+        }
+
+        public double getP99Msec() {
+            return p99Msec;
+        }
+
+        public double getMaxMsec() {
+            return maxMsec;
+        }
+
+        public double getLastMsec() {
+            return lastMsec;
+        }
+    }
+}
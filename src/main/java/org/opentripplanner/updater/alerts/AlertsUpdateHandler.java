@@ -41,8 +41,9 @@ public class AlertsUpdateHandler {
     private GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
     public void update(FeedMessage message) {
-        alertPatchService.expire(patchIds);
-        patchIds.clear();
+        Set<String> expiredPatchIds = patchIds;
+        patchIds = new HashSet<String>();
+        List<AlertPatch> patches = new ArrayList<AlertPatch>();
 
         for (FeedEntity entity : message.getEntityList()) {
             if (!entity.hasAlert()) {
@@ -50,11 +51,13 @@ public class AlertsUpdateHandler {
             }
             GtfsRealtime.Alert alert = entity.getAlert();
             String id = entity.getId();
-            handleAlert(id, alert);
+            handleAlert(id, alert, patches);
         }
+        // Swap the old patches of this feed for the new ones in a single step.
+        alertPatchService.update(expiredPatchIds, patches);
     }
 
-    private void handleAlert(String id, GtfsRealtime.Alert alert) {
+    private void handleAlert(String id, GtfsRealtime.Alert alert, List<AlertPatch> patches) {
         Alert alertText = new Alert();
         alertText.alertDescriptionText = deBuffer(alert.getDescriptionText());
         alertText.alertHeaderText = deBuffer(alert.getHeaderText());
@@ -143,7 +146,7 @@ public class AlertsUpdateHandler {
             patch.setId(patchId);
             patchIds.add(patchId);
 
-            alertPatchService.apply(patch);
+            patches.add(patch);
         }
     }
 
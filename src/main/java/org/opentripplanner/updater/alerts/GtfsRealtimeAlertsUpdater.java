@@ -107,6 +107,12 @@ public class GtfsRealtimeAlertsUpdater extends PollingGraphUpdater {
                 public void run(Graph graph) {
                     updateHandler.update(feed);
                 }
+
+                /** The handler expires all its previous alerts on each update, so only the latest feed matters. */
+                @Override
+                public Object getCoalescingKey() {
+                    return updateHandler;
+                }
             });
 
             lastTimestamp = feedTimestamp;
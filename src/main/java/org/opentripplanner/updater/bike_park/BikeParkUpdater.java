@@ -156,5 +156,11 @@ public class BikeParkUpdater extends PollingGraphUpdater {
                 verticesByPark.remove(bikePark);
             }
         }
+
+        /** Each update contains all the parks of this updater, so a newer one makes any pending one redundant. */
+        @Override
+        public Object getCoalescingKey() {
+            return BikeParkUpdater.this;
+        }
     }
 }
@@ -12,6 +12,7 @@ import java.util.concurrent.ExecutionException;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
 import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
@@ -155,7 +156,8 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
             // Apply stations to graph
             Set<BikeRentalStation> stationSet = new HashSet<>();
             Set<String> defaultNetworks = new HashSet<>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
+            BikeRentalStationAvailability.Builder availability = service.getAvailability().toBuilder();
+            /* add any new stations and record bike counts for existing stations */
             for (BikeRentalStation station : stations) {
                 if (station.networks == null) {
                     /* API did not provide a network list, use default */
@@ -165,7 +167,10 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
                 stationSet.add(station);
                 BikeRentalStationVertex vertex = verticesByStation.get(station);
                 if (vertex == null) {
+                    // Only stations never seen before change the graph topology. Once linked, a station stays in the
+                    // graph and all subsequent changes go through the availability table.
                     vertex = new BikeRentalStationVertex(graph, station);
+                    vertex.setAvailabilityIndex(service.getStationIndex(station.id));
                     if (!linker.link(vertex)) {
                         // the toString includes the text "Bike rental station"
                         LOG.warn("{} not near any streets; it will not be usable.", station);
@@ -174,29 +179,43 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
                     new RentABikeOnEdge(vertex, vertex, station.networks);
                     if (station.allowDropoff)
                         new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
                 }
+                availability.setAvailability(vertex.getAvailabilityIndex(), station.bikesAvailable,
+                        station.spacesAvailable);
             }
-            /* remove existing stations that were not present in the update */
+            /* mark existing stations that were not present in the update as out of service */
             List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
             for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
                 BikeRentalStation station = entry.getKey();
                 if (stationSet.contains(station))
                     continue;
                 BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
-                }
-                toRemove.add(station);
+                availability.setOutOfService(vertex.getAvailabilityIndex());
                 service.removeBikeRentalStation(station);
-                // TODO: need to unsplit any streets that were split
+                // Floating bikes usually do not come back under the same ID, so keeping them linked would make the
+                // graph grow without bound. Fixed stations stay linked and only change in the availability table.
+                if (station.isFloatingBike) {
+                    if (graph.containsVertex(vertex)) {
+                        graph.removeVertexAndEdges(vertex);
+                    }
+                    service.releaseStationIndex(station.id);
+                    toRemove.add(station);
+                    // TODO: need to unsplit any streets that were split
+                }
             }
             for (BikeRentalStation station : toRemove) {
                 // post-iteration removal to avoid concurrent modification
                 verticesByStation.remove(station);
             }
+            // Make the new availability visible to routing requests started from now on.
+            service.publishAvailability(availability.build());
+            graph.realtimeDataPublished();
+        }
+
+        /** Each update contains all the stations of this updater, so a newer one makes any pending one redundant. */
+        @Override
+        public Object getCoalescingKey() {
+            return BikeRentalUpdater.this;
         }
     }
 }
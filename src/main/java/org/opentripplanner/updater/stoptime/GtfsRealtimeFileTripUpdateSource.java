@@ -12,6 +12,7 @@ import org.opentripplanner.updater.JsonConfigurable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.ByteStreams;
 import com.google.transit.realtime.GtfsRealtime;
 import com.google.transit.realtime.GtfsRealtime.FeedEntity;
 import com.google.transit.realtime.GtfsRealtime.FeedMessage;
@@ -29,6 +30,16 @@ public class GtfsRealtimeFileTripUpdateSource implements TripUpdateSource, JsonC
      * previous updates should be disregarded
      */
     private boolean fullDataset = true;
+
+    /**
+     * Header timestamp of the last message in milliseconds since the epoch, and the time spent retrieving and decoding
+     * it in nanoseconds, or -1 if unknown
+     */
+    private long feedTimestamp = -1;
+
+    private long fetchTime = -1;
+
+    private long parseTime = -1;
     
     /**
      * Default agency id that is used for the trip ids in the TripUpdates
@@ -47,11 +58,25 @@ public class GtfsRealtimeFileTripUpdateSource implements TripUpdateSource, JsonC
         List<FeedEntity> feedEntityList = null;
         List<TripUpdate> updates = null;
         fullDataset = true;
+        feedTimestamp = -1;
+        fetchTime = -1;
+        parseTime = -1;
         try {
+            long fetchStart = System.nanoTime();
             InputStream is = new FileInputStream(file);
             if (is != null) {
+                // Read the whole message first, so that the transfer is not counted as decoding time
+                byte[] message;
+                try {
+                    message = ByteStreams.toByteArray(is);
+                } finally {
+                    is.close();
+                }
+                long parseStart = System.nanoTime();
+                fetchTime = parseStart - fetchStart;
+
                 // Decode message
-                feedMessage = FeedMessage.PARSER.parseFrom(is);
+                feedMessage = FeedMessage.PARSER.parseFrom(message);
                 feedEntityList = feedMessage.getEntityList();
                 
                 // Change fullDataset value if this is an incremental update
@@ -67,6 +92,10 @@ public class GtfsRealtimeFileTripUpdateSource implements TripUpdateSource, JsonC
                 for (FeedEntity feedEntity : feedEntityList) {
                     if (feedEntity.hasTripUpdate()) updates.add(feedEntity.getTripUpdate());
                 }
+                parseTime = System.nanoTime() - parseStart;
+                if (feedMessage.hasHeader() && feedMessage.getHeader().hasTimestamp()) {
+                    feedTimestamp = feedMessage.getHeader().getTimestamp() * 1000;
+                }
             }
         } catch (Exception e) {
             LOG.warn("Failed to parse gtfs-rt feed at " + file + ":", e);
@@ -78,6 +107,21 @@ public class GtfsRealtimeFileTripUpdateSource implements TripUpdateSource, JsonC
     public boolean getFullDatasetValueOfLastUpdates() {
         return fullDataset;
     }
+
+    @Override
+    public long getFeedTimestampOfLastUpdates() {
+        return feedTimestamp;
+    }
+
+    @Override
+    public long getFetchTimeOfLastUpdates() {
+        return fetchTime;
+    }
+
+    @Override
+    public long getParseTimeOfLastUpdates() {
+        return parseTime;
+    }
     
     public String toString() {
         return "GtfsRealtimeFileTripUpdateSource(" + file + ")";
@@ -12,6 +12,7 @@ import org.opentripplanner.util.HttpUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.ByteStreams;
 import com.google.transit.realtime.GtfsRealtime;
 import com.google.transit.realtime.GtfsRealtime.FeedEntity;
 import com.google.transit.realtime.GtfsRealtime.FeedMessage;
@@ -27,6 +28,16 @@ public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonC
      */
     private boolean fullDataset = true;
 
+    /**
+     * Header timestamp of the last message in milliseconds since the epoch, and the time spent retrieving and decoding
+     * it in nanoseconds, or -1 if unknown
+     */
+    private long feedTimestamp = -1;
+
+    private long fetchTime = -1;
+
+    private long parseTime = -1;
+
     /**
      * Feed id that is used to match trip ids in the TripUpdates
      */
@@ -50,14 +61,28 @@ public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonC
         List<FeedEntity> feedEntityList = null;
         List<TripUpdate> updates = null;
         fullDataset = true;
+        feedTimestamp = -1;
+        fetchTime = -1;
+        parseTime = -1;
         try {
+            long fetchStart = System.nanoTime();
             InputStream is = HttpUtils.getData(
                     url,
                     "Accept",
                     "application/x-google-protobuf, application/x-protobuf, application/protobuf, application/octet-stream, */*");
             if (is != null) {
+                // Read the whole message first, so that the transfer is not counted as decoding time
+                byte[] message;
+                try {
+                    message = ByteStreams.toByteArray(is);
+                } finally {
+                    is.close();
+                }
+                long parseStart = System.nanoTime();
+                fetchTime = parseStart - fetchStart;
+
                 // Decode message
-                feedMessage = FeedMessage.PARSER.parseFrom(is);
+                feedMessage = FeedMessage.PARSER.parseFrom(message);
                 feedEntityList = feedMessage.getEntityList();
                 
                 // Change fullDataset value if this is an incremental update
@@ -73,6 +98,10 @@ public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonC
                 for (FeedEntity feedEntity : feedEntityList) {
                     if (feedEntity.hasTripUpdate()) updates.add(feedEntity.getTripUpdate());
                 }
+                parseTime = System.nanoTime() - parseStart;
+                if (feedMessage.hasHeader() && feedMessage.getHeader().hasTimestamp()) {
+                    feedTimestamp = feedMessage.getHeader().getTimestamp() * 1000;
+                }
             }
         } catch (Exception e) {
             LOG.warn("Failed to parse gtfs-rt feed from " + url + ":", e);
@@ -84,6 +113,21 @@ public class GtfsRealtimeHttpTripUpdateSource implements TripUpdateSource, JsonC
     public boolean getFullDatasetValueOfLastUpdates() {
         return fullDataset;
     }
+
+    @Override
+    public long getFeedTimestampOfLastUpdates() {
+        return feedTimestamp;
+    }
+
+    @Override
+    public long getFetchTimeOfLastUpdates() {
+        return fetchTime;
+    }
+
+    @Override
+    public long getParseTimeOfLastUpdates() {
+        return parseTime;
+    }
     
     public String toString() {
         return "GtfsRealtimeHttpUpdateStreamer(" + url + ")";
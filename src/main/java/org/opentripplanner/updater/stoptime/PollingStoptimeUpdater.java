@@ -53,6 +53,11 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
      */
     private Boolean purgeExpiredData;
 
+    /**
+     * Property to set on the RealtimeDataSnapshotSource
+     */
+    private Integer maxTripPatternCacheSize;
+
     /**
      * Feed id that is used for the trip ids in the TripUpdates
      */
@@ -63,6 +68,13 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
      */
     private GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
+    /**
+     * Latency metrics of the feed, shared with the snapshot source that applies its updates
+     */
+    private RealtimeFeedMetrics metrics;
+
+    private TimetableSnapshotSource snapshotSource;
+
     @Override
     public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
         this.updaterManager = updaterManager;
@@ -99,6 +111,10 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
             this.maxSnapshotFrequency = maxSnapshotFrequency;
         }
         this.purgeExpiredData = config.path("purgeExpiredData").asBoolean(true);
+        int maxTripPatternCacheSize = config.path("maxTripPatternCacheSize").asInt(-1);
+        if (maxTripPatternCacheSize >= 0) {
+            this.maxTripPatternCacheSize = maxTripPatternCacheSize;
+        }
         if (config.path("fuzzyTripMatching").asBoolean(false)) {
             this.fuzzyTripMatcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
         }
@@ -124,9 +140,14 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
         if (purgeExpiredData != null) {
             snapshotSource.purgeExpiredData = (purgeExpiredData);
         }
+        if (maxTripPatternCacheSize != null) {
+            snapshotSource.setMaxTripPatternCacheSize(maxTripPatternCacheSize);
+        }
         if (fuzzyTripMatcher != null) {
             snapshotSource.fuzzyTripMatcher = fuzzyTripMatcher;
         }
+        this.snapshotSource = snapshotSource;
+        this.metrics = snapshotSource.getFeedMetrics(feedId);
     }
 
     /**
@@ -140,15 +161,19 @@ public class PollingStoptimeUpdater extends PollingGraphUpdater {
         boolean fullDataset = updateSource.getFullDatasetValueOfLastUpdates();
 
         if (updates != null) {
+            metrics.recordReceived(updateSource.getFetchTimeOfLastUpdates(), updateSource.getParseTimeOfLastUpdates());
             // Handle trip updates via graph writer runnable
-            TripUpdateGraphWriterRunnable runnable =
-                    new TripUpdateGraphWriterRunnable(fullDataset, updates, feedId);
+            TripUpdateGraphWriterRunnable runnable = new TripUpdateGraphWriterRunnable(fullDataset, updates, feedId,
+                    updateSource.getFeedTimestampOfLastUpdates());
             updaterManager.execute(runnable);
         }
     }
 
     @Override
     public void teardown() {
+        if (snapshotSource != null) {
+            snapshotSource.unregisterFeedMetrics(feedId);
+        }
     }
 
     public String toString() {
@@ -0,0 +1,146 @@
+package org.opentripplanner.updater.stoptime;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import org.opentripplanner.updater.LatencyHistogram;
+
+/**
+ * Latency measurements for each stage of the realtime pipeline of one GTFS-RT feed: retrieving and decoding a message
+ * in the updater, waiting for and applying it to the realtime buffer on the graph writer thread, and committing the
+ * buffer into the TimetableSnapshot that routing requests pick up. The end-to-end latency is measured from the
+ * timestamp in the feed header, so it also covers the time the message spent at the producer and in the writer queue.
+ *
+ * Updates are only visible once a snapshot is committed, which may happen some time after they were applied because
+ * commits are throttled. The header timestamps of applied messages are therefore kept until the next commit.
+ */
+public class RealtimeFeedMetrics implements RealtimeFeedMetricsMXBean {
+
+    private final String feedId;
+
+    private final LatencyHistogram fetchTime = new LatencyHistogram();
+
+    private final LatencyHistogram parseTime = new LatencyHistogram();
+
+    private final LatencyHistogram lockWaitTime = new LatencyHistogram();
+
+    private final LatencyHistogram applyTime = new LatencyHistogram();
+
+    private final LatencyHistogram commitTime = new LatencyHistogram();
+
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+
+    private long messageCount = 0;
+
+    /** Header timestamps (msec since the epoch) of messages that were applied but are not yet visible. */
+    private final TLongList pendingFeedTimestamps = new TLongArrayList();
+
+    /** True if messages were applied since the last commit, whether or not they had a header timestamp. */
+    private boolean pending = false;
+
+    /** Wall clock time at which updates from this feed last became visible to routing. */
+    private long lastVisibleTime = -1;
+
+    /** The newest header timestamp among the messages visible to routing. */
+    private long visibleFeedTimestamp = -1;
+
+    public RealtimeFeedMetrics(String feedId) {
+        this.feedId = feedId;
+    }
+
+    /**
+     * Record the retrieval of a message by an updater. Either duration may be negative if the source does not measure
+     * it.
+     */
+    public void recordReceived(long fetchNanos, long parseNanos) {
+        if (fetchNanos >= 0) {
+            fetchTime.recordNanos(fetchNanos);
+        }
+        if (parseNanos >= 0) {
+            parseTime.recordNanos(parseNanos);
+        }
+    }
+
+    /**
+     * Record that a message was applied to the realtime buffer.
+     *
+     * @param feedTimestamp the header timestamp of the message in milliseconds since the epoch, or -1 if unknown
+     */
+    public synchronized void recordApplied(long lockWaitNanos, long applyNanos, long feedTimestamp) {
+        lockWaitTime.recordNanos(lockWaitNanos);
+        applyTime.recordNanos(applyNanos);
+        messageCount++;
+        pending = true;
+        if (feedTimestamp >= 0) {
+            pendingFeedTimestamps.add(feedTimestamp);
+        }
+    }
+
+    /**
+     * Record that a new snapshot was committed at the given wall clock time, making all messages applied since the
+     * previous commit visible to routing. Does nothing if no messages from this feed were waiting.
+     */
+    public synchronized void recordCommitted(long commitNanos, long now) {
+        if (!pending) {
+            return;
+        }
+        commitTime.recordNanos(commitNanos);
+        for (int i = 0; i < pendingFeedTimestamps.size(); i++) {
+            long feedTimestamp = pendingFeedTimestamps.get(i);
+            endToEndLatency.record(now - feedTimestamp);
+            visibleFeedTimestamp = Math.max(visibleFeedTimestamp, feedTimestamp);
+        }
+        pendingFeedTimestamps.clear();
+        pending = false;
+        lastVisibleTime = now;
+    }
+
+    @Override
+    public String getFeedId() {
+        return feedId;
+    }
+
+    @Override
+    public synchronized long getMessageCount() {
+        return messageCount;
+    }
+
+    @Override
+    public LatencyHistogram.Summary getFetchTime() {
+        return fetchTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getParseTime() {
+        return parseTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getLockWaitTime() {
+        return lockWaitTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getApplyTime() {
+        return applyTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getCommitTime() {
+        return commitTime.getSummary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getEndToEndLatency() {
+        return endToEndLatency.getSummary();
+    }
+
+    @Override
+    public synchronized long getSnapshotAgeMsec() {
+        return lastVisibleTime < 0 ? -1 : System.currentTimeMillis() - lastVisibleTime;
+    }
+
+    @Override
+    public synchronized long getDataAgeMsec() {
+        return visibleFeedTimestamp < 0 ? -1 : System.currentTimeMillis() - visibleFeedTimestamp;
+    }
+}
@@ -0,0 +1,42 @@
+package org.opentripplanner.updater.stoptime;
+
+import org.opentripplanner.updater.LatencyHistogram;
+
+/**
+ * The JMX view of the realtime pipeline metrics for one GTFS-RT feed. Registered by {@link TimetableSnapshotSource}
+ * under the name org.opentripplanner:type=RealtimeFeed,router=...,feed=...
+ */
+public interface RealtimeFeedMetricsMXBean {
+
+    String getFeedId();
+
+    /** @return the number of update messages applied to the realtime buffer. */
+    long getMessageCount();
+
+    /** @return time spent retrieving a message, before decoding it. */
+    LatencyHistogram.Summary getFetchTime();
+
+    /** @return time spent decoding a message into trip updates. */
+    LatencyHistogram.Summary getParseTime();
+
+    /** @return time the graph writer waited for the realtime buffer lock before applying a message. */
+    LatencyHistogram.Summary getLockWaitTime();
+
+    /** @return time spent applying the trip updates of a message to the realtime buffer. */
+    LatencyHistogram.Summary getApplyTime();
+
+    /** @return time spent committing the buffer into the snapshot that made a message visible to routing. */
+    LatencyHistogram.Summary getCommitTime();
+
+    /** @return delay between the feed header timestamp of a message and its updates becoming visible to routing. */
+    LatencyHistogram.Summary getEndToEndLatency();
+
+    /** @return milliseconds since updates from this feed last became visible to routing, or -1 if they never did. */
+    long getSnapshotAgeMsec();
+
+    /**
+     * @return milliseconds between now and the feed header timestamp of the newest message visible to routing, or -1
+     *         if unknown.
+     */
+    long getDataAgeMsec();
+}
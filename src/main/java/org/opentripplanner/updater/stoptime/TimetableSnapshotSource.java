@@ -4,11 +4,16 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
 import org.opentripplanner.model.Agency;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
@@ -25,6 +30,7 @@ import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.RealTimeState;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.updater.GtfsRealtimeFuzzyTripMatcher;
+import org.opentripplanner.util.monitoring.JmxUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,6 +98,16 @@ public class TimetableSnapshotSource {
 
     protected long lastSnapshotTime = -1;
 
+    /** Wall clock time at which the current snapshot was committed. */
+    private volatile long lastCommitTime = -1;
+
+    /** Latency metrics for each realtime feed, also registered as MXBeans. */
+    private final Map<String, RealtimeFeedMetrics> feedMetrics = new ConcurrentHashMap<>();
+
+    private final Graph graph;
+
+    private final String routerId;
+
     private final TimeZone timeZone;
 
     private final GraphIndex graphIndex;
@@ -101,8 +117,10 @@ public class TimetableSnapshotSource {
     public GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
     public TimetableSnapshotSource(final Graph graph) {
+        this.graph = graph;
         timeZone = graph.getTimeZone();
         graphIndex = graph.index;
+        routerId = graph.routerId;
 
         // Create dummy agency for added trips
         dummyAgency = new Agency();
@@ -141,7 +159,14 @@ public class TimetableSnapshotSource {
         if (force || now - lastSnapshotTime > maxSnapshotFrequency) {
             if (force || buffer.isDirty()) {
                 LOG.debug("Committing {}", buffer.toString());
+                final long commitStart = System.nanoTime();
                 snapshot = buffer.commit(force);
+                graph.realtimeDataPublished();
+                final long commitNanos = System.nanoTime() - commitStart;
+                lastCommitTime = System.currentTimeMillis();
+                for (RealtimeFeedMetrics metrics : feedMetrics.values()) {
+                    metrics.recordCommitted(commitNanos, lastCommitTime);
+                }
             } else {
                 LOG.debug("Buffer was unchanged, keeping old snapshot.");
             }
@@ -170,15 +195,30 @@ public class TimetableSnapshotSource {
      * @param feedId
      */
     public void applyTripUpdates(final Graph graph, final boolean fullDataset, final List<TripUpdate> updates, final String feedId) {
+        applyTripUpdates(graph, fullDataset, updates, feedId, -1);
+    }
+
+    /**
+     * Apply a trip update list like {@link #applyTripUpdates(Graph, boolean, List, String)}, recording the delay until
+     * the updates become visible to routing against the timestamp of the GTFS-RT message they came from.
+     *
+     * @param feedTimestamp header timestamp of the message in milliseconds since the epoch, or -1 if unknown
+     */
+    public void applyTripUpdates(final Graph graph, final boolean fullDataset, final List<TripUpdate> updates,
+            final String feedId, final long feedTimestamp) {
         if (updates == null) {
             LOG.warn("updates is null");
             return;
         }
 
+        final RealtimeFeedMetrics metrics = getFeedMetrics(feedId);
+
         // Acquire lock on buffer
+        final long lockStart = System.nanoTime();
         bufferLock.lock();
 
         try {
+            final long applyStart = System.nanoTime();
             if (fullDataset) {
                 // Remove all updates from the buffer
                 buffer.clear(feedId);
@@ -251,16 +291,19 @@ public class TimetableSnapshotSource {
                 }
             }
             LOG.debug("end of update message");
+            metrics.recordApplied(applyStart - lockStart, System.nanoTime() - applyStart, feedTimestamp);
 
             // Make a snapshot after each message in anticipation of incoming requests
             // Purge data if necessary (and force new snapshot if anything was purged)
             // Make sure that the public (locking) getTimetableSnapshot function is not called.
             if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
+                final boolean modified = purgeExpiredData(graph);
                 getTimetableSnapshot(modified);
             } else {
                 getTimetableSnapshot(false);
             }
+            // Keep the number of realtime patterns (and their vertices and edges) in the graph bounded.
+            tripPatternCache.evictUnused(buffer::references, graph);
         } finally {
             // Always release lock
             bufferLock.unlock();
@@ -685,7 +728,8 @@ public class TimetableSnapshotSource {
         final StopPattern stopPattern = new StopPattern(stopTimes, graph.deduplicator);
 
         // Get cached trip pattern or create one if it doesn't exist yet
-        final TripPattern pattern = tripPatternCache.getOrCreateTripPattern(stopPattern, trip.getRoute(), graph);
+        final TripPattern pattern = tripPatternCache.getOrCreateTripPattern(stopPattern, trip.getRoute(), graph,
+                serviceDate);
 
         // Add service code to bitset of pattern if needed (using copy on write)
         final int serviceCode = graph.serviceCodes.get(trip.getServiceId());
@@ -907,7 +951,7 @@ public class TimetableSnapshotSource {
         return success;
     }
 
-    private boolean purgeExpiredData() {
+    private boolean purgeExpiredData(final Graph graph) {
         final ServiceDate today = new ServiceDate();
         final ServiceDate previously = today.previous().previous(); // Just to be safe...
 
@@ -919,7 +963,60 @@ public class TimetableSnapshotSource {
 
         lastPurgeDate = previously;
 
-        return buffer.purgeExpiredData(previously);
+        boolean modified = buffer.purgeExpiredData(previously);
+        // No timetable in the buffer refers to these patterns anymore, so they can leave the graph.
+        tripPatternCache.purgeExpiredData(previously, graph);
+        return modified;
+    }
+
+    /** @return the number of trip patterns created for realtime updates that are currently held in the graph. */
+    public int getTripPatternCacheSize() {
+        return tripPatternCache.size();
+    }
+
+    /** @return the number of realtime trip patterns removed from the graph since startup. */
+    public long getTripPatternCacheEvictedCount() {
+        return tripPatternCache.getEvictedCount();
+    }
+
+    /** @return milliseconds since the current snapshot was committed, or -1 if there is none yet. */
+    public long getSnapshotAgeMsec() {
+        long commitTime = lastCommitTime;
+        return commitTime < 0 ? -1 : System.currentTimeMillis() - commitTime;
+    }
+
+    /** @return the latency metrics of all feeds that have delivered updates or were registered by an updater. */
+    public Collection<RealtimeFeedMetrics> getAllFeedMetrics() {
+        return feedMetrics.values();
+    }
+
+    /**
+     * @return the latency metrics for the given feed, creating them and registering them with the platform MBean server
+     *         if this is the first time the feed is seen.
+     */
+    public RealtimeFeedMetrics getFeedMetrics(String feedId) {
+        return feedMetrics.computeIfAbsent(feedId, id -> {
+            RealtimeFeedMetrics metrics = new RealtimeFeedMetrics(id);
+            JmxUtils.register(metricsObjectName(id), metrics);
+            return metrics;
+        });
+    }
+
+    /** Forget the metrics of the given feed and remove them from the MBean server, e.g. when its updater stops. */
+    public void unregisterFeedMetrics(String feedId) {
+        if (feedMetrics.remove(feedId) != null) {
+            JmxUtils.unregister(metricsObjectName(feedId));
+        }
+    }
+
+    private String metricsObjectName(String feedId) {
+        return "org.opentripplanner:type=RealtimeFeed,router="
+                + ObjectName.quote(routerId == null ? "" : routerId) + ",feed=" + ObjectName.quote(feedId);
+    }
+
+    /** Set the soft limit on the number of trip patterns created for realtime updates. */
+    public void setMaxTripPatternCacheSize(int maxSize) {
+        tripPatternCache.maxSize = maxSize;
     }
 
     /**
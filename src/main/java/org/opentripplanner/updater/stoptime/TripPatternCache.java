@@ -1,67 +1,175 @@
 package org.opentripplanner.updater.stoptime;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
 import org.opentripplanner.model.StopPattern;
+import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A synchronized cache of trip patterns that are added to the graph due to GTFS-realtime messages.
+ *
+ * Patterns are shared between all service days on which a realtime trip uses the same stop pattern. Each entry
+ * remembers the latest service date it was used for, so that once all of those service dates have been purged from
+ * the timetable snapshot, the pattern and the vertices and edges created for it can be removed from the graph again.
+ * The cache is also bounded in size: beyond {@link #maxSize} entries, the patterns used least recently that are no
+ * longer referenced by the realtime buffer are evicted early.
  */
 public class TripPatternCache {
-    
+
+    private static final Logger LOG = LoggerFactory.getLogger(TripPatternCache.class);
+
     private int counter = 0;
 
-    private final Map<StopPattern, TripPattern> cache = new HashMap<>();
-    
+    private final Map<StopPattern, CachedPattern> cache = new HashMap<>();
+
+    /** Soft limit on the number of cached patterns, enforced by {@link #evictUnused}. */
+    public int maxSize = 10000;
+
+    private long evictedCount = 0;
+
     /**
      * Get cached trip pattern or create one if it doesn't exist yet. If a trip pattern is created, vertices
      * and edges for this trip pattern are also created in the graph.
-     * 
+     *
      * @param stopPattern stop pattern to retrieve/create trip pattern
      * @param route route of new trip pattern in case a new trip pattern will be created
      * @param graph graph to add vertices and edges in case a new trip pattern will be created
+     * @param serviceDate service date of the trip that will use this pattern
      * @return cached or newly created trip pattern
      */
     public synchronized TripPattern getOrCreateTripPattern(final StopPattern stopPattern,
-            final Route route, final Graph graph) {
+            final Route route, final Graph graph, final ServiceDate serviceDate) {
         // Check cache for trip pattern
-        TripPattern tripPattern = cache.get(stopPattern);
-        
+        CachedPattern cached = cache.get(stopPattern);
+
         // Create TripPattern if it doesn't exist yet
-        if (tripPattern == null) {
-            tripPattern = new TripPattern(route, stopPattern);
-            
+        if (cached == null) {
+            TripPattern tripPattern = new TripPattern(route, stopPattern);
+
             // Generate unique code for trip pattern
             tripPattern.code = generateUniqueTripPatternCode(tripPattern);
-            
+
             // Create an empty bitset for service codes (because the new pattern does not contain any trips)
             tripPattern.setServiceCodes(graph.serviceCodes);
-            
+
             // Finish scheduled time table
             tripPattern.scheduledTimetable.finish();
-            
-            // Create vertices and edges for new TripPattern
-            // TODO: purge these vertices and edges once in a while?
+
+            // Create vertices and edges for new TripPattern, they are removed again when the pattern is evicted.
             tripPattern.makePatternVerticesAndEdges(graph, graph.index.stopVertexForStop);
-            
-            // TODO: Add pattern to graph index? 
-            
+
+            // TODO: Add pattern to graph index?
+
             // Add pattern to cache
-            cache.put(stopPattern, tripPattern);
+            cached = new CachedPattern(tripPattern);
+            cache.put(stopPattern, cached);
+        }
+        cached.use(serviceDate);
+
+        return cached.pattern;
+    }
+
+    /**
+     * Remove all patterns that are only used on service dates up to and including the given date, along with their
+     * vertices and edges. This should be called whenever the timetable snapshot purges the same dates, so that no
+     * remaining timetable refers to an evicted pattern.
+     *
+     * @return the number of patterns removed
+     */
+    public synchronized int purgeExpiredData(final ServiceDate serviceDate, final Graph graph) {
+        int removed = 0;
+        for (Iterator<CachedPattern> it = cache.values().iterator(); it.hasNext(); ) {
+            CachedPattern cached = it.next();
+            if (serviceDate.compareTo(cached.lastServiceDate) >= 0) {
+                it.remove();
+                detach(cached.pattern, graph);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            LOG.info("Removed {} realtime trip patterns used only until {}, {} remain.", removed, serviceDate,
+                    cache.size());
+        }
+        evictedCount += removed;
+        return removed;
+    }
+
+    /**
+     * If the cache holds more than {@link #maxSize} patterns, evict the least recently used ones that are not in use
+     * according to the given predicate until it is back to its maximum size (or nothing more can be evicted).
+     *
+     * @param inUse tells whether the realtime buffer still refers to a pattern, in which case it cannot be evicted
+     * @return the number of patterns removed
+     */
+    public synchronized int evictUnused(final Predicate<TripPattern> inUse, final Graph graph) {
+        int excess = cache.size() - maxSize;
+        if (excess <= 0) {
+            return 0;
+        }
+        List<Map.Entry<StopPattern, CachedPattern>> entries = new ArrayList<>(cache.entrySet());
+        Collections.sort(entries, Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        int removed = 0;
+        for (Map.Entry<StopPattern, CachedPattern> entry : entries) {
+            if (removed >= excess) break;
+            TripPattern pattern = entry.getValue().pattern;
+            if (inUse.test(pattern)) continue;
+            cache.remove(entry.getKey());
+            detach(pattern, graph);
+            removed++;
+        }
+        if (removed < excess) {
+            LOG.warn("Realtime trip pattern cache holds {} patterns, more than its maximum of {}, but they are all "
+                    + "still in use.", cache.size(), maxSize);
+        }
+        evictedCount += removed;
+        return removed;
+    }
+
+    /** @return the number of realtime trip patterns currently held, and therefore present in the graph. */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /** @return the total number of patterns evicted since startup. */
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Remove the vertices created for a pattern from the graph, which also removes all its hop, dwell, board and alight
+     * edges. Vertex edge lists are copy-on-write, so searches that are running concurrently are not disturbed.
+     */
+    private static void detach(TripPattern pattern, Graph graph) {
+        for (Vertex vertex : pattern.departVertices) {
+            if (vertex != null && graph.containsVertex(vertex)) {
+                graph.removeVertexAndEdges(vertex);
+            }
+        }
+        for (Vertex vertex : pattern.arriveVertices) {
+            if (vertex != null && graph.containsVertex(vertex)) {
+                graph.removeVertexAndEdges(vertex);
+            }
         }
-        
-        return tripPattern;
     }
 
     /**
      * Generate unique trip pattern code for real-time added trip pattern. This function roughly
      * follows the format of {@link TripPattern#generateUniqueIds(java.util.Collection)}.
-     * 
+     *
      * @param tripPattern trip pattern to generate code for
      * @return unique trip pattern code
      */
@@ -78,4 +186,25 @@ public class TripPatternCache {
         return code;
     }
 
+    private static class CachedPattern {
+        final TripPattern pattern;
+
+        /** The latest service date on which a realtime trip used this pattern. */
+        ServiceDate lastServiceDate;
+
+        /** Wall clock time of the last use, for least-recently-used eviction. */
+        long lastUsed;
+
+        CachedPattern(TripPattern pattern) {
+            this.pattern = pattern;
+        }
+
+        void use(ServiceDate serviceDate) {
+            if (lastServiceDate == null || serviceDate.compareTo(lastServiceDate) > 0) {
+                lastServiceDate = serviceDate;
+            }
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
 }
@@ -2,6 +2,7 @@ package org.opentripplanner.updater.stoptime;
 
 import java.util.List;
 
+import org.opentripplanner.common.model.T2;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.updater.GraphWriterRunnable;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
@@ -27,7 +28,17 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
 
     private final String feedId;
 
+    /**
+     * Header timestamp of the message the updates came from, in milliseconds since the epoch, or -1 if unknown
+     */
+    private final long feedTimestamp;
+
     public TripUpdateGraphWriterRunnable(final boolean fullDataset, final List<TripUpdate> updates, final String feedId) {
+        this(fullDataset, updates, feedId, -1);
+    }
+
+    public TripUpdateGraphWriterRunnable(final boolean fullDataset, final List<TripUpdate> updates,
+            final String feedId, final long feedTimestamp) {
         // Preconditions
         Preconditions.checkNotNull(updates);
         Preconditions.checkNotNull(feedId);
@@ -36,6 +47,7 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
         this.fullDataset = fullDataset;
         this.updates = updates;
         this.feedId = feedId;
+        this.feedTimestamp = feedTimestamp;
     }
 
     @Override
@@ -43,10 +55,19 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
         // Apply updates to graph using realtime snapshot source
         TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
         if (snapshotSource != null) {
-            snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId);
+            snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId, feedTimestamp);
         } else {
             LOG.error("Could not find realtime data snapshot source in graph."
                     + " The following updates are not applied: {}", updates);
         }
     }
+
+    /**
+     * A full dataset clears all previous updates for the feed, so it supersedes any writer for the same feed that is
+     * still waiting to run. Incremental updates must all be applied and are never coalesced.
+     */
+    @Override
+    public Object getCoalescingKey() {
+        return fullDataset ? new T2<>(TripUpdateGraphWriterRunnable.class, feedId) : null;
+    }
 }
@@ -18,5 +18,21 @@ public interface TripUpdateSource {
      */
     public boolean getFullDatasetValueOfLastUpdates();
 
+    /**
+     * @return the header timestamp of the message the last updates came from, in milliseconds since the epoch, or -1
+     *         if the message had no timestamp
+     */
+    public long getFeedTimestampOfLastUpdates();
+
+    /**
+     * @return nanoseconds spent retrieving the raw message of the last updates, or -1 if unknown
+     */
+    public long getFetchTimeOfLastUpdates();
+
+    /**
+     * @return nanoseconds spent decoding the message of the last updates, or -1 if unknown
+     */
+    public long getParseTimeOfLastUpdates();
+
     public String getFeedId();
 }
@@ -68,6 +68,13 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
      */
     private int reconnectPeriodSec;
 
+    /**
+     * Latency metrics of the feed, shared with the snapshot source that applies its updates
+     */
+    private RealtimeFeedMetrics metrics;
+
+    private TimetableSnapshotSource snapshotSource;
+
     @Override
     public void setGraphUpdaterManager(GraphUpdaterManager updaterManager) {
         this.updaterManager = updaterManager;
@@ -88,6 +95,8 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
             // Add snapshot source to graph
             graph.timetableSnapshotSource = (snapshotSource);
         }
+        snapshotSource = graph.timetableSnapshotSource;
+        metrics = snapshotSource.getFeedMetrics(feedId);
     }
 
     @Override
@@ -143,6 +152,9 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
 
     @Override
     public void teardown() {
+        if (snapshotSource != null) {
+            snapshotSource.unregisterFeedMetrics(feedId);
+        }
     }
 
     /**
@@ -155,6 +167,8 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
             List<FeedEntity> feedEntityList = null;
             List<TripUpdate> updates = null;
             boolean fullDataset = true;
+            long feedTimestamp = -1;
+            long parseStart = System.nanoTime();
             try {
                 // Decode message
                 feedMessage = FeedMessage.PARSER.parseFrom(message);
@@ -175,14 +189,19 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
                         updates.add(feedEntity.getTripUpdate());
                     }
                 }
+                if (feedMessage.hasHeader() && feedMessage.getHeader().hasTimestamp()) {
+                    feedTimestamp = feedMessage.getHeader().getTimestamp() * 1000;
+                }
             } catch (InvalidProtocolBufferException e) {
                 LOG.error("Could not decode gtfs-rt message:", e);
             }
 
             if (updates != null) {
+                // Messages are pushed to us, so there is no fetch time to record
+                metrics.recordReceived(-1, System.nanoTime() - parseStart);
                 // Handle trip updates via graph writer runnable
                 TripUpdateGraphWriterRunnable runnable = new TripUpdateGraphWriterRunnable(
-                        fullDataset, updates, feedId);
+                        fullDataset, updates, feedId, feedTimestamp);
                 updaterManager.execute(runnable);
             }
         }
@@ -164,6 +164,11 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
         public void run(Graph graph) {
             notesSource.setNotes(notesForEdge);
         }
+
+        @Override
+        public Object getCoalescingKey() {
+            return WFSNotePollingGraphUpdater.this;
+        }
     }
 
     /**
@@ -7,6 +7,7 @@ import java.util.List;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.MultiLineString;
@@ -53,33 +54,58 @@ public class PolylineEncoder {
      */
     public static EncodedPolylineBean createEncodings(Iterable<Coordinate> points, int level) {
 
-        StringBuilder encodedPoints = new StringBuilder();
+        Encoder encoder = new Encoder();
         StringBuilder encodedLevels = new StringBuilder();
 
-        int plat = 0;
-        int plng = 0;
-        int count = 0;
-
         for (Coordinate point : points) {
+            encoder.add(point.x, point.y);
+            if (level >= 0)
+                appendNumber(encodedLevels, level);
+        }
+
+        String levelsString = level >= 0 ? encodedLevels.toString() : null;
+        return new EncodedPolylineBean(encoder.points.toString(), levelsString, encoder.count);
+    }
+
+    /**
+     * Encodes a polyline one point at a time, straight into a single character buffer. This avoids building a list of
+     * coordinates or a geometry just to encode it, and does not allocate anything per point.
+     */
+    public static class Encoder {
+
+        private final StringBuilder points = new StringBuilder();
+
+        private int plat = 0;
 
-            int late5 = floor1e5(point.y);
-            int lnge5 = floor1e5(point.x);
+        private int plng = 0;
 
-            int dlat = late5 - plat;
-            int dlng = lnge5 - plng;
+        private int count = 0;
 
+        public void add(double lon, double lat) {
+            int late5 = floor1e5(lat);
+            int lnge5 = floor1e5(lon);
+            appendSignedNumber(points, late5 - plat);
+            appendSignedNumber(points, lnge5 - plng);
             plat = late5;
             plng = lnge5;
-
-            encodedPoints.append(encodeSignedNumber(dlat)).append(encodeSignedNumber(dlng));
-            if (level >= 0)
-                encodedLevels.append(encodeNumber(level));
             count++;
         }
 
-        String pointsString = encodedPoints.toString();
-        String levelsString = level >= 0 ? encodedLevels.toString() : null;
-        return new EncodedPolylineBean(pointsString, levelsString, count);
+        /** Add the coordinates of the given sequence, starting at the given index. */
+        public void add(CoordinateSequence coordinates, int start) {
+            for (int i = start; i < coordinates.size(); i++) {
+                add(coordinates.getX(i), coordinates.getY(i));
+            }
+        }
+
+        /** @return the number of points added so far. */
+        public int size() {
+            return count;
+        }
+
+        public EncodedPolylineBean getEncoding() {
+            return new EncodedPolylineBean(points.toString(), null, count);
+        }
     }
 
     public static List<Coordinate> decode(EncodedPolylineBean polyline) {
@@ -117,11 +143,17 @@ public class PolylineEncoder {
     }
 
     public static String encodeSignedNumber(int num) {
+        StringBuilder encodeString = new StringBuilder();
+        appendSignedNumber(encodeString, num);
+        return encodeString.toString();
+    }
+
+    private static void appendSignedNumber(StringBuilder sb, int num) {
         int sgn_num = num << 1;
         if (num < 0) {
             sgn_num = ~(sgn_num);
         }
-        return (encodeNumber(sgn_num));
+        appendNumber(sb, sgn_num);
     }
 
     public static int decodeSignedNumber(String value) {
@@ -140,19 +172,20 @@ public class PolylineEncoder {
     }
 
     public static String encodeNumber(int num) {
+        StringBuilder encodeString = new StringBuilder();
+        appendNumber(encodeString, num);
+        return encodeString.toString();
+    }
 
-        StringBuffer encodeString = new StringBuffer();
-
+    private static void appendNumber(StringBuilder sb, int num) {
         while (num >= 0x20) {
             int nextValue = (0x20 | (num & 0x1f)) + 63;
-            encodeString.append((char) (nextValue));
+            sb.append((char) (nextValue));
             num >>= 5;
         }
 
         num += 63;
-        encodeString.append((char) (num));
-
-        return encodeString.toString();
+        sb.append((char) (num));
     }
 
     public static int decodeNumber(String value) {
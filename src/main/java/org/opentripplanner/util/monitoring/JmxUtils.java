@@ -0,0 +1,47 @@
+package org.opentripplanner.util.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers metrics beans with the platform MBean server. Failures are only logged: metrics are never worth failing
+ * the component that exposes them.
+ */
+public class JmxUtils {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxUtils.class);
+
+    /**
+     * Register the bean under the given object name, replacing any bean already registered under it. That one was
+     * typically left behind by a previous graph for the same router.
+     */
+    public static void register(String objectName, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+        } catch (Exception e) {
+            LOG.warn("Could not register {} with JMX: {}", objectName, e.toString());
+        }
+    }
+
+    /** Unregister the bean with the given object name, if there is one. */
+    public static void unregister(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not unregister {} from JMX: {}", objectName, e.toString());
+        }
+    }
+}
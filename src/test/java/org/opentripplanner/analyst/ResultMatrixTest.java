@@ -0,0 +1,86 @@
+package org.opentripplanner.analyst;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class ResultMatrixTest extends TestCase {
+
+    @Test
+    public void testEncodeDecode() {
+        int[] times = { 0, 1, -1, -2, 127, 128, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE, 600, 601, 599 };
+        ByteBuffer encoded = ResultMatrixWriter.encode(times);
+        assertTrue(Arrays.equals(times, ResultMatrixWriter.decode(encoded, times.length)));
+        assertFalse(encoded.hasRemaining());
+
+        // Similar times take one byte each
+        assertEquals(3, ResultMatrixWriter.encode(new int[] { 10, 12, 9 }).remaining());
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        File file = File.createTempFile("matrix", ".bin");
+        try {
+            int[][] times = { { 300, 420, -1, 1800 }, null, { -2, -2, 60, 3600 } };
+            try (ResultMatrixWriter writer = new ResultMatrixWriter(file, 3, 4)) {
+                // Origins can be written in any order
+                writer.write(2, times[2]);
+                writer.write(0, times[0]);
+                try {
+                    writer.write(0, times[0]);
+                    fail("An origin cannot be written twice");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+            // The second write of an origin does not take any space in the file
+            long blockBytes = ResultMatrixWriter.encode(times[0]).remaining()
+                    + ResultMatrixWriter.encode(times[2]).remaining();
+            assertEquals(ResultMatrixWriter.HEADER_BYTES + blockBytes + 3 * ResultMatrixWriter.INDEX_ENTRY_BYTES
+                    + ResultMatrixWriter.FOOTER_BYTES, file.length());
+
+            try (ResultMatrixReader reader = new ResultMatrixReader(file)) {
+                assertEquals(3, reader.getOriginCount());
+                assertEquals(4, reader.getDestinationCount());
+                assertTrue(Arrays.equals(times[0], reader.read(0)));
+                assertFalse(reader.contains(1));
+                assertNull(reader.read(1));
+                assertTrue(Arrays.equals(times[2], reader.read(2)));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reader.writeJson(out);
+                JsonNode json = new ObjectMapper().readTree(out.toByteArray());
+                assertEquals(3, json.get("origins").asInt());
+                assertTrue(json.get("times").get(1).isNull());
+                assertEquals(1800, json.get("times").get(0).get(3).asInt());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUnknownOriginCount() throws Exception {
+        File file = File.createTempFile("matrix", ".bin");
+        try {
+            try (ResultMatrixWriter writer = new ResultMatrixWriter(file, 0, 2)) {
+                for (int origin = 0; origin < 40; origin += 3) {
+                    writer.write(origin, new int[] { origin, -1 });
+                }
+            }
+            try (ResultMatrixReader reader = new ResultMatrixReader(file)) {
+                assertEquals(40, reader.getOriginCount());
+                assertTrue(Arrays.equals(new int[] { 39, -1 }, reader.read(39)));
+                assertFalse(reader.contains(38));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
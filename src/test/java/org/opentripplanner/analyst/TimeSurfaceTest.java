@@ -0,0 +1,105 @@
+package org.opentripplanner.analyst;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+/**
+ * Test the storage of travel times in a TimeSurface, in an array indexed by vertex.
+ */
+public class TimeSurfaceTest extends TestCase {
+
+    private Graph graph;
+
+    private IntersectionVertex[] vertices;
+
+    private TimeSurface surface;
+
+    /** Three vertices about 300 meters apart and an empty surface for them. */
+    @Override
+    protected void setUp() {
+        graph = new Graph();
+        vertices = new IntersectionVertex[3];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, -83.0 + i * 0.004, 40.0);
+        }
+        graph.rebuildVertexAndEdgeIndices();
+        ProfileRequest req = new ProfileRequest();
+        req.fromLon = -83.0;
+        req.fromLat = 40.0;
+        surface = new TimeSurface(new RepeatedRaptorProfileRouter(graph, req));
+    }
+
+    @Test
+    public void testSetAndGetTime() {
+        assertTrue(surface.getVertexCapacity() >= Vertex.getMaxIndex());
+        for (IntersectionVertex vertex : vertices) {
+            assertEquals(TimeSurface.UNREACHABLE, surface.getTime(vertex));
+        }
+        assertEquals(0, surface.countReached());
+
+        surface.setTime(vertices[0], 0);
+        surface.setTime(vertices[2], 600);
+        assertEquals(0, surface.getTime(vertices[0]));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(vertices[1]));
+        assertEquals(600, surface.getTime(vertices[2].getIndex()));
+        // A time of zero counts as reached
+        assertEquals(2, surface.countReached());
+
+        surface.setTime(vertices[2], 300);
+        assertEquals(300, surface.getTime(vertices[2]));
+        assertEquals(2, surface.countReached());
+    }
+
+    @Test
+    public void testGetTimeOutOfRange() {
+        // Vertices made after the surface, such as temporary vertices, have no time until one is set
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(surface.getVertexCapacity()));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(surface.getVertexCapacity() + 1000));
+        int capacity = surface.getVertexCapacity();
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(new IntersectionVertex(graph, "later", -83.0, 40.001)));
+        // Reading does not grow the surface
+        assertEquals(capacity, surface.getVertexCapacity());
+    }
+
+    @Test
+    public void testGrowth() {
+        surface.setTime(vertices[1], 120);
+        int capacity = surface.getVertexCapacity();
+        long size = surface.estimateMemorySize();
+
+        // Make enough vertices after the surface that one of them is beyond its capacity
+        Vertex later = null;
+        while (Vertex.getMaxIndex() <= capacity) {
+            later = new IntersectionVertex(graph, "later" + Vertex.getMaxIndex(), -83.0, 40.001);
+        }
+        assertTrue(later.getIndex() >= capacity);
+        surface.setTime(later, 60);
+
+        assertTrue(surface.getVertexCapacity() > later.getIndex());
+        assertTrue(surface.estimateMemorySize() > size);
+        assertEquals(60, surface.getTime(later));
+        // The times that were already set are kept, and the new slots are unreached
+        assertEquals(120, surface.getTime(vertices[1]));
+        for (int index = capacity; index < later.getIndex(); index++) {
+            assertEquals(TimeSurface.UNREACHABLE, surface.getTime(index));
+        }
+        assertEquals(2, surface.countReached());
+    }
+
+    @Test
+    public void testSampleGridIsWeighed() {
+        for (int i = 0; i < vertices.length; i++) {
+            surface.setTime(vertices[i], i * 300);
+        }
+        long size = surface.estimateMemorySize();
+        surface.makeSampleGridWithoutSPT();
+        assertNotNull(surface.sampleGrid);
+        assertTrue(surface.sampleGrid.size() > 0);
+        assertEquals(size + 128L * surface.sampleGrid.size(), surface.estimateMemorySize());
+    }
+}
@@ -0,0 +1,144 @@
+package org.opentripplanner.analyst.batch;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.impl.MemoryGraphSource;
+import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.vertextype.OsmVertex;
+
+import com.google.common.io.Files;
+
+public class BatchProcessorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Graph graph;
+
+    private GraphService graphService;
+
+    private File csvFile;
+
+    /** Adds the input of each origin times its travel time to every destination it reaches. */
+    private static class TravelTimeAccumulator implements Accumulator {
+        @Override
+        public void accumulate(double amount, ResultSet current, ResultSet accumulated) {
+            for (int i = 0; i < accumulated.results.length; i++) {
+                if (current.results[i] >= 0) {
+                    accumulated.results[i] += amount * current.results[i];
+                }
+            }
+        }
+
+        @Override
+        public void finish() {
+            // nothing to do
+        }
+    }
+
+    /** A straight street of five blocks, and points along it, one of them rejected and one far away. */
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        OsmVertex[] vertices = new OsmVertex[6];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new OsmVertex(graph, "v" + i, 10.0 + i * 0.001, 45.0, i);
+        }
+        for (int i = 1; i < vertices.length; i++) {
+            createStreetEdge(vertices[i - 1], vertices[i]);
+            createStreetEdge(vertices[i], vertices[i - 1]);
+        }
+        graph.index(new DefaultStreetVertexIndexFactory());
+        graphService = new GraphService();
+        graphService.registerGraph("test", new MemoryGraphSource("test", graph));
+
+        csvFile = temporaryFolder.newFile("points.csv");
+        Files.write("a,1,10.0002,45.0001\nb,2,10.0011,44.9999\nrejected,0,10.002,45.0\n"
+                + "c,3,10.0031,45.0001\nnowhere,4,11.0,46.0\nd,5,10.0049,45.0\n", csvFile, Charset.forName("utf-8"));
+    }
+
+    private static void createStreetEdge(OsmVertex v0, OsmVertex v1) {
+        LineString geometry = GeometryUtils.getGeometryFactory()
+                .createLineString(new Coordinate[] { v0.getCoordinate(), v1.getCoordinate() });
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        new StreetEdge(v0, v1, geometry, v0.getLabel() + "-" + v1.getLabel(), length, StreetTraversalPermission.ALL,
+                false);
+    }
+
+    private CSVPopulation population() {
+        CSVPopulation pop = new CSVPopulation();
+        pop.sourceFilename = csvFile.getAbsolutePath();
+        pop.skipHeaders = false;
+        pop.labelCol = 0;
+        pop.inputCol = 1;
+        pop.setLonCol(2);
+        pop.setLatCol(3);
+        return pop;
+    }
+
+    /** @return the accumulated result of each destination, as written to the output file */
+    private List<Double> accumulate(boolean streamOrigins) throws Exception {
+        CSVPopulation origins = population();
+        origins.filterChain = Arrays.<IndividualFilter>asList(individual -> individual.input > 0);
+        File output = new File(temporaryFolder.getRoot(), "accumulated-" + streamOrigins + ".csv");
+
+        BatchProcessor processor = new BatchProcessor();
+        processor.setGraphService(graphService);
+        processor.setSampleFactory(new SampleFactory(graph));
+        processor.setOrigins(origins);
+        processor.setDestinations(population());
+        RoutingRequest request = new RoutingRequest(TraverseMode.WALK);
+        request.routerId = "test";
+        processor.setPrototypeRoutingRequest(request);
+        processor.setAccumulator(new TravelTimeAccumulator());
+        processor.setNThreads(2);
+        processor.setDateTime("2015-09-17", "08:00 AM", TimeZone.getTimeZone("UTC"));
+        processor.setOutputPath(output.getAbsolutePath());
+        processor.setStreamOrigins(streamOrigins);
+        processor.run();
+
+        List<Double> results = new ArrayList<Double>();
+        List<String> lines = Files.readLines(output, Charset.forName("utf-8"));
+        for (String line : lines.subList(1, lines.size())) { // skip the header
+            String[] fields = line.split(",");
+            results.add(Double.parseDouble(fields[4]));
+        }
+        return results;
+    }
+
+    /** Test that streaming the origins gives the same accumulated results as loading them all first */
+    @Test
+    public void testStreamedAccumulation() throws Exception {
+        List<Double> loaded = accumulate(false);
+        List<Double> streamed = accumulate(true);
+        assertEquals(loaded, streamed);
+
+        // every destination on the street is reached from the other origins, the far away one from none
+        assertEquals(6, loaded.size());
+        for (int d : new int[] { 0, 1, 2, 3, 5 }) {
+            assertTrue(loaded.get(d) > 0);
+        }
+        assertEquals(0, loaded.get(4), 0);
+    }
+}
@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,4 +82,57 @@ public class CSVPopulationTest {
         assertEquals(marsci.lon, -119.84330, 0.00001);
     }
 
+    /** Test that streamed individuals are filtered and not kept in the population */
+    @Test
+    public void testStream() throws Exception {
+        File csvFile = temporaryFolder.newFile("stream.csv");
+        Files.write("a,1,-119.84330,34.40783\nb,-5,-119.70843,34.45659\nc,3,-119.70000,34.40000\n",
+                csvFile, Charset.forName("utf-8"));
+
+        CSVPopulation pop = new CSVPopulation();
+        pop.sourceFilename = csvFile.getAbsolutePath();
+        pop.skipHeaders = false;
+        pop.setLonCol(2);
+        pop.setLatCol(3);
+        pop.inputCol = 1;
+        pop.labelCol = 0;
+        pop.filterChain = Arrays.<IndividualFilter>asList(individual -> individual.input >= 0);
+
+        List<String> labels = new ArrayList<String>();
+        pop.stream(individual -> labels.add(individual.label));
+
+        assertEquals(Arrays.asList("a", "c"), labels);
+        assertEquals(0, pop.size());
+    }
+
+    /** Test that individuals are numbered by their position in the population, whether they are loaded or streamed */
+    @Test
+    public void testIndex() throws Exception {
+        File csvFile = temporaryFolder.newFile("index.csv");
+        Files.write("a,1,-119.84330,34.40783\nb,-5,-119.70843,34.45659\nc,3,-119.70000,34.40000\n",
+                csvFile, Charset.forName("utf-8"));
+
+        CSVPopulation pop = new CSVPopulation();
+        pop.sourceFilename = csvFile.getAbsolutePath();
+        pop.skipHeaders = false;
+        pop.setLonCol(2);
+        pop.setLatCol(3);
+        pop.inputCol = 1;
+        pop.labelCol = 0;
+        pop.filterChain = Arrays.<IndividualFilter>asList(individual -> individual.input >= 0);
+
+        // the rejected individual keeps its place
+        List<Integer> streamed = new ArrayList<Integer>();
+        pop.stream(individual -> streamed.add(individual.index));
+        assertEquals(Arrays.asList(0, 2), streamed);
+
+        pop.setup();
+        List<Integer> loaded = new ArrayList<Integer>();
+        for (Individual individual : pop) {
+            loaded.add(individual.index);
+        }
+        assertEquals(streamed, loaded);
+        assertEquals(3, pop.size());
+    }
+
 }
@@ -0,0 +1,40 @@
+package org.opentripplanner.analyst.broker;
+
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.cluster.AnalystClusterRequest;
+import org.opentripplanner.profile.ProfileRequest;
+
+import java.util.Arrays;
+
+public class JobTest extends TestCase {
+
+    private static AnalystClusterRequest task(int taskId, int fromTime) {
+        ProfileRequest profileRequest = new ProfileRequest();
+        profileRequest.date = new LocalDate(2015, 4, 20);
+        profileRequest.fromTime = fromTime;
+        profileRequest.toTime = fromTime + 60 * 60;
+        AnalystClusterRequest task = new AnalystClusterRequest("census", "graph", profileRequest);
+        task.jobId = "job";
+        task.taskId = taskId;
+        return task;
+    }
+
+    @Test
+    public void testMarkTaskCompleted() {
+        Job job = new Job("job");
+        job.addTask(task(0, 7 * 60 * 60));
+        job.addTask(task(1, 7 * 60 * 60));
+
+        // A task that was not delivered cannot be completed
+        job.markTaskCompleted(0);
+        assertEquals(0, job.getCompletedTaskCount());
+
+        job.markTasksDelivered(Arrays.asList(job.tasksAwaitingDelivery.poll(), job.tasksAwaitingDelivery.poll()));
+        job.markTaskCompleted(0);
+        job.markTaskCompleted(1);
+        assertTrue(job.isComplete());
+        assertEquals(0, job.redeliver());
+    }
+}
@@ -0,0 +1,40 @@
+package org.opentripplanner.analyst.broker;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class WorkerCatalogTest extends TestCase {
+
+    @Test
+    public void testCatalog() {
+        WorkerCatalog catalog = new WorkerCatalog();
+        catalog.catalog("worker-1", "graph-a");
+        catalog.catalog("worker-2", "graph-a");
+        catalog.catalog("worker-1", "graph-b");
+        assertEquals(2, catalog.size());
+        assertEquals(1, catalog.workersOn("graph-a").size());
+        assertTrue(catalog.workersOn("graph-b").contains("worker-1"));
+    }
+
+    /** Workers that have not loaded a graph yet poll with a null graph affinity. */
+    @Test
+    public void testWorkerWithoutGraph() {
+        WorkerCatalog catalog = new WorkerCatalog();
+        catalog.catalog("worker-1", null);
+        catalog.catalog("worker-2", null);
+        catalog.catalog("worker-2", null);
+        assertEquals(2, catalog.size());
+        assertEquals(2, catalog.workersOn(null).size());
+        assertTrue(catalog.workersOn("graph-a").isEmpty());
+        // No job needs workers without a graph, so they are all free to be given one
+        assertTrue(catalog.tooManyWorkers(null));
+
+        // Once the worker has loaded a graph it is no longer counted among the workers without one, and back
+        catalog.catalog("worker-1", "graph-a");
+        assertEquals(1, catalog.workersOn(null).size());
+        assertTrue(catalog.workersOn("graph-a").contains("worker-1"));
+        catalog.catalog("worker-1", null);
+        assertEquals(2, catalog.workersOn(null).size());
+        assertTrue(catalog.workersOn("graph-a").isEmpty());
+    }
+}
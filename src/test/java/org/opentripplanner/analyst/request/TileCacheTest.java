@@ -0,0 +1,132 @@
+package org.opentripplanner.analyst.request;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class TileCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Graph graph;
+
+    private IntersectionVertex[] vertices;
+
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        graph.routerId = "test";
+        vertices = new IntersectionVertex[3];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, -83.0 + i * 0.001, 40.0);
+        }
+        graph.rebuildVertexAndEdgeIndices();
+    }
+
+    /** A graph with the same vertices as the test graph, built at another time. */
+    private Graph rebuiltGraph() {
+        Graph other = new Graph();
+        other.routerId = graph.routerId;
+        other.buildTime.setTime(graph.buildTime.getTime() + 60 * 1000);
+        for (IntersectionVertex vertex : vertices) {
+            other.addVertex(vertex);
+        }
+        other.rebuildVertexAndEdgeIndices();
+        return other;
+    }
+
+    /**
+     * Test that samples saved to a file are read back with the same vertices and distances, missing samples and
+     * samples next to a single vertex included.
+     */
+    @Test
+    public void testWriteAndReadSamples() throws Exception {
+        TileCache tileCache = new TileCache(graph, temporaryFolder.getRoot());
+        Sample[] samples = new Sample[] {
+                new Sample(vertices[0], 10, vertices[1], 90),
+                null,
+                new Sample(vertices[2], 25, null, 0),
+                new Sample(vertices[1], 0, vertices[0], 100)
+        };
+        File file = temporaryFolder.newFile("tile.samples.gz");
+        tileCache.writeSamples(file, samples);
+
+        Sample[] read = tileCache.readSamples(file);
+        assertEquals(samples.length, read.length);
+        assertNull(read[1]);
+        for (int i : new int[] { 0, 2, 3 }) {
+            assertSame(samples[i].v0, read[i].v0);
+            assertEquals(samples[i].d0, read[i].d0);
+            assertSame(samples[i].v1, read[i].v1);
+            assertEquals(samples[i].d1, read[i].d1);
+        }
+        // The file was written under another name and moved into place
+        assertArrayEquals(new String[] { "tile.samples.gz" }, temporaryFolder.getRoot().list(
+                (dir, name) -> !new File(dir, name).isDirectory()));
+    }
+
+    /** Test that samples saved for another graph are not read, even if its vertex indices exist in this graph. */
+    @Test
+    public void testSamplesOfAnotherGraphAreRejected() throws Exception {
+        File file = temporaryFolder.newFile("tile.samples.gz");
+        new TileCache(graph).writeSamples(file, new Sample[] { new Sample(vertices[0], 10, vertices[1], 90) });
+
+        try {
+            new TileCache(rebuiltGraph()).readSamples(file);
+            fail("Samples of another build of the graph were read");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Graph otherRouter = new Graph();
+        otherRouter.routerId = "other";
+        otherRouter.buildTime.setTime(graph.buildTime.getTime());
+        try {
+            new TileCache(otherRouter).readSamples(file);
+            fail("Samples of another router were read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /** Test that the sample directories of earlier builds of the graph are deleted, and nothing else. */
+    @Test
+    public void testStaleSampleDirectoriesAreDeleted() throws Exception {
+        File root = temporaryFolder.getRoot();
+        File stale = new File(root, "test-12345");
+        assertTrue(stale.mkdir());
+        assertTrue(new File(stale, "tile.samples.gz").createNewFile());
+        File otherRouter = new File(root, "test-other-12345");
+        assertTrue(otherRouter.mkdir());
+        File unrelated = new File(root, "test-notes");
+        assertTrue(unrelated.mkdir());
+
+        new TileCache(graph, root);
+        assertFalse(stale.exists());
+        assertTrue(otherRouter.isDirectory());
+        assertTrue(unrelated.isDirectory());
+        File current = new File(root, "test-" + graph.buildTime.getTime());
+        assertTrue(current.isDirectory());
+
+        // Starting again with the same graph keeps its samples
+        File saved = new File(current, "tile.samples.gz");
+        assertTrue(saved.createNewFile());
+        new TileCache(graph, root);
+        assertTrue(saved.exists());
+
+        // A new build of the graph replaces them
+        Graph rebuilt = rebuiltGraph();
+        new TileCache(rebuilt, root);
+        assertFalse(current.exists());
+        assertTrue(new File(root, "test-" + rebuilt.buildTime.getTime()).isDirectory());
+    }
+}
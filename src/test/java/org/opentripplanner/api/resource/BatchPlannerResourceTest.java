@@ -0,0 +1,133 @@
+package org.opentripplanner.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.api.resource.BatchPlannerResource.BatchPlace;
+import org.opentripplanner.api.resource.BatchPlannerResource.BatchPlanRequest;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.OsmVertex;
+
+public class BatchPlannerResourceTest {
+
+    private Graph graph;
+
+    /** A straight street of five blocks of about 80 meters, walkable in both directions. */
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        OsmVertex[] vertices = new OsmVertex[5];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new OsmVertex(graph, "v" + i, 10.0 + i * 0.001, 45.0, i);
+        }
+        for (int i = 1; i < vertices.length; i++) {
+            createStreetEdge(vertices[i - 1], vertices[i]);
+            createStreetEdge(vertices[i], vertices[i - 1]);
+        }
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    private static void createStreetEdge(OsmVertex v0, OsmVertex v1) {
+        LineString geometry = GeometryUtils.getGeometryFactory()
+                .createLineString(new Coordinate[] { v0.getCoordinate(), v1.getCoordinate() });
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        new StreetEdge(v0, v1, geometry, v0.getLabel() + "-" + v1.getLabel(), length, StreetTraversalPermission.ALL,
+                false);
+    }
+
+    private static BatchPlace place(String id, double lon, double lat) {
+        BatchPlace place = new BatchPlace();
+        place.id = id;
+        place.lon = lon;
+        place.lat = lat;
+        return place;
+    }
+
+    private JsonNode plan(BatchPlanRequest batch) throws Exception {
+        RoutingRequest template = new RoutingRequest(TraverseMode.WALK);
+        template.dateTime = 1400000000;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchPlannerResource.writeResults(out, graph, template, batch);
+        return new ObjectMapper().readTree(out.toByteArray());
+    }
+
+    @Test
+    public void testSmallBatch() throws Exception {
+        BatchPlanRequest batch = new BatchPlanRequest();
+        batch.origins = Arrays.asList(place("west", 10.0, 45.0), place("middle", 10.002, 45.0));
+        batch.destinations = Arrays.asList(place("east", 10.004, 45.0), place("nearWest", 10.001, 45.0));
+        batch.departureTimes = Arrays.asList(1400000000L, 1400003600L);
+
+        JsonNode results = plan(batch);
+        assertEquals(4, results.size());
+        assertEquals("west", results.get(0).get("origin").asText());
+        assertEquals(1400003600L, results.get(1).get("departureTime").asLong());
+        assertEquals("middle", results.get(2).get("origin").asText());
+        for (JsonNode result : results) {
+            assertFalse(result.has("error"));
+            JsonNode destinations = result.get("destinations");
+            assertEquals(2, destinations.size());
+            assertEquals("east", destinations.get(0).get("id").asText());
+            for (JsonNode destination : destinations) {
+                assertTrue(destination.get("duration").asLong() > 0);
+                assertEquals(0, destination.get("boardings").asInt());
+            }
+        }
+        // The far end of the street takes longer to reach from its other end than from the middle
+        JsonNode fromWest = results.get(0).get("destinations");
+        JsonNode fromMiddle = results.get(2).get("destinations");
+        assertTrue(fromWest.get(0).get("duration").asLong() > fromMiddle.get(0).get("duration").asLong());
+        assertTrue(fromWest.get(0).get("walkDistance").asLong() > fromWest.get(1).get("walkDistance").asLong());
+        assertNoTemporaryEdges();
+    }
+
+    @Test
+    public void testOriginNotLinked() throws Exception {
+        BatchPlanRequest batch = new BatchPlanRequest();
+        // The first origin is far from any street, the search from the second one still runs
+        batch.origins = Arrays.asList(place("nowhere", 11.0, 46.0), place("west", 10.0, 45.0));
+        batch.destinations = Collections.singletonList(place("east", 10.004, 45.0));
+
+        JsonNode results = plan(batch);
+        assertEquals(2, results.size());
+        assertEquals("nowhere", results.get(0).get("origin").asText());
+        assertTrue(results.get(0).has("error"));
+        assertFalse(results.get(0).has("destinations"));
+        assertFalse(results.get(1).has("error"));
+        assertTrue(results.get(1).get("destinations").get(0).has("duration"));
+        assertNoTemporaryEdges();
+    }
+
+    /** Every search links its origin with temporary edges, which must be removed once it is done. */
+    private void assertNoTemporaryEdges() {
+        for (Vertex vertex : graph.getVertices()) {
+            for (Edge edge : vertex.getIncoming()) {
+                assertFalse(edge instanceof TemporaryEdge);
+            }
+            for (Edge edge : vertex.getOutgoing()) {
+                assertFalse(edge instanceof TemporaryEdge);
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.opentripplanner.api.model.Place;
 import org.opentripplanner.api.model.RelativeDirection;
 import org.opentripplanner.api.model.WalkStep;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.gtfs.BikeAccess;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
@@ -121,6 +122,34 @@ public class GraphPathToTripPlanConverterTest {
         compare(GraphPathToTripPlanConverter.generateItinerary(graphPaths[2], true, false, locale), Type.ONBOARD);
     }
 
+    /**
+     * Test that summary itineraries have the same legs and times as full ones, but no details.
+     */
+    @Test
+    public void testSummaryItinerary() {
+        GraphPath graphPath = buildPaths()[0];
+        RoutingRequest request = graphPath.states.getFirst().getOptions().clone();
+        request.from = new GenericLocation(0, 0);
+        request.to = new GenericLocation(0, 0);
+        request.showIntermediateStops = true;
+
+        Itinerary full = GraphPathToTripPlanConverter.generateItinerary(graphPath, request, false);
+        Itinerary summary = GraphPathToTripPlanConverter.generateItinerary(graphPath, request, true);
+
+        assertEquals(full.legs.size(), summary.legs.size());
+        assertEquals(full.duration, summary.duration);
+        assertEquals(full.walkDistance, summary.walkDistance);
+        assertNull(summary.fare);
+        for (int i = 0; i < full.legs.size(); i++) {
+            Leg leg = summary.legs.get(i);
+            assertEquals(full.legs.get(i).mode, leg.mode);
+            assertEquals(full.legs.get(i).legGeometry.getPoints(), leg.legGeometry.getPoints());
+            assertNull(leg.walkSteps);
+            assertNull(leg.stop);
+            assertNull(leg.alerts);
+        }
+    }
+
     /**
      * Test that a LEG_SWITCH mode at the end of a graph path does not generate an extra leg.
      * Also test that such a LEG_SWITCH mode does not show up as part of the itinerary.
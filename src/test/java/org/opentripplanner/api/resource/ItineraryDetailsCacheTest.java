@@ -0,0 +1,164 @@
+package org.opentripplanner.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class ItineraryDetailsCacheTest {
+
+    /** A clock that only moves when told to. */
+    private static class ManualTicker extends Ticker {
+        long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advanceSeconds(long seconds) {
+            nanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    private ManualTicker ticker;
+
+    private ItineraryDetailsCache cache;
+
+    private RoutingRequest request;
+
+    private GraphPath path;
+
+    /** Walk along a street of three blocks, the way a summary plan is computed before its request is cleaned up. */
+    @Before
+    public void setUp() {
+        Graph graph = new Graph();
+        IntersectionVertex[] vertices = new IntersectionVertex[4];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, 10.0 + i * 0.001, 45.0);
+        }
+        for (int i = 1; i < vertices.length; i++) {
+            createStreetEdge(vertices[i - 1], vertices[i], "Main Street");
+            createStreetEdge(vertices[i], vertices[i - 1], "Main Street");
+        }
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        request = new RoutingRequest(TraverseMode.WALK);
+        request.from = new GenericLocation("Home", "45.0,10.0");
+        request.to = new GenericLocation("Work", "45.0,10.003");
+        request.showIntermediateStops = true;
+        request.setRoutingContext(graph);
+        path = new AStar().getShortestPathTree(request).getPaths().get(0);
+        request.cleanup();
+
+        ticker = new ManualTicker();
+        cache = new ItineraryDetailsCache(10, 600, ticker);
+    }
+
+    private static void createStreetEdge(IntersectionVertex v0, IntersectionVertex v1, String name) {
+        LineString geometry = GeometryUtils.getGeometryFactory()
+                .createLineString(new Coordinate[] { v0.getCoordinate(), v1.getCoordinate() });
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        new StreetEdge(v0, v1, geometry, name, length, StreetTraversalPermission.ALL, false);
+    }
+
+    @Test
+    public void testPutGet() {
+        String handle = cache.put(path, request);
+        assertEquals(1, cache.getSize());
+        // Handles are random, the same path gets a new one each time
+        assertFalse(handle.equals(cache.put(path, request)));
+
+        Itinerary itinerary = cache.getItinerary(handle);
+        assertNotNull(itinerary);
+        assertEquals(handle, itinerary.handle);
+        // The full itinerary is the same as the one generated directly from the request
+        Itinerary expected = GraphPathToTripPlanConverter.generateItinerary(path, request, false);
+        assertEquals(expected.legs.size(), itinerary.legs.size());
+        assertEquals(expected.walkDistance, itinerary.walkDistance);
+        Leg leg = itinerary.legs.get(0);
+        assertEquals("Home", leg.from.orig);
+        assertEquals("Work", itinerary.legs.get(itinerary.legs.size() - 1).to.orig);
+        assertFalse(leg.walkSteps.isEmpty());
+        assertEquals(expected.legs.get(0).walkSteps.size(), leg.walkSteps.size());
+        assertFalse(itinerary.walkLimitExceeded);
+
+        // The details can be fetched again while the handle is known
+        assertNotNull(cache.getItinerary(handle));
+        assertNull(cache.getItinerary("unknown"));
+    }
+
+    @Test
+    public void testExpiry() {
+        String handle = cache.put(path, request);
+        ticker.advanceSeconds(500);
+        // Fetching the details keeps the handle for another full period
+        assertNotNull(cache.getItinerary(handle));
+        ticker.advanceSeconds(500);
+        assertNotNull(cache.getItinerary(handle));
+        ticker.advanceSeconds(601);
+        assertNull(cache.getItinerary(handle));
+    }
+
+    @Test
+    public void testHasDetails() {
+        TripPlan plan = new TripPlan();
+        Itinerary itinerary = new Itinerary();
+        itinerary.handle = cache.put(path, request);
+        plan.addItinerary(itinerary);
+        assertTrue(cache.hasDetails(plan));
+
+        // Checking a plan keeps its handles, as a plan served again can be looked at for another full period
+        ticker.advanceSeconds(500);
+        assertTrue(cache.hasDetails(plan));
+        ticker.advanceSeconds(500);
+        assertTrue(cache.hasDetails(plan));
+        ticker.advanceSeconds(601);
+        assertFalse(cache.hasDetails(plan));
+
+        // Itineraries of plans that were not summaries have no details
+        TripPlan fullPlan = new TripPlan();
+        fullPlan.addItinerary(new Itinerary());
+        assertFalse(cache.hasDetails(fullPlan));
+    }
+
+    @Test
+    public void testUnknownHandleIsNotFound() {
+        String handle = cache.put(path, request);
+        Object found = PlannerResource.itinerary(cache, handle);
+        assertTrue(found instanceof Itinerary);
+        assertEquals(handle, ((Itinerary) found).handle);
+
+        ticker.advanceSeconds(601);
+        Object expired = PlannerResource.itinerary(cache, handle);
+        assertTrue(expired instanceof javax.ws.rs.core.Response);
+        assertEquals(404, ((javax.ws.rs.core.Response) expired).getStatus());
+
+        Object unknown = PlannerResource.itinerary(cache, "not-a-handle");
+        assertEquals(404, ((javax.ws.rs.core.Response) unknown).getStatus());
+    }
+}
@@ -0,0 +1,105 @@
+package org.opentripplanner.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+
+public class PlanCacheTest {
+
+    private static RoutingRequest request(double fromLat, long dateTime) {
+        RoutingRequest request = new RoutingRequest();
+        request.routerId = "default";
+        request.from = new GenericLocation(fromLat, 10.0);
+        request.to = new GenericLocation(45.5, 10.5);
+        request.dateTime = dateTime;
+        return request;
+    }
+
+    private static Map<String, String> parameters(String mode) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("fromPlace", "somewhere");
+        parameters.put("time", "8:00am");
+        parameters.put("mode", mode);
+        return parameters;
+    }
+
+    @Test
+    public void testKey() {
+        String key = PlanCache.key(request(45.1, 1000000020), parameters("TRANSIT,WALK"));
+        // Same minute, same place to a meter: same key, whatever the place and time parameters looked like
+        assertEquals(key, PlanCache.key(request(45.1000001, 1000000010), parameters("TRANSIT,WALK")));
+        assertNotEquals(key, PlanCache.key(request(45.1001, 1000000020), parameters("TRANSIT,WALK")));
+        assertNotEquals(key, PlanCache.key(request(45.1, 1000000100), parameters("TRANSIT,WALK")));
+        assertNotEquals(key, PlanCache.key(request(45.1, 1000000020), parameters("WALK")));
+    }
+
+    @Test
+    public void testInvalidatedByRealtimeData() {
+        Graph graph = new Graph();
+        PlanCache cache = new PlanCache(graph, 10, 60);
+        TripPlan plan = new TripPlan();
+        assertNull(cache.get("a"));
+        cache.put("a", plan, cache.currentGeneration());
+        assertNotNull(cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0);
+
+        // Publishing new alerts empties the cache
+        long generation = cache.currentGeneration();
+        graph.updateAlertPatchIndex(builder -> { });
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getInvalidationCount());
+
+        // A plan computed against the old alerts is not cached
+        cache.put("a", plan, generation);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+
+        // So does a new bike rental availability table or timetable snapshot
+        cache.put("a", plan, cache.currentGeneration());
+        graph.realtimeDataPublished();
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testPlansAreCopied() {
+        PlanCache cache = new PlanCache(new Graph(), 10, 60);
+        Itinerary first = new Itinerary();
+        Itinerary second = new Itinerary();
+        TripPlan plan = new TripPlan(new Place(10.0, 45.0, "from"), new Place(10.5, 45.5, "to"), new Date(1000));
+        plan.addItinerary(first);
+        plan.addItinerary(second);
+        cache.put("a", plan, cache.currentGeneration());
+
+        // Neither the plan that was cached nor the plans handed out share a list or a date with the cache
+        plan.itinerary.clear();
+        TripPlan cached = cache.get("a");
+        assertNotSame(plan, cached);
+        cached.itinerary.remove(first);
+        cached.date.setTime(2000);
+
+        TripPlan again = cache.get("a");
+        assertNotSame(cached, again);
+        assertEquals(Arrays.asList(first, second), again.itinerary);
+        assertEquals(1000, again.date.getTime());
+        assertSame(plan.from, again.from);
+    }
+}
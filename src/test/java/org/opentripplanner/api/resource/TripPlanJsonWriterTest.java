@@ -0,0 +1,193 @@
+package org.opentripplanner.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.opentripplanner.api.common.Message;
+import org.opentripplanner.api.model.AbsoluteDirection;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.RelativeDirection;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.api.model.alertpatch.LocalizedAlert;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.alertpatch.Alert;
+import org.opentripplanner.routing.core.Fare;
+import org.opentripplanner.routing.core.WrappedCurrency;
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+public class TripPlanJsonWriterTest {
+
+    private static Calendar time(int minute) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(1500000000000L + minute * 60000L);
+        return calendar;
+    }
+
+    private static Leg leg() {
+        Leg leg = new Leg();
+        leg.startTime = time(0);
+        leg.endTime = time(10);
+        leg.mode = "BUS";
+        leg.routeId = new FeedScopedId("A", "1");
+        leg.tripId = new FeedScopedId("A", "T1");
+        leg.headsign = "Downtown";
+        leg.from = new Place(10.0, 45.0, "Origin", null, time(0));
+        leg.from.stopId = new FeedScopedId("A", "S1");
+        leg.to = new Place(10.1, 45.1, "Destination", time(10), null);
+        leg.stop = new ArrayList<>();
+        leg.stop.add(new Place(10.05, 45.05, "Middle", time(5), time(5)));
+        leg.legGeometry = new EncodedPolylineBean("o{sxFl}vaMjDpCf@\\", null, 3);
+        leg.walkSteps = new ArrayList<>();
+        WalkStep step = new WalkStep();
+        step.distance = 12.5;
+        step.relativeDirection = RelativeDirection.LEFT;
+        step.absoluteDirection = AbsoluteDirection.NORTH;
+        step.streetName = "Main Street";
+        step.lon = 10.0;
+        step.lat = 45.0;
+        leg.walkSteps.add(step);
+        return leg;
+    }
+
+    @Test
+    public void testSameAsJacksonProvider() throws Exception {
+        Response response = new Response(null);
+        response.requestParameters.put("fromPlace", "45.0,10.0");
+        TripPlan plan = new TripPlan(new Place(10.0, 45.0, "Origin"), new Place(10.1, 45.1, "Destination"),
+                new Date(1500000000000L));
+        Itinerary itinerary = new Itinerary();
+        itinerary.startTime = time(0);
+        itinerary.endTime = time(10);
+        itinerary.addLeg(leg());
+        itinerary.handle = "handle";
+        plan.addItinerary(itinerary);
+        response.setPlan(plan);
+        response.elevationMetadata = new ElevationMetadata();
+
+        ObjectMapper mapper = new JSONObjectMapperProvider().getContext(Response.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TripPlanJsonWriter(response).write(out);
+        assertEquals(mapper.readTree(mapper.writeValueAsString(response)), mapper.readTree(out.toByteArray()));
+    }
+
+    /**
+     * Set every public field of the bean whose type is one of the simple types in the model to a value that differs
+     * from its default, so that every field handled by the writer is compared.
+     */
+    private static void populate(Object bean, int seed) throws IllegalAccessException {
+        for (Field field : bean.getClass().getFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers)) {
+                continue;
+            }
+            Class<?> type = field.getType();
+            int value = seed++;
+            if (type == String.class) {
+                field.set(bean, field.getName() + value);
+            } else if (type == Integer.class || type == int.class) {
+                field.set(bean, value);
+            } else if (type == Long.class || type == long.class) {
+                field.set(bean, (long) value);
+            } else if (type == Double.class || type == double.class) {
+                field.set(bean, value + 0.5);
+            } else if (type == Boolean.class || type == boolean.class) {
+                field.set(bean, true);
+            } else if (type == Calendar.class) {
+                field.set(bean, time(value));
+            } else if (type == FeedScopedId.class) {
+                field.set(bean, new FeedScopedId("A", field.getName() + value));
+            } else if (type == EncodedPolylineBean.class) {
+                field.set(bean, new EncodedPolylineBean("o{sxFl}vaMjDpCf@\\", "levels" + value, value));
+            } else if (type.isEnum()) {
+                Object[] constants = type.getEnumConstants();
+                field.set(bean, constants[value % constants.length]);
+            }
+        }
+    }
+
+    /** Fail if any field that would be serialized is still null, which means populate does not know its type. */
+    private static void assertFullyPopulated(Object bean) throws IllegalAccessException {
+        for (Field field : bean.getClass().getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                assertNotNull(bean.getClass().getSimpleName() + "." + field.getName(), field.get(bean));
+            }
+        }
+    }
+
+    private static Place fullPlace(int seed) throws IllegalAccessException {
+        Place place = new Place();
+        populate(place, seed);
+        assertFullyPopulated(place);
+        return place;
+    }
+
+    @Test
+    public void testFullyPopulatedPlan() throws Exception {
+        List<LocalizedAlert> alerts = Collections.singletonList(
+                new LocalizedAlert(Alert.createSimpleAlerts("Detour"), Locale.ENGLISH));
+
+        WalkStep step = new WalkStep();
+        populate(step, 100);
+        step.elevation = Arrays.asList(new P2<>(0.0, 10.0), new P2<>(12.5, 11.5));
+        step.alerts = alerts;
+        assertFullyPopulated(step);
+
+        Leg leg = new Leg();
+        populate(leg, 200);
+        leg.from = fullPlace(300);
+        leg.to = fullPlace(400);
+        leg.stop = Arrays.asList(fullPlace(500), fullPlace(600));
+        leg.walkSteps = Arrays.asList(step, new WalkStep());
+        leg.alerts = alerts;
+        assertFullyPopulated(leg);
+
+        Itinerary itinerary = new Itinerary();
+        populate(itinerary, 700);
+        itinerary.fare = new Fare();
+        itinerary.fare.addFare(Fare.FareType.regular, new WrappedCurrency("EUR"), 250);
+        itinerary.legs = Arrays.asList(leg, leg());
+        assertFullyPopulated(itinerary);
+
+        TripPlan plan = new TripPlan(fullPlace(800), fullPlace(900), new Date(1500000000000L));
+        plan.addItinerary(itinerary);
+        plan.addItinerary(new Itinerary());
+
+        Response response = new Response(null);
+        response.requestParameters.put("fromPlace", "45.0,10.0");
+        response.requestParameters.put("mode", "TRANSIT,WALK");
+        response.setPlan(plan);
+        response.debugOutput = new DebugOutput();
+        response.debugOutput.pathTimes.add(12L);
+        response.elevationMetadata = new ElevationMetadata();
+        response.elevationMetadata.ellipsoidToGeoidDifference = 1.5;
+        response.elevationMetadata.geoidElevation = true;
+        response.setError(new PlannerError(Message.PATH_NOT_FOUND));
+
+        ObjectMapper mapper = new JSONObjectMapperProvider().getContext(Response.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TripPlanJsonWriter(response).write(out);
+        assertEquals(mapper.readTree(mapper.writeValueAsString(response)), mapper.readTree(out.toByteArray()));
+    }
+}
@@ -0,0 +1,36 @@
+package org.opentripplanner.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PrefixIndexTest {
+
+    private static final PrefixIndex<Integer> INDEX = new PrefixIndex.Builder<Integer>()
+            .add("Main Street & 1st Avenue", 1)
+            .add("Main Street & 2nd Avenue", 2)
+            .add("Mainz Hauptbahnhof", 3)
+            .add("Oak Street & Main Street", 4)
+            .build();
+
+    @Test
+    public void testPrefixes() {
+        assertEquals(Arrays.asList(1, 2, 4, 3), INDEX.query("mai", i -> true, 10));
+        assertEquals(Arrays.asList(3), INDEX.query("MAINZ", i -> true, 10));
+        assertEquals(Arrays.asList(1, 2), INDEX.query("main", i -> true, 2));
+        assertTrue(INDEX.query("street main x", i -> true, 10).isEmpty());
+        assertEquals(Collections.emptyList(), INDEX.query("  ", i -> true, 10));
+    }
+
+    @Test
+    public void testSeveralWords() {
+        // Every word must start a word of the name, in any order
+        assertEquals(Arrays.asList(2), INDEX.query("main & 2n", i -> true, 10));
+        assertEquals(Arrays.asList(4), INDEX.query("oak mai", i -> true, 10));
+        assertEquals(Arrays.asList(2, 4), INDEX.query("street main", i -> i % 2 == 0, 10));
+    }
+}
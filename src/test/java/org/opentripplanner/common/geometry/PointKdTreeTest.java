@@ -0,0 +1,70 @@
+package org.opentripplanner.common.geometry;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.opentripplanner.common.geometry.PointKdTree.Neighbor;
+
+public class PointKdTreeTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random random = new Random(42);
+        List<Coordinate> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(new Coordinate(4.8 + random.nextDouble() * 0.2, 52.3 + random.nextDouble() * 0.1));
+        }
+        // Some duplicates, which must all be found
+        points.add(new Coordinate(points.get(0).x, points.get(0).y));
+        points.add(new Coordinate(points.get(0).x, points.get(0).y));
+        PointKdTree<Coordinate> tree = new PointKdTree<>(points, c -> c.x, c -> c.y);
+
+        for (int q = 0; q < 50; q++) {
+            Coordinate query = new Coordinate(4.8 + random.nextDouble() * 0.2, 52.3 + random.nextDouble() * 0.1);
+            double cosLat = Math.cos(Math.toRadians(query.y));
+            List<Double> distances = points.stream()
+                    .map(p -> SphericalDistanceLibrary.fastDistance(query, p, cosLat))
+                    .sorted(Comparator.naturalOrder())
+                    .collect(Collectors.toList());
+
+            List<Neighbor<Coordinate>> nearest = tree.nearest(query.y, query.x, 10, Double.MAX_VALUE, p -> true);
+            assertEquals(10, nearest.size());
+            for (int i = 0; i < nearest.size(); i++) {
+                assertEquals(distances.get(i), nearest.get(i).distance, EPSILON);
+                assertEquals(nearest.get(i).distance,
+                        SphericalDistanceLibrary.fastDistance(query, nearest.get(i).item, cosLat), EPSILON);
+            }
+
+            List<Neighbor<Coordinate>> inRadius = tree.withinRadius(query.y, query.x, 500);
+            List<Double> expected = distances.stream().filter(d -> d <= 500).collect(Collectors.toList());
+            assertEquals(expected.size(), inRadius.size());
+            for (int i = 0; i < inRadius.size(); i++) {
+                assertEquals(expected.get(i), inRadius.get(i).distance, EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testFilterAndMaxDistance() {
+        List<Coordinate> points = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(new Coordinate(i * 0.001, 0));
+        }
+        PointKdTree<Coordinate> tree = new PointKdTree<>(points, c -> c.x, c -> c.y);
+        List<Neighbor<Coordinate>> nearest = tree.nearest(0, 0, 3, 1000, c -> c.x > 0.0025);
+        assertEquals(3, nearest.size());
+        assertEquals(0.003, nearest.get(0).item.x, EPSILON);
+        assertEquals(0.005, nearest.get(2).item.x, EPSILON);
+        assertEquals(0, tree.nearest(0, 0, 3, 100, c -> c.x > 0.0025).size());
+        assertEquals(0, new PointKdTree<Coordinate>(new ArrayList<>(), c -> c.x, c -> c.y).withinRadius(0, 0, 1).size());
+    }
+}
@@ -127,8 +127,8 @@ public class LinkingTest {
         StopTreeCache s2 = g2.index.getStopTreeCache();
 
         // convert the caches to be by stop label
-        Map<String, int[]> l1 = cacheByLabel(s1);
-        Map<String, int[]> l2 = cacheByLabel(s2);
+        Map<String, int[]> l1 = cacheByLabel(s1, g1);
+        Map<String, int[]> l2 = cacheByLabel(s2, g2);
 
         // do the comparison
         for (Entry<String, int[]> e : l1.entrySet()) {
@@ -177,11 +177,14 @@ public class LinkingTest {
     }
 
     /** get the stop tree cache indexed by label */
-    public static Map<String, int[]> cacheByLabel (StopTreeCache c) {
+    public static Map<String, int[]> cacheByLabel (StopTreeCache c, Graph g) {
         Map<String, int[]> ret = Maps.newHashMap();
 
-        for (Entry<TransitStop, int[]> e : c.distancesForStop.entrySet()) {
-            ret.put(e.getKey().getLabel(), e.getValue());
+        for (TransitStop tstop : Iterables.filter(g.getVertices(), TransitStop.class)) {
+            int[] distances = c.distancesForStop(tstop);
+            if (distances != null) {
+                ret.put(tstop.getLabel(), distances);
+            }
         }
 
         return ret;
@@ -0,0 +1,94 @@
+package org.opentripplanner.index;
+
+import static graphql.Scalars.GraphQLInt;
+import static graphql.Scalars.GraphQLString;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import graphql.schema.GraphQLArgument;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLTypeReference;
+import org.junit.Test;
+
+public class GraphQLCostAnalyzerTest {
+
+    private static final GraphQLObjectType STOP = GraphQLObjectType.newObject()
+            .name("Stop")
+            .field(GraphQLFieldDefinition.newFieldDefinition()
+                    .name("name")
+                    .type(GraphQLString)
+                    .build())
+            .field(GraphQLFieldDefinition.newFieldDefinition()
+                    .name("departures")
+                    .type(new GraphQLList(GraphQLInt))
+                    .argument(GraphQLArgument.newArgument()
+                            .name("n")
+                            .type(GraphQLInt)
+                            .build())
+                    .build())
+            .field(GraphQLFieldDefinition.newFieldDefinition()
+                    .name("nearby")
+                    .type(new GraphQLList(new GraphQLTypeReference("Stop")))
+                    .build())
+            .build();
+
+    private static final GraphQLSchema SCHEMA = GraphQLSchema.newSchema()
+            .query(GraphQLObjectType.newObject()
+                    .name("QueryType")
+                    .field(GraphQLFieldDefinition.newFieldDefinition()
+                            .name("stops")
+                            .type(new GraphQLList(STOP))
+                            .argument(GraphQLArgument.newArgument()
+                                    .name("ids")
+                                    .type(new GraphQLList(GraphQLString))
+                                    .build())
+                            .build())
+                    .build())
+            .build();
+
+    private GraphQLCostAnalyzer analyzer() {
+        return new GraphQLCostAnalyzer(SCHEMA)
+                .setListSize("QueryType.stops", 100)
+                .setListSize("Stop.nearby", 4)
+                .setFieldWeight("Stop.departures", 3)
+                .setListSizeArgument("Stop.departures", "n");
+    }
+
+    @Test
+    public void testListSizes() {
+        GraphQLCostAnalyzer analyzer = analyzer();
+        // 100 stops, each one object
+        assertEquals(100, analyzer.estimate("{ stops { name } }", null, null));
+        // IDs given in the query override the configured size
+        assertEquals(2, analyzer.estimate("{ stops(ids: [\"a\", \"b\"]) { name } }", null, null));
+        assertEquals(3, analyzer.estimate("query q($ids: [String]) { stops(ids: $ids) { name } }", null,
+                Collections.singletonMap("ids", java.util.Arrays.asList("a", "b", "c"))));
+        // Nested lists multiply: 2 stops * (1 + 4 nearby stops)
+        assertEquals(10, analyzer.estimate("{ stops(ids: [\"a\", \"b\"]) { nearby { name } } }", null, null));
+    }
+
+    @Test
+    public void testWeightsAndFragments() {
+        GraphQLCostAnalyzer analyzer = analyzer();
+        // Weighted scalar list: 1 stop * (1 + 3 * 7 departures)
+        assertEquals(22, analyzer.estimate("{ stops(ids: [\"a\"]) { departures(n: 7) } }", null, null));
+        // Without the size argument the default list size is used
+        assertEquals(31, analyzer.estimate("{ stops(ids: [\"a\"]) { departures } }", null, null));
+        assertEquals(22, analyzer.estimate("{ stops(ids: [\"a\"]) { ...f } } fragment f on Stop { departures(n: 7) }",
+                null, null));
+    }
+
+    @Test
+    public void testInvalidQueries() {
+        GraphQLCostAnalyzer analyzer = analyzer();
+        assertEquals(-1, analyzer.estimate("{ stops { ", null, null));
+        // Cyclic fragments are invalid, but must not make the estimator loop forever
+        assertEquals(100, analyzer.estimate("{ stops { ...f } } fragment f on Stop { ...f }", null, null));
+        // Unknown operations cost nothing, graphql-java reports them
+        assertEquals(0, analyzer.estimate("query a { stops { name } }", "b", null));
+    }
+}
@@ -0,0 +1,170 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.List;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Test the point-to-point journeys found by the RaptorPathWorker, on a grid of perpendicular lines where the origin
+ * and the destination are too far apart to be connected by a single line.
+ */
+public class RaptorPathWorkerTest extends TestCase {
+
+    @Test
+    public void testJourneysMatchRaptorWorker () throws Exception {
+        Graph g = buildGraphNoTransit();
+        addPerpendicularRoutes(g);
+        link(g);
+        g.index(new DefaultStreetVertexIndexFactory());
+
+        ProfileRequest req = new ProfileRequest();
+        req.fromLon = -83.0341;
+        req.fromLat = 39.9608;
+        req.toLon = -82.9841;
+        req.toLat = 40.0058;
+        req.date = new LocalDate(2015, 9, 17);
+        req.walkSpeed = 1.3f;
+        req.fromTime = 8 * 3600;
+        req.toTime = 9 * 3600;
+        req.maxWalkTime = 20;
+        req.transitModes = new TraverseModeSet("TRANSIT");
+        req.accessModes = req.egressModes = req.directModes = new QualifiedModeSet("WALK");
+
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(g, req);
+        List<RaptorJourney> journeys = router.routeJourneys();
+        // The street searches around the origin and the destination are cleaned up
+        assertNoTemporaryEdges(g);
+        assertFalse(journeys.isEmpty());
+
+        RaptorWorkerData data = router.raptorWorkerData;
+        TIntIntMap accessTimes = router.findInitialStops(false, data);
+        TIntIntMap egressTimes = router.findInitialStops(true, data);
+        router.cleanup();
+        assertNoTemporaryEdges(g);
+        for (int stop : egressTimes.keys()) {
+            assertFalse("The destination is within walking distance of the origin", accessTimes.containsKey(stop));
+        }
+
+        // A scheduled search from the same origin at the same time gives the earliest arrival at every stop
+        RaptorWorker worker = new RaptorWorker(data, req);
+        worker.runRaptorScheduled(accessTimes, req.fromTime);
+        int earliestArrival = RaptorWorker.UNREACHED;
+        for (int stop : egressTimes.keys()) {
+            if (worker.bestTimes[stop] != RaptorWorker.UNREACHED) {
+                earliestArrival = Math.min(earliestArrival, worker.bestTimes[stop] + egressTimes.get(stop));
+            }
+        }
+
+        RaptorJourney previous = null;
+        for (RaptorJourney journey : journeys) {
+            checkJourney(journey, data, worker, accessTimes, egressTimes, req.fromTime);
+            // The lines are too far apart to get there with one ride
+            assertTrue(journey.rides >= 2);
+            if (previous != null) {
+                // Journeys with more rides are only found when they arrive earlier, or as early with less walking
+                assertTrue(journey.rides > previous.rides);
+                assertTrue(journey.arrivalTime < previous.arrivalTime || (journey.arrivalTime == previous.arrivalTime
+                        && journey.walkTime < previous.walkTime));
+            }
+            previous = journey;
+        }
+        // The last journey is the earliest arriving one, whatever the number of rides
+        assertEquals(earliestArrival, previous.arrivalTime);
+    }
+
+    /**
+     * Check that the legs of a journey follow each other, that every ride is a trip in the timetable, and that no
+     * stop is reached earlier than the RaptorWorker says it can be.
+     */
+    private static void checkJourney (RaptorJourney journey, RaptorWorkerData data, RaptorWorker worker,
+                                      TIntIntMap accessTimes, TIntIntMap egressTimes, int departureTime) {
+        assertEquals(departureTime, journey.departureTime);
+        List<RaptorJourney.Leg> legs = journey.legs;
+
+        RaptorJourney.Leg access = legs.get(0);
+        assertEquals("WALK", access.mode);
+        assertNull(access.fromStopId);
+        int accessStop = data.stopIds.indexOf(access.toStopId);
+        assertTrue(accessTimes.containsKey(accessStop));
+        assertEquals(departureTime, access.startTime);
+        assertEquals(departureTime + accessTimes.get(accessStop), access.endTime);
+
+        RaptorJourney.Leg egress = legs.get(legs.size() - 1);
+        assertEquals("WALK", egress.mode);
+        assertNull(egress.toStopId);
+        int egressStop = data.stopIds.indexOf(egress.fromStopId);
+        assertTrue(egressTimes.containsKey(egressStop));
+        assertEquals(egressTimes.get(egressStop), egress.endTime - egress.startTime);
+        assertEquals(journey.arrivalTime, egress.endTime);
+
+        int rides = 0;
+        int walkTime = 0;
+        RaptorJourney.Leg previous = null;
+        for (RaptorJourney.Leg leg : legs) {
+            if (previous != null) {
+                // Every leg starts where and after the previous one ended
+                assertEquals(previous.toStopId, leg.fromStopId);
+                assertTrue(leg.startTime >= previous.endTime);
+            }
+            if ("TRANSIT".equals(leg.mode)) {
+                rides++;
+                checkRide(leg, data);
+            } else {
+                assertEquals("WALK", leg.mode);
+                walkTime += leg.endTime - leg.startTime;
+            }
+            if (leg.toStopId != null) {
+                int stop = data.stopIds.indexOf(leg.toStopId);
+                assertTrue(leg.endTime >= worker.bestTimes[stop]);
+            }
+            previous = leg;
+        }
+        assertEquals(journey.rides, rides);
+        assertEquals(journey.walkTime, walkTime);
+    }
+
+    /** Check that a ride boards and alights the same trip of its pattern, at the times in the timetable. */
+    private static void checkRide (RaptorJourney.Leg ride, RaptorWorkerData data) {
+        RaptorWorkerTimetable timetable = data.timetablesForPattern.get(data.patternNames.indexOf(ride.patternId));
+        assertEquals(timetable.routeId, ride.routeId);
+        int boardStop = data.stopIds.indexOf(ride.fromStopId);
+        int alightStop = data.stopIds.indexOf(ride.toStopId);
+        int boardPosition = -1;
+        int alightPosition = -1;
+        for (int position = 0; position < timetable.stopIndices.length; position++) {
+            if (timetable.stopIndices[position] == boardStop && boardPosition == -1) boardPosition = position;
+            if (timetable.stopIndices[position] == alightStop) alightPosition = position;
+        }
+        assertTrue(boardPosition != -1);
+        assertTrue(alightPosition > boardPosition);
+        boolean found = false;
+        for (int trip = 0; trip < timetable.nTrips; trip++) {
+            found |= timetable.getDeparture(trip, boardPosition) == ride.startTime
+                    && timetable.getArrival(trip, alightPosition) == ride.endTime;
+        }
+        assertTrue("No trip boards at " + ride.startTime + " and alights at " + ride.endTime, found);
+    }
+
+    private static void assertNoTemporaryEdges (Graph g) {
+        for (Vertex vertex : g.getVertices()) {
+            for (Edge edge : vertex.getOutgoing()) {
+                assertFalse(edge instanceof TemporaryEdge);
+            }
+            for (Edge edge : vertex.getIncoming()) {
+                assertFalse(edge instanceof TemporaryEdge);
+            }
+        }
+    }
+}
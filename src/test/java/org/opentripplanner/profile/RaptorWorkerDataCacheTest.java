@@ -0,0 +1,73 @@
+package org.opentripplanner.profile;
+
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.scenario.RemoveTrip;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.Arrays;
+
+public class RaptorWorkerDataCacheTest extends TestCase {
+
+    private static ProfileRequest request() {
+        ProfileRequest request = new ProfileRequest();
+        request.date = new LocalDate(2015, 4, 20);
+        request.fromTime = 7 * 60 * 60;
+        request.toTime = 9 * 60 * 60;
+        request.walkSpeed = 1.3f;
+        request.maxWalkTime = 20;
+        request.transitModes = new TraverseModeSet("TRANSIT");
+        return request;
+    }
+
+    private static Scenario scenario(String tripId) {
+        RemoveTrip removeTrip = new RemoveTrip();
+        removeTrip.agencyId = "agency";
+        removeTrip.tripId = Arrays.asList(tripId);
+        Scenario scenario = new Scenario(1);
+        scenario.modifications.add(removeTrip);
+        return scenario;
+    }
+
+    @Test
+    public void testKey() {
+        Graph graph = new Graph();
+        graph.routerId = "default";
+        String key = RaptorWorkerDataCache.key(request(), graph, null);
+        assertEquals(key, RaptorWorkerDataCache.key(request(), graph, null));
+
+        ProfileRequest otherWindow = request();
+        otherWindow.toTime += 60 * 60;
+        assertFalse(key.equals(RaptorWorkerDataCache.key(otherWindow, graph, null)));
+
+        ProfileRequest otherDate = request();
+        otherDate.date = otherDate.date.plusDays(1);
+        assertFalse(key.equals(RaptorWorkerDataCache.key(otherDate, graph, null)));
+
+        Graph otherGraph = new Graph();
+        otherGraph.routerId = "other";
+        assertFalse(key.equals(RaptorWorkerDataCache.key(request(), otherGraph, null)));
+    }
+
+    @Test
+    public void testScenarioKey() {
+        Graph graph = new Graph();
+        ProfileRequest withScenario = request();
+        withScenario.scenario = scenario("trip1");
+        String key = RaptorWorkerDataCache.key(withScenario, graph, null);
+        assertFalse(key.equals(RaptorWorkerDataCache.key(request(), graph, null)));
+
+        // An equal scenario gives the same key, even after warnings were added when it was applied
+        ProfileRequest sameScenario = request();
+        sameScenario.scenario = scenario("trip1");
+        sameScenario.scenario.modifications.get(0).warnings.add("Trip not found");
+        assertEquals(key, RaptorWorkerDataCache.key(sameScenario, graph, null));
+
+        ProfileRequest otherScenario = request();
+        otherScenario.scenario = scenario("trip2");
+        assertFalse(key.equals(RaptorWorkerDataCache.key(otherScenario, graph, null)));
+    }
+}
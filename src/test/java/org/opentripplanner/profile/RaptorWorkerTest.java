@@ -0,0 +1,95 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.Arrays;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Test the repeated RAPTOR search over a time window.
+ */
+public class RaptorWorkerTest extends TestCase {
+
+    /**
+     * Test that splitting the time window into chunks searched on several threads gives the same scheduled travel
+     * times as searching all minutes one after another on one thread, however the window is split. Only times of
+     * MAX_DURATION or more depend on the state carried over from later minutes, and those are reported as unreached.
+     */
+    @Test
+    public void testChunkedSearchMatchesSequentialSearch () throws Exception {
+        Graph g = buildGraphNoTransit();
+        addRegularStopGrid(g);
+        addTransitMultipleLines(g);
+        link(g);
+        g.index(new DefaultStreetVertexIndexFactory());
+
+        ProfileRequest req = new ProfileRequest();
+        req.fromLon = req.toLon = -83.0118;
+        req.fromLat = req.toLat = 39.9908;
+        req.date = new LocalDate(2015, 9, 17);
+        req.walkSpeed = 1.3f;
+        req.fromTime = 7 * 3600;
+        req.toTime = 9 * 3600;
+        req.maxWalkTime = 20;
+        req.transitModes = new TraverseModeSet("TRANSIT");
+        req.accessModes = req.egressModes = req.directModes = new QualifiedModeSet("WALK");
+
+        RaptorWorkerData data = RepeatedRaptorProfileRouter.getRaptorWorkerData(req, g, null, new TaskStatistics());
+        assertTrue(data.hasSchedules);
+        assertFalse(data.hasFrequencies);
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(g, req);
+        TIntIntMap initialStops = router.findInitialStops(false, data);
+        router.cleanup();
+        assertFalse(initialStops.isEmpty());
+
+        // Only compare the transit times, the times without transit do not depend on the departure minute
+        int[] nonTransitTimes = new int[data.nTargets];
+        Arrays.fill(nonTransitTimes, RaptorWorker.UNREACHED);
+
+        int minutes = (req.toTime - req.fromTime - 60) / 60 + 1;
+        int[][] sequential = search(data, req, 1, initialStops, nonTransitTimes, minutes);
+
+        int reached = 0;
+        for (int[] timesAtTargets : sequential) {
+            for (int time : timesAtTargets) {
+                if (time != RaptorWorker.UNREACHED) {
+                    assertTrue(time < RaptorWorker.MAX_DURATION);
+                    reached++;
+                }
+            }
+        }
+        assertTrue(reached > 0);
+
+        // An even split, and one where the chunks do not all have the same number of minutes
+        for (int chunks : new int[] { 4, 7 }) {
+            int[][] chunked = search(data, req, chunks, initialStops, nonTransitTimes, minutes);
+            for (int iteration = 0; iteration < minutes; iteration++) {
+                assertTrue(chunks + " chunks, iteration " + iteration,
+                        Arrays.equals(sequential[iteration], chunked[iteration]));
+            }
+        }
+    }
+
+    private static int[][] search (RaptorWorkerData data, ProfileRequest req, int chunks, TIntIntMap initialStops,
+                                   int[] nonTransitTimes, int minutes) {
+        int[][] timesAtTargetsEachIteration = new int[minutes][];
+        boolean[] includeIterationInAverages = new boolean[minutes];
+        RaptorWorker[] workers = new RaptorWorker(data, req).runChunks(chunks, initialStops, nonTransitTimes,
+                req.fromTime, minutes, RaptorWorker.MONTE_CARLO_COUNT_PER_MINUTE, timesAtTargetsEachIteration,
+                includeIterationInAverages);
+        assertEquals(chunks, workers.length);
+        for (int[] timesAtTargets : timesAtTargetsEachIteration) {
+            assertNotNull(timesAtTargets);
+        }
+        return timesAtTargetsEachIteration;
+    }
+}
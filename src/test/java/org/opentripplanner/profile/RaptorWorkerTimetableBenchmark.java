@@ -0,0 +1,135 @@
+package org.opentripplanner.profile;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A microbenchmark comparing the stop-major layout of scheduled times in RaptorWorkerTimetable with the previous
+ * layout of one packed array of (arrival, departure) pairs per trip, which was searched with a linear scan over trips.
+ *
+ * Each operation does what a RAPTOR round does on a pattern: find the first trip leaving a stop after a given time,
+ * then read its arrival times at the following stops. The timetables and the queries are generated from fixed seeds,
+ * so runs are repeatable. This is not a unit test; run it by hand with a quiet machine, for instance:
+ *
+ * java -cp target/classes:target/test-classes:... org.opentripplanner.profile.RaptorWorkerTimetableBenchmark
+ */
+public class RaptorWorkerTimetableBenchmark {
+
+    private static final int N_PATTERNS = 1000;
+
+    private static final int N_QUERIES = 1_000_000;
+
+    private static final int WARMUP_ROUNDS = 10;
+
+    private static final int MEASURED_ROUNDS = 20;
+
+    /** The stops of each pattern ridden after boarding, as a RAPTOR round would until its times stop improving. */
+    private static final int STOPS_RIDDEN = 8;
+
+    public static void main (String[] args) {
+        Random random = new Random(42);
+        int[][][] tripsPerPattern = new int[N_PATTERNS][][];
+        RaptorWorkerTimetable[] timetables = new RaptorWorkerTimetable[N_PATTERNS];
+        for (int p = 0; p < N_PATTERNS; p++) {
+            // From a few trips on a rural route to a frequent metro line over a whole day
+            int nTrips = 5 + random.nextInt(300);
+            int nStops = 10 + random.nextInt(40);
+            int[][] trips = trips(nTrips, nStops, random);
+            tripsPerPattern[p] = trips;
+            timetables[p] = new RaptorWorkerTimetable(nTrips, nStops);
+            for (int trip = 0; trip < nTrips; trip++) {
+                timetables[p].setTripTimes(trip, trips[trip]);
+            }
+        }
+        int[] patterns = new int[N_QUERIES];
+        int[] stops = new int[N_QUERIES];
+        int[] times = new int[N_QUERIES];
+        for (int q = 0; q < N_QUERIES; q++) {
+            patterns[q] = random.nextInt(N_PATTERNS);
+            stops[q] = random.nextInt(timetables[patterns[q]].nStops);
+            times[q] = 5 * 60 * 60 + random.nextInt(18 * 60 * 60);
+        }
+
+        long[] perTrip = new long[MEASURED_ROUNDS];
+        long[] stopMajor = new long[MEASURED_ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            long perTripSum = runPerTrip(tripsPerPattern, patterns, stops, times);
+            long middle = System.nanoTime();
+            long stopMajorSum = runStopMajor(timetables, patterns, stops, times);
+            long end = System.nanoTime();
+            if (perTripSum != stopMajorSum) {
+                throw new IllegalStateException("The two layouts board different trips");
+            }
+            if (round >= 0) {
+                perTrip[round] = middle - start;
+                stopMajor[round] = end - middle;
+            }
+        }
+        double perTripNanos = median(perTrip) / (double) N_QUERIES;
+        double stopMajorNanos = median(stopMajor) / (double) N_QUERIES;
+        System.out.printf("%d patterns, %d queries, median of %d rounds%n", N_PATTERNS, N_QUERIES, MEASURED_ROUNDS);
+        System.out.printf("per-trip arrays, linear scan: %.1f ns/op%n", perTripNanos);
+        System.out.printf("stop-major arrays, binary search: %.1f ns/op%n", stopMajorNanos);
+        System.out.printf("speedup: %.2fx%n", perTripNanos / stopMajorNanos);
+    }
+
+    /** The previous layout and search, as RaptorWorkerTimetable had them. */
+    private static long runPerTrip (int[][][] tripsPerPattern, int[] patterns, int[] stops, int[] times) {
+        long sum = 0;
+        for (int q = 0; q < patterns.length; q++) {
+            int[][] trips = tripsPerPattern[patterns[q]];
+            int stop = stops[q];
+            int earliest = times[q] + RaptorWorkerTimetable.MIN_BOARD_TIME_SECONDS;
+            int trip = -1;
+            for (int t = 0; t < trips.length; t++) {
+                if (trips[t][stop * 2 + 1] > earliest) {
+                    trip = t;
+                    break;
+                }
+            }
+            if (trip == -1) continue;
+            int nStops = trips[trip].length / 2;
+            for (int s = stop + 1; s < nStops && s <= stop + STOPS_RIDDEN; s++) {
+                sum += trips[trip][s * 2];
+            }
+        }
+        return sum;
+    }
+
+    private static long runStopMajor (RaptorWorkerTimetable[] timetables, int[] patterns, int[] stops, int[] times) {
+        long sum = 0;
+        for (int q = 0; q < patterns.length; q++) {
+            RaptorWorkerTimetable timetable = timetables[patterns[q]];
+            int stop = stops[q];
+            int trip = timetable.findDepartureAfter(stop, times[q]);
+            if (trip == -1) continue;
+            for (int s = stop + 1; s < timetable.nStops && s <= stop + STOPS_RIDDEN; s++) {
+                sum += timetable.getArrival(trip, s);
+            }
+        }
+        return sum;
+    }
+
+    /** Trips running from 5 AM over the rest of the day at a regular headway, not overtaking each other. */
+    private static int[][] trips (int nTrips, int nStops, Random random) {
+        int headway = Math.max(60, 20 * 60 * 60 / nTrips);
+        int[][] trips = new int[nTrips][nStops * 2];
+        for (int trip = 0; trip < nTrips; trip++) {
+            int time = 5 * 60 * 60 + trip * headway;
+            for (int stop = 0; stop < nStops; stop++) {
+                trips[trip][stop * 2] = time;
+                time += 30;
+                trips[trip][stop * 2 + 1] = time;
+                time += 120 + random.nextInt(60);
+            }
+        }
+        return trips;
+    }
+
+    private static long median (long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,85 @@
+package org.opentripplanner.profile;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RaptorWorkerTimetableTest extends TestCase {
+
+    /** The trip found by scanning all the trips in order, as the timetable did before it was stored by stop. */
+    private static int scan(int[][] trips, int stop, int time) {
+        for (int trip = 0; trip < trips.length; trip++) {
+            if (trips[trip][stop * 2 + 1] > time + RaptorWorkerTimetable.MIN_BOARD_TIME_SECONDS) {
+                return trip;
+            }
+        }
+        return -1;
+    }
+
+    private static void check(int[][] trips, int nStops, Random random) {
+        RaptorWorkerTimetable timetable = new RaptorWorkerTimetable(trips.length, nStops);
+        for (int trip = 0; trip < trips.length; trip++) {
+            timetable.setTripTimes(trip, trips[trip]);
+        }
+        for (int trip = 0; trip < trips.length; trip++) {
+            for (int stop = 0; stop < nStops; stop++) {
+                assertEquals(trips[trip][stop * 2], timetable.getArrival(trip, stop));
+                assertEquals(trips[trip][stop * 2 + 1], timetable.getDeparture(trip, stop));
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            int stop = random.nextInt(nStops);
+            int time = random.nextInt(4 * 60 * 60);
+            assertEquals(scan(trips, stop, time), timetable.findDepartureAfter(stop, time));
+        }
+        // exactly at the departures
+        for (int[] times : trips) {
+            for (int stop = 0; stop < nStops; stop++) {
+                int time = times[stop * 2 + 1] - RaptorWorkerTimetable.MIN_BOARD_TIME_SECONDS;
+                assertEquals(scan(trips, stop, time), timetable.findDepartureAfter(stop, time));
+            }
+        }
+    }
+
+    private static int[][] trips(int nTrips, int nStops, boolean overtaking, Random random) {
+        int[][] trips = new int[nTrips][nStops * 2];
+        for (int trip = 0; trip < nTrips; trip++) {
+            int time = 60 * 60 + trip * 600;
+            for (int stop = 0; stop < nStops; stop++) {
+                trips[trip][stop * 2] = time;
+                time += random.nextInt(3) * 30;
+                trips[trip][stop * 2 + 1] = time;
+                // express trips overtake the local trips before them
+                time += overtaking && trip % 3 == 2 ? 60 : 120 + random.nextInt(240);
+            }
+        }
+        return trips;
+    }
+
+    @Test
+    public void testSameAsScan() {
+        Random random = new Random(42);
+        check(trips(50, 20, false, random), 20, random);
+        check(trips(1, 5, false, random), 5, random);
+    }
+
+    @Test
+    public void testOvertaking() {
+        Random random = new Random(43);
+        int[][] trips = trips(30, 40, true, random);
+        RaptorWorkerTimetable timetable = new RaptorWorkerTimetable(trips.length, 40);
+        for (int trip = 0; trip < trips.length; trip++) {
+            timetable.setTripTimes(trip, trips[trip]);
+        }
+        assertFalse(timetable.departuresSorted);
+        check(trips, 40, random);
+    }
+
+    @Test
+    public void testNoTrips() {
+        RaptorWorkerTimetable timetable = new RaptorWorkerTimetable(0, 3);
+        assertFalse(timetable.hasScheduledTrips());
+        assertEquals(-1, timetable.findDepartureAfter(1, 0));
+    }
+}
@@ -0,0 +1,100 @@
+package org.opentripplanner.profile;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.opentripplanner.graph_builder.module.StopTreeCacheModule;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.graph.SimpleConcreteEdge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Test that the stop trees computed by the graph builder are saved with the graph, used after loading it when they
+ * still match the graph, and computed again when they do not.
+ */
+public class StopTreeCacheTest extends TestCase {
+
+    private Graph graph;
+
+    private byte[] savedGraph;
+
+    @Override
+    protected void setUp() throws Exception {
+        graph = buildGraphNoTransit();
+        addRegularStopGrid(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        new StopTreeCacheModule().buildGraph(graph, new HashMap<>());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        graph.save(out);
+        savedGraph = out.toByteArray();
+    }
+
+    private Graph load() {
+        return Graph.load(new ByteArrayInputStream(savedGraph));
+    }
+
+    @Test
+    public void testSavedCacheIsUsed() {
+        StopTreeCache built = graph.stopTreeCache;
+        assertNotNull(built);
+        assertTrue(built.getStopCount() > 0);
+
+        Graph loaded = load();
+        StopTreeCache saved = loaded.stopTreeCache;
+        assertNotNull(saved);
+        assertNotSame(built, saved);
+        assertTrue(saved.matches(loaded, GraphIndex.MAX_WALK_METERS));
+        // The arrays saved with the graph are used as they are, rather than computed again
+        assertSame(saved, loaded.index.getStopTreeCache());
+        assertEquals(built.getStopCount(), saved.getStopCount());
+        assertTrue(Arrays.equals(built.getVertexDistances(), saved.getVertexDistances()));
+        int stopsWithTrees = 0;
+        for (TransitStop stop : loaded.index.stopVertexForStop.values()) {
+            int[] distances = saved.distancesForStop(stop);
+            assertNotNull(distances);
+            assertTrue(Arrays.equals(built.distancesForStop((TransitStop) graph.getVertex(stop.getLabel())),
+                    distances));
+            if (distances.length > 0) stopsWithTrees++;
+        }
+        assertTrue(stopsWithTrees > 0);
+    }
+
+    @Test
+    public void testCacheWithOtherDistanceIsRebuilt() {
+        Graph loaded = load();
+        assertFalse(loaded.stopTreeCache.matches(loaded, GraphIndex.MAX_WALK_METERS + 100));
+
+        loaded.stopTreeCache = new StopTreeCache(loaded, 200);
+        assertFalse(loaded.stopTreeCache.matches(loaded, GraphIndex.MAX_WALK_METERS));
+        StopTreeCache used = loaded.index.getStopTreeCache();
+        assertNotSame(loaded.stopTreeCache, used);
+        assertEquals(GraphIndex.MAX_WALK_METERS, used.maxWalkMeters);
+        assertTrue(used.matches(loaded, GraphIndex.MAX_WALK_METERS));
+    }
+
+    @Test
+    public void testCacheOfOtherStreetsIsRebuilt() {
+        Graph loaded = load();
+        // A street vertex the cache was not built with
+        Vertex existing = loaded.getVertices().iterator().next();
+        Vertex added = new IntersectionVertex(loaded, "added", existing.getX() + 0.0001, existing.getY());
+        new SimpleConcreteEdge(existing, added);
+        assertFalse(loaded.stopTreeCache.matches(loaded, GraphIndex.MAX_WALK_METERS));
+
+        StopTreeCache used = loaded.index.getStopTreeCache();
+        assertNotSame(loaded.stopTreeCache, used);
+        assertEquals(loaded.stopTreeCache.getStopCount(), used.getStopCount());
+        assertTrue(used.matches(loaded, GraphIndex.MAX_WALK_METERS));
+    }
+}
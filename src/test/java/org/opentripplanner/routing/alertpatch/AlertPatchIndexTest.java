@@ -0,0 +1,165 @@
+package org.opentripplanner.routing.alertpatch;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.SimpleConcreteEdge;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class AlertPatchIndexTest {
+
+    private FeedScopedId stop = new FeedScopedId("A", "stop");
+
+    private FeedScopedId route = new FeedScopedId("A", "route");
+
+    private FeedScopedId trip = new FeedScopedId("A", "trip");
+
+    private Edge[] edges;
+
+    @Before
+    public void setUp() {
+        Graph graph = new Graph();
+        IntersectionVertex[] vertices = new IntersectionVertex[4];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new IntersectionVertex(graph, "v" + i, i * 0.001, 0);
+        }
+        edges = new Edge[3];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = new SimpleConcreteEdge(vertices[i], vertices[i + 1]);
+        }
+    }
+
+    private static AlertPatch patch(String id, String text) {
+        AlertPatch patch = new AlertPatch();
+        patch.setId(id);
+        patch.setAlert(Alert.createSimpleAlerts(text));
+        return patch;
+    }
+
+    @Test
+    public void testAddPatch() {
+        AlertPatch stopPatch = patch("stop", "Stop closed");
+        stopPatch.setStop(stop);
+        AlertPatch routePatch = patch("route", "Route detour");
+        routePatch.setRoute(route);
+        routePatch.setTrip(trip);
+        AlertPatchIndex index = AlertPatchIndex.EMPTY.toBuilder()
+                .addPatch(stopPatch, Arrays.asList(edges[0], edges[1]))
+                .addPatch(routePatch, Collections.singletonList(edges[1]))
+                .build();
+
+        assertEquals(2, index.size());
+        assertSame(stopPatch, index.getPatch("stop"));
+        assertEquals(Collections.singletonList(stopPatch), index.getStopPatches(stop));
+        assertEquals(Collections.singletonList(routePatch), index.getRoutePatches(route));
+        assertEquals(Collections.singletonList(routePatch), index.getTripPatches(trip));
+        assertTrue(index.getRoutePatches(new FeedScopedId("A", "other")).isEmpty());
+
+        assertArrayEquals(new AlertPatch[] { stopPatch }, index.getEdgePatches(edges[0]));
+        assertEquals(new HashSet<>(Arrays.asList(stopPatch, routePatch)),
+                new HashSet<>(Arrays.asList(index.getEdgePatches(edges[1]))));
+        assertFalse(index.hasEdgePatches(edges[2]));
+        assertEquals(0, index.getEdgePatches(edges[2]).length);
+
+        // The index it was built from is untouched
+        assertEquals(0, AlertPatchIndex.EMPTY.size());
+        assertFalse(AlertPatchIndex.EMPTY.hasEdgePatches(edges[0]));
+    }
+
+    @Test
+    public void testRemovePatch() {
+        AlertPatch stopPatch = patch("stop", "Stop closed");
+        stopPatch.setStop(stop);
+        AlertPatch otherPatch = patch("other", "Elevator out of service");
+        otherPatch.setStop(stop);
+        AlertPatchIndex before = AlertPatchIndex.EMPTY.toBuilder()
+                .addPatch(stopPatch, Arrays.asList(edges[0], edges[1]))
+                .addPatch(otherPatch, Collections.singletonList(edges[1]))
+                .build();
+
+        AlertPatchIndex after = before.toBuilder().removePatch("stop").removePatch("unknown").build();
+        assertEquals(1, after.size());
+        assertNull(after.getPatch("stop"));
+        assertEquals(Collections.singletonList(otherPatch), after.getStopPatches(stop));
+        // The patch is detached from all the edges it was added with
+        assertFalse(after.hasEdgePatches(edges[0]));
+        assertArrayEquals(new AlertPatch[] { otherPatch }, after.getEdgePatches(edges[1]));
+
+        // Readers of the previous index still see the patch
+        assertSame(stopPatch, before.getPatch("stop"));
+        assertArrayEquals(new AlertPatch[] { stopPatch }, before.getEdgePatches(edges[0]));
+        assertEquals(2, before.getEdgePatches(edges[1]).length);
+    }
+
+    @Test
+    public void testReplacePatch() {
+        AlertPatch first = patch("id", "Stop closed");
+        first.setStop(stop);
+        AlertPatch second = patch("id", "Stop closed until Monday");
+        second.setRoute(route);
+        AlertPatchIndex index = AlertPatchIndex.EMPTY.toBuilder()
+                .addPatch(first, Arrays.asList(edges[0], edges[1]))
+                .build()
+                .toBuilder()
+                .addPatch(second, Arrays.asList(edges[1], edges[2]))
+                .build();
+
+        // Adding a patch with the same ID removes the old one from all its keys and edges
+        assertEquals(1, index.size());
+        assertSame(second, index.getPatch("id"));
+        assertTrue(index.getStopPatches(stop).isEmpty());
+        assertEquals(Collections.singletonList(second), index.getRoutePatches(route));
+        assertFalse(index.hasEdgePatches(edges[0]));
+        assertArrayEquals(new AlertPatch[] { second }, index.getEdgePatches(edges[1]));
+        assertArrayEquals(new AlertPatch[] { second }, index.getEdgePatches(edges[2]));
+    }
+
+    @Test
+    public void testEdgePatches() {
+        AlertPatch patch = patch("id", "Platform change");
+        AlertPatchIndex index = AlertPatchIndex.EMPTY.toBuilder()
+                .addEdgePatch(edges[0], patch)
+                .addEdgePatch(edges[0], patch)
+                .addEdgePatch(edges[1], patch)
+                .build();
+        // Edges are sets of patches
+        assertEquals(1, index.getEdgePatches(edges[0]).length);
+
+        index = index.toBuilder().removeEdgePatch(edges[0], patch).build();
+        assertFalse(index.hasEdgePatches(edges[0]));
+        assertTrue(index.hasEdgePatches(edges[1]));
+    }
+
+    @Test
+    public void testRemoveEdge() {
+        AlertPatch first = patch("first", "Stop closed");
+        first.setStop(stop);
+        AlertPatch second = patch("second", "Route detour");
+        second.setRoute(route);
+        AlertPatchIndex index = AlertPatchIndex.EMPTY.toBuilder()
+                .addPatch(first, Arrays.asList(edges[0], edges[1]))
+                .addPatch(second, Collections.singletonList(edges[1]))
+                .build();
+
+        // An edge removed from the graph loses all its patches, which stay attached to their other edges
+        index = index.toBuilder().removeEdge(edges[1]).build();
+        assertFalse(index.hasEdgePatches(edges[1]));
+        assertEquals(2, index.size());
+        assertArrayEquals(new AlertPatch[] { first }, index.getEdgePatches(edges[0]));
+        assertEquals(Collections.singletonList(second), index.getRoutePatches(route));
+
+        // Removing the patches later does not bring the removed edge back
+        index = index.toBuilder().removePatch("first").removePatch("second").build();
+        assertEquals(0, index.size());
+        assertFalse(index.hasEdgePatches(edges[0]));
+        assertFalse(index.hasEdgePatches(edges[1]));
+    }
+}
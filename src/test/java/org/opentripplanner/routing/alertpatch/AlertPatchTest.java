@@ -1,13 +1,18 @@
 package org.opentripplanner.routing.alertpatch;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
 import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Route;
 import org.opentripplanner.model.calendar.CalendarServiceData;
 import org.opentripplanner.ConstantsForTests;
 import org.opentripplanner.gtfs.GtfsContext;
@@ -15,6 +20,7 @@ import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.edgetype.factory.PatternHopFactory;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
@@ -185,4 +191,47 @@ public class AlertPatchTest extends TestCase {
         }
         assertEquals(expectedAlerts, actualAlerts);
     }
+
+    public void testDirectionIdPatch() {
+        Route route = graph.index.routeForId.get(new FeedScopedId("agency", "1"));
+        List<TripPattern> patterns = new ArrayList<TripPattern>(graph.index.patternsForRoute.get(route));
+        assertFalse(patterns.isEmpty());
+        // Pretend the first pattern runs in the other direction from the rest
+        TripPattern outbound = patterns.get(0);
+        for (TripPattern pattern : patterns) {
+            pattern.directionId = pattern == outbound ? 1 : 0;
+        }
+        Set<Edge> outboundEdges = new HashSet<Edge>();
+        for (int i = 0; i < outbound.stopPattern.stops.length; i++) {
+            outboundEdges.add(outbound.boardEdges[i]);
+            outboundEdges.add(outbound.alightEdges[i]);
+        }
+        outboundEdges.remove(null);
+
+        AlertPatch outboundPatch = new AlertPatch();
+        outboundPatch.setFeedId(feedId);
+        outboundPatch.setAlert(Alert.createSimpleAlerts("Outbound detour"));
+        outboundPatch.setId("outbound");
+        outboundPatch.setRoute(new FeedScopedId("agency", "1"));
+        outboundPatch.setDirectionId(1);
+        assertEquals(outboundEdges, new HashSet<Edge>(outboundPatch.getAffectedEdges(graph)));
+
+        AlertPatch inboundPatch = new AlertPatch();
+        inboundPatch.setFeedId(feedId);
+        inboundPatch.setAlert(Alert.createSimpleAlerts("Inbound detour"));
+        inboundPatch.setId("inbound");
+        inboundPatch.setRoute(new FeedScopedId("agency", "1"));
+        inboundPatch.setDirectionId(0);
+        for (Edge edge : inboundPatch.getAffectedEdges(graph)) {
+            assertFalse(outboundEdges.contains(edge));
+        }
+
+        // Applying attaches each patch to the patterns of its own direction only, and removing detaches it again
+        outboundPatch.apply(graph);
+        inboundPatch.apply(graph);
+        Edge board = outbound.boardEdges[0];
+        assertEquals(Arrays.asList(outboundPatch), Arrays.asList(graph.getAlertPatches(board)));
+        outboundPatch.remove(graph);
+        assertEquals(0, graph.getAlertPatches(board).length);
+    }
 }
@@ -9,6 +9,7 @@ import junit.framework.TestCase;
 import org.opentripplanner.api.parameter.QualifiedModeSet;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.*;
@@ -104,4 +105,58 @@ public class TestBikeRental extends TestCase {
         path = tree.getPath(v3, false);
         assertNotNull(path);
     }
+
+    public void testRealtimeAvailability() throws Exception {
+        Graph graph = new Graph();
+        StreetVertex v1 = new IntersectionVertex(graph, "v1", -77.0492, 38.856, "v1");
+        StreetVertex v2 = new IntersectionVertex(graph, "v2", -77.0492, 38.857, "v2");
+        StreetVertex v3 = new IntersectionVertex(graph, "v3", -77.0492, 38.858, "v3");
+        new StreetEdge(v1, v2, GeometryUtils.makeLineString(-77.0492, 38.856, -77.0492, 38.857),
+                "S. Crystal Dr", 87, StreetTraversalPermission.PEDESTRIAN, false);
+        new StreetEdge(v2, v3, GeometryUtils.makeLineString(-77.0492, 38.857, -77.0492, 38.858),
+                "S. Crystal Dr", 87, StreetTraversalPermission.BICYCLE, false);
+
+        // Stations created by a realtime updater keep the counts of the update that created them, here none
+        Set<String> networks = new HashSet<String>(Arrays.asList("default"));
+        BikeRentalStationService service = graph.getService(BikeRentalStationService.class, true);
+        StreetVertex[] streetVertices = { v2, v3 };
+        for (int i = 0; i < streetVertices.length; i++) {
+            BikeRentalStation station = new BikeRentalStation();
+            station.id = "id" + i;
+            station.name = new NonLocalizedString("station" + i);
+            station.x = streetVertices[i].getX();
+            station.y = streetVertices[i].getY();
+            station.bikesAvailable = 0;
+            station.spacesAvailable = 0;
+            BikeRentalStationVertex stationVertex = new BikeRentalStationVertex(graph, station);
+            stationVertex.setAvailabilityIndex(service.getStationIndex(station.id));
+            new StreetBikeRentalLink(stationVertex, streetVertices[i]);
+            new StreetBikeRentalLink(streetVertices[i], stationVertex);
+            new RentABikeOnEdge(stationVertex, stationVertex, networks);
+            new RentABikeOffEdge(stationVertex, stationVertex, networks);
+        }
+
+        // Without a published table nothing is known about these stations, so they are not restricted
+        assertNotNull(routeWithRentedBike(graph, v1, v3));
+
+        // A published table is used: no spaces to drop the bike off, then the station is out of service
+        service.publishAvailability(service.getAvailability().toBuilder()
+                .setAvailability(0, 5, 5).setAvailability(1, 5, 0).build());
+        assertNull(routeWithRentedBike(graph, v1, v3));
+        service.publishAvailability(service.getAvailability().toBuilder().setOutOfService(1).build());
+        assertNull(routeWithRentedBike(graph, v1, v3));
+        service.publishAvailability(service.getAvailability().toBuilder().setAvailability(1, 5, 5).build());
+        assertNotNull(routeWithRentedBike(graph, v1, v3));
+    }
+
+    private GraphPath routeWithRentedBike(Graph graph, StreetVertex from, StreetVertex to) throws Exception {
+        RoutingRequest options = new RoutingRequest();
+        new QualifiedModeSet("BICYCLE_RENT,TRANSIT").applyToRoutingRequest(options);
+        options.useBikeRentalAvailabilityInformation = true;
+        options.setRoutingContext(graph, from, to);
+        ShortestPathTree tree = new AStar().getShortestPathTree(options);
+        GraphPath path = tree.getPath(to, false);
+        options.cleanup();
+        return path;
+    }
 }
@@ -0,0 +1,62 @@
+package org.opentripplanner.routing.bike_rental;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BikeRentalStationAvailabilityTest {
+
+    @Test
+    public void testEmptyTable() {
+        BikeRentalStationAvailability empty = BikeRentalStationAvailability.EMPTY;
+        assertFalse(empty.hasStation(-1));
+        assertFalse(empty.hasStation(0));
+        assertFalse(empty.isOutOfService(0));
+    }
+
+    @Test
+    public void testPublishedTablesAreImmutable() {
+        BikeRentalStationAvailability.Builder builder = BikeRentalStationAvailability.EMPTY.toBuilder();
+        builder.setAvailability(0, 3, 7);
+        BikeRentalStationAvailability first = builder.build();
+        assertEquals(1, first.version);
+        assertTrue(first.hasStation(0));
+        assertEquals(3, first.getBikesAvailable(0));
+        assertEquals(7, first.getSpacesAvailable(0));
+
+        // Further changes to the builder must not leak into the table that was already built
+        builder.setAvailability(0, 1, 9);
+        assertEquals(3, first.getBikesAvailable(0));
+
+        BikeRentalStationAvailability second = first.toBuilder().setOutOfService(0).setAvailability(5, 2, 2).build();
+        assertEquals(2, second.version);
+        assertTrue(second.isOutOfService(0));
+        assertFalse(first.isOutOfService(0));
+        assertEquals(2, second.getBikesAvailable(5));
+        // Indexes that were skipped over are not in service until they are reported
+        assertTrue(second.isOutOfService(3));
+        assertFalse(first.hasStation(5));
+    }
+
+    @Test
+    public void testUnchangedSlotsAreCarriedOver() {
+        BikeRentalStationAvailability first = BikeRentalStationAvailability.EMPTY.toBuilder()
+                .setAvailability(0, 3, 7).setAvailability(1, 4, 6).build();
+        // A table built without changes is the same as the previous one, apart from its version
+        BikeRentalStationAvailability unchanged = first.toBuilder().build();
+        assertEquals(2, unchanged.version);
+        assertEquals(3, unchanged.getBikesAvailable(0));
+        assertEquals(6, unchanged.getSpacesAvailable(1));
+
+        BikeRentalStationAvailability.Builder builder = unchanged.toBuilder();
+        BikeRentalStationAvailability second = builder.setAvailability(1, 0, 10).build();
+        assertEquals(0, second.getBikesAvailable(1));
+        assertEquals(3, second.getBikesAvailable(0));
+        assertEquals(4, unchanged.getBikesAvailable(1));
+        assertEquals(4, first.getBikesAvailable(1));
+        // Changes after building still leave both tables alone
+        builder.setAvailability(0, 1, 1);
+        assertEquals(3, second.getBikesAvailable(0));
+        assertEquals(3, unchanged.getBikesAvailable(0));
+    }
+}
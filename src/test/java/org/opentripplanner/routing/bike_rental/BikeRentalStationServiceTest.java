@@ -0,0 +1,55 @@
+package org.opentripplanner.routing.bike_rental;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class BikeRentalStationServiceTest {
+
+    @Test
+    public void testReleasedIndexesAreReused() {
+        BikeRentalStationService service = new BikeRentalStationService();
+        assertEquals(0, service.getStationIndex("dock"));
+        assertEquals(1, service.getStationIndex("bike-1"));
+        assertEquals(2, service.getStationIndex("bike-2"));
+        assertEquals(1, service.getStationIndex("bike-1"));
+
+        // Floating bikes that were rented give their slots to the next new ones
+        service.releaseStationIndex("bike-1");
+        service.releaseStationIndex("bike-2");
+        service.releaseStationIndex("unknown");
+        assertEquals(2, service.getStationIndex("bike-3"));
+        assertEquals(1, service.getStationIndex("bike-4"));
+        assertEquals(3, service.getStationIndex("bike-5"));
+        assertEquals(0, service.getStationIndex("dock"));
+
+        // A released station that does come back is treated as new
+        assertEquals(4, service.getStationIndex("bike-1"));
+    }
+
+    @Test
+    public void testIndexesAreNotSerialized() throws Exception {
+        BikeRentalStationService service = new BikeRentalStationService();
+        service.getStationIndex("dock");
+        service.getStationIndex("bike-1");
+        service.releaseStationIndex("bike-1");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(service);
+        }
+        BikeRentalStationService loaded;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            loaded = (BikeRentalStationService) in.readObject();
+        }
+        // A loaded graph starts without realtime stations, so indexes are handed out from zero again
+        assertEquals(0, loaded.getStationIndex("bike-2"));
+        assertEquals(1, loaded.getStationIndex("dock"));
+        assertSame(BikeRentalStationAvailability.EMPTY, loaded.getAvailability());
+    }
+}
@@ -6,14 +6,28 @@ import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
+import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.GtfsTest;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.index.GraphQLRequestContext;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.index.model.TripTimeShort;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
 import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.FrequencyEntry;
+import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitStop;
 
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -98,6 +112,145 @@ public class GraphIndexTest extends GtfsTest {
         assertTrue(stops.size() >= 3); // Query can overselect
     }
 
+    /**
+     * Check that departure board queries return the same departures as scanning all trips of each pattern through the
+     * stop, which is how they were found before the departure board index existed.
+     */
+    public void testStopTimesForStop() {
+        // A Monday morning, when both the daily and the weekday services run
+        ServiceDate serviceDate = new ServiceDate(2014, 6, 2);
+        long startTime = serviceDate.getAsDate(graph.getTimeZone()).getTime() / 1000 + 7 * 60 * 60;
+        int timeRange = 24 * 60 * 60;
+        int departuresChecked = 0;
+        for (Stop stop : graph.index.stopForId.values()) {
+            Map<String, List<Long>> expected = new HashMap<>();
+            for (TripPattern pattern : graph.index.patternsForStop.get(stop)) {
+                List<Long> departures = scanDepartures(pattern, stop, startTime, timeRange, 3);
+                if (!departures.isEmpty()) {
+                    expected.put(pattern.code, departures);
+                }
+            }
+            // The second query is answered from the departure board index built by the first one
+            for (int query = 0; query < 2; query++) {
+                List<StopTimesInPattern> stopTimesForPatterns =
+                        graph.index.stopTimesForStop(stop, startTime, timeRange, 3, false);
+                Map<String, List<Long>> actual = new HashMap<>();
+                for (StopTimesInPattern stopTimes : stopTimesForPatterns) {
+                    List<Long> departures = new ArrayList<>();
+                    for (TripTimeShort time : stopTimes.times) {
+                        departures.add(time.serviceDay + time.realtimeDeparture);
+                    }
+                    actual.put(stopTimes.pattern.id, departures);
+                }
+                assertEquals(expected, actual);
+            }
+            for (List<Long> departures : expected.values()) {
+                departuresChecked += departures.size();
+            }
+        }
+        assertTrue(departuresChecked > 0);
+
+        // Hand-checked: only route 1 serves stop A, with trips leaving at 00:00, 00:20 and 08:00 every day
+        Stop stopA = graph.index.stopForId.get(new FeedScopedId("FEED", "A"));
+        long monday = serviceDate.getAsDate(graph.getTimeZone()).getTime() / 1000;
+        long tuesday = serviceDate.next().getAsDate(graph.getTimeZone()).getTime() / 1000;
+        List<StopTimesInPattern> departuresFromA = graph.index.stopTimesForStop(stopA, startTime, timeRange, 3, false);
+        assertEquals(1, departuresFromA.size());
+        List<TripTimeShort> times = departuresFromA.get(0).times;
+        assertEquals(3, times.size());
+        assertEquals("1.3", times.get(0).tripId.getId());
+        assertEquals(monday + 8 * 60 * 60, times.get(0).serviceDay + times.get(0).realtimeDeparture);
+        assertEquals("1.1", times.get(1).tripId.getId());
+        assertEquals(tuesday, times.get(1).serviceDay + times.get(1).realtimeDeparture);
+        assertEquals("1.2", times.get(2).tripId.getId());
+        assertEquals(tuesday + 20 * 60, times.get(2).serviceDay + times.get(2).realtimeDeparture);
+    }
+
+    /**
+     * Test that the departures of a stop are only sorted again for the patterns whose timetable a new realtime snapshot
+     * replaced, and that a snapshot with the same timetables is answered from the departures already built.
+     */
+    public void testDepartureBoardIndexFollowsSnapshots() {
+        ServiceDate serviceDate = new ServiceDate(2014, 6, 2);
+        Stop stop = null;
+        for (Stop candidate : graph.index.stopForId.values()) {
+            if (graph.index.patternsForStop.get(candidate).size() >= 2) {
+                stop = candidate;
+                break;
+            }
+        }
+        assertNotNull(stop);
+        List<TripPattern> patterns = new ArrayList<>(graph.index.patternsForStop.get(stop));
+        DepartureBoardIndex index = new DepartureBoardIndex(graph, graph.getCalendarService());
+        DepartureBoardIndex.PatternDepartures[] scheduled = index.getDepartures(stop, serviceDate, patterns, null);
+        assertSame(scheduled, index.getDepartures(stop, serviceDate, patterns, null));
+
+        // Delay a trip of the first pattern
+        TripPattern delayedPattern = patterns.get(0);
+        TripTimes delayed = new TripTimes(delayedPattern.scheduledTimetable.tripTimes.get(0));
+        for (int sidx = 0; sidx < delayed.getNumStops(); sidx++) {
+            delayed.updateArrivalDelay(sidx, 120);
+            delayed.updateDepartureDelay(sidx, 120);
+        }
+        TimetableSnapshot buffer = new TimetableSnapshot();
+        assertTrue(buffer.update(delayedPattern.route.getId().getAgencyId(), delayedPattern, delayed, serviceDate));
+        TimetableSnapshot snapshot = buffer.commit(true);
+
+        DepartureBoardIndex.PatternDepartures[] realtime = index.getDepartures(stop, serviceDate, patterns, snapshot);
+        assertNotSame(scheduled[0], realtime[0]);
+        assertSame(snapshot.resolve(delayedPattern, serviceDate), realtime[0].timetable);
+        for (int p = 1; p < patterns.size(); p++) {
+            assertSame(scheduled[p], realtime[p]);
+        }
+
+        // A later snapshot without changes for this stop gets the same departures
+        TimetableSnapshot unchanged = buffer.commit(true);
+        assertNotSame(snapshot, unchanged);
+        assertSame(realtime, index.getDepartures(stop, serviceDate, patterns, unchanged));
+        // Going back to the scheduled timetables sorts the delayed pattern again
+        DepartureBoardIndex.PatternDepartures[] again = index.getDepartures(stop, serviceDate, patterns, null);
+        assertSame(delayedPattern.scheduledTimetable, again[0].timetable);
+    }
+
+    /**
+     * @return the first n departures of the pattern at the stop after the start time in the scheduled timetables, found
+     * by scanning all trips like GraphIndex.stopTimesForStop did before it used a departure board index.
+     */
+    private List<Long> scanDepartures(TripPattern pattern, Stop stop, long startTime, int timeRange, int n) {
+        List<Long> departures = new ArrayList<>();
+        ServiceDate date = new ServiceDate(new Date(startTime * 1000));
+        for (ServiceDate serviceDate : new ServiceDate[] { date.previous(), date, date.next() }) {
+            ServiceDay sd = new ServiceDay(graph, serviceDate, graph.getCalendarService(),
+                    pattern.route.getAgency().getId());
+            Timetable tt = pattern.scheduledTimetable;
+            if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
+            int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
+            for (int sidx = 0; sidx < pattern.stopPattern.stops.length; sidx++) {
+                if (pattern.stopPattern.stops[sidx] != stop) continue;
+                for (TripTimes t : tt.tripTimes) {
+                    if (!sd.serviceRunning(t.serviceCode)) continue;
+                    int departure = t.getDepartureTime(sidx);
+                    if (departure != -1 && departure >= secondsSinceMidnight) {
+                        departures.add(sd.time(departure));
+                    }
+                }
+                for (FrequencyEntry freq : tt.frequencyEntries) {
+                    if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
+                    int departure = freq.nextDepartureTime(sidx, secondsSinceMidnight);
+                    if (departure == -1) continue;
+                    int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
+                            freq.tripTimes.getDepartureTime(0);
+                    for (int i = 0; departure <= lastDeparture && i < n; i++) {
+                        departures.add(sd.time(departure));
+                        departure += freq.headway;
+                    }
+                }
+            }
+        }
+        Collections.sort(departures);
+        return departures.size() > n ? new ArrayList<>(departures.subList(0, n)) : departures;
+    }
+
     public void testGraphQLSimple() {
         String query =
                 "query Agency{" +
@@ -112,6 +265,67 @@ public class GraphIndexTest extends GtfsTest {
         assertEquals("Fake Agency", ((Map) data.get("agency")).get("name"));
     }
 
+    /** Departures of many stops in one query, resolved against a single snapshot shared through the query context. */
+    public void testGraphQLStoptimesForAllStops() {
+        String query =
+                "query Stoptimes{" +
+                "    stops{" +
+                "        routes{ shortName }" +
+                "        stoptimesWithoutPatterns(numberOfDepartures: 2){ scheduledDeparture }" +
+                "        stoptimesForPatterns(numberOfDepartures: 2){ stoptimes{ realtimeDeparture } }" +
+                "    }" +
+                "}";
+
+        Response response = graph.index.getGraphQLResponse(query, new HashMap<>(), null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Map<String, Object> data = (Map<String, Object>) ((Map) response.getEntity()).get("data");
+        assertEquals(graph.index.stopForId.size(), ((List) data.get("stops")).size());
+    }
+
+    /** A query that runs out of time returns what was resolved before the deadline, not a server error. */
+    public void testGraphQLTimeout() throws InterruptedException {
+        String query =
+                "query Stoptimes{" +
+                "    agency(id: \"agency\"){ name }" +
+                "    stops{" +
+                "        stoptimesWithoutPatterns(numberOfDepartures: 2){ scheduledDeparture }" +
+                "    }" +
+                "}";
+
+        // A budget of one millisecond which is already spent when the query starts
+        GraphQLRequestContext context = new GraphQLRequestContext(graph.index, 1);
+        Thread.sleep(5);
+        Response response = graph.index.getGraphQLResponse(query, new HashMap<>(), null, context);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertTrue(context.isTimedOut());
+
+        Map<String, Object> content = (Map<String, Object>) response.getEntity();
+        assertTrue(content.containsKey("data"));
+        assertEquals(1, ((List) content.get("errors")).size());
+        Map<String, Object> cost = (Map<String, Object>) ((Map) content.get("extensions")).get("cost");
+        assertEquals(Boolean.TRUE, cost.get("timedOut"));
+    }
+
+    /** The cost limit is off unless configured, and a configured limit rejects queries before running them. */
+    public void testGraphQLMaxQueryCost() {
+        String query =
+                "query Stops{" +
+                "    stops{ name }" +
+                "}";
+
+        assertEquals(0, graph.index.graphQLMaxQueryCost);
+        assertEquals(0, graph.index.graphQLTimeoutMillis);
+        Response response = graph.index.getGraphQLResponse(query, new HashMap<>(), null);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        graph.index.graphQLMaxQueryCost = 1;
+        response = graph.index.getGraphQLResponse(query, new HashMap<>(), null);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        Map<String, Object> content = (Map<String, Object>) response.getEntity();
+        assertFalse(content.containsKey("data"));
+        assertEquals(1, ((List) content.get("errors")).size());
+    }
+
     public void testGraphQLNested() {
         String query =
                 "query Agency{\n" +
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -13,6 +14,7 @@ import org.junit.Test;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 
 public class AlertPatchServiceImplTest {
@@ -28,6 +30,11 @@ public class AlertPatchServiceImplTest {
         public void remove(Graph graph) {
             // NO-OP
         }
+
+        @Override
+        public Collection<Edge> getAffectedEdges(Graph graph) {
+            return Collections.emptyList();
+        }
     }
 
     private TestAlertPatch[] alerts;
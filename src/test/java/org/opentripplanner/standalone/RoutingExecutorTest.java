@@ -0,0 +1,179 @@
+package org.opentripplanner.standalone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+public class RoutingExecutorTest {
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        RoutingExecutor executor = new RoutingExecutor(1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            StubAsyncResponse running = new StubAsyncResponse();
+            executor.execute(running, "a", () -> {
+                started.countDown();
+                release.await();
+                return "first";
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            StubAsyncResponse queued = new StubAsyncResponse();
+            executor.execute(queued, "a", () -> "second");
+            StubAsyncResponse rejected = new StubAsyncResponse();
+            executor.execute(rejected, "a", () -> "third");
+
+            // The third request is answered right away without being computed
+            assertEquals(503, ((Response) rejected.await()).getStatus());
+            assertEquals(1, executor.getRejectedQueueFullCount());
+            assertEquals(2, (int) executor.getInFlightByRouter().get("a"));
+
+            release.countDown();
+            assertEquals("first", running.await());
+            assertEquals("second", queued.await());
+            assertEquals(2, executor.getQueueWaitTime().getCount());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRouterLimit() throws Exception {
+        RoutingExecutor executor = new RoutingExecutor(2, 10, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            StubAsyncResponse first = new StubAsyncResponse();
+            executor.execute(first, "a", () -> {
+                release.await();
+                return "a1";
+            });
+            StubAsyncResponse second = new StubAsyncResponse();
+            executor.execute(second, "a", () -> "a2");
+            StubAsyncResponse other = new StubAsyncResponse();
+            executor.execute(other, "b", () -> "b1");
+
+            // Router a already has a request in flight, router b is not affected
+            assertEquals(503, ((Response) second.await()).getStatus());
+            assertEquals("b1", other.await());
+            assertEquals(1, executor.getRejectedRouterLimitCount());
+
+            release.countDown();
+            assertEquals("a1", first.await());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExceptionsArePassedOn() throws Exception {
+        RoutingExecutor executor = new RoutingExecutor(1, 1, 0);
+        try {
+            StubAsyncResponse response = new StubAsyncResponse();
+            executor.execute(response, "a", () -> {
+                throw new IllegalStateException("boom");
+            });
+            assertTrue(response.await() instanceof IllegalStateException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** Records the value the response is resumed with. */
+    private static class StubAsyncResponse implements AsyncResponse {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Object result;
+
+        Object await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return result;
+        }
+
+        @Override
+        public boolean resume(Object response) {
+            result = response;
+            done.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            return resume((Object) response);
+        }
+
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            return false;
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return done.getCount() > 0;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            return false;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.opentripplanner.updater;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opentripplanner.routing.graph.Graph;
+
+public class GraphWriterSchedulerTest {
+
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testCoalescingPreservesOrder() throws Exception {
+        GraphWriterScheduler scheduler = new GraphWriterScheduler(null, Executors.defaultThreadFactory());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Hold the writer thread so that the following writers pile up in the queue
+        scheduler.submit(graph -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        scheduler.submit(new Writer("full-1", "A"));
+        scheduler.submit(new Writer("incremental-1", null));
+        scheduler.submit(new Writer("other-1", "B"));
+        scheduler.submit(new Writer("full-2", "A"));
+        scheduler.submit(new Writer("incremental-2", null));
+        scheduler.submit(graph -> done.countDown());
+        assertEquals(5, scheduler.getQueueDepth());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // full-1 was superseded by full-2, which went to the back of the queue behind the incremental writer
+        assertEquals(4, executed.size());
+        assertEquals("incremental-1", executed.get(0));
+        assertEquals("other-1", executed.get(1));
+        assertEquals("full-2", executed.get(2));
+        assertEquals("incremental-2", executed.get(3));
+
+        GraphWriterScheduler.SchedulerStatus status = scheduler.getStatus();
+        assertEquals(0, status.queueDepth);
+        GraphWriterScheduler.WriterStatistics stats = status.writers.get(Writer.class.getName());
+        assertEquals(4, stats.runCount);
+        assertEquals(1, stats.coalescedCount);
+        scheduler.stop();
+    }
+
+    /** Test that a writer throwing an Error neither kills the writer thread nor stops later writers from running. */
+    @Test
+    public void testWritersRunAfterError() throws Exception {
+        GraphWriterScheduler scheduler = new GraphWriterScheduler(null, Executors.defaultThreadFactory());
+        CountDownLatch sameBatch = new CountDownLatch(1);
+        scheduler.submit(graph -> {
+            throw new AssertionError("writer failed");
+        });
+        scheduler.submit(new Writer("after-error", null));
+        scheduler.submit(graph -> sameBatch.countDown());
+        assertTrue(sameBatch.await(10, TimeUnit.SECONDS));
+
+        // A writer submitted once the failed batch is over still gets scheduled
+        CountDownLatch later = new CountDownLatch(1);
+        scheduler.submit(new Writer("later", null));
+        scheduler.submit(graph -> later.countDown());
+        assertTrue(later.await(10, TimeUnit.SECONDS));
+
+        assertEquals(2, executed.size());
+        assertEquals("after-error", executed.get(0));
+        assertEquals("later", executed.get(1));
+        assertEquals(0, scheduler.getQueueDepth());
+        scheduler.stop();
+    }
+
+    private class Writer implements GraphWriterRunnable {
+        final String name;
+        final Object key;
+
+        Writer(String name, Object key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        @Override
+        public void run(Graph graph) {
+            executed.add(name);
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.opentripplanner.updater.stoptime;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class RealtimeFeedMetricsTest {
+
+    @Test
+    public void testLatencyIsRecordedOnCommit() {
+        RealtimeFeedMetrics metrics = new RealtimeFeedMetrics("FEED");
+        assertEquals(-1, metrics.getSnapshotAgeMsec());
+        assertEquals(-1, metrics.getDataAgeMsec());
+
+        metrics.recordReceived(5000000, -1);
+        metrics.recordApplied(0, 1000000, 10000);
+        metrics.recordApplied(0, 1000000, 15000);
+        assertEquals(2, metrics.getMessageCount());
+        assertEquals(1, metrics.getFetchTime().getCount());
+        assertEquals(0, metrics.getParseTime().getCount());
+        // Nothing is visible until the snapshot is committed
+        assertEquals(0, metrics.getEndToEndLatency().getCount());
+        assertEquals(-1, metrics.getSnapshotAgeMsec());
+
+        metrics.recordCommitted(2000000, 20000);
+        assertEquals(1, metrics.getCommitTime().getCount());
+        assertEquals(2, metrics.getEndToEndLatency().getCount());
+        assertEquals(10000, metrics.getEndToEndLatency().getMaxMsec(), 0);
+        assertEquals(5000, metrics.getEndToEndLatency().getLastMsec(), 0);
+        assertEquals(7500, metrics.getEndToEndLatency().getMeanMsec(), 0);
+
+        // Commits that do not carry updates from this feed are not counted
+        metrics.recordCommitted(2000000, 30000);
+        assertEquals(1, metrics.getCommitTime().getCount());
+        assertEquals(2, metrics.getEndToEndLatency().getCount());
+    }
+
+    @Test
+    public void testMXBeanRegistration() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.opentripplanner:type=RealtimeFeed,feed=test");
+        RealtimeFeedMetrics metrics = new RealtimeFeedMetrics("test");
+        metrics.recordApplied(3000000, 1000000, System.currentTimeMillis());
+        server.registerMBean(metrics, name);
+        try {
+            assertEquals(1L, server.getAttribute(name, "MessageCount"));
+            CompositeData lockWait = (CompositeData) server.getAttribute(name, "LockWaitTime");
+            assertEquals(1L, lockWait.get("count"));
+            assertEquals(3.0, (Double) lockWait.get("maxMsec"), 0.001);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -509,4 +509,16 @@ public class TimetableSnapshotSourceTest {
         assertNotSame(snapshotA.resolve(pattern, null ), snapshotA.resolve(pattern, serviceDate));
         assertSame   (snapshotB.resolve(pattern, null ), snapshotB.resolve(pattern, previously));
     }
+
+    @Test
+    public void testUnregisterFeedMetrics() {
+        RealtimeFeedMetrics metrics = updater.getFeedMetrics("unregistered");
+        assertTrue(updater.getAllFeedMetrics().contains(metrics));
+
+        updater.unregisterFeedMetrics("unregistered");
+        assertFalse(updater.getAllFeedMetrics().contains(metrics));
+        // Metrics for the same feed start over if it delivers updates again
+        assertNotSame(metrics, updater.getFeedMetrics("unregistered"));
+        updater.unregisterFeedMetrics("unregistered");
+    }
 }
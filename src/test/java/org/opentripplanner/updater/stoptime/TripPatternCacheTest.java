@@ -0,0 +1,134 @@
+package org.opentripplanner.updater.stoptime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.gtfs.GtfsContext;
+import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.edgetype.factory.PatternHopFactory;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+public class TripPatternCacheTest {
+
+    private static final ServiceDate DAY_1 = new ServiceDate(2009, 8, 10);
+    private static final ServiceDate DAY_2 = new ServiceDate(2009, 8, 11);
+    private static final ServiceDate DAY_3 = new ServiceDate(2009, 8, 12);
+
+    private static Graph graph = new Graph();
+
+    /** Three scheduled patterns whose stop patterns and routes are used to create realtime patterns */
+    private static List<TripPattern> scheduled = new ArrayList<>();
+
+    private TripPatternCache cache;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        GtfsContext context = GtfsLibrary.readGtfs(new File(ConstantsForTests.FAKE_GTFS));
+        PatternHopFactory factory = new PatternHopFactory(context);
+        factory.run(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            if (scheduled.size() < 3 && !pattern.scheduledTimetable.tripTimes.isEmpty()) {
+                scheduled.add(pattern);
+            }
+        }
+        assertEquals(3, scheduled.size());
+    }
+
+    @Before
+    public void setUp() {
+        cache = new TripPatternCache();
+    }
+
+    private TripPattern realtimePattern(int i, ServiceDate serviceDate) {
+        TripPattern pattern = scheduled.get(i);
+        return cache.getOrCreateTripPattern(pattern.stopPattern, pattern.route, graph, serviceDate);
+    }
+
+    private static boolean inGraph(TripPattern pattern) {
+        return graph.containsVertex(pattern.departVertices[0]) && graph.containsVertex(pattern.arriveVertices[1]);
+    }
+
+    @Test
+    public void testPatternsAreSharedBetweenDays() {
+        TripPattern a = realtimePattern(0, DAY_1);
+        assertSame(a, realtimePattern(0, DAY_2));
+        assertNotSame(a, realtimePattern(1, DAY_1));
+        assertEquals(2, cache.size());
+        assertTrue(inGraph(a));
+    }
+
+    @Test
+    public void testPurgeRemovesOnlyExpiredPatterns() {
+        TripPattern a = realtimePattern(0, DAY_1);
+        TripPattern b = realtimePattern(1, DAY_2);
+        TripPattern c = realtimePattern(2, DAY_1);
+        // c is also used on a later day, so it must survive the purge of the first two days
+        realtimePattern(2, DAY_3);
+
+        assertEquals(0, cache.purgeExpiredData(new ServiceDate(2009, 8, 9), graph));
+        assertEquals(3, cache.size());
+
+        assertEquals(1, cache.purgeExpiredData(DAY_1, graph));
+        assertFalse(inGraph(a));
+        assertTrue(inGraph(b));
+        assertTrue(inGraph(c));
+
+        assertEquals(1, cache.purgeExpiredData(DAY_2, graph));
+        assertFalse(inGraph(b));
+        assertTrue(inGraph(c));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getEvictedCount());
+
+        // A purged pattern is created again when it is needed
+        TripPattern a2 = realtimePattern(0, DAY_3);
+        assertNotSame(a, a2);
+        assertTrue(inGraph(a2));
+    }
+
+    @Test
+    public void testEvictUnusedKeepsPatternsReferencedBySnapshot() {
+        TripPattern a = realtimePattern(0, DAY_1);
+        TripPattern b = realtimePattern(1, DAY_1);
+        TripPattern c = realtimePattern(2, DAY_1);
+
+        // The realtime buffer refers to a and b, which were used before c
+        String feedId = a.getFeedId();
+        TimetableSnapshot buffer = new TimetableSnapshot();
+        buffer.update(feedId, a, scheduled.get(0).scheduledTimetable.tripTimes.get(0), DAY_1);
+        buffer.update(feedId, b, scheduled.get(1).scheduledTimetable.tripTimes.get(0), DAY_1);
+
+        // Nothing is evicted below the maximum size
+        assertEquals(0, cache.evictUnused(buffer::references, graph));
+
+        // Two patterns are in excess, but only c can be evicted
+        cache.maxSize = 1;
+        assertEquals(1, cache.evictUnused(buffer::references, graph));
+        assertEquals(2, cache.size());
+        assertTrue(inGraph(a));
+        assertTrue(inGraph(b));
+        assertFalse(inGraph(c));
+        assertSame(a, realtimePattern(0, DAY_1));
+        assertSame(b, realtimePattern(1, DAY_1));
+
+        // Once the buffer no longer refers to them, they can be evicted as well
+        buffer.clear(feedId);
+        assertEquals(1, cache.evictUnused(buffer::references, graph));
+        assertEquals(1, cache.size());
+    }
+}
@@ -22,4 +22,20 @@ public class TestPolylineEncoder extends TestCase {
         assertEquals(3, eplb.getLength());
         assertNull(eplb.getLevels());
     }
+
+    public void testEncoderMatchesCreateEncodings() {
+        List<Coordinate> points = new ArrayList<Coordinate>();
+        points.add(new Coordinate(-73.85062, 40.903125));
+        points.add(new Coordinate(-73.85136, 40.902261));
+        points.add(new Coordinate(-73.85151, 40.902066));
+        points.add(new Coordinate(-0.00001, -0.00002));
+        PolylineEncoder.Encoder encoder = new PolylineEncoder.Encoder();
+        for (Coordinate point : points) {
+            encoder.add(point.x, point.y);
+        }
+        EncodedPolylineBean eplb = encoder.getEncoding();
+        assertEquals(PolylineEncoder.createEncodings(points).getPoints(), eplb.getPoints());
+        assertEquals(4, eplb.getLength());
+        assertNull(eplb.getLevels());
+    }
 }